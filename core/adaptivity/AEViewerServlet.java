@@ -40,6 +40,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.cougaar.core.blackboard.BlackboardClient;
+import org.cougaar.core.blackboard.ClassFilteredPredicate;
 import org.cougaar.core.service.BlackboardQueryService;
 import org.cougaar.core.service.BlackboardService;
 import org.cougaar.core.service.LoggingService;
@@ -520,7 +521,7 @@ public void doGet(HttpServletRequest request, HttpServletResponse response) {
     out.println("</table></body></html>");	
   }
 
-  private class UIDPredicate implements UnaryPredicate { 
+  private class UIDPredicate implements ClassFilteredPredicate { 
     /**
     * 
     */
@@ -529,6 +530,10 @@ public void doGet(HttpServletRequest request, HttpServletResponse response) {
     public UIDPredicate(String uidString) {
       uid = uidString;
     }
+
+    public Class[] getFilterClasses() {
+      return new Class[] {OperatingModePolicy.class};
+    }
 	
     public boolean execute(Object o) {
       if (o instanceof OperatingModePolicy) {
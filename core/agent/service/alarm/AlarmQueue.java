@@ -0,0 +1,202 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+package org.cougaar.core.agent.service.alarm;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A binary heap of {@link Alarm}s ordered by expiration time, used by
+ * the {@link Timer}.
+ * <p>
+ * Alarms with equal expiration times come out in the order they
+ * were added, as they did from the Timer's original sorted list.
+ * Adding and removing are O(log n); an index from each alarm to its
+ * heap slot makes {@link #remove} a lookup instead of a scan.
+ * <p>
+ * This class is not synchronized; the Timer guards it with its
+ * <code>sem</code> lock.
+ */
+final class AlarmQueue {
+
+  private static final class Entry {
+    final Alarm alarm;
+    /** expiration time when added, fixed while queued */
+    final long time;
+    /** insertion order, to keep equal times in FIFO order */
+    final long seq;
+    int index;
+    /** a later entry for the same alarm, if it was added twice */
+    Entry dup;
+
+    Entry(Alarm alarm, long seq) {
+      this.alarm = alarm;
+      this.time = alarm.getExpirationTime();
+      this.seq = seq;
+    }
+
+    boolean before(Entry e) {
+      return (time < e.time || (time == e.time && seq < e.seq));
+    }
+  }
+
+  private Entry[] heap = new Entry[16];
+  private int size = 0;
+  private long nextSeq = 0;
+
+  /** Map from Alarm to its earliest added Entry */
+  private final Map index = new IdentityHashMap();
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  void add(Alarm alarm) {
+    Entry e = new Entry(alarm, nextSeq++);
+    Entry first = (Entry) index.get(alarm);
+    if (first == null) {
+      index.put(alarm, e);
+    } else {
+      while (first.dup != null) first = first.dup;
+      first.dup = e;
+    }
+    if (size == heap.length) {
+      Entry[] n = new Entry[size * 2];
+      System.arraycopy(heap, 0, n, 0, size);
+      heap = n;
+    }
+    e.index = size++;
+    heap[e.index] = e;
+    siftUp(e.index);
+  }
+
+  /** @return the alarm with the earliest expiration time, or null */
+  Alarm peek() {
+    return (size == 0 ? null : heap[0].alarm);
+  }
+
+  /** Remove and return the alarm with the earliest expiration time */
+  Alarm poll() {
+    if (size == 0) return null;
+    Entry e = heap[0];
+    unindex(e);
+    removeAt(0);
+    return e.alarm;
+  }
+
+  /**
+   * Remove an alarm, or the first added copy of it if it was added
+   * more than once.
+   * @return true if the alarm was queued
+   */
+  boolean remove(Alarm alarm) {
+    Entry e = (Entry) index.get(alarm);
+    if (e == null) return false;
+    unindex(e);
+    removeAt(e.index);
+    return true;
+  }
+
+  void clear() {
+    for (int i = 0; i < size; i++) {
+      heap[i] = null;
+    }
+    size = 0;
+    index.clear();
+  }
+
+  private void unindex(Entry e) {
+    Entry first = (Entry) index.get(e.alarm);
+    if (first == e) {
+      if (e.dup == null) {
+        index.remove(e.alarm);
+      } else {
+        index.put(e.alarm, e.dup);
+      }
+    } else {
+      while (first.dup != e) first = first.dup;
+      first.dup = e.dup;
+    }
+    e.dup = null;
+  }
+
+  private void removeAt(int i) {
+    int last = --size;
+    Entry moved = heap[last];
+    heap[last] = null;
+    if (i == last) return;
+    heap[i] = moved;
+    moved.index = i;
+    siftDown(i);
+    if (heap[i] == moved) siftUp(i);
+  }
+
+  private void siftUp(int i) {
+    Entry e = heap[i];
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      Entry p = heap[parent];
+      if (!e.before(p)) break;
+      heap[i] = p;
+      p.index = i;
+      i = parent;
+    }
+    heap[i] = e;
+    e.index = i;
+  }
+
+  private void siftDown(int i) {
+    Entry e = heap[i];
+    int half = size >>> 1;
+    while (i < half) {
+      int child = 2 * i + 1;
+      Entry c = heap[child];
+      int right = child + 1;
+      if (right < size && heap[right].before(c)) {
+        child = right;
+        c = heap[child];
+      }
+      if (!c.before(e)) break;
+      heap[i] = c;
+      c.index = i;
+      i = child;
+    }
+    heap[i] = e;
+    e.index = i;
+  }
+
+  @Override
+  public String toString() {
+    return
+      "(alarms size="+size+
+      (size == 0 ? "" : " next="+heap[0].alarm)+")";
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+package org.cougaar.core.agent.service.alarm;
+
+import java.util.ArrayList;
+import java.util.ListIterator;
+import java.util.Random;
+
+/**
+ * Point benchmark that compares the heap-based {@link AlarmQueue}
+ * against the Timer's original sorted ArrayList, measuring the
+ * insert, cancel and expire rates with many pending alarms.
+ * <p>
+ * Usage is:<pre>
+ *   java org.cougaar.core.agent.service.alarm.AlarmQueueBenchmark [ops]
+ * </pre>
+ * where <i>ops</i> is the number of operations of each kind per
+ * queue size (default 20000).
+ */
+public class AlarmQueueBenchmark {
+
+  private static final int[] SIZES = {1000, 10000, 50000};
+
+  public static void main(String[] args) {
+    int ops = (args.length > 0 ? Integer.parseInt(args[0]) : 20000);
+    System.out.println("pending\timpl\tinsert-ns\tcancel-ns\texpire-ns");
+    for (int r = 0; r < 2; r++) {
+      // first round is JIT warm-up
+      boolean print = (r > 0);
+      for (int i = 0; i < SIZES.length; i++) {
+        int n = SIZES[i];
+        long[] list = run(new ListQueue(), n, ops);
+        long[] heap = run(new HeapQueue(), n, ops);
+        if (print) {
+          System.out.println(
+              n+"\tlist\t"+(list[0] / ops)+"\t"+(list[1] / ops)+"\t"+(list[2] / ops));
+          System.out.println(
+              n+"\theap\t"+(heap[0] / ops)+"\t"+(heap[1] / ops)+"\t"+(heap[2] / ops));
+        }
+      }
+    }
+  }
+
+  /**
+   * Fill the queue to n alarms, then time ops inserts, ops cancels
+   * of random pending alarms, and ops expirations of the earliest.
+   * @return the nanoseconds spent in each phase
+   */
+  private static long[] run(Queue q, int n, int ops) {
+    Random rand = new Random(n);
+    Alarm[] pending = new Alarm[n + ops];
+    for (int i = 0; i < n; i++) {
+      pending[i] = new TestAlarm(rand.nextInt(1000000));
+      q.add(pending[i]);
+    }
+    long[] result = new long[3];
+    long t = System.nanoTime();
+    for (int i = 0; i < ops; i++) {
+      pending[n + i] = new TestAlarm(rand.nextInt(1000000));
+      q.add(pending[n + i]);
+    }
+    result[0] = System.nanoTime() - t;
+    int m = n + ops;
+    t = System.nanoTime();
+    for (int i = 0; i < ops; i++) {
+      int j = rand.nextInt(m);
+      q.remove(pending[j]);
+      pending[j] = pending[--m];
+    }
+    result[1] = System.nanoTime() - t;
+    t = System.nanoTime();
+    for (int i = 0; i < ops && q.poll() != null; i++) {
+    }
+    result[2] = System.nanoTime() - t;
+    return result;
+  }
+
+  private static class TestAlarm implements Alarm {
+    private final long time;
+    TestAlarm(long time) { this.time = time; }
+    public long getExpirationTime() { return time; }
+    public void expire() { }
+    public boolean hasExpired() { return false; }
+    public boolean cancel() { return false; }
+  }
+
+  private interface Queue {
+    void add(Alarm alarm);
+    void remove(Alarm alarm);
+    Alarm poll();
+  }
+
+  private static class HeapQueue implements Queue {
+    private final AlarmQueue q = new AlarmQueue();
+    public void add(Alarm alarm) { q.add(alarm); }
+    public void remove(Alarm alarm) { q.remove(alarm); }
+    public Alarm poll() { return q.poll(); }
+  }
+
+  /** The Timer's original insertion-sorted list */
+  private static class ListQueue implements Queue {
+    private final ArrayList alarms = new ArrayList();
+    public void add(Alarm alarm) {
+      long t = alarm.getExpirationTime();
+      ListIterator i = alarms.listIterator(0);
+      while (i.hasNext()) {
+        Alarm cur = (Alarm) i.next();
+        if (t < cur.getExpirationTime()) {
+          i.previous();
+          i.add(alarm);
+          return;
+        }
+      }
+      alarms.add(alarm);
+    }
+    public void remove(Alarm alarm) { alarms.remove(alarm); }
+    public Alarm poll() {
+      return (alarms.isEmpty() ? null : (Alarm) alarms.remove(0));
+    }
+  }
+}
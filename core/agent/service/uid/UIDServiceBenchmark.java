@@ -0,0 +1,122 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+package org.cougaar.core.agent.service.uid;
+
+import org.cougaar.core.mts.MessageAddress;
+import org.cougaar.core.service.UIDService;
+import org.cougaar.core.util.UID;
+
+/**
+ * Point benchmark for UID allocation rates across threads, comparing
+ * the original synchronized counter with per-UID owner interning
+ * against the {@link UIDServiceImpl}, with and without per-thread
+ * block reservation.
+ * <p>
+ * Usage is:<pre>
+ *   java org.cougaar.core.agent.service.uid.UIDServiceBenchmark [uids [blockSize]]
+ * </pre>
+ * where <i>uids</i> is the number of UIDs each thread creates
+ * (default 1000000) and <i>blockSize</i> is the reservation size for
+ * the blocked case (default 64).
+ */
+public class UIDServiceBenchmark {
+
+  private static final int[] THREADS = {1, 2, 4, 8, 16, 32};
+
+  public static void main(String[] args) throws InterruptedException {
+    int uids = (args.length > 0 ? Integer.parseInt(args[0]) : 1000000);
+    int blockSize = (args.length > 1 ? Integer.parseInt(args[1]) : 64);
+    MessageAddress agent = MessageAddress.getMessageAddress("TestAgent");
+    System.out.println("threads\timpl\tuids/sec");
+    for (int r = 0; r < 2; r++) {
+      // first round is JIT warm-up
+      boolean print = (r > 0);
+      for (int i = 0; i < THREADS.length; i++) {
+        int n = THREADS[i];
+        long sync = run(new SynchronizedUIDs("TestAgent"), n, uids);
+        long atomic = run(new UIDServiceImpl(agent, 1), n, uids);
+        long block = run(new UIDServiceImpl(agent, blockSize), n, uids);
+        if (print) {
+          System.out.println(n+"\tsynchronized\t"+sync);
+          System.out.println(n+"\tatomic\t"+atomic);
+          System.out.println(n+"\tblock-"+blockSize+"\t"+block);
+        }
+      }
+    }
+  }
+
+  /** @return UIDs per second over all threads */
+  private static long run(final Object svc, int n, final int uids)
+    throws InterruptedException
+  {
+    Thread[] threads = new Thread[n];
+    for (int i = 0; i < n; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          UID last = null;
+          if (svc instanceof UIDService) {
+            UIDService s = (UIDService) svc;
+            for (int j = 0; j < uids; j++) {
+              last = s.nextUID();
+            }
+          } else {
+            SynchronizedUIDs s = (SynchronizedUIDs) svc;
+            for (int j = 0; j < uids; j++) {
+              last = s.nextUID();
+            }
+          }
+          if (last == null) throw new RuntimeException();
+        }
+      };
+    }
+    long t = System.nanoTime();
+    for (int i = 0; i < n; i++) {
+      threads[i].start();
+    }
+    for (int i = 0; i < n; i++) {
+      threads[i].join();
+    }
+    t = System.nanoTime() - t;
+    return (long) (((double) n * uids) * 1000000000L / t);
+  }
+
+  /** The original UIDServiceImpl allocation path */
+  private static class SynchronizedUIDs {
+    private final String prefix;
+    private long count = System.currentTimeMillis();
+    SynchronizedUIDs(String prefix) {
+      this.prefix = prefix;
+    }
+    private synchronized long nextID() {
+      return ++count;
+    }
+    UID nextUID() {
+      return new UID(prefix, nextID());
+    }
+  }
+}
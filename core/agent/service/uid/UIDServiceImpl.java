@@ -26,6 +26,9 @@
 
 package org.cougaar.core.agent.service.uid;
 
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cougaar.bootstrap.SystemProperties;
 import org.cougaar.core.mts.MessageAddress;
 import org.cougaar.core.persist.PersistenceState;
 import org.cougaar.core.service.UIDService;
@@ -34,15 +37,53 @@ import org.cougaar.core.util.UniqueObject;
 
 /**
  * The UIDService implementation.
+ * <p>
+ * UIDs are allocated from an atomic counter without locking, and
+ * the agent name is interned once instead of once per UID.
+ * Optionally each thread reserves a block of ids at a time, so
+ * threads that create many UIDs rarely touch the shared counter.
+ * Since the counter starts at the current time, a large block size
+ * makes it run ahead of the clock faster, so blocks are off by
+ * default.
+ *
+ * @property org.cougaar.core.agent.service.uid.blockSize
+ *   Number of ids each thread reserves at a time. Defaults to 1,
+ *   which allocates ids in order from the shared counter.
  */
 final class UIDServiceImpl implements UIDService {
+
+  private static final int BLOCK_SIZE =
+    Math.max(1, SystemProperties.getInt(
+          "org.cougaar.core.agent.service.uid.blockSize", 1));
+
   private MessageAddress cid;
-  private String prefix;
-  private long count = System.currentTimeMillis();
+  private final String prefix;
+  private final int blockSize;
+
+  /** The highest id handed out or reserved */
+  private final AtomicLong count =
+    new AtomicLong(System.currentTimeMillis());
+
+  /** Bumped when the counter is raised, to discard thread blocks */
+  private volatile int generation = 0;
+
+  /** Each thread's reserved block, if blockSize &gt; 1 */
+  private final ThreadLocal blocks =
+    new ThreadLocal() {
+      @Override
+      protected Object initialValue() {
+        return new Block();
+      }
+    };
 
   public UIDServiceImpl(MessageAddress cid) {
+    this(cid, BLOCK_SIZE);
+  }
+
+  UIDServiceImpl(MessageAddress cid, int blockSize) {
     this.cid = cid;
-    prefix = cid.getAddress();
+    this.blockSize = blockSize;
+    prefix = cid.getAddress().intern();
   }
 
   /**
@@ -58,13 +99,23 @@ final class UIDServiceImpl implements UIDService {
     return cid;
   }
 
-  private synchronized long nextID() {
-    return ++count;
+  private long nextID() {
+    if (blockSize <= 1) {
+      return count.incrementAndGet();
+    }
+    Block b = (Block) blocks.get();
+    int g = generation;
+    if (b.next >= b.limit || b.generation != g) {
+      b.limit = count.addAndGet(blockSize);
+      b.next = b.limit - blockSize;
+      b.generation = g;
+    }
+    return ++b.next;
   }
 
   /** Take the next Unique ID. */
   public UID nextUID() {
-    return new UID(prefix, nextID());
+    return UID.withInternedOwner(prefix, nextID());
   }
 
   /**
@@ -85,16 +136,31 @@ final class UIDServiceImpl implements UIDService {
   // counter.  If we hand out UIDs faster than one a millisecond
   // then this could cause problems!
   public synchronized PersistenceState getPersistenceState() {
-    return new UIDServerPersistenceState(count);
+    return new UIDServerPersistenceState(count.get());
   }
   public synchronized void setPersistenceState(PersistenceState state) {
     if (state instanceof UIDServerPersistenceState) {
       long persistedCount = ((UIDServerPersistenceState)state).count;
-      if (persistedCount > count) count = persistedCount;
+      while (true) {
+        long c = count.get();
+        if (persistedCount <= c) break;
+        if (count.compareAndSet(c, persistedCount)) {
+          // blocks reserved below the persisted count are now stale
+          generation++;
+          break;
+        }
+      }
     } else {
       throw new IllegalArgumentException(state.toString());
     }
   }
+
+  /** A thread's reserved ids, from next+1 to limit */
+  private static final class Block {
+    private long next;
+    private long limit;
+    private int generation = -1;
+  }
   private static class UIDServerPersistenceState implements PersistenceState {
     /**
     * 
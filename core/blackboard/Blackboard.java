@@ -37,6 +37,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.cougaar.bootstrap.SystemProperties;
 import org.cougaar.core.agent.Agent;
@@ -83,6 +84,12 @@ import org.cougaar.util.log.Logging;
  * @property org.cougaar.core.blackboard.waitForNewCommChangeNotifications Time in 
  * milliseconds to wait for more community changes before asking the community 
  * service for them. Default is 1,000.
+ * @property org.cougaar.core.blackboard.indexes
+ * When set to <em>true</em> (the default), maintains UID and
+ * class indexes of all published objects, which are used to answer
+ * queries with {@link UIDFilteredPredicate}s and
+ * {@link ClassFilteredPredicate}s without scanning the entire
+ * blackboard.
  */
 public class Blackboard extends Subscriber
   implements
@@ -91,6 +98,8 @@ public class Blackboard extends Subscriber
   PrivilegedClaimant
 {
   protected CollectionSubscription everything;
+  /** the collection backing "everything", with live class counts */
+  private AllObjectsSet allObjects;
   protected MessageAddress self;
   private Distributor myDistributor;
   protected ServiceBroker myServiceBroker;
@@ -106,6 +115,8 @@ public class Blackboard extends Subscriber
     SystemProperties.getBoolean("org.cougaar.core.agent.savePriorPublisher");
   public static final boolean enablePublishException =
     SystemProperties.getBoolean("org.cougaar.core.agent.enablePublishException");
+  private static final boolean enableIndexes =
+    SystemProperties.getBoolean("org.cougaar.core.blackboard.indexes", true);
 
   /** 
    * @property org.cougaar.core.blackboard.pedantic When true (the default) enables a variety
@@ -237,12 +248,19 @@ protected EnvelopeTuple clientChangedObject(Object o, List changes) {
     myDistributor = null;
   }
 
-  private static class AllObjectsSet extends HashSet {
+  /**
+   * The collection backing our "everything" subscription, which
+   * maintains live per-class counts and, if enablePublishException
+   * is set, complains about redundant adds and removes.
+   */
+  static class AllObjectsSet extends HashSet {
     /**
     * 
     */
    private static final long serialVersionUID = 1L;
    Map stacks = createStackMap();
+    final ClassCounter counter = new ClassCounter();
+    final ObjectIndex index = (enableIndexes ? new ObjectIndex() : null);
     protected Map createStackMap() {
       if (isSavePriorPublisher) {
         return new HashMap();
@@ -257,6 +275,15 @@ protected EnvelopeTuple clientChangedObject(Object o, List changes) {
     @Override
    public boolean add(Object o) {
       boolean result = super.add(o);
+      if (result) {
+        counter.add(o);
+        if (index != null) {
+          index.add(o);
+        }
+      }
+      if (!enablePublishException) {
+        return result;
+      }
       if (!result) {
         PublishStack priorStack = null;
         if (stacks != null) {
@@ -275,6 +302,15 @@ protected EnvelopeTuple clientChangedObject(Object o, List changes) {
     @Override
    public boolean remove(Object o) {
       boolean result = super.remove(o);
+      if (result) {
+        counter.remove(o);
+        if (index != null) {
+          index.remove(o);
+        }
+      }
+      if (!enablePublishException) {
+        return result;
+      }
       if (!result) {
         PublishStack priorStack = null;
         if (stacks != null) {
@@ -288,14 +324,19 @@ protected EnvelopeTuple clientChangedObject(Object o, List changes) {
       }
       return result;
     }
+    @Override
+   public void clear() {
+      super.clear();
+      counter.clear();
+      if (index != null) {
+        index.clear();
+      }
+    }
   }
 
   public final void init() {
-    everything =
-      new CollectionSubscription(anythingP,
-                                 enablePublishException
-                                 ? new AllObjectsSet(111)
-                                 : new HashSet(111));
+    allObjects = new AllObjectsSet(111);
+    everything = new CollectionSubscription(anythingP, allObjects);
     subscribe(everything);
     setReadyToPersist();
   }
@@ -315,16 +356,26 @@ protected EnvelopeTuple clientChangedObject(Object o, List changes) {
       return; // Don't fill ourselves
     }
     Envelope envelope = createQueryEnvelope(subscription);
-    envelope.bulkAddObject(everything.getCollection());
+    envelope.bulkAddObject(getCandidates(subscription.predicate));
     subscription.fill(envelope);
   }
 
   public void fillQuery(Subscription subscription) {
     Envelope envelope = createQueryEnvelope(subscription);
-    envelope.bulkAddObject(everything.getCollection());
+    envelope.bulkAddObject(getCandidates(subscription.predicate));
     subscription.fill(envelope);
   }
 
+  /**
+   * Use our indexes to find the objects that the predicate may
+   * accept.  Called under the protection of the distributor lock.
+   */
+  private Collection getCandidates(UnaryPredicate predicate) {
+    Collection all = everything.getCollection();
+    ObjectIndex index = allObjects.index;
+    return (index == null ? all : index.getCandidates(predicate, all));
+  }
+
   private Envelope createQueryEnvelope(Subscription subscription) {
     if (isTimestamped()) {
       TimestampedEnvelope te = new TimestampedEnvelope();
@@ -395,7 +446,7 @@ protected EnvelopeTuple clientChangedObject(Object o, List changes) {
   public Enumeration searchBlackboard(UnaryPredicate predicate) {
     Vector vec = new Vector();
 
-    for (Iterator i = everything.getCollection().iterator(); i.hasNext(); ) {
+    for (Iterator i = getCandidates(predicate).iterator(); i.hasNext(); ) {
       Object o = i.next();
       if (predicate.execute(o)) {
         vec.addElement(o);
@@ -404,21 +455,26 @@ protected EnvelopeTuple clientChangedObject(Object o, List changes) {
     return vec.elements();
   }
 
+  /**
+   * Count the instances of the given class, using our live class
+   * counts.  This is safe to call without the distributor lock.
+   */
   public int countBlackboard(Class cl) {
-    // could optimize by maintaining an LRU table
-    int c = 0;
-    for (Iterator i = everything.getCollection().iterator(); i.hasNext(); ) {
-      Object o = i.next();
-      if (o != null && cl.isAssignableFrom(o.getClass())) {
-        c++;
-      }
-    }
-    return c;
+    return allObjects.counter.count(cl);
+  }
+
+  /**
+   * @return a snapshot Map of concrete Class to Integer count of
+   * all objects on the blackboard.  This is safe to call without the
+   * distributor lock.
+   */
+  public Map getBlackboardHistogram() {
+    return allObjects.counter.getSnapshot();
   }
 
   public int countBlackboard(UnaryPredicate predicate) {
     int c = 0;
-    for (Iterator i = everything.getCollection().iterator(); i.hasNext(); ) {
+    for (Iterator i = getCandidates(predicate).iterator(); i.hasNext(); ) {
       Object o = i.next();
       if (predicate.execute(o)) {
         c++;
@@ -427,6 +483,24 @@ protected EnvelopeTuple clientChangedObject(Object o, List changes) {
     return c;
   }
 
+  /**
+   * @return the number of queries, searches and subscription fills
+   * since the agent started.
+   */
+  public long getQueryCount() {
+    ObjectIndex index = allObjects.index;
+    return (index == null ? 0 : index.getQueryCount());
+  }
+
+  /**
+   * @return the number of queries, searches and subscription fills
+   * that were answered from an index instead of a full scan.
+   */
+  public long getScansAvoided() {
+    ObjectIndex index = allObjects.index;
+    return (index == null ? 0 : index.getScansAvoided());
+  }
+
   public int getBlackboardSize() {
     return everything.size();
   }
@@ -547,8 +621,11 @@ protected EnvelopeTuple clientChangedObject(Object o, List changes) {
   public void appendMessagesToSend(List messages) {
     HashMap directivesByDestination = new HashMap(89);
 
-    // FIXME - prefill cache of aba roles to addresses here, instead of building up a cache
-    // fillCache();
+    // Each distinct ABA (with its QoS attributes) is resolved once
+    // per batch, from the ABA cache or the community service, and
+    // the resulting destination keys are shared by all directives
+    // sent to it.
+    Map abaDestinationKeys = null;
     
     for (Iterator iter = sendQueue.iterator(); iter.hasNext(); ) {
       Directive dir = (Directive) iter.next();  
@@ -565,18 +642,19 @@ protected EnvelopeTuple clientChangedObject(Object o, List changes) {
 
       if (dest instanceof AttributeBasedAddress) {
         //System.out.println("-------BLACKBOARD ENCOUNTERED ABA-----");
-        MessageAttributes qosAttributes = dest.getMessageAttributes();
-	Collection agents = getABAAddresses((AttributeBasedAddress) dest);   // List of CIs
+        if (abaDestinationKeys == null) {
+          abaDestinationKeys = new HashMap(13);
+        }
+        Object abaKey = getDirectiveKeyOfDestination(dest);
+        Object[] keys = (Object[]) abaDestinationKeys.get(abaKey);
+        if (keys == null) {
+          keys = getABADestinationKeys((AttributeBasedAddress) dest);
+          abaDestinationKeys.put(abaKey, keys);
+        }
 	// for all destinations, add a new directive array and insert a new directive, or add to 
 	// an existing array in the destinations hashmap
-	for (Iterator i = agents.iterator(); i.hasNext(); ) {
-          MessageAddress agentAddress = (MessageAddress) i.next();
-          if (qosAttributes != null) {
-            agentAddress =
-              MessageAddress.getMessageAddress(
-                  agentAddress, qosAttributes);
-          }
-          Object key = getDirectiveKeyOfDestination(agentAddress);
+	for (int i = 0; i < keys.length; i++) {
+          Object key = keys[i];
 	  dirs = (ArrayList)directivesByDestination.get(key);
 	  if (dirs == null) {
 	    dirs = new ArrayList(1);
@@ -621,6 +699,27 @@ protected EnvelopeTuple clientChangedObject(Object o, List changes) {
     sendQueue.clear();
   }
 
+  /**
+   * @return the directive destination keys of all the agents
+   * matching the ABA, with the ABA's QoS attributes applied.
+   */
+  private Object[] getABADestinationKeys(AttributeBasedAddress aba) {
+    MessageAttributes qosAttributes = aba.getMessageAttributes();
+    Collection agents = getABAAddresses(aba);   // List of CIs
+    Object[] keys = new Object[agents.size()];
+    int n = 0;
+    for (Iterator i = agents.iterator(); i.hasNext(); ) {
+      MessageAddress agentAddress = (MessageAddress) i.next();
+      if (qosAttributes != null) {
+        agentAddress =
+          MessageAddress.getMessageAddress(
+              agentAddress, qosAttributes);
+      }
+      keys[n++] = getDirectiveKeyOfDestination(agentAddress);
+    }
+    return keys;
+  }
+
   public void restart(MessageAddress cid) {
     myDomainService.invokeRestartLogicProviders(cid);
   }
@@ -813,6 +912,8 @@ protected EnvelopeTuple clientChangedObject(Object o, List changes) {
   
   // AttributeBasedAddress to ABATranslation cache
   private Map cache = new HashMap(89);
+  private final AtomicLong abaCacheHits = new AtomicLong();
+  private final AtomicLong abaCacheMisses = new AtomicLong();
 
   private CacheClearer cacheClearer = new CacheClearer();
   private Object cacheClearerLock = new Object();
@@ -862,8 +963,11 @@ protected EnvelopeTuple clientChangedObject(Object o, List changes) {
         matches = abaTranslation.getCurrentTranslation();
       }
     }
-    if (matches == null) {
+    if (matches != null) {
+      abaCacheHits.incrementAndGet();
+    } else {
       // Not in cache. Get it the hard way from community service
+      abaCacheMisses.incrementAndGet();
       matches = lookupABA(aba);
       if (logger.isDebugEnabled()) {
         logger.debug("lookupABA: " + aba + "->" + matches);
@@ -1018,12 +1122,28 @@ protected EnvelopeTuple clientChangedObject(Object o, List changes) {
     }
   }
 
+  /**
+   * @return the number of ABA translations answered from the cache
+   */
+  public long getABACacheHits() {
+    return abaCacheHits.get();
+  }
+
+  /**
+   * @return the number of ABA translations that required a community
+   * service search
+   */
+  public long getABACacheMisses() {
+    return abaCacheMisses.get();
+  }
+
   public ABATranslation getABATranslation(AttributeBasedAddress aba) {
     synchronized (cache) {
       ABATranslationImpl ret = (ABATranslationImpl) cache.get(aba);
       if (ret == null) return null;
       if (ret.getOldTranslation() == null) return null;
       if (ret.getCurrentTranslation() == null) {
+        abaCacheMisses.incrementAndGet();
         ret.setCurrentTranslation(lookupABA(aba));
       }
       return ret;
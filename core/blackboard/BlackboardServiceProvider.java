@@ -27,6 +27,7 @@
 package org.cougaar.core.blackboard;
 
 import java.util.Collection;
+import java.util.Map;
 
 import org.cougaar.core.component.ServiceBroker;
 import org.cougaar.core.component.ServiceProvider;
@@ -107,6 +108,21 @@ public class BlackboardServiceProvider implements ServiceProvider {
     public int getBlackboardCount(UnaryPredicate predicate) {
       return distributor.getBlackboardCount(predicate);
     }
+    public Map getBlackboardHistogram() {
+      return distributor.getBlackboardHistogram();
+    }
+    public long getBlackboardQueryCount() {
+      return distributor.getBlackboardQueryCount();
+    }
+    public long getBlackboardScansAvoided() {
+      return distributor.getBlackboardScansAvoided();
+    }
+    public long getABACacheHits() {
+      return distributor.getABACacheHits();
+    }
+    public long getABACacheMisses() {
+      return distributor.getABACacheMisses();
+    }
   }
 
   /** The implementation of BlackboardQueryService */
@@ -0,0 +1,138 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+
+package org.cougaar.core.blackboard;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Live per-concrete-class object counts for the blackboard.
+ * <p>
+ * Counts are updated as objects are added to and removed from the
+ * blackboard's {@link Blackboard.AllObjectsSet}, which is always
+ * done under the distributor lock.  Readers don't need any lock:
+ * a count query sums the counts of the concrete classes that are
+ * assignable to the query class, where the list of assignable
+ * classes is cached per query class until a new concrete class
+ * shows up.  This makes a count query O(classes) instead of
+ * O(objects).
+ */
+final class ClassCounter {
+
+  /** Map of concrete Class to AtomicInteger */
+  private final Map counts = new ConcurrentHashMap();
+
+  /** Map of query Class to Rollup */
+  private final Map rollups = new ConcurrentHashMap();
+
+  /** bumped whenever a new concrete class is added */
+  private final AtomicInteger version = new AtomicInteger();
+
+  /** the cached list of concrete classes for a query class */
+  private static final class Rollup {
+    final int version;
+    final AtomicInteger[] counters;
+    Rollup(int version, AtomicInteger[] counters) {
+      this.version = version;
+      this.counters = counters;
+    }
+  }
+
+  void add(Object o) {
+    Class cl = o.getClass();
+    AtomicInteger ai = (AtomicInteger) counts.get(cl);
+    if (ai == null) {
+      // only the distributor thread adds, so there's no race here
+      ai = new AtomicInteger();
+      counts.put(cl, ai);
+      version.incrementAndGet();
+    }
+    ai.incrementAndGet();
+  }
+
+  void remove(Object o) {
+    AtomicInteger ai = (AtomicInteger) counts.get(o.getClass());
+    if (ai != null) {
+      ai.decrementAndGet();
+    }
+  }
+
+  void clear() {
+    for (Iterator iter = counts.values().iterator(); iter.hasNext(); ) {
+      ((AtomicInteger) iter.next()).set(0);
+    }
+  }
+
+  /**
+   * @return the number of objects that are instances of the given
+   *   class or interface
+   */
+  int count(Class cl) {
+    int v = version.get();
+    Rollup r = (Rollup) rollups.get(cl);
+    if (r == null || r.version != v) {
+      List l = new ArrayList();
+      for (Iterator iter = counts.entrySet().iterator(); iter.hasNext(); ) {
+        Map.Entry me = (Map.Entry) iter.next();
+        Class c = (Class) me.getKey();
+        if (cl.isAssignableFrom(c)) {
+          l.add(me.getValue());
+        }
+      }
+      r = new Rollup(v, (AtomicInteger[]) l.toArray(new AtomicInteger[l.size()]));
+      rollups.put(cl, r);
+    }
+    int ret = 0;
+    AtomicInteger[] counters = r.counters;
+    for (int i = 0; i < counters.length; i++) {
+      ret += counters[i].get();
+    }
+    return ret;
+  }
+
+  /**
+   * @return a snapshot Map of concrete Class to Integer count,
+   *   excluding classes with a zero count
+   */
+  Map getSnapshot() {
+    Map ret = new HashMap(counts.size());
+    for (Iterator iter = counts.entrySet().iterator(); iter.hasNext(); ) {
+      Map.Entry me = (Map.Entry) iter.next();
+      int n = ((AtomicInteger) me.getValue()).get();
+      if (n > 0) {
+        ret.put(me.getKey(), Integer.valueOf(n));
+      }
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+
+package org.cougaar.core.blackboard;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.cougaar.util.UnaryPredicate;
+
+/**
+ * An immutable set of classes used to route envelope tuples to the
+ * subscriptions and subscribers that can possibly match them.
+ * <p>
+ * A filter is either "opaque", in which case it accepts every
+ * object, or holds a list of classes, in which case it only accepts
+ * instances of those classes.  The answer for each concrete class
+ * is cached, so an "accepts" test is typically a single hash
+ * lookup.
+ *
+ * @see ClassFilteredPredicate
+ */
+final class ClassFilter {
+
+  /** A filter that accepts everything, used for opaque predicates */
+  static final ClassFilter OPAQUE = new ClassFilter(null);
+
+  /** the classes to match, or null if opaque */
+  private final Class[] classes;
+
+  /** cache of concrete class to Boolean */
+  private final Map cache;
+
+  private ClassFilter(Class[] classes) {
+    this.classes = classes;
+    this.cache = (classes == null ? null : new ConcurrentHashMap());
+  }
+
+  /**
+   * Create a filter for the given predicate, which is opaque unless
+   * the predicate is a {@link ClassFilteredPredicate}.
+   */
+  static ClassFilter forPredicate(UnaryPredicate p) {
+    if (!(p instanceof ClassFilteredPredicate)) {
+      return OPAQUE;
+    }
+    Class[] cls = ((ClassFilteredPredicate) p).getFilterClasses();
+    if (cls == null) {
+      return OPAQUE;
+    }
+    return new ClassFilter(cls.clone());
+  }
+
+  /**
+   * Create the union of the given filters, which is opaque if any
+   * filter is opaque or the list is empty.
+   */
+  static ClassFilter union(List filters) {
+    int n = filters.size();
+    if (n == 0) {
+      return OPAQUE;
+    }
+    if (n == 1) {
+      return (ClassFilter) filters.get(0);
+    }
+    List l = new ArrayList();
+    for (int i = 0; i < n; i++) {
+      ClassFilter f = (ClassFilter) filters.get(i);
+      if (f.isOpaque()) {
+        return OPAQUE;
+      }
+      for (int j = 0; j < f.classes.length; j++) {
+        Class c = f.classes[j];
+        if (!l.contains(c)) {
+          l.add(c);
+        }
+      }
+    }
+    return new ClassFilter((Class[]) l.toArray(new Class[l.size()]));
+  }
+
+  boolean isOpaque() {
+    return classes == null;
+  }
+
+  /** @return true if an instance of the class can pass this filter */
+  boolean accepts(Class c) {
+    if (classes == null) {
+      return true;
+    }
+    Boolean b = (Boolean) cache.get(c);
+    if (b == null) {
+      b = Boolean.FALSE;
+      for (int i = 0; i < classes.length; i++) {
+        if (classes[i].isAssignableFrom(c)) {
+          b = Boolean.TRUE;
+          break;
+        }
+      }
+      cache.put(c, b);
+    }
+    return b.booleanValue();
+  }
+
+  /**
+   * @param c a Collection of concrete classes, or null if unknown
+   * @return true if an instance of any of the classes can pass
+   *   this filter
+   */
+  boolean acceptsAny(Collection c) {
+    if (classes == null || c == null) {
+      return true;
+    }
+    for (Iterator iter = c.iterator(); iter.hasNext(); ) {
+      if (accepts((Class) iter.next())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    if (classes == null) {
+      return "(opaque)";
+    }
+    StringBuffer buf = new StringBuffer("(");
+    for (int i = 0; i < classes.length; i++) {
+      if (i > 0) buf.append(", ");
+      buf.append(classes[i].getName());
+    }
+    buf.append(")");
+    return buf.toString();
+  }
+}
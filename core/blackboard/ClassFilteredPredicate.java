@@ -0,0 +1,57 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+
+package org.cougaar.core.blackboard;
+
+import org.cougaar.util.UnaryPredicate;
+
+/**
+ * An optional {@link UnaryPredicate} extension that declares the
+ * classes and interfaces an object must implement in order to be
+ * accepted by the predicate.
+ * <p>
+ * The {@link Distributor} uses these declarations to route
+ * envelope tuples only to the subscribers and subscriptions that
+ * could possibly match them, instead of running every predicate
+ * against every tuple.  Predicates that don't implement this
+ * interface are treated as "opaque" and see every tuple.
+ * <p>
+ * An implementation must never accept an object that is not an
+ * instance of at least one of the declared classes, otherwise the
+ * subscription will silently miss objects.
+ *
+ * @see org.cougaar.planning.ldm.predicate.TaskPredicate
+ */
+public interface ClassFilteredPredicate extends UnaryPredicate {
+
+  /**
+   * @return the classes and interfaces that any accepted object
+   *   must be an instance of, or null if the predicate can't tell
+   *   and should be treated as opaque.
+   */
+  Class[] getFilterClasses();
+}
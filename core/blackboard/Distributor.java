@@ -33,6 +33,7 @@ import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -68,6 +69,12 @@ import org.cougaar.util.log.Logging;
  * @property org.cougaar.core.agent.singleTransactionModel
  *   Enables a blackboard/agent run model where only one
  *   transaction may be open at a given time.
+ * @property org.cougaar.core.blackboard.classRouting
+ *   If <em>true</em> (the default), outboxes are only distributed to
+ *   subscribers with a subscription that can match at least one of
+ *   the outbox tuples, based upon {@link ClassFilteredPredicate}
+ *   declarations.  Subscribers with opaque predicates see all
+ *   outboxes.
  */
 final class Distributor {
 
@@ -151,6 +158,9 @@ final class Distributor {
   private static final boolean SINGLE_TRANSACTION = 
     SystemProperties.getBoolean(SINGLE_TRANSACTION_PROP, DEFAULT_SINGLE_TRANSACTION);
 
+  private static final boolean CLASS_ROUTING =
+    SystemProperties.getBoolean("org.cougaar.core.blackboard.classRouting", true);
+
   //
   // these are set in the constructor and are final:
   //
@@ -280,6 +290,7 @@ final class Distributor {
   // temporary lists, for use within "distribute()":
   private final List outboxes = new ArrayList();
   private final List messagesToSend = new ArrayList();
+  private final Set outboxClasses = new HashSet();
 
   // temporary list, for use within "receiveMessages()":
   private final List directiveMessages = new ArrayList();
@@ -410,14 +421,23 @@ final class Distributor {
    * Pass thru to blackboard to safely return blackboard object
    * counts.
    * Used by BlackboardMetricsService
+   * <p>
+   * The blackboard maintains live class counts, so this doesn't
+   * need the distributor lock.
    * @param cl The class type
    */
   public int getBlackboardCount(Class cl) {
-    assert !Thread.holdsLock(distributorLock);
-    assert !Thread.holdsLock(transactionLock);
-    synchronized (distributorLock) {
-      return blackboard.countBlackboard(cl);
-    }
+    return blackboard.countBlackboard(cl);
+  }
+
+  /**
+   * Pass thru to blackboard to return a snapshot of the blackboard
+   * object counts by concrete class.
+   * Used by BlackboardMetricsService
+   * @return a Map of Class to Integer
+   */
+  public Map getBlackboardHistogram() {
+    return blackboard.getBlackboardHistogram();
   }
 
   /**
@@ -436,6 +456,42 @@ final class Distributor {
     }
   }
 
+  /**
+   * Pass thru to blackboard to return the number of blackboard
+   * queries.
+   * Used by BlackboardMetricsService
+   */
+  public long getBlackboardQueryCount() {
+    return blackboard.getQueryCount();
+  }
+
+  /**
+   * Pass thru to blackboard to return the number of blackboard
+   * queries that were answered from an index.
+   * Used by BlackboardMetricsService
+   */
+  public long getBlackboardScansAvoided() {
+    return blackboard.getScansAvoided();
+  }
+
+  /**
+   * Pass thru to blackboard to return the number of ABA
+   * translations answered from the ABA cache.
+   * Used by BlackboardMetricsService
+   */
+  public long getABACacheHits() {
+    return blackboard.getABACacheHits();
+  }
+
+  /**
+   * Pass thru to blackboard to return the number of ABA
+   * translations that required a community search.
+   * Used by BlackboardMetricsService
+   */
+  public long getABACacheMisses() {
+    return blackboard.getABACacheMisses();
+  }
+
   /**
    * Pass thru to blackboard to safely return the size of the
    * blackboard collection.
@@ -886,11 +942,16 @@ final class Distributor {
                      + client.getBlackboardClientName());
       }
     }
+    Set classes =
+      (CLASS_ROUTING && haveSomethingToDistribute ?
+       getOutboxClasses() :
+       null);
     for (Iterator iter = subscribers.iterator(); iter.hasNext(); ) {
       Subscriber subscriber = (Subscriber) iter.next();
       if (subscriber == blackboard) continue;
       boolean subscriberBusy = false;
-      if (haveSomethingToDistribute) {
+      if (haveSomethingToDistribute &&
+          subscriber.isInterestedIn(classes)) {
         subscriber.receiveEnvelopes(outboxes, clientQuiescenceRequired);
         subscriberBusy = true;
       } else if (subscriber.isBusy()) {
@@ -955,6 +1016,7 @@ final class Distributor {
       }
     }
     outboxes.clear();
+    outboxClasses.clear();
 
     // Update the cumulative quiescence of all the subscriber inboxes
     // based on this distribute: Non-q if a Q-relevant comp published something
@@ -993,6 +1055,37 @@ final class Distributor {
     return result;
   } // end of distribute()
 
+  /**
+   * Collect the concrete classes of all the tuple objects in our
+   * outboxes, for use in routing the outboxes to subscribers.
+   * <p>
+   * Subscriptions that look at the envelope itself rather than its
+   * tuples (e.g. EnvelopeMetricsSubscription) have opaque filters,
+   * so we only need to consider the tuple objects here.
+   */
+  private Set getOutboxClasses() {
+    assert Thread.holdsLock(distributorLock);
+    for (int i = 0, n = outboxes.size(); i < n; i++) {
+      Envelope e = (Envelope) outboxes.get(i);
+      List tuples = e.getRawDeltas();
+      for (int j = 0, m = tuples.size(); j < m; j++) {
+        EnvelopeTuple tuple = (EnvelopeTuple) tuples.get(j);
+        Object o = tuple.getObject();
+        if (tuple.isBulk()) {
+          for (Iterator iter = ((Collection) o).iterator(); iter.hasNext(); ) {
+            Object o2 = iter.next();
+            if (o2 != null) {
+              outboxClasses.add(o2.getClass());
+            }
+          }
+        } else {
+          outboxClasses.add(o.getClass());
+        }
+      }
+    }
+    return outboxClasses;
+  }
+
   private void initializeEpochEnvelopes() {
     assert !Thread.holdsLock(distributorLock);
     assert !Thread.holdsLock(transactionLock);
@@ -1282,16 +1375,24 @@ final class Distributor {
       }
     }
     PersistenceObject result;
-    synchronized (getMessageManager()) {
-      getMessageManager().advanceEpoch();
+    final MessageManager mm = getMessageManager();
+    synchronized (mm) {
+      mm.advanceEpoch();
+      // The epoch's acks and messages are released once its delta
+      // has been committed, which may be after persist returns.
       result = persistence.persist(
           epochEnvelopes,
           Collections.EMPTY_LIST,
           subscriberStates,
           persistedStateNeeded,
           full,
-          lazyPersistence ? null : getMessageManager(),
-          quiescenceMonitor.getState());
+          lazyPersistence ? null : mm,
+          quiescenceMonitor.getState(),
+          new Runnable() {
+            public void run() {
+              mm.epochCommitted();
+            }
+          });
     }
     synchronized (distributorLock) {
       clearEpochEnvelopes();
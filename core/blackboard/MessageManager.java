@@ -80,9 +80,17 @@ public interface MessageManager {
 
   /**
    * Advance epoch.  Bring the current epoch to an end in preparation
-   * for a persistence delta.
+   * for a persistence delta. The acknowledgements and messages of
+   * the epoch are held until {@link #epochCommitted} is called.
    */
   void advanceEpoch();
 
+  /**
+   * Release the acknowledgements and messages held by the oldest
+   * advanced epoch, whose persistence delta has been committed (or
+   * has failed).
+   */
+  void epochCommitted();
+
   boolean needAdvanceEpoch();
 }
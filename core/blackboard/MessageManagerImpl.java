@@ -37,6 +37,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.TreeSet;
 
@@ -50,6 +51,16 @@ import org.cougaar.util.StringUtility;
  * A message acknowledgement manager used by the {@link Distributor}'s
  * non-lazy persistence mode to ensure that unacknowledged messages
  * are persisted.
+ * <p>
+ * Retransmission, acknowledgement and keep-alive deadlines are
+ * registered with the node's shared {@link MessageTimerWheel}.
+ * Acknowledgements for one destination are coalesced until the
+ * ack delay has passed, so a burst of received messages is
+ * acknowledged once.
+ *
+ * @property org.cougaar.core.blackboard.MessageManager.ackDelay
+ *   Milliseconds to wait for more messages to acknowledge before
+ *   sending an acknowledgement, defaults to 100.
  */
 class MessageManagerImpl implements MessageManager, Serializable {
 
@@ -60,6 +71,10 @@ class MessageManagerImpl implements MessageManager, Serializable {
 
   private static final long KEEP_ALIVE_INTERVAL = 55000L;
 
+  private static final long ACK_DELAY =
+    SystemProperties.getLong(
+        "org.cougaar.core.blackboard.MessageManager.ackDelay", 100L);
+
   private boolean USE_MESSAGE_MANAGER = false;
 
   /** The agent's mts */
@@ -77,14 +92,24 @@ class MessageManagerImpl implements MessageManager, Serializable {
   /** Something has happened during this epoch. */
   private transient boolean needAdvanceEpoch = false;
 
-  /** The retransmitter thread */
-  private transient Retransmitter retransmitter;
+  /** The shared timer for retransmits, acks and keep alives */
+  private transient MessageTimerWheel timers;
+
+  /** The pending keep alive timer */
+  private transient MessageTimerWheel.Timeout keepAliveTimeout;
 
-  /** The acknowledgement sender thread */
-  private transient AcknowledgementSender ackSender;
+  /** Set by stop() to keep timers from being rescheduled */
+  private transient boolean stopped = false;
 
-  /** The keep alive sender thread */
-  private transient KeepAliveSender keepAliveSender;
+  /**
+   * The number of advanced epochs whose persistence deltas haven't
+   * been committed yet. Acks and message transmissions are held while
+   * this is non-zero.
+   */
+  private transient int uncommittedEpochs = 0;
+
+  /** The agents whose acks or messages are being held */
+  private transient HashSet heldAgents = new HashSet();
 
   /** Debug logging */
   private transient PrintWriter logWriter = null;
@@ -112,6 +137,18 @@ class MessageManagerImpl implements MessageManager, Serializable {
 
     private transient boolean restarted = false;
 
+    /** The pending retransmission timer, if any */
+    private transient MessageTimerWheel.Timeout retransmitTimeout;
+
+    /** Set while a timer thread is sending the outstanding messages */
+    private transient boolean retransmitting;
+
+    /** Set if a retransmission was requested while retransmitting */
+    private transient boolean retransmitAgain;
+
+    /** The pending acknowledgement timer, if any */
+    private transient MessageTimerWheel.Timeout ackTimeout;
+
     public AgentInfo(MessageAddress cid) {
       agentIdentifier = cid;
     }
@@ -182,7 +219,7 @@ class MessageManagerImpl implements MessageManager, Serializable {
 
     public void setNeedSendAcknowledgment() {
       needSendAcknowledgement = true;
-      ackSender.poke();
+      scheduleAcknowledgement(this);
     }
 
     public boolean getRestarted() {
@@ -228,6 +265,14 @@ class MessageManagerImpl implements MessageManager, Serializable {
           break;                // Nothing left to do
         }
       }
+      if (outstandingMessages.isEmpty()) {
+        if (retransmitTimeout != null) {
+          retransmitTimeout.cancel();
+          retransmitTimeout = null;
+        }
+      } else if (isRestart) {
+        scheduleRetransmit(this, now);
+      }
     }
 
     /**
@@ -410,22 +455,167 @@ class MessageManagerImpl implements MessageManager, Serializable {
     }
 
     if (USE_MESSAGE_MANAGER) {
-      retransmitter = new Retransmitter(agentName);
-      retransmitter.start();
-      ackSender = new AcknowledgementSender(agentName);
-      ackSender.start();
-      keepAliveSender = new KeepAliveSender(agentName);
-      keepAliveSender.start();
+      synchronized (this) {
+        stopped = false;
+        timers = MessageTimerWheel.getInstance();
+        long now = System.currentTimeMillis();
+        scheduleKeepAlive(now + KEEP_ALIVE_INTERVAL);
+        // Resume the retransmission of rehydrated messages
+        for (Iterator agents = agentInfo.values().iterator(); agents.hasNext(); ) {
+          AgentInfo info = (AgentInfo) agents.next();
+          if (info.getFirstOutstandingMessage() != null) {
+            scheduleRetransmit(info, now);
+          }
+        }
+      }
     }
   }
 
   public void stop() {
     if (USE_MESSAGE_MANAGER) {
-      // TODO postponed until needed
-      System.err.println(
-          "\nFIXME MessageManager \"stop()\" for (USE_MESSAGE_MANAGER == true) "+
-          "should halt internal threads");
+      synchronized (this) {
+        stopped = true;
+        if (keepAliveTimeout != null) {
+          keepAliveTimeout.cancel();
+          keepAliveTimeout = null;
+        }
+        for (Iterator agents = agentInfo.values().iterator(); agents.hasNext(); ) {
+          AgentInfo info = (AgentInfo) agents.next();
+          if (info.retransmitTimeout != null) {
+            info.retransmitTimeout.cancel();
+            info.retransmitTimeout = null;
+          }
+          if (info.ackTimeout != null) {
+            info.ackTimeout.cancel();
+            info.ackTimeout = null;
+          }
+        }
+      }
+    }
+  }
+
+  private void scheduleKeepAlive(long when) {
+    keepAliveTimeout = timers.schedule(new Runnable() {
+      public void run() {
+        synchronized (MessageManagerImpl.this) {
+          if (stopped) return;
+          sendKeepAlive();
+          scheduleKeepAlive(System.currentTimeMillis() + KEEP_ALIVE_INTERVAL);
+        }
+      }
+    }, when);
+  }
+
+  /**
+   * Make sure the given agent's outstanding messages are checked for
+   * retransmission no later than the given time. Must be called
+   * while this MessageManager is synchronized.
+   */
+  private void scheduleRetransmit(final AgentInfo info, long when) {
+    if (timers == null || stopped) return;
+    if (uncommittedEpochs > 0) {
+      heldAgents.add(info);
+      return;
+    }
+    MessageTimerWheel.Timeout t = info.retransmitTimeout;
+    if (t != null) {
+      if (t.isPending() && t.getDeadline() <= when) return;
+      t.cancel();
+    }
+    info.retransmitTimeout = timers.schedule(new Runnable() {
+      public void run() {
+        retransmit(info);
+      }
+    }, when);
+  }
+
+  /**
+   * Retransmit the messages to one agent that have not been
+   * acknowledged. If the first outstanding message is due, all the
+   * outstanding messages are sent, and the next check is scheduled
+   * for the earliest retransmission time among them.
+   */
+  private void retransmit(AgentInfo info) {
+    long now = System.currentTimeMillis();
+    TimestampedMessage[] messages;
+    synchronized (this) {
+      info.retransmitTimeout = null;
+      if (stopped) return;
+      if (uncommittedEpochs > 0) {
+        // epochCommitted will reschedule
+        heldAgents.add(info);
+        return;
+      }
+      if (info.retransmitting) {
+        // the running retransmission will check again when it is done
+        info.retransmitAgain = true;
+        return;
+      }
+      TimestampedMessage first = info.getFirstOutstandingMessage();
+      if (first == null) return;
+      if (first.timestamp > now) {
+        scheduleRetransmit(info, first.timestamp);
+        return;
+      }
+      messages = info.getOutstandingMessages();
+      info.setTransmissionTime(now);
+      info.retransmitting = true;
+      info.retransmitAgain = false;
+    }
+    long earliestTime = now + retransmitSchedule[0];
+    try {
+      for (int i = 0; i < messages.length; i++) {
+        TimestampedMessage tsm = messages[i];
+        tsm.send(now);
+        if (tsm.timestamp < earliestTime) {
+          earliestTime = tsm.timestamp;
+        }
+        if (debug) printMessage(tsm.nTries == 1 ? "Send" : ("Rxm" + tsm.nTries), tsm);
+      }
+    } finally {
+      synchronized (this) {
+        info.retransmitting = false;
+        if (info.getFirstOutstandingMessage() != null) {
+          scheduleRetransmit(
+              info, info.retransmitAgain ? now : earliestTime);
+        }
+      }
+    }
+  }
+
+  /**
+   * Schedule an acknowledgement to the given agent unless one is
+   * already pending, in which case the pending one will carry the
+   * latest acknowledged sequence number. Must be called while this
+   * MessageManager is synchronized.
+   */
+  private void scheduleAcknowledgement(final AgentInfo info) {
+    if (timers == null || stopped || info.ackTimeout != null) return;
+    if (uncommittedEpochs > 0) {
+      heldAgents.add(info);
+      return;
+    }
+    info.ackTimeout = timers.schedule(new Runnable() {
+      public void run() {
+        sendAcknowledgement(info);
+      }
+    }, System.currentTimeMillis() + ACK_DELAY);
+  }
+
+  private void sendAcknowledgement(AgentInfo info) {
+    AckDirectiveMessage ack;
+    synchronized (this) {
+      info.ackTimeout = null;
+      if (stopped || !info.needSendAcknowledgement()) return;
+      if (uncommittedEpochs > 0) {
+        // epochCommitted will reschedule
+        heldAgents.add(info);
+        return;
+      }
+      ack = info.getAcknowledgement();
     }
+    if (debug) printMessage("SAck", ack);
+    msgSwitch.sendMessage(ack);
   }
 
   private synchronized void sendKeepAlive() {
@@ -721,14 +911,16 @@ class MessageManagerImpl implements MessageManager, Serializable {
    * Wrap up the current epoch and get into the correct state to be
    * persisted. Every message that has been queued for transmission is
    * sent. Acknowledgement numbers are advanced so we begin
-   * acknowledging messages we have received and processed. This
-   * method must be called while this MessageManager is
-   * synchronized. We purposely omit the "synchronized" here because
-   * proper operation is precluded unless the synchronization is
-   * performed externally.
+   * acknowledging messages we have received and processed. Neither
+   * the messages nor the acks actually go out until {@link
+   * #epochCommitted} is called. This method must be called while this
+   * MessageManager is synchronized. We purposely omit the
+   * "synchronized" here because proper operation is precluded unless
+   * the synchronization is performed externally.
    */
   public void advanceEpoch() {
     if (!USE_MESSAGE_MANAGER) return;
+    uncommittedEpochs++;
     // Advance the information about every other agent
     for (Iterator agents = agentInfo.values().iterator(); agents.hasNext(); ) {
       AgentInfo info = (AgentInfo) agents.next();
@@ -737,8 +929,9 @@ class MessageManagerImpl implements MessageManager, Serializable {
     needAdvanceEpoch = false;
     for (Iterator iter = stuffToSend.iterator(); iter.hasNext(); ) {
       TimestampedMessage tsm = (TimestampedMessage) iter.next();
-      getAgentInfo(tsm.getDestination()).addOutstandingMessage(tsm);
-      retransmitter.poke();
+      AgentInfo info = getAgentInfo(tsm.getDestination());
+      info.addOutstandingMessage(tsm);
+      scheduleRetransmit(info, tsm.timestamp);
     }
     stuffToSend.clear();
     if (logWriter != null) {
@@ -746,136 +939,27 @@ class MessageManagerImpl implements MessageManager, Serializable {
     }
   }
 
-  private class KeepAliveSender extends Thread {
-    public KeepAliveSender(String agentName) {
-      super("Keep Alive Sender/" + agentName);
-    }
-    @Override
-   public void run() {
-      while (true) {
-        sendKeepAlive();
-        try {
-          sleep(KEEP_ALIVE_INTERVAL);
-        }
-        catch (InterruptedException ie) {
-        }
+  /**
+   * The persistence delta of the oldest uncommitted epoch has been
+   * committed, or has failed. Once every advanced epoch is accounted
+   * for, the held acks and messages are released.
+   */
+  public synchronized void epochCommitted() {
+    if (!USE_MESSAGE_MANAGER || uncommittedEpochs == 0) return;
+    if (--uncommittedEpochs > 0) return;
+    for (Iterator agents = heldAgents.iterator(); agents.hasNext(); ) {
+      AgentInfo info = (AgentInfo) agents.next();
+      if (info.needSendAcknowledgement()) {
+        scheduleAcknowledgement(info);
       }
-    }
-  }
-
-  private class AcknowledgementSender extends Thread {
-    private boolean poked = false;
-    ArrayList acksToSend = new ArrayList();
-
-    public AcknowledgementSender(String agentName) {
-      super("Ack Sender/" + agentName);
-    }
-
-    public synchronized void poke() {
-      poked = true;
-      AcknowledgementSender.this.notify();
-    }
-
-    @Override
-   public void run() {
-      while (true) {
-        synchronized (AcknowledgementSender.this) {
-          while (!poked) {
-            try {
-              AcknowledgementSender.this.wait();
-            }
-            catch (InterruptedException ie) {
-            }
-          }
-          poked = false;
-        }
-        synchronized (MessageManagerImpl.this) {
-          for (Iterator agents = agentInfo.values().iterator(); agents.hasNext(); ) {
-            AgentInfo info = (AgentInfo) agents.next();
-            if (info.needSendAcknowledgement()) {
-              acksToSend.add(info.getAcknowledgement());
-            }
-          }
-        }
-        for (Iterator iter = acksToSend.iterator(); iter.hasNext(); ) {
-          AckDirectiveMessage ack = (AckDirectiveMessage) iter.next();
-          if (debug) printMessage("SAck", ack);
-          msgSwitch.sendMessage(ack);
-        }
-        acksToSend.clear();
+      TimestampedMessage first = info.getFirstOutstandingMessage();
+      if (first != null) {
+        scheduleRetransmit(info, first.timestamp);
       }
     }
-  }
-
-  private class Retransmitter extends Thread {
-    private boolean poked = false;
-    private ArrayList messagesToRetransmit = new ArrayList();
-
-    public Retransmitter(String agentName) {
-      super(agentName + "/Message Manager");
-    }
-
-    public synchronized void poke() {
-      poked = true;
-      Retransmitter.this.notify();
-    }
-
-    /**
-     * Retransmit messages that have not been acknowledged. Iterate
-     * through all the agents for which we have AgentInfo and
-     * interate through all the outstandmessage that have been sent to
-     * that agent. Check the time to retransmit of the message and if
-     * the current time has passed that time, then retransmit the
-     * message. Keep the earliest time of any message that is not ready
-     * to be retransmitted and sleep long enough so that there could be
-     * at least one message to retransmit when we awaken.
-     */
-    @Override
-   public void run() {
-      while (true) {
-        try {
-          long now = System.currentTimeMillis();
-          long earliestTime = now + retransmitSchedule[0];
-          synchronized (MessageManagerImpl.this) {
-            for (Iterator agents = agentInfo.values().iterator();
-                 agents.hasNext(); )
-              {
-                AgentInfo info = (AgentInfo) agents.next();
-                TimestampedMessage tsm = info.getFirstOutstandingMessage();
-                if (tsm == null) continue;
-                if (tsm.timestamp <= now) {
-                  TimestampedMessage[] messages = info.getOutstandingMessages();
-                  info.setTransmissionTime(now);
-                  messagesToRetransmit.addAll(java.util.Arrays.asList(messages));
-                } else if (tsm.timestamp < earliestTime) {
-                  earliestTime = tsm.timestamp;
-                }
-              }
-          }
-          if (!messagesToRetransmit.isEmpty()) {
-            for (Iterator iter = messagesToRetransmit.iterator(); iter.hasNext(); ) {
-              TimestampedMessage tsm = (TimestampedMessage) iter.next();
-              tsm.send(now);
-              if (tsm.timestamp < earliestTime) {
-                earliestTime = tsm.timestamp;
-              }
-              if (debug) printMessage(tsm.nTries == 1 ? "Send" : ("Rxm" + tsm.nTries), tsm);
-            }
-            messagesToRetransmit.clear();
-          }
-          synchronized (Retransmitter.this) {
-            if (!poked) {
-              long sleepTime = 5000L + earliestTime - now;
-              if (sleepTime > 30000L) sleepTime = 30000L;
-              Retransmitter.this.wait(sleepTime);
-            }
-            poked = false;
-          }
-        }
-        catch (Exception e) {
-          e.printStackTrace();
-        }
-      }
+    heldAgents.clear();
+    if (logWriter != null) {
+      printLog("Committed epoch");
     }
   }
 
@@ -894,6 +978,7 @@ class MessageManagerImpl implements MessageManager, Serializable {
   {
     is.defaultReadObject();
     stuffToSend = new ArrayList();
+    heldAgents = new HashSet();
     needAdvanceEpoch = false;
 //      for (Iterator agents = agentInfo.values().iterator(); agents.hasNext(); ) {
 //        AgentInfo info = (AgentInfo) agents.next();
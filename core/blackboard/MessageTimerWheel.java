@@ -0,0 +1,379 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+package org.cougaar.core.blackboard;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.cougaar.bootstrap.SystemProperties;
+import org.cougaar.util.log.Logger;
+import org.cougaar.util.log.Logging;
+
+/**
+ * A JVM-wide hierarchical timer wheel used by the {@link
+ * MessageManagerImpl} for message retransmission, acknowledgement and
+ * keep-alive deadlines, so a node runs one timer thread instead of
+ * three per agent.
+ * <p>
+ * Future deadlines are rounded up to the next tick. The inner wheel holds
+ * the deadlines within 256 ticks, and the outer wheel holds later ones
+ * in 256-tick slots that are moved into the inner wheel as it turns.
+ * Scheduling and cancelling are constant time, and a timer fires no
+ * earlier than its deadline and no later than one tick after it.
+ * A deadline at or before the time it is scheduled skips the wheels
+ * and fires at once.
+ * <p>
+ * Fired tasks are handed to a small worker pool, so a task that
+ * waits for a busy agent's lock does not delay the other timers.
+ *
+ * @property org.cougaar.core.blackboard.timerWheel.tick
+ *   Timer wheel resolution in milliseconds, defaults to 100.
+ * @property org.cougaar.core.blackboard.timerWheel.threads
+ *   Number of worker threads that run fired tasks, shared by all
+ *   agents in the node, defaults to 2.
+ */
+final class MessageTimerWheel {
+
+  private static final long TICK =
+    Math.max(1L, SystemProperties.getLong(
+          "org.cougaar.core.blackboard.timerWheel.tick", 100L));
+
+  private static final int THREADS =
+    Math.max(1, SystemProperties.getInt(
+          "org.cougaar.core.blackboard.timerWheel.threads", 2));
+
+  private static final int BITS = 8;
+  private static final int SLOTS = 1 << BITS;
+  private static final int MASK = SLOTS - 1;
+
+  private static MessageTimerWheel instance;
+
+  private final Logger logger = Logging.getLogger(MessageTimerWheel.class);
+
+  private final long tick;
+
+  private final Executor executor;
+
+  /** Deadlines within SLOTS ticks, one tick per slot */
+  private final Timeout[] inner = new Timeout[SLOTS];
+
+  /** Later deadlines, SLOTS ticks per slot */
+  private final Timeout[] outer = new Timeout[SLOTS];
+
+  /** Timeouts that are due but not yet run */
+  private ArrayList ready = new ArrayList();
+
+  /** The last tick that has been expired */
+  private long currentTick;
+
+  /** The number of pending timeouts */
+  private int size;
+
+  /** The number of timeouts in the wheels */
+  private int linked;
+
+  /** The tick the timer thread will wake at, if it is waiting */
+  private long wakeTick = Long.MIN_VALUE;
+
+  private Thread thread;
+
+  MessageTimerWheel(long tick, Executor executor) {
+    this.tick = tick;
+    this.executor = executor;
+    currentTick = System.currentTimeMillis() / tick;
+  }
+
+  static synchronized MessageTimerWheel getInstance() {
+    if (instance == null) {
+      instance = new MessageTimerWheel(TICK, createPool(THREADS));
+      instance.start("Message Timer Wheel");
+    }
+    return instance;
+  }
+
+  static Executor createPool(int n) {
+    ThreadFactory tf = new ThreadFactory() {
+      private int counter = 0;
+      public synchronized Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "Message Timer "+(++counter));
+        t.setDaemon(true);
+        return t;
+      }
+    };
+    ThreadPoolExecutor tpe = new ThreadPoolExecutor(
+        n, n, 60, TimeUnit.SECONDS, new LinkedBlockingQueue(), tf);
+    tpe.allowCoreThreadTimeOut(true);
+    return tpe;
+  }
+
+  synchronized void start(String name) {
+    if (thread != null) return;
+    thread = new Thread(new Runnable() {
+      public void run() {
+        runTimer();
+      }
+    }, name);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /** @return the wheel resolution in milliseconds */
+  long getTick() {
+    return tick;
+  }
+
+  /** @return the number of pending timeouts */
+  synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Schedule a task to run in the timer thread.
+   * @param task the task to run
+   * @param deadline the earliest time to run the task, in
+   *   milliseconds since the epoch
+   * @return a Timeout that can be used to cancel the task
+   */
+  Timeout schedule(Runnable task, long deadline) {
+    Timeout t = new Timeout(this, task, deadline);
+    boolean due = deadline <= System.currentTimeMillis();
+    synchronized (this) {
+      if (due) {
+        // don't round a due deadline up to the next tick
+        t.slot = null;
+        ready.add(t);
+      } else {
+        add(t);
+      }
+      size++;
+      if (due || t.deadlineTick < wakeTick) {
+        notify();
+      }
+    }
+    return t;
+  }
+
+  /** A scheduled task, returned by {@link #schedule} */
+  static final class Timeout {
+    private final MessageTimerWheel wheel;
+    private final Runnable task;
+    private final long deadline;
+    private final long deadlineTick;
+    private Timeout[] slot;
+    private int index;
+    private Timeout prev;
+    private Timeout next;
+    private boolean done;
+
+    private Timeout(MessageTimerWheel wheel, Runnable task, long deadline) {
+      this.wheel = wheel;
+      this.task = task;
+      this.deadline = deadline;
+      this.deadlineTick = (deadline + wheel.tick - 1) / wheel.tick;
+    }
+
+    long getDeadline() {
+      return deadline;
+    }
+
+    /** @return true if the task has neither run nor been cancelled */
+    boolean isPending() {
+      synchronized (wheel) {
+        return !done;
+      }
+    }
+
+    /**
+     * Cancel the task.
+     * @return true if the task had neither run nor been cancelled
+     */
+    boolean cancel() {
+      return wheel.cancel(this);
+    }
+
+    @Override
+    public String toString() {
+      return "(timeout "+deadline+" "+task+")";
+    }
+  }
+
+  private synchronized boolean cancel(Timeout t) {
+    if (t.done) return false;
+    t.done = true;
+    size--;
+    // a ready timeout is skipped when the ready list is run
+    if (t.slot != null) unlink(t);
+    return true;
+  }
+
+  /** Put a timeout into the right wheel slot or the ready list */
+  private void add(Timeout t) {
+    long dt = t.deadlineTick;
+    long delta = dt - currentTick;
+    if (delta <= 0) {
+      t.slot = null;
+      ready.add(t);
+    } else if (delta < SLOTS) {
+      link(t, inner, (int) (dt & MASK));
+    } else {
+      long outerDelta = (dt >> BITS) - (currentTick >> BITS);
+      if (outerDelta >= SLOTS) {
+        // beyond the outer wheel, park it in the last slot to be
+        // reached; it is re-added when that slot cascades
+        dt = currentTick + ((long) (SLOTS - 1) << BITS);
+      }
+      link(t, outer, (int) ((dt >> BITS) & MASK));
+    }
+  }
+
+  private void link(Timeout t, Timeout[] wheel, int index) {
+    t.slot = wheel;
+    t.index = index;
+    t.prev = null;
+    t.next = wheel[index];
+    if (t.next != null) t.next.prev = t;
+    wheel[index] = t;
+    linked++;
+  }
+
+  private void unlink(Timeout t) {
+    if (t.prev == null) {
+      t.slot[t.index] = t.next;
+    } else {
+      t.prev.next = t.next;
+    }
+    if (t.next != null) t.next.prev = t.prev;
+    t.slot = null;
+    t.prev = null;
+    t.next = null;
+    linked--;
+  }
+
+  /** Advance the wheel to nowTick, moving due timeouts to the ready list */
+  private void advance(long nowTick) {
+    if (linked == 0) {
+      // nothing in the wheels, skip idle ticks
+      if (nowTick > currentTick) currentTick = nowTick;
+      return;
+    }
+    while (currentTick < nowTick) {
+      currentTick++;
+      int index = (int) (currentTick & MASK);
+      if (index == 0) {
+        // cascade the next outer slot into the inner wheel
+        int outerIndex = (int) ((currentTick >> BITS) & MASK);
+        Timeout t = outer[outerIndex];
+        outer[outerIndex] = null;
+        while (t != null) {
+          Timeout next = t.next;
+          t.slot = null;
+          t.prev = null;
+          t.next = null;
+          linked--;
+          add(t);
+          t = next;
+        }
+      }
+      Timeout t = inner[index];
+      inner[index] = null;
+      while (t != null) {
+        Timeout next = t.next;
+        t.slot = null;
+        t.prev = null;
+        t.next = null;
+        linked--;
+        ready.add(t);
+        t = next;
+      }
+    }
+  }
+
+  /**
+   * @return the time to wait before the next inner slot with a timeout
+   * or the next cascade, or 0 if there is nothing to wait for
+   */
+  private long getWaitTime(long now) {
+    if (linked == 0) {
+      wakeTick = Long.MAX_VALUE;
+      return 0;
+    }
+    long nextTick = currentTick + 1;
+    long limit = ((currentTick >> BITS) + 1) << BITS;
+    while (nextTick < limit && inner[(int) (nextTick & MASK)] == null) {
+      nextTick++;
+    }
+    wakeTick = nextTick;
+    return Math.max(1L, nextTick * tick - now);
+  }
+
+  private void runTimer() {
+    while (true) {
+      List due;
+      synchronized (this) {
+        while (true) {
+          long now = System.currentTimeMillis();
+          advance(now / tick);
+          if (!ready.isEmpty()) break;
+          try {
+            wait(getWaitTime(now));
+          } catch (InterruptedException ie) {
+          }
+          wakeTick = Long.MIN_VALUE;
+        }
+        due = ready;
+        ready = new ArrayList();
+      }
+      for (int i = 0, n = due.size(); i < n; i++) {
+        final Timeout t = (Timeout) due.get(i);
+        synchronized (this) {
+          if (t.done) continue;
+          t.done = true;
+          size--;
+        }
+        Runnable r = new Runnable() {
+          public void run() {
+            try {
+              t.task.run();
+            } catch (Throwable e) {
+              logger.error("Timer task failed: "+t, e);
+            }
+          }
+        };
+        try {
+          executor.execute(r);
+        } catch (RuntimeException e) {
+          logger.error("Unable to run timer task: "+t, e);
+        }
+      }
+    }
+  }
+}
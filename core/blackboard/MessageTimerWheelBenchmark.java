@@ -0,0 +1,211 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+package org.cougaar.core.blackboard;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Point benchmark that compares the shared {@link MessageTimerWheel}
+ * against the original model of a sleeping thread per agent timer.
+ * Each agent has a number of deadlines spread over a time window;
+ * the benchmark reports the number of timer threads, the CPU used by
+ * all threads, and how late the deadlines fired.
+ * <p>
+ * Usage is:<pre>
+ *   java org.cougaar.core.blackboard.MessageTimerWheelBenchmark [agents [timers [window [tick]]]]
+ * </pre>
+ * where <i>agents</i> defaults to 100, <i>timers</i> per agent to
+ * 20, the <i>window</i> to 3000 milliseconds and the wheel
+ * <i>tick</i> to 10 milliseconds.
+ */
+public class MessageTimerWheelBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int agents = (args.length > 0 ? Integer.parseInt(args[0]) : 100);
+    int timers = (args.length > 1 ? Integer.parseInt(args[1]) : 20);
+    long window = (args.length > 2 ? Long.parseLong(args[2]) : 3000L);
+    long tick = (args.length > 3 ? Long.parseLong(args[3]) : 10L);
+    System.out.println(
+        "impl\tthreads\tcpu-ms\tmean-late-ms\tmax-late-ms\tmin-late-ms");
+    for (int r = 0; r < 2; r++) {
+      // first round is JIT warm-up
+      boolean print = (r > 0);
+      Result threads = runThreads(agents, timers, window);
+      Result wheel = runWheel(agents, timers, window, tick);
+      if (print) {
+        print("threads", threads);
+        print("wheel", wheel);
+      }
+    }
+  }
+
+  private static class Result {
+    int threads;
+    long cpu;
+    long[] late;
+  }
+
+  private static void print(String impl, Result r) {
+    long sum = 0, max = Long.MIN_VALUE, min = Long.MAX_VALUE;
+    for (int i = 0; i < r.late.length; i++) {
+      sum += r.late[i];
+      max = Math.max(max, r.late[i]);
+      min = Math.min(min, r.late[i]);
+    }
+    System.out.println(
+        impl+"\t"+r.threads+"\t"+(r.cpu / 1000000)+"\t"+
+        ((double) sum / r.late.length)+"\t"+max+"\t"+min);
+  }
+
+  private static long[][] deadlines(int agents, int timers, long window) {
+    Random rand = new Random(agents);
+    long start = System.currentTimeMillis() + 100;
+    long[][] d = new long[agents][timers];
+    for (int a = 0; a < agents; a++) {
+      for (int i = 0; i < timers; i++) {
+        d[a][i] = start + (long) (rand.nextDouble() * window);
+      }
+      Arrays.sort(d[a]);
+    }
+    return d;
+  }
+
+  private static long cpuTime(ThreadMXBean mx) {
+    long[] ids = mx.getAllThreadIds();
+    long total = 0;
+    for (int i = 0; i < ids.length; i++) {
+      long t = mx.getThreadCpuTime(ids[i]);
+      if (t > 0) total += t;
+    }
+    return total;
+  }
+
+  private static Result runThreads(int agents, int timers, long window)
+    throws InterruptedException
+  {
+    final long[][] d = deadlines(agents, timers, window);
+    final long[] late = new long[agents * timers];
+    final Object done = new Object();
+    final int[] finished = {0};
+    ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+    long cpu0 = cpuTime(mx);
+    Thread[] threads = new Thread[agents];
+    for (int a = 0; a < agents; a++) {
+      final int agent = a;
+      threads[a] = new Thread("Timer/" + a) {
+        @Override
+        public void run() {
+          Object lock = new Object();
+          for (int i = 0; i < d[agent].length; i++) {
+            synchronized (lock) {
+              long now;
+              while ((now = System.currentTimeMillis()) < d[agent][i]) {
+                try {
+                  lock.wait(d[agent][i] - now);
+                } catch (InterruptedException ie) {
+                }
+              }
+              late[agent * d[agent].length + i] = now - d[agent][i];
+            }
+          }
+          // stay alive until the CPU time is sampled
+          synchronized (done) {
+            finished[0]++;
+            done.notifyAll();
+            while (finished[0] >= 0) {
+              try {
+                done.wait();
+              } catch (InterruptedException ie) {
+              }
+            }
+          }
+        }
+      };
+      threads[a].setDaemon(true);
+      threads[a].start();
+    }
+    Result r = new Result();
+    synchronized (done) {
+      while (finished[0] < agents) {
+        done.wait();
+      }
+      r.cpu = cpuTime(mx) - cpu0;
+      finished[0] = -1;
+      done.notifyAll();
+    }
+    for (int a = 0; a < agents; a++) {
+      threads[a].join();
+    }
+    r.threads = agents;
+    r.late = late;
+    return r;
+  }
+
+  private static Result runWheel(
+      int agents, int timers, long window, long tick)
+    throws InterruptedException
+  {
+    final long[][] d = deadlines(agents, timers, window);
+    final long[] late = new long[agents * timers];
+    final Object done = new Object();
+    final int[] finished = {0};
+    ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+    long cpu0 = cpuTime(mx);
+    MessageTimerWheel wheel =
+      new MessageTimerWheel(tick, MessageTimerWheel.createPool(2));
+    wheel.start("Benchmark Timer Wheel");
+    for (int a = 0; a < agents; a++) {
+      for (int i = 0; i < timers; i++) {
+        final int index = a * timers + i;
+        final long deadline = d[a][i];
+        wheel.schedule(new Runnable() {
+          public void run() {
+            late[index] = System.currentTimeMillis() - deadline;
+            synchronized (done) {
+              finished[0]++;
+              done.notifyAll();
+            }
+          }
+        }, deadline);
+      }
+    }
+    Result r = new Result();
+    synchronized (done) {
+      while (finished[0] < late.length) {
+        done.wait();
+      }
+    }
+    r.cpu = cpuTime(mx) - cpu0;
+    // the wheel thread and its worker pool
+    r.threads = 3;
+    r.late = late;
+    return r;
+  }
+}
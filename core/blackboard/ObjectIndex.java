@@ -0,0 +1,175 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+
+package org.cougaar.core.blackboard;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cougaar.core.util.UID;
+import org.cougaar.core.util.UniqueObject;
+import org.cougaar.util.UnaryPredicate;
+
+/**
+ * Secondary indexes over the blackboard's
+ * {@link Blackboard.AllObjectsSet}: a UID index for
+ * {@link UniqueObject}s and a store partitioned by concrete class.
+ * <p>
+ * The indexes are modified and searched under the distributor lock,
+ * so they don't need their own locking.  The query counters are
+ * safe to read without the lock.
+ *
+ * @see UIDFilteredPredicate
+ * @see ClassFilteredPredicate
+ */
+final class ObjectIndex {
+
+  /** Map of UID to UniqueObject */
+  private final Map uids = new HashMap(111);
+
+  /** Map of concrete Class to Set of instances */
+  private final Map partitions = new HashMap(31);
+
+  /** Count of UniqueObjects added with a null UID */
+  private int unindexedUniqueObjects = 0;
+
+  private final AtomicLong queryCount = new AtomicLong();
+  private final AtomicLong scansAvoided = new AtomicLong();
+
+  void add(Object o) {
+    Class cl = o.getClass();
+    Set s = (Set) partitions.get(cl);
+    if (s == null) {
+      s = new HashSet(11);
+      partitions.put(cl, s);
+    }
+    s.add(o);
+    if (o instanceof UniqueObject) {
+      UID uid = ((UniqueObject) o).getUID();
+      if (uid == null) {
+        unindexedUniqueObjects++;
+      } else {
+        uids.put(uid, o);
+      }
+    }
+  }
+
+  void remove(Object o) {
+    Set s = (Set) partitions.get(o.getClass());
+    if (s != null) {
+      s.remove(o);
+    }
+    if (o instanceof UniqueObject) {
+      UID uid = ((UniqueObject) o).getUID();
+      if (uid != null && uids.get(uid) == o) {
+        uids.remove(uid);
+      }
+    }
+  }
+
+  void clear() {
+    uids.clear();
+    partitions.clear();
+    unindexedUniqueObjects = 0;
+  }
+
+  /**
+   * Find the objects that the predicate may accept.
+   *
+   * @param p the query predicate
+   * @param all the complete blackboard contents, returned if the
+   *   predicate doesn't declare a UID or classes
+   * @return a Collection of candidate objects, which is a superset
+   *   of the objects accepted by the predicate
+   */
+  Collection getCandidates(UnaryPredicate p, Collection all) {
+    queryCount.incrementAndGet();
+    if (p instanceof UIDFilteredPredicate) {
+      UID uid = ((UIDFilteredPredicate) p).getFilterUID();
+      if (uid != null) {
+        Object o = uids.get(uid);
+        if (o != null) {
+          scansAvoided.incrementAndGet();
+          return Collections.singletonList(o);
+        }
+        if (unindexedUniqueObjects == 0) {
+          scansAvoided.incrementAndGet();
+          return Collections.EMPTY_LIST;
+        }
+        // someone published a UniqueObject without a UID, so we
+        // must scan
+      }
+    }
+    if (p instanceof ClassFilteredPredicate) {
+      Class[] classes = ((ClassFilteredPredicate) p).getFilterClasses();
+      if (classes != null) {
+        scansAvoided.incrementAndGet();
+        return getInstances(classes);
+      }
+    }
+    return all;
+  }
+
+  private Collection getInstances(Class[] classes) {
+    List ret = null;
+    for (Iterator iter = partitions.entrySet().iterator(); iter.hasNext(); ) {
+      Map.Entry me = (Map.Entry) iter.next();
+      Class cl = (Class) me.getKey();
+      for (int i = 0; i < classes.length; i++) {
+        if (classes[i].isAssignableFrom(cl)) {
+          Set s = (Set) me.getValue();
+          if (!s.isEmpty()) {
+            if (ret == null) {
+              ret = new ArrayList(s.size());
+            }
+            ret.addAll(s);
+          }
+          break;
+        }
+      }
+    }
+    return (ret == null ? Collections.EMPTY_LIST : ret);
+  }
+
+  /** @return the number of queries since we were created */
+  long getQueryCount() {
+    return queryCount.get();
+  }
+
+  /** @return the number of queries that didn't scan all objects */
+  long getScansAvoided() {
+    return scansAvoided.get();
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+package org.cougaar.core.blackboard;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+
+import org.cougaar.core.agent.ClusterContextTable;
+import org.cougaar.core.persist.PersistenceInputStream;
+import org.cougaar.core.persist.PersistenceOutputStream;
+
+/**
+ * A wrapper for {@link Directive} content that is sent to many
+ * destinations, such as the content of a {@link
+ * org.cougaar.core.relay.Relay} with many targets.
+ * <p>
+ * The wrapped object is serialized only once, the first time any of
+ * the {@link DirectiveMessage}s sharing this payload is serialized,
+ * and the resulting bytes are copied into every other message. On
+ * the receiving side the bytes are not deserialized until {@link
+ * #get} is called, in the message context of the receiving agent.
+ * <p>
+ * Persistence streams always see the object itself, never the
+ * shared bytes.
+ */
+public final class SerializedPayload implements Externalizable {
+
+  private static final long serialVersionUID = 1L;
+
+  private transient Object object;
+  private transient boolean decoded;
+  private transient byte[] bytes;
+  private transient ClusterContextTable.ContextState context;
+
+  /** For Externalizable use only */
+  public SerializedPayload() {
+  }
+
+  public SerializedPayload(Object object) {
+    this.object = object;
+    this.decoded = true;
+  }
+
+  /**
+   * @return the object of a SerializedPayload, or the argument
+   * itself if it is not a SerializedPayload.
+   */
+  public static Object unwrap(Object o) {
+    return (o instanceof SerializedPayload ? ((SerializedPayload) o).get() : o);
+  }
+
+  /**
+   * @return the wrapped object, deserializing it if necessary.
+   */
+  public synchronized Object get() {
+    if (!decoded) {
+      final Exception[] failure = new Exception[1];
+      Runnable thunk =
+        new Runnable() {
+          public void run() {
+            try {
+              ObjectInputStream ois =
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
+              object = ois.readObject();
+              ois.close();
+            } catch (Exception e) {
+              failure[0] = e;
+            }
+          }
+        };
+      if (context == null) {
+        thunk.run();
+      } else {
+        ClusterContextTable.withContextState(context, thunk);
+      }
+      if (failure[0] != null) {
+        throw new RuntimeException("Unable to deserialize payload", failure[0]);
+      }
+      decoded = true;
+      bytes = null;
+      context = null;
+    }
+    return object;
+  }
+
+  /**
+   * @return the serialized form, serializing the object on the
+   * first call.
+   */
+  private synchronized byte[] getBytes() throws IOException {
+    if (bytes == null) {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(bos);
+      oos.writeObject(object);
+      oos.close();
+      bytes = bos.toByteArray();
+    }
+    return bytes;
+  }
+
+  /**
+   * @return the size of the serialized form in bytes.
+   */
+  public int getSerializedSize() throws IOException {
+    return getBytes().length;
+  }
+
+  public void writeExternal(ObjectOutput out) throws IOException {
+    if (out instanceof PersistenceOutputStream) {
+      out.writeBoolean(false);
+      out.writeObject(get());
+    } else {
+      byte[] b = getBytes();
+      out.writeBoolean(true);
+      out.writeInt(b.length);
+      out.write(b);
+    }
+  }
+
+  public void readExternal(ObjectInput in)
+    throws IOException, ClassNotFoundException
+  {
+    if (in.readBoolean()) {
+      bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      decoded = false;
+      // Remember the message context for the deferred readObject
+      if (!(in instanceof PersistenceInputStream)) {
+        context = ClusterContextTable.getContextState();
+      }
+    } else {
+      object = in.readObject();
+      decoded = true;
+    }
+  }
+
+  @Override
+  public String toString() {
+    synchronized (this) {
+      if (!decoded) {
+        return "(serialized payload of "+bytes.length+" bytes)";
+      }
+    }
+    return String.valueOf(object);
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+package org.cougaar.core.blackboard;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Point benchmark for directive fan-out: serializes one relay-like
+ * directive per destination, each in its own message stream, once
+ * with the content inline and once with the content wrapped in a
+ * shared {@link SerializedPayload}.
+ * <p>
+ * Usage is:<pre>
+ *   java org.cougaar.core.blackboard.SerializedPayloadBenchmark [entries]
+ * </pre>
+ * where <i>entries</i> is the number of map entries in the content
+ * (default 200, roughly 10KB serialized).
+ */
+public class SerializedPayloadBenchmark {
+
+  private static final int[] FANOUTS = {1, 10, 100, 500};
+
+  /** Stands in for a RelayDirective.Add */
+  private static class Holder implements Serializable {
+    private static final long serialVersionUID = 1L;
+    String destination;
+    Object content;
+    Holder(String destination, Object content) {
+      this.destination = destination;
+      this.content = content;
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    int entries = (args.length > 0 ? Integer.parseInt(args[0]) : 200);
+    Map content = new HashMap();
+    for (int i = 0; i < entries; i++) {
+      content.put("key-"+i, new int[] {i, i * 2, i * 3, i * 4});
+    }
+    ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+    System.out.println("fanout\timpl\tbytes\tcpu-us");
+    for (int r = 0; r < 3; r++) {
+      // first rounds are JIT warm-up
+      boolean print = (r == 2);
+      for (int i = 0; i < FANOUTS.length; i++) {
+        int n = FANOUTS[i];
+        long[] inline = run(mx, content, n, false);
+        long[] shared = run(mx, content, n, true);
+        if (print) {
+          System.out.println(n+"\tinline\t"+inline[0]+"\t"+(inline[1] / 1000));
+          System.out.println(n+"\tshared\t"+shared[0]+"\t"+(shared[1] / 1000));
+        }
+      }
+    }
+  }
+
+  /**
+   * @return total bytes and thread CPU nanoseconds
+   */
+  private static long[] run(ThreadMXBean mx, Object content, int n, boolean share)
+    throws IOException
+  {
+    // One payload per transaction, as RelayLP does
+    Object c = (share ? new SerializedPayload(content) : content);
+    long bytes = 0;
+    long start = mx.getCurrentThreadCpuTime();
+    for (int i = 0; i < n; i++) {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(bos);
+      oos.writeObject(new Holder("agent-"+i, c));
+      oos.close();
+      bytes += bos.size();
+    }
+    long cpu = mx.getCurrentThreadCpuTime() - start;
+    return new long[] {bytes, cpu};
+  }
+}
@@ -410,6 +410,9 @@ public class Subscriber {
     synchronized (subscriptions) {
       subscription.setSubscriber(this);
       subscriptions.add(subscription);
+      // update our routing filter before the fill, so the
+      // distributor won't skip envelopes that follow the fill
+      updateClassFilter();
       theDistributor.fillSubscription(subscription);
     }
     setHaveNewSubscriptions();  // make sure we get counted.
@@ -458,9 +461,40 @@ public class Subscriber {
     checkTransactionOK("unsubscribe()");
     synchronized (subscriptions) {
       subscriptions.remove(subscription);
+      updateClassFilter();
     }
   }
 
+  /**
+   * The union of our subscriptions' routing filters, which is opaque
+   * if we have no subscriptions or any subscription is opaque.
+   */
+  private volatile ClassFilter classFilter = ClassFilter.OPAQUE;
+
+  private void updateClassFilter() {
+    assert Thread.holdsLock(subscriptions);
+    int n = subscriptions.size();
+    List l = new ArrayList(n);
+    for (int i = 0; i < n; i++) {
+      Subscription s = (Subscription) subscriptions.get(i);
+      l.add(s.getClassFilter());
+    }
+    classFilter = ClassFilter.union(l);
+  }
+
+  /**
+   * Called by the distributor to decide if an outbox must be passed
+   * to {@link #receiveEnvelopes}.
+   *
+   * @param classes the concrete classes of all the tuple objects
+   *   in the outbox, or null if unknown
+   * @return false if none of our subscriptions can possibly match
+   *   any of the outbox's tuples
+   */
+  boolean isInterestedIn(Collection classes) {
+    return classFilter.acceptsAny(classes);
+  }
+
   /*
    * Inbox invariants:
    * pendingEnvelopes accumulates new envelopes for the next transaction (always).
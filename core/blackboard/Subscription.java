@@ -102,6 +102,9 @@ public abstract class Subscription<E> {
   /** The predicate that represents this subscription */
   protected final UnaryPredicate<E> predicate;
 
+  /** The routing filter derived from our predicate */
+  private final ClassFilter classFilter;
+
   /** stack tracker which selects the first frame that isn't core/lib stuff */
   private static final CallerTracker pTracker = 
     CallerTracker.getPredicateTracker(new UnaryPredicate() {
@@ -136,8 +139,16 @@ public abstract class Subscription<E> {
     }
     if (p == null) throw new IllegalArgumentException("Predicate must be non-null");
     predicate = p;
+    classFilter = ClassFilter.forPredicate(p);
   }
 
+  /**
+   * @return the filter used by the distributor to route tuples to
+   *   this subscription, which is opaque unless the predicate is a
+   *   {@link ClassFilteredPredicate}.
+   */
+  ClassFilter getClassFilter() { return classFilter; }
+
   public String getName() { return predicate.getClass().getName(); }
 
   /**
@@ -151,6 +162,9 @@ public abstract class Subscription<E> {
    */
   @SuppressWarnings("unchecked")
   boolean conditionalAdd(Object o, boolean isVisible) { 
+    if (!classFilter.accepts(o.getClass())) {
+      return false;
+    }
     if (predicate.execute(o)) {
       privateAdd((E) o, isVisible);
       return true;
@@ -170,6 +184,9 @@ public abstract class Subscription<E> {
    */
   @SuppressWarnings("unchecked")
   boolean conditionalRemove(Object o, boolean isVisible) {
+    if (!classFilter.accepts(o.getClass())) {
+      return false;
+    }
     if (predicate.execute(o)) {
       privateRemove((E) o, isVisible);
       return true;
@@ -191,6 +208,9 @@ public abstract class Subscription<E> {
    */
   @SuppressWarnings("unchecked")
   boolean conditionalChange(Object o, List<ChangeReport> changes, boolean isVisible) {
+    if (!classFilter.accepts(o.getClass())) {
+      return false;
+    }
     if (predicate.execute(o)) {
       privateChange((E) o, changes, isVisible);
       return true;
@@ -0,0 +1,49 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+
+package org.cougaar.core.blackboard;
+
+import org.cougaar.core.util.UID;
+import org.cougaar.util.UnaryPredicate;
+
+/**
+ * An optional {@link UnaryPredicate} extension for predicates that
+ * select a single {@link org.cougaar.core.util.UniqueObject} by UID.
+ * <p>
+ * Blackboard queries with such a predicate are answered by a UID
+ * index lookup instead of a scan of the entire blackboard.  The
+ * predicate is still applied to the found object, so it may also
+ * check other properties.  An implementation must never accept an
+ * object whose UID differs from the declared UID.
+ *
+ * @see ClassFilteredPredicate
+ */
+public interface UIDFilteredPredicate extends UnaryPredicate {
+
+  /** @return the UID of the only object that may be accepted */
+  UID getFilterUID();
+}
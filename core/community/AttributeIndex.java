@@ -0,0 +1,179 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+package org.cougaar.community;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+
+/**
+ * An inverted index of entity attributes, mapping attribute ids and
+ * id/value pairs to the names of the entities that have them.
+ * <p>
+ * Lookups return candidates for a search filter: ids are indexed in
+ * lower case and values by their string form, so a candidate may
+ * still fail the filter's case-sensitive match but an entity that
+ * would match is never missing.  Entities whose attributes can't be
+ * enumerated are returned as candidates for every lookup.
+ * <p>
+ * This class is not synchronized.
+ */
+final class AttributeIndex {
+
+  // <String id, IdEntry>
+  private final Map ids = new HashMap();
+
+  // <String name, Map<String id, Set of String values>>, to remove
+  // a name's entries without scanning every value of its ids
+  private final Map names = new HashMap();
+
+  // names that couldn't be indexed
+  private final Set unindexed = new HashSet();
+
+  /**
+   * Index an entity, replacing any prior entries for the name.
+   */
+  public void put(String name, Attributes attrs) {
+    remove(name);
+    if (attrs == null) {
+      return;
+    }
+    Map nameIds = new HashMap();
+    try {
+      for (NamingEnumeration en = attrs.getAll(); en.hasMore(); ) {
+        Attribute attr = (Attribute) en.next();
+        String id = attr.getID().toLowerCase();
+        IdEntry ie = (IdEntry) ids.get(id);
+        if (ie == null) {
+          ie = new IdEntry();
+          ids.put(id, ie);
+        }
+        Set nameValues = (Set) nameIds.get(id);
+        if (nameValues == null) {
+          nameValues = new HashSet();
+          nameIds.put(id, nameValues);
+        }
+        ie.all.add(name);
+        for (int i = 0, n = attr.size(); i < n; i++) {
+          Object value = attr.get(i);
+          if (value == null) {
+            continue;
+          }
+          String s = value.toString();
+          Set vnames = (Set) ie.values.get(s);
+          if (vnames == null) {
+            vnames = new HashSet();
+            ie.values.put(s, vnames);
+          }
+          vnames.add(name);
+          nameValues.add(s);
+        }
+      }
+    } catch (NamingException ne) {
+      unindexed.add(name);
+    }
+    names.put(name, nameIds);
+  }
+
+  /**
+   * Remove an entity's entries.
+   */
+  public void remove(String name) {
+    unindexed.remove(name);
+    Map nameIds = (Map) names.remove(name);
+    if (nameIds == null) {
+      return;
+    }
+    for (Iterator it = nameIds.entrySet().iterator(); it.hasNext(); ) {
+      Map.Entry me = (Map.Entry) it.next();
+      String id = (String) me.getKey();
+      IdEntry ie = (IdEntry) ids.get(id);
+      if (ie == null) {
+        continue;
+      }
+      ie.all.remove(name);
+      if (ie.all.isEmpty()) {
+        ids.remove(id);
+        continue;
+      }
+      Set nameValues = (Set) me.getValue();
+      for (Iterator it1 = nameValues.iterator(); it1.hasNext(); ) {
+        String value = (String) it1.next();
+        Set vnames = (Set) ie.values.get(value);
+        if (vnames == null) {
+          continue;
+        }
+        vnames.remove(name);
+        if (vnames.isEmpty()) {
+          ie.values.remove(value);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the names of entities that may have the attribute
+   */
+  public Set get(String id) {
+    IdEntry ie = (IdEntry) ids.get(id.toLowerCase());
+    return withUnindexed(ie == null ? null : ie.all);
+  }
+
+  /**
+   * @return the names of entities that may have the attribute value
+   */
+  public Set get(String id, String value) {
+    IdEntry ie = (IdEntry) ids.get(id.toLowerCase());
+    return withUnindexed(ie == null ? null : (Set) ie.values.get(value));
+  }
+
+  private Set withUnindexed(Set s) {
+    if (unindexed.isEmpty()) {
+      return (s == null ? Collections.EMPTY_SET : Collections.unmodifiableSet(s));
+    }
+    Set ret = new HashSet(unindexed);
+    if (s != null) {
+      ret.addAll(s);
+    }
+    return ret;
+  }
+
+  private static class IdEntry {
+    // names with this attribute id
+    private final Set all = new HashSet();
+    // <String value, Set names>
+    private final Map values = new HashMap();
+  }
+}
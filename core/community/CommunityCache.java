@@ -26,6 +26,7 @@
 
 package org.cougaar.community;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -58,6 +59,19 @@ public class CommunityCache implements CommunityServiceConstants {
   protected ThreadService threadService;
   protected long expirationPeriod = DEFAULT_CACHE_EXPIRATION;
 
+  // Index of community attributes used by search(String)
+  private AttributeIndex communityIndex = new AttributeIndex();
+
+  // Names of cached communities whose attributes changed since they
+  // were indexed, e.g. by the community manager's in-place edits
+  private final Set staleIndex = Collections.synchronizedSet(new HashSet());
+  private final CommunityImpl.UpdateListener indexInvalidator =
+      new CommunityImpl.UpdateListener() {
+        public void updated(CommunityImpl community) {
+          staleIndex.add(community.getName());
+        }
+      };
+
   private static DateFormat df = new SimpleDateFormat("HH:mm:ss,SSS");
 
   public CommunityCache(ThreadService ts) {
@@ -108,8 +122,8 @@ public class CommunityCache implements CommunityServiceConstants {
       return null;
     Set matches = new HashSet();
     try {
-      Filter f = new SearchStringParser().parse(filter);
-      for (Iterator it = communities.values().iterator(); it.hasNext(); ) {
+      Filter f = SearchStringParser.getFilter(filter);
+      for (Iterator it = getCandidates(f).iterator(); it.hasNext(); ) {
         CacheEntry ce = (CacheEntry)it.next();
         CommunityImpl community = ce.community;
         if (f.match(community.getAttributes()))
@@ -125,6 +139,44 @@ public class CommunityCache implements CommunityServiceConstants {
     return matches;
   }
 
+  /**
+   * Returns the cache entries that may match a search filter, using the
+   * community attribute index if the filter allows.
+   */
+  private Collection getCandidates(Filter f) {
+    // reindex communities that were modified in place by a caller
+    if (!staleIndex.isEmpty()) {
+      Object[] names;
+      synchronized (staleIndex) {
+        names = staleIndex.toArray();
+        staleIndex.clear();
+      }
+      for (int i = 0; i < names.length; i++) {
+        CacheEntry ce = (CacheEntry)communities.get(names[i]);
+        if (ce != null) {
+          index(ce);
+        }
+      }
+    }
+    Set names = SearchStringParser.getCandidates(f, communityIndex);
+    if (names == null) {
+      return communities.values();
+    }
+    Collection candidates = new ArrayList(names.size());
+    for (Iterator it = names.iterator(); it.hasNext(); ) {
+      Object ce = communities.get(it.next());
+      if (ce != null) {
+        candidates.add(ce);
+      }
+    }
+    return candidates;
+  }
+
+  private void index(CacheEntry ce) {
+    staleIndex.remove(ce.community.getName());
+    communityIndex.put(ce.community.getName(), ce.community.getAttributes());
+  }
+
   /**
    * Searches community for all entities matching search filter
    * @param communityName  Name of community to search
@@ -201,10 +253,13 @@ public class CommunityCache implements CommunityServiceConstants {
           logger.detail(this.toString());
         }
         fireChangeNotifications(ce.community, community);
+        index(ce);
       }
     } else {
       ce = new CacheEntry(now(), (CommunityImpl)ci.clone());
+      ce.community.setUpdateListener(indexInvalidator);
       communities.put(community.getName(), ce);
+      index(ce);
       if (logger.isDebugEnabled()) {
         logger.debug("add:" +
                      " community=" + community.getName() +
@@ -312,6 +367,11 @@ public class CommunityCache implements CommunityServiceConstants {
                    " community=" + communityName);
     }
     CacheEntry ce = (CacheEntry)communities.remove(communityName);
+    communityIndex.remove(communityName);
+    staleIndex.remove(communityName);
+    if (ce != null) {
+      ce.community.setUpdateListener(null);
+    }
     return (ce == null ? null : ce.community);
   }
 
@@ -369,6 +429,9 @@ public class CommunityCache implements CommunityServiceConstants {
         if (updatedEntity != null &&
             !attributesEqual(curEntity.getAttributes(), updatedEntity.getAttributes())) {
           curEntity.setAttributes((Attributes)updatedEntity.getAttributes().clone());
+          if (current instanceof CommunityImpl) {
+            ((CommunityImpl)current).entityAttributesChanged(curEntity);
+          }
           notifyListeners(new CommunityChangeEvent(current,
                                                    CommunityChangeEvent.ENTITY_ATTRIBUTES_CHANGED,
                                                    curEntity.getName()));
@@ -58,6 +58,16 @@ public class CommunityImpl extends EntityImpl
   protected Map entities = Collections.synchronizedMap(new HashMap());
   protected long lastUpdate;
 
+  // Index of entity attributes used by search, built on the first search
+  // and maintained by addEntity/removeEntity.  It's rebuilt if lastUpdate
+  // is changed by other means, e.g. after attributes are modified in place.
+  private transient AttributeIndex entityIndex;
+  private transient long indexedUpdate;
+
+  // Told when the community's own attributes may have changed, e.g. so
+  // the CommunityCache can re-index them
+  private transient UpdateListener updateListener;
+
   /**
    * Constructor
    * @param name Name of community
@@ -93,6 +103,9 @@ public class CommunityImpl extends EntityImpl
   }
 
   public void setEntities(Collection newEntities) {
+    synchronized (this) {
+      entityIndex = null;
+    }
     synchronized (entities) {
       entities = Collections.synchronizedMap(new HashMap());
     }
@@ -101,9 +114,15 @@ public class CommunityImpl extends EntityImpl
     }
   }
 
-  public void setAttributes(Attributes attrs) {
+  public synchronized void setAttributes(Attributes attrs) {
+    boolean indexed = isIndexCurrent();
     super.setAttributes(attrs);
     lastUpdate = now();
+    if (indexed) {
+      // entity attributes are unchanged
+      indexedUpdate = lastUpdate;
+    }
+    fireUpdated();
   }
 
   public long getLastUpdate() {
@@ -112,6 +131,23 @@ public class CommunityImpl extends EntityImpl
 
   public void setLastUpdate(long time) {
     lastUpdate = time;
+    // callers set this after editing attributes in place
+    fireUpdated();
+  }
+
+  /**
+   * Sets the listener told when the community's attributes may have
+   * changed.  Entity additions and removals aren't reported.
+   */
+  void setUpdateListener(UpdateListener l) {
+    updateListener = l;
+  }
+
+  private void fireUpdated() {
+    UpdateListener l = updateListener;
+    if (l != null) {
+      l.updated(this);
+    }
   }
 
   /**
@@ -136,12 +172,17 @@ public class CommunityImpl extends EntityImpl
    * Adds an Entity to the community.
    * @param entity  Entity to add to community
    */
-  public void addEntity(Entity entity) {
+  public synchronized void addEntity(Entity entity) {
     if (entity != null) {
+      boolean indexed = isIndexCurrent();
       synchronized (entities) {
         entities.put(entity.getName(), entity);
         lastUpdate = now();
       }
+      if (indexed) {
+        entityIndex.put(entity.getName(), entity.getAttributes());
+        indexedUpdate = lastUpdate;
+      }
     }
   }
 
@@ -149,11 +190,58 @@ public class CommunityImpl extends EntityImpl
    * Removes an Entity from the community.
    * @param name  Name of entity to remove from community
    */
-  public void removeEntity(String name) {
+  public synchronized void removeEntity(String name) {
+    boolean indexed = isIndexCurrent();
     synchronized (entities) {
       entities.remove(name);
       lastUpdate = now();
     }
+    if (indexed) {
+      entityIndex.remove(name);
+      indexedUpdate = lastUpdate;
+    }
+  }
+
+  /**
+   * Updates the search index after an entity's attributes have been
+   * replaced.
+   * @param entity  Entity with changed attributes
+   */
+  synchronized void entityAttributesChanged(Entity entity) {
+    if (isIndexCurrent() && entities.get(entity.getName()) == entity) {
+      entityIndex.put(entity.getName(), entity.getAttributes());
+    }
+  }
+
+  private boolean isIndexCurrent() {
+    return entityIndex != null && indexedUpdate == lastUpdate;
+  }
+
+  /**
+   * Returns the entities that may match a search filter, using the
+   * attribute index if the filter allows.
+   */
+  private synchronized Collection getCandidates(Filter f) {
+    if (!isIndexCurrent()) {
+      entityIndex = new AttributeIndex();
+      for (Iterator it = getEntities().iterator(); it.hasNext(); ) {
+        Entity entity = (Entity)it.next();
+        entityIndex.put(entity.getName(), entity.getAttributes());
+      }
+      indexedUpdate = lastUpdate;
+    }
+    Set names = SearchStringParser.getCandidates(f, entityIndex);
+    if (names == null) {
+      return getEntities();
+    }
+    Collection candidates = new ArrayList(names.size());
+    for (Iterator it = names.iterator(); it.hasNext(); ) {
+      Object entity = entities.get(it.next());
+      if (entity != null) {
+        candidates.add(entity);
+      }
+    }
+    return candidates;
   }
 
   /**
@@ -167,10 +255,9 @@ public class CommunityImpl extends EntityImpl
   public Set search(String filter,
                     int qualifier) {
     Set matches = new HashSet();
-    SearchStringParser parser = new SearchStringParser();
     try {
-      Filter f = parser.parse(filter);
-      for (Iterator it = getEntities().iterator(); it.hasNext(); ) {
+      Filter f = SearchStringParser.getFilter(filter);
+      for (Iterator it = getCandidates(f).iterator(); it.hasNext(); ) {
         Entity entity = (Entity)it.next();
         if (entity != null && f.match(entity.getAttributes())) {
           if ((qualifier == ALL_ENTITIES) ||
@@ -213,6 +300,8 @@ public class CommunityImpl extends EntityImpl
     CommunityImpl clone =  (CommunityImpl)super.clone();
     clone.lastUpdate = lastUpdate;
     clone.entities = CommunityUtils.cloneEntities(getEntities());
+    clone.entityIndex = null;
+    clone.updateListener = null;
     return clone;
   }
 
@@ -268,4 +357,11 @@ public class CommunityImpl extends EntityImpl
     setEntities((Collection)stream.readObject());
     lastUpdate = stream.readLong();
   }
+
+  /**
+   * Listener for changes to a community's attributes.
+   */
+  interface UpdateListener {
+    void updated(CommunityImpl community);
+  }
 }
@@ -75,5 +75,10 @@ public interface CommunityServiceConstants {
       "org.cougaar.community.manager.include.descriptor";
   public static boolean DEFAULT_INCLUDE_DESCRIPTOR_IN_RESPONSE = true;
 
+  // Maximum number of parsed search filters cached for reuse
+  public static final String FILTER_CACHE_SIZE_PROPERTY =
+      "org.cougaar.community.filter.cache.size";
+  public static int DEFAULT_FILTER_CACHE_SIZE = 256;
+
 
 }
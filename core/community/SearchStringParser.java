@@ -27,7 +27,11 @@
 package org.cougaar.community;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
 
 import javax.naming.NamingException;
@@ -47,6 +51,16 @@ public class SearchStringParser {
     private static final String TAB = "\t";
     private static final String SEPS = LP + RP + AND + OR + NOT;
 
+    /** An LRU cache of already parsed filters **/
+    private static final int FILTER_CACHE_SIZE =
+        Integer.getInteger(CommunityServiceConstants.FILTER_CACHE_SIZE_PROPERTY,
+                           CommunityServiceConstants.DEFAULT_FILTER_CACHE_SIZE).intValue();
+    private static Map filters = new LinkedHashMap(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry eldest) {
+            return size() > FILTER_CACHE_SIZE;
+        }
+    };
+
     private StringTokenizer tokens;
     private String token;
     private String peek;        // Lookahead token
@@ -75,6 +89,85 @@ public class SearchStringParser {
         return result;
     }
 
+    /**
+     * Parse a filter string or find the previously parsed result.
+     * Filters are immutable, so the result may be shared.
+     * @param s the string to parse
+     * @return a Filter that can be used to test Attributes for a
+     * match
+     * @exception ParseException
+     **/
+    public static Filter getFilter(String s) throws ParseException {
+        synchronized (filters) {
+            Filter result = (Filter) filters.get(s);
+            if (result != null) {
+                return result;
+            }
+        }
+        Filter result = new SearchStringParser().parse(s);
+        synchronized (filters) {
+            filters.put(s, result);
+        }
+        return result;
+    }
+
+    /**
+     * Use an index to find the entities that may match a filter.
+     * Equality and presence filters are looked up in the index, AND
+     * filters intersect the candidates of their indexable terms and
+     * OR filters take the union if all their terms are indexable.
+     * The candidates must still be tested with the filter's match
+     * method.
+     * @param f the filter
+     * @param index the index of the searched entities
+     * @return a Set of candidate entity names, or null if the filter
+     * can't use the index and all entities must be tested
+     **/
+    static Set getCandidates(Filter f, AttributeIndex index) {
+        if (f instanceof FilterEquality) {
+            // includes FilterApproximateMatch
+            FilterEquality fe = (FilterEquality) f;
+            return index.get(fe.attrdesc, fe.value);
+        }
+        if (f instanceof FilterPresence) {
+            return index.get(((FilterPresence) f).attrdesc);
+        }
+        if (f instanceof FilterAnd) {
+            Filter[] list = ((FilterAnd) f).list;
+            Set smallest = null;
+            List others = new ArrayList();
+            for (int i = 0; i < list.length; i++) {
+                Set s = getCandidates(list[i], index);
+                if (s == null) continue;
+                if (smallest == null) {
+                    smallest = s;
+                } else if (s.size() < smallest.size()) {
+                    others.add(smallest);
+                    smallest = s;
+                } else {
+                    others.add(s);
+                }
+            }
+            if (smallest == null) return null;
+            Set result = new HashSet(smallest);
+            for (int i = 0, n = others.size(); i < n && !result.isEmpty(); i++) {
+                result.retainAll((Set) others.get(i));
+            }
+            return result;
+        }
+        if (f instanceof FilterOr) {
+            Filter[] list = ((FilterOr) f).list;
+            Set result = new HashSet();
+            for (int i = 0; i < list.length; i++) {
+                Set s = getCandidates(list[i], index);
+                if (s == null) return null;
+                result.addAll(s);
+            }
+            return result;
+        }
+        return null;
+    }
+
     /**
      * Get the next token. Has a one token pushback in the peek
      * variable. Skips whitespace.
@@ -45,10 +45,14 @@ import org.cougaar.util.GenericStateModelAdapter;
 /**
  * This component is an optional base class for {@link Domain}
  * implementations.
+ * <p>
+ * Envelope logic providers are called through an {@link
+ * EnvelopeLogicProviderTable}, which skips {@link
+ * SelectiveEnvelopeLogicProvider}s for tuples they don't handle.
  */
 public abstract class DomainAdapter 
   extends GenericStateModelAdapter
-  implements Component, Domain 
+  implements Component, Domain, SupportsLogicProviderStatus
 {
 
   private BindingSite bindingSite;
@@ -61,6 +65,10 @@ public abstract class DomainAdapter
   private final List myMessageLPs = new ArrayList();
   private final List myRestartLPs = new ArrayList();
   private final List myABAChangeLPs = new ArrayList();
+  private final EnvelopeLogicProviderTable myEnvelopeLPTable =
+    new EnvelopeLogicProviderTable();
+  /** True if myEnvelopeLPs may have changed since the table was built */
+  private boolean myEnvelopeLPsChanged = false;
   
   private Factory myFactory;
   private XPlan myXPlan;
@@ -192,19 +200,21 @@ public void unload() {
     }
 
     synchronized (myEnvelopeLPs) {
-      for (int lpIndex = 0; lpIndex < myEnvelopeLPs.size(); lpIndex++) {
-        EnvelopeLogicProvider lp = (EnvelopeLogicProvider) myEnvelopeLPs.get(lpIndex);
-	if (isPersistenceEnvelope &&
-            !(lp instanceof LogicProviderNeedingPersistenceEnvelopes)) {
-	  continue;	// This lp does not want contents of PersistenceEnvelopes
-	}
-        try {
-          lp.execute(tuple, changeReports);
-        } catch (Exception e) {
-          e.printStackTrace();
-        }
+      if (myEnvelopeLPsChanged) {
+        myEnvelopeLPTable.setLogicProviders(myEnvelopeLPs);
+        myEnvelopeLPsChanged = false;
       }
+      myEnvelopeLPTable.execute(tuple, changeReports, isPersistenceEnvelope);
+    }
+  }
+
+  /** @return the envelope logic provider counters for this domain */
+  public List getLogicProviderStatus() {
+    List result = new ArrayList();
+    synchronized (myEnvelopeLPs) {
+      myEnvelopeLPTable.getStatus(getDomainName(), result);
     }
+    return result;
   }
 
   /** invoke the RestartLogicProviders for this domain */
@@ -262,7 +272,10 @@ public void unload() {
       myMessageLPs.add(lp);
     }
     if (lp instanceof EnvelopeLogicProvider) {
-      myEnvelopeLPs.add(lp);
+      synchronized (myEnvelopeLPs) {
+        myEnvelopeLPs.add(lp);
+        myEnvelopeLPsChanged = true;
+      }
     }
     if (lp instanceof RestartLogicProvider) {
       myRestartLPs.add(lp);
@@ -275,6 +288,10 @@ public void unload() {
   }
 
   protected final List getEnvelopeLPs() {
+    synchronized (myEnvelopeLPs) {
+      // the caller may add or remove LPs
+      myEnvelopeLPsChanged = true;
+    }
     return myEnvelopeLPs;
   }
 
@@ -54,6 +54,7 @@ import org.cougaar.core.service.AgentIdentificationService;
 import org.cougaar.core.service.DomainForBlackboardService;
 import org.cougaar.core.service.DomainService;
 import org.cougaar.core.service.LoggingService;
+import org.cougaar.core.service.LogicProviderStatusService;
 
 /**
  * This component is a container for {@link Domain}s.
@@ -115,6 +116,7 @@ extends ContainerSupport
   private XPlanServiceProvider xplanSP;
   private DomainServiceProvider domainSP;
   private DomainForBlackboardServiceProvider domainForBlackboardSP;
+  private LogicProviderStatusServiceProvider lpStatusSP;
 
   public void setParameter(Object o) {
     List l = (List) o;
@@ -172,6 +174,9 @@ public void load() {
         DomainForBlackboardService.class, 
         domainForBlackboardSP);
 
+    lpStatusSP = new LogicProviderStatusServiceProvider();
+    sb.addService(LogicProviderStatusService.class, lpStatusSP);
+
     // display the agent id
     if (loggingService.isDebugEnabled()) {
       loggingService.debug(
@@ -383,6 +388,18 @@ public void load() {
     }
   }
 
+  /** collect the LP counters of all currently loaded domains */
+  private List getLogicProviderStatus() {
+    List result = new ArrayList();
+    for (Iterator iter = domainIterator(); iter.hasNext(); ) {
+      Domain d = (Domain) iter.next();
+      if (d instanceof SupportsLogicProviderStatus) {
+        result.addAll(((SupportsLogicProviderStatus) d).getLogicProviderStatus());
+      }
+    }
+    return result;
+  }
+
   //
   // binding services
   //
@@ -449,6 +466,7 @@ public void unload() {
     ServiceBroker sb = getServiceBroker();
     ServiceBroker csb = getChildServiceBroker();
 
+    sb.revokeService(LogicProviderStatusService.class, lpStatusSP);
     sb.revokeService(
         DomainForBlackboardService.class, 
         domainForBlackboardSP);
@@ -638,6 +656,32 @@ public void unload() {
         }  
     }
 
+  private class LogicProviderStatusServiceProvider
+    implements ServiceProvider {
+      private final LogicProviderStatusServiceImpl lss =
+        new LogicProviderStatusServiceImpl();
+
+      public Object getService(
+          ServiceBroker sb, Object requestor, Class serviceClass) {
+        if (LogicProviderStatusService.class.isAssignableFrom(serviceClass)) {
+          return lss;
+        }
+        return null;
+      }
+
+      public void releaseService(
+          ServiceBroker sb, Object requestor,
+          Class serviceClass, Object service)  {
+      }
+
+      private class LogicProviderStatusServiceImpl
+        implements LogicProviderStatusService {
+          public List getEnvelopeLogicProviderStatus() {
+            return DomainManager.this.getLogicProviderStatus();
+          }
+        }
+    }
+
   // 
   // other services
   //
@@ -0,0 +1,223 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+package org.cougaar.core.domain;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cougaar.bootstrap.SystemProperties;
+import org.cougaar.core.blackboard.EnvelopeTuple;
+import org.cougaar.core.service.LogicProviderStatusService;
+import org.cougaar.util.log.Logger;
+import org.cougaar.util.log.Logging;
+
+/**
+ * The dispatch table for a {@link DomainAdapter}'s {@link
+ * EnvelopeLogicProvider}s.
+ * <p>
+ * For every tuple object class the table caches the logic providers
+ * that may handle it, so a {@link SelectiveEnvelopeLogicProvider} is
+ * only called for the objects and actions it declares. All other
+ * logic providers are called for every tuple. The table also counts
+ * the invocations of each logic provider and, if "lpTiming" is set,
+ * the time spent in it.
+ * <p>
+ * The table is not synchronized; the caller must lock it.
+ *
+ * @property org.cougaar.core.domain.lpTiming
+ *   Time every envelope logic provider invocation for the
+ *   {@link LogicProviderStatusService}.  This adds two clock reads
+ *   per logic provider call.  Defaults to <em>false</em>.
+ */
+public class EnvelopeLogicProviderTable {
+
+  private static final boolean TIMING =
+    SystemProperties.getBoolean("org.cougaar.core.domain.lpTiming");
+
+  private static final Logger logger =
+    Logging.getLogger(EnvelopeLogicProviderTable.class);
+
+  private static final int ALL_ACTIONS =
+    SelectiveEnvelopeLogicProvider.ADD |
+    SelectiveEnvelopeLogicProvider.REMOVE |
+    SelectiveEnvelopeLogicProvider.CHANGE |
+    SelectiveEnvelopeLogicProvider.BULK |
+    SelectiveEnvelopeLogicProvider.EVENT;
+
+  private static final Entry[] NO_ENTRIES = new Entry[0];
+
+  private static class Entry {
+    final EnvelopeLogicProvider lp;
+    final boolean needsPersistenceEnvelopes;
+    final int actions;
+    final Class[] classes;      // null if not selective
+    long invocations;
+    long nanos;
+
+    Entry(EnvelopeLogicProvider lp) {
+      this.lp = lp;
+      needsPersistenceEnvelopes =
+        (lp instanceof LogicProviderNeedingPersistenceEnvelopes);
+      if (lp instanceof SelectiveEnvelopeLogicProvider) {
+        SelectiveEnvelopeLogicProvider slp = (SelectiveEnvelopeLogicProvider) lp;
+        actions = slp.getInterestingActions();
+        Class[] c = slp.getInterestingClasses();
+        classes = (c == null ? new Class[0] : c);
+      } else {
+        actions = ALL_ACTIONS;
+        classes = null;
+      }
+    }
+
+    boolean matches(Class clazz) {
+      if (classes == null) return true;
+      for (int i = 0; i < classes.length; i++) {
+        if (classes[i].isAssignableFrom(clazz)) return true;
+      }
+      return false;
+    }
+  }
+
+  private static class StatusImpl implements LogicProviderStatusService.Status {
+    private final String domainName;
+    private final String lpName;
+    private final boolean selective;
+    private final long tuples;
+    private final long invocations;
+    private final long nanos;
+
+    StatusImpl(String domainName, Entry entry, long tuples) {
+      this.domainName = domainName;
+      this.lpName = entry.lp.getClass().getName();
+      this.selective = (entry.classes != null);
+      this.tuples = tuples;
+      this.invocations = entry.invocations;
+      this.nanos = entry.nanos;
+    }
+
+    public String getDomainName() { return domainName; }
+    public String getLogicProviderName() { return lpName; }
+    public boolean isSelective() { return selective; }
+    public long getTupleCount() { return tuples; }
+    public long getInvocationCount() { return invocations; }
+    public long getInvocationNanos() { return nanos; }
+  }
+
+  private Entry[] entries = NO_ENTRIES;
+  private final Map dispatch = new HashMap(); // Class -> Entry[]
+  private long tuples;
+
+  /** @return the number of logic providers in the table */
+  public int size() {
+    return entries.length;
+  }
+
+  /**
+   * Replace the logic providers, keeping the counters of the ones
+   * already in the table.
+   */
+  public void setLogicProviders(List lps) {
+    Entry[] newEntries = new Entry[lps.size()];
+    for (int i = 0; i < newEntries.length; i++) {
+      EnvelopeLogicProvider lp = (EnvelopeLogicProvider) lps.get(i);
+      Entry entry = new Entry(lp);
+      for (int j = 0; j < entries.length; j++) {
+        if (entries[j].lp == lp) {
+          entry.invocations = entries[j].invocations;
+          entry.nanos = entries[j].nanos;
+          break;
+        }
+      }
+      newEntries[i] = entry;
+    }
+    entries = newEntries;
+    dispatch.clear();
+  }
+
+  /** Call the logic providers interested in the tuple */
+  public void execute(EnvelopeTuple tuple, Collection changeReports,
+                      boolean isPersistenceEnvelope) {
+    tuples++;
+    int action = 1 << tuple.getAction();
+    Entry[] candidates = getCandidates(tuple);
+    for (int i = 0; i < candidates.length; i++) {
+      Entry entry = candidates[i];
+      if (isPersistenceEnvelope && !entry.needsPersistenceEnvelopes) {
+        continue;	// This lp does not want contents of PersistenceEnvelopes
+      }
+      if ((entry.actions & action) == 0) {
+        continue;
+      }
+      long start = (TIMING ? System.nanoTime() : 0L);
+      try {
+        entry.lp.execute(tuple, changeReports);
+      } catch (Exception e) {
+        logger.error("Logic provider "+entry.lp+" failed on "+tuple, e);
+      }
+      entry.invocations++;
+      if (TIMING) {
+        entry.nanos += System.nanoTime() - start;
+      }
+    }
+  }
+
+  private Entry[] getCandidates(EnvelopeTuple tuple) {
+    if (tuple.isBulk() || tuple.isEvent()) {
+      return entries;
+    }
+    Object obj = tuple.getObject();
+    if (obj == null) {
+      return entries;
+    }
+    Class clazz = obj.getClass();
+    Entry[] candidates = (Entry[]) dispatch.get(clazz);
+    if (candidates == null) {
+      List l = new ArrayList(entries.length);
+      for (int i = 0; i < entries.length; i++) {
+        if (entries[i].matches(clazz)) {
+          l.add(entries[i]);
+        }
+      }
+      candidates = (Entry[]) l.toArray(new Entry[l.size()]);
+      dispatch.put(clazz, candidates);
+    }
+    return candidates;
+  }
+
+  /**
+   * Add a {@link LogicProviderStatusService.Status} snapshot for
+   * every logic provider to the list.
+   */
+  public void getStatus(String domainName, List toList) {
+    for (int i = 0; i < entries.length; i++) {
+      toList.add(new StatusImpl(domainName, entries[i], tuples));
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+package org.cougaar.core.domain;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.DecimalFormat;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.cougaar.core.service.LogicProviderStatusService;
+import org.cougaar.core.servlet.ComponentServlet;
+
+/**
+ * This component loads the "/logicProviders" servlet, which displays
+ * the invocation counters of the agent's envelope logic providers.
+ * <p>
+ * Load with:<pre>
+ *  &lt;component class="org.cougaar.core.domain.LogicProviderServlet"&gt;
+ *    &lt;argument&gt;/logicProviders&lt;/argument&gt;
+ *  &lt;/component&gt;
+ * </pre> 
+ */
+public class LogicProviderServlet extends ComponentServlet {
+
+  /**
+    * 
+    */
+   private static final long serialVersionUID = 1L;
+
+  private LogicProviderStatusService lpStatus;
+
+  @Override
+protected String getPath() {
+    return "/logicProviders";
+  }
+
+  @Override
+public void load() {
+    lpStatus = getService(this, LogicProviderStatusService.class, null);
+    super.load();
+  }
+
+  @Override
+public void unload() {
+    super.unload();
+    if (lpStatus != null) {
+      releaseService(this, LogicProviderStatusService.class, lpStatus);
+      lpStatus = null;
+    }
+  }
+
+  @Override
+public void doGet(
+      HttpServletRequest request,
+      HttpServletResponse response) throws IOException {
+    response.setContentType("text/html");
+    PrintWriter out = response.getWriter();
+    out.println("<html>");
+    out.println("<head><title>");
+    out.println("Logic providers of agent "+getEncodedAgentName());
+    out.println("</title></head>");
+    out.println("<body>");
+    out.println("<h2>Envelope logic providers of agent "+getEncodedAgentName()+"</h2>");
+    if (lpStatus == null) {
+      out.println("<p>No LogicProviderStatusService</p>");
+    } else {
+      report(out, lpStatus.getEnvelopeLogicProviderStatus());
+    }
+    out.println("</body>");
+    out.println("</html>");
+    out.close();
+  }
+
+  private static void report(PrintWriter out, List status) {
+    DecimalFormat f = new DecimalFormat("#,##0.###");
+    out.println("<table border=1>");
+    out.println("<tr><th>DOMAIN</th><th>LOGIC PROVIDER</th><th>SELECTIVE</th>"+
+        "<th>TUPLES</th><th>CALLS</th><th>TIME (ms)</th><th>MEAN (us)</th></tr>");
+    for (int i = 0, n = status.size(); i < n; i++) {
+      LogicProviderStatusService.Status s =
+        (LogicProviderStatusService.Status) status.get(i);
+      long calls = s.getInvocationCount();
+      long nanos = s.getInvocationNanos();
+      out.println("<tr>");
+      out.println("<td>"+s.getDomainName()+"</td>");
+      out.println("<td>"+s.getLogicProviderName()+"</td>");
+      out.println("<td>"+(s.isSelective() ? "yes" : "no")+"</td>");
+      out.println("<td align=right>"+s.getTupleCount()+"</td>");
+      out.println("<td align=right>"+calls+"</td>");
+      out.println("<td align=right>"+f.format(nanos / 1e6)+"</td>");
+      out.println("<td align=right>"+(calls == 0 ? "" : f.format(nanos / 1e3 / calls))+"</td>");
+      out.println("</tr>");
+    }
+    out.println("</table>");
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+package org.cougaar.core.domain;
+
+import org.cougaar.core.blackboard.Envelope;
+import org.cougaar.core.blackboard.EnvelopeTuple;
+
+/**
+ * An {@link EnvelopeLogicProvider} that declares which {@link
+ * EnvelopeTuple}s it handles, so the {@link DomainAdapter} can skip
+ * it for all other tuples instead of calling {@link #execute}.
+ * <p>
+ * Envelope logic providers that don't implement this interface are
+ * called for every tuple.
+ */
+public interface SelectiveEnvelopeLogicProvider extends EnvelopeLogicProvider {
+  int ADD = 1 << Envelope.ADD;
+  int REMOVE = 1 << Envelope.REMOVE;
+  int CHANGE = 1 << Envelope.CHANGE;
+  int BULK = 1 << Envelope.BULK;
+  int EVENT = 1 << Envelope.EVENT;
+
+  /**
+   * @return the bitwise "or" of the tuple actions (ADD, REMOVE,
+   * CHANGE, BULK, EVENT) this logic provider handles.
+   */
+  int getInterestingActions();
+
+  /**
+   * The tuple objects this logic provider handles. An object matches
+   * if it is an instance of any of the returned classes or
+   * interfaces. BULK and EVENT tuples are matched on their action
+   * alone, since their object is a collection.
+   * <p>
+   * The result is read once, after {@link #init}, and must not
+   * change afterwards.
+   */
+  Class[] getInterestingClasses();
+}
@@ -0,0 +1,196 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+
+package org.cougaar.core.mts;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A JVM-wide canonicalization cache for {@link MessageAddress}es,
+ * used by the address factory methods and by readResolve when
+ * addresses are deserialized.
+ * <p>
+ * Addresses are keyed by their class and {@link
+ * MessageAddress#toAddress}, so for example a {@link
+ * MulticastMessageAddress} never resolves to a {@link
+ * SimpleMessageAddress} with the same name. Lookups don't lock, and
+ * the cached addresses are weakly referenced so the addresses of
+ * departed agents can be garbage collected.
+ * <p>
+ * A {@link MessageAddressWithAttributes} is not cached, since its
+ * attributes are mutable and it is serialized as its delegate.
+ * <p>
+ * Hit and miss counts are advertised to the node's agents as the
+ * {@link MessageAddressCacheService}.
+ */
+public final class MessageAddressCache {
+
+  private static final ConcurrentMap<Key, Ref> cache =
+    new ConcurrentHashMap<Key, Ref>(89);
+
+  private static final ReferenceQueue<MessageAddress> queue =
+    new ReferenceQueue<MessageAddress>();
+
+  private static final AtomicLong hits = new AtomicLong();
+  private static final AtomicLong misses = new AtomicLong();
+
+  private MessageAddressCache() { }
+
+  /**
+   * @return the cached address of the given class and name, or null
+   * if there is none
+   */
+  static MessageAddress get(Class<?> cls, String address) {
+    Ref ref = cache.get(new Key(cls, address));
+    MessageAddress a = (ref == null ? null : ref.get());
+    if (a != null) {
+      hits.incrementAndGet();
+    }
+    return a;
+  }
+
+  /**
+   * @return the cached address equal to the given address, caching
+   * the given address if there is none
+   */
+  public static MessageAddress intern(MessageAddress a) {
+    if (a == null || a instanceof MessageAddressWithAttributes) {
+      return a;
+    }
+    String address = a.toAddress();
+    if (address == null) {
+      return a;
+    }
+    expungeStaleEntries();
+    Key key = new Key(a.getClass(), address);
+    Ref ref = new Ref(key, a, queue);
+    while (true) {
+      Ref old = cache.putIfAbsent(key, ref);
+      if (old == null) {
+        misses.incrementAndGet();
+        return a;
+      }
+      MessageAddress x = old.get();
+      if (x != null) {
+        hits.incrementAndGet();
+        return x;
+      }
+      // cleared but not yet expunged
+      if (cache.replace(key, old, ref)) {
+        misses.incrementAndGet();
+        return a;
+      }
+    }
+  }
+
+  /** @return the number of lookups that found a cached address */
+  static long getHitCount() {
+    return hits.get();
+  }
+
+  /** @return the number of lookups that cached a new address */
+  static long getMissCount() {
+    return misses.get();
+  }
+
+  /** @return the fraction of lookups that found a cached address */
+  static double getHitRate() {
+    long h = hits.get();
+    long total = h + misses.get();
+    return (total == 0 ? 0.0 : ((double) h / total));
+  }
+
+  /** @return the number of cached addresses */
+  static int size() {
+    expungeStaleEntries();
+    return cache.size();
+  }
+
+  /** @return a service view of the cache statistics */
+  static MessageAddressCacheService getService() {
+    return SERVICE;
+  }
+
+  private static final MessageAddressCacheService SERVICE =
+    new MessageAddressCacheService() {
+      public long getHitCount() {
+        return MessageAddressCache.getHitCount();
+      }
+      public long getMissCount() {
+        return MessageAddressCache.getMissCount();
+      }
+      public double getHitRate() {
+        return MessageAddressCache.getHitRate();
+      }
+      public int getSize() {
+        return MessageAddressCache.size();
+      }
+    };
+
+  private static void expungeStaleEntries() {
+    Object o;
+    while ((o = queue.poll()) != null) {
+      Ref ref = (Ref) o;
+      // only remove the entry if it hasn't been replaced
+      cache.remove(ref.key, ref);
+    }
+  }
+
+  private static final class Key {
+    private final Class<?> cls;
+    private final String address;
+    private final int hash;
+    public Key(Class<?> cls, String address) {
+      this.cls = cls;
+      this.address = address;
+      this.hash = 31 * cls.hashCode() + address.hashCode();
+    }
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+    @Override
+    public boolean equals(Object o) {
+      if (o == this) return true;
+      if (!(o instanceof Key)) return false;
+      Key k = (Key) o;
+      return cls == k.cls && address.equals(k.address);
+    }
+  }
+
+  private static final class Ref extends WeakReference<MessageAddress> {
+    private final Key key;
+    public Ref(Key key, MessageAddress a, ReferenceQueue<MessageAddress> q) {
+      super(a, q);
+      this.key = key;
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+
+package org.cougaar.core.mts;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+
+/**
+ * Point benchmark for {@link MessageAddress} canonicalization across
+ * threads, comparing the original synchronized HashMap against the
+ * {@link MessageAddressCache}, both for factory lookups and for the
+ * readResolve path taken when messages are deserialized.
+ * <p>
+ * Usage is:<pre>
+ *   java org.cougaar.core.mts.MessageAddressCacheBenchmark [agents [rounds]]
+ * </pre>
+ * where <i>agents</i> is the number of distinct agent names (default
+ * 1000) and <i>rounds</i> is the number of passes each thread makes
+ * over them (default 200).
+ */
+public class MessageAddressCacheBenchmark {
+
+  private static final int[] THREADS = {1, 2, 4, 8, 16, 32};
+
+  public static void main(String[] args) throws Exception {
+    int agents = (args.length > 0 ? Integer.parseInt(args[0]) : 1000);
+    int rounds = (args.length > 1 ? Integer.parseInt(args[1]) : 200);
+    final String[] names = new String[agents];
+    MessageAddress[] addrs = new MessageAddress[agents];
+    for (int i = 0; i < agents; i++) {
+      names[i] = "Agent"+i;
+      addrs[i] = MessageAddress.getMessageAddress(names[i]);
+    }
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(bos);
+    oos.writeObject(addrs);
+    oos.close();
+    final byte[] bytes = bos.toByteArray();
+    final SynchronizedCache sync = new SynchronizedCache();
+
+    System.out.println("threads\tpath\tlookups/sec");
+    for (int r = 0; r < 2; r++) {
+      // first round is JIT warm-up
+      boolean print = (r > 0);
+      for (int i = 0; i < THREADS.length; i++) {
+        int n = THREADS[i];
+        long syncLookup = run(new Task() {
+          public void run() {
+            for (int j = 0; j < names.length; j++) {
+              sync.get(names[j]);
+            }
+          }
+        }, n, rounds, agents);
+        long cacheLookup = run(new Task() {
+          public void run() {
+            for (int j = 0; j < names.length; j++) {
+              MessageAddress.getMessageAddress(names[j]);
+            }
+          }
+        }, n, rounds, agents);
+        long readResolve = run(new Task() {
+          public void run() throws Exception {
+            ObjectInputStream ois =
+              new ObjectInputStream(new ByteArrayInputStream(bytes));
+            ois.readObject();
+            ois.close();
+          }
+        }, n, rounds, agents);
+        if (print) {
+          System.out.println(n+"\tsynchronized-lookup\t"+syncLookup);
+          System.out.println(n+"\tcache-lookup\t"+cacheLookup);
+          System.out.println(n+"\tdeserialize\t"+readResolve);
+        }
+      }
+    }
+    System.out.println(
+        "cache size="+MessageAddressCache.size()+
+        " hits="+MessageAddressCache.getHitCount()+
+        " misses="+MessageAddressCache.getMissCount()+
+        " hitRate="+MessageAddressCache.getHitRate());
+  }
+
+  private interface Task {
+    void run() throws Exception;
+  }
+
+  /** @return lookups per second over all threads */
+  private static long run(final Task task, int n, final int rounds, int agents)
+    throws InterruptedException
+  {
+    Thread[] threads = new Thread[n];
+    for (int i = 0; i < n; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int j = 0; j < rounds; j++) {
+              task.run();
+            }
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+    }
+    long t = System.nanoTime();
+    for (int i = 0; i < n; i++) {
+      threads[i].start();
+    }
+    for (int i = 0; i < n; i++) {
+      threads[i].join();
+    }
+    t = System.nanoTime() - t;
+    return (long) (((double) n * rounds * agents) * 1000000000L / t);
+  }
+
+  /** The original SimpleMessageAddress cache */
+  private static class SynchronizedCache {
+    private final HashMap cache = new HashMap(89);
+    MessageAddress get(String as) {
+      as = as.intern();
+      synchronized (cache) {
+        MessageAddress a = (MessageAddress) cache.get(as);
+        if (a == null) {
+          a = new SimpleMessageAddress(as);
+          cache.put(as, a);
+        }
+        return a;
+      }
+    }
+  }
+}
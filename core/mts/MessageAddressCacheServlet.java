@@ -0,0 +1,114 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+package org.cougaar.core.mts;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.DecimalFormat;
+
+import javax.servlet.Servlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.cougaar.core.servlet.BaseServletComponent;
+
+/**
+ * This component is a {@link Servlet} that registers with the path
+ * "/address_cache" and displays the {@link MessageAddressCacheService}
+ * hit and miss statistics.
+ */
+public class MessageAddressCacheServlet extends BaseServletComponent {
+
+  private MessageAddressCacheService macs;
+
+  @Override
+protected String getPath() {
+    return "/address_cache";
+  }
+
+  @Override
+public void load() {
+    macs = getService(
+        this, MessageAddressCacheService.class, null);
+    super.load();
+  }
+
+  @Override
+public void unload() {
+    super.unload();
+    if (macs != null) {
+      releaseService(
+          this, MessageAddressCacheService.class, macs);
+      macs = null;
+    }
+  }
+
+  @Override
+protected Servlet createServlet() {
+    return new MessageAddressCacheServletImpl();
+  }
+
+  private class MessageAddressCacheServletImpl extends HttpServlet {
+
+    /**
+    * 
+    */
+   private static final long serialVersionUID = 1L;
+
+   @Override
+   public void doGet(
+        HttpServletRequest req,
+        HttpServletResponse res) throws IOException {
+      res.setContentType("text/html");
+      PrintWriter out = res.getWriter();
+      out.println(
+          "<html><head><title>Message address cache</title></head>"+
+          "<body>\n"+
+          "<h2>Message address cache</h2><p>");
+      if (macs == null) {
+        out.println(
+            "<font color=\"red\">No MessageAddressCacheService?</font>"+
+            "</body></html>");
+        return;
+      }
+      DecimalFormat rateFormat = new DecimalFormat("0.000");
+      out.println(
+          "<table border=1>\n"+
+          "<tr><td>Cached addresses</td><td align=right>"+
+          macs.getSize()+"</td></tr>\n"+
+          "<tr><td>Hits</td><td align=right>"+
+          macs.getHitCount()+"</td></tr>\n"+
+          "<tr><td>Misses</td><td align=right>"+
+          macs.getMissCount()+"</td></tr>\n"+
+          "<tr><td>Hit rate</td><td align=right>"+
+          rateFormat.format(macs.getHitRate())+"</td></tr>\n"+
+          "</table>\n"+
+          "</body></html>");
+    }
+  }
+}
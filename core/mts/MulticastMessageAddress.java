@@ -56,11 +56,13 @@ public class MulticastMessageAddress
     // factory methods
 
     public static final MulticastMessageAddress getMulticastMessageAddress(String address) {
-        return new MulticastMessageAddress(address);
+        return (MulticastMessageAddress)
+            MessageAddressCache.intern(new MulticastMessageAddress(address));
     }
 
     public static final MulticastMessageAddress getMulticastMessageAddress(Class<?> clientClass) {
-        return new MMAWithClass(clientClass);
+        return (MulticastMessageAddress)
+            MessageAddressCache.intern(new MMAWithClass(clientClass));
     }
     
     /**
@@ -91,38 +91,22 @@ public final int hashCode() {
   }
 
   protected Object readResolve() {
-    return cacheSimpleMessageAddress(this);
+    return MessageAddressCache.intern(this);
   }
 
-  private static java.util.HashMap cache = new java.util.HashMap(89);
-
   public static SimpleMessageAddress getSimpleMessageAddress(String as) {
-      if (as == null) return null;
-    as = as.intern();
-    synchronized (cache) {
-      SimpleMessageAddress a = (SimpleMessageAddress) cache.get(as);
-      if (a != null) {
-        return a;
-      } else {
-        a = new SimpleMessageAddress(as);
-        cache.put(as, a);
-        return a;
-      }
+    if (as == null) return null;
+    SimpleMessageAddress a = (SimpleMessageAddress)
+      MessageAddressCache.get(SimpleMessageAddress.class, as);
+    if (a == null) {
+      a = (SimpleMessageAddress)
+        MessageAddressCache.intern(new SimpleMessageAddress(as));
     }
+    return a;
   }
 
   public static SimpleMessageAddress cacheSimpleMessageAddress(SimpleMessageAddress a) {
-      if (a == null) return null;
-    synchronized (cache) {
-      String as = a._as;
-      SimpleMessageAddress x = (SimpleMessageAddress) cache.get(as);
-      if (x != null) {
-        return x;
-      } else {
-        cache.put(as, a);
-        return a;
-      }
-    }
+    return (SimpleMessageAddress) MessageAddressCache.intern(a);
   }
 
 }
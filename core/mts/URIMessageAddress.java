@@ -65,7 +65,13 @@ public final String toAddress() {
 
 
   public static URIMessageAddress getURIMessageAddress(URI uri) {
-    return new URIMessageAddress(uri);
+    URIMessageAddress a = (URIMessageAddress)
+      MessageAddressCache.get(URIMessageAddress.class, uri.toString());
+    if (a == null) {
+      a = (URIMessageAddress)
+        MessageAddressCache.intern(new URIMessageAddress(uri));
+    }
+    return a;
   }
 
   public boolean equals(URIMessageAddress ma ){
@@ -95,9 +101,7 @@ public final int hashCode() {
     uri = (URI) in.readObject();
   }
 
-  /*
   protected Object readResolve() {
-    return cacheSimpleMessageAddress(this);
+    return MessageAddressCache.intern(this);
   }
-  */
 }
@@ -32,6 +32,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.cougaar.bootstrap.SystemProperties;
 import org.cougaar.core.agent.AgentContainer;
@@ -53,12 +57,22 @@ import org.cougaar.util.GenericStateModelAdapter;
 /**
  * This component loads the initial set of agents into the node and
  * persists the names of dynamically added/removed agents.
+ * <p>
+ * Once the initial agents are loaded, each agent that registers or
+ * unregisters with the node asks the node agent's blackboard to
+ * persist, so the node's snapshot always holds the current list of
+ * agents. While the initial agents are loading these requests are
+ * ignored, and a snapshot holds the initial list of agents.
  *
  * @property org.cougaar.core.node.ignoreRehydratedAgentList
  *   Ignore the list of agents from the rehydrated state of the
  *   NodeAgent, if any. Defaults to false. Set to true to disable
  *   this feature and always use the list of agents from the
  *   ComponentInitializerService.
+ * @property org.cougaar.core.node.agentLoadThreads
+ *   Number of threads used to add the initial agents. Defaults to 1,
+ *   which adds the agents one after another in the loading thread.
+ *   A value of zero or less uses one thread per available processor.
  */
 public final class AgentLoader
 extends GenericStateModelAdapter
@@ -71,6 +85,16 @@ implements Component
   private static final boolean ignoreRehydratedAgentDescs =
     SystemProperties.getBoolean(IGNORE_REHYDRATED_AGENT_LIST_PROP);
 
+  public static final String AGENT_LOAD_THREADS_PROP =
+    "org.cougaar.core.node.agentLoadThreads";
+
+  private static final int agentLoadThreads;
+  static {
+    int n = SystemProperties.getInt(AGENT_LOAD_THREADS_PROP, 1);
+    agentLoadThreads =
+      (n > 0 ? n : Runtime.getRuntime().availableProcessors());
+  }
+
   private ServiceBroker sb;
 
   private List initialAgents;
@@ -89,8 +113,9 @@ implements Component
 
   private RegisterAgentServiceProvider rasp;
 
-  private boolean addingAgents;
-  private List initialDescs;
+  // read by captureState in the persistence thread
+  private volatile boolean addingAgents;
+  private volatile List initialDescs;
 
   private final Set activeAgentAddrs = new HashSet();
 
@@ -130,7 +155,8 @@ implements Component
    * reads the list of agents from the configuration files (INI/XML/DB).
    * <p>
    * Note that the agents are added in bulk, which loads them in
-   * sequence in our thread.
+   * sequence in our thread unless the "agentLoadThreads" system
+   * property allows parallel loading.
    */
   @Override
 public void load() {
@@ -297,21 +323,117 @@ public void unload() {
     addingAgents = true;
     initialDescs = cdcs;
 
+    long startTime = System.currentTimeMillis();
+    int n = cdcs.size();
+    int threads = Math.min(n, agentLoadThreads);
+    if (threads <= 1) {
+      for (int i = 0; i < n; i++) {
+        ComponentDescription cd = (ComponentDescription)
+          cdcs.get(i);
+        if (!addAgent(cd)) {
+          log.error(
+              "Unable to add agent "+cd.getParameter()+
+              ", not loading agents: "+cdcs.subList(i + 1, n));
+          break;
+        }
+      }
+    } else {
+      addAgentsInParallel(cdcs, threads);
+    }
+    if (log.isInfoEnabled()) {
+      log.info(
+          "Finished adding "+n+" agents in "+
+          (System.currentTimeMillis() - startTime)+" millis using "+
+          Math.max(threads, 1)+" thread(s)");
+    }
+
+    addingAgents = false;
+    initialDescs = null;
+  }
+
+  /**
+   * Add the agents using a pool of threads, and wait for them all
+   * to load. As in the sequential case, a failed agent stops the
+   * loading of agents that have not started yet, and these are
+   * reported along with the failure.
+   */
+  private void addAgentsInParallel(List cdcs, int threads) {
+    final List failed = Collections.synchronizedList(new ArrayList());
+    final List skipped = Collections.synchronizedList(new ArrayList());
+    ThreadFactory tf = new ThreadFactory() {
+      private int counter = 0;
+      public synchronized Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "Agent Loader "+(++counter));
+        t.setDaemon(true);
+        return t;
+      }
+    };
+    ExecutorService exec = Executors.newFixedThreadPool(threads, tf);
     for (int i = 0, n = cdcs.size(); i < n; i++) {
-      ComponentDescription cd = (ComponentDescription)
+      final ComponentDescription cd = (ComponentDescription)
         cdcs.get(i);
+      Runnable r = new Runnable() {
+        public void run() {
+          if (!failed.isEmpty()) {
+            skipped.add(cd);
+            return;
+          }
+          if (!addAgent(cd)) {
+            failed.add(cd.getParameter());
+          }
+        }
+      };
+      exec.execute(r);
+    }
+    exec.shutdown();
+    boolean interrupted = false;
+    while (true) {
       try {
-        agentContainer.add(cd);
-      } catch (Exception e) {
-        log.error(
-            "Unable to add agent "+cd.getParameter()+
-            ", not loading agents: "+cdcs.subList(i, n));
-        break;
+        if (exec.awaitTermination(60, TimeUnit.SECONDS)) {
+          break;
+        }
+        if (log.isInfoEnabled()) {
+          log.info("Still adding agents, "+failed.size()+" failed so far");
+        }
+      } catch (InterruptedException ie) {
+        interrupted = true;
       }
     }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (!failed.isEmpty()) {
+      log.error(
+          "Unable to add agents "+failed+
+          ", not loading agents: "+skipped);
+    }
+  }
 
-    addingAgents = true;
-    initialDescs = null;
+  /**
+   * Add an agent.
+   * <p>
+   * The AgentManager logs and swallows an agent's load exception and
+   * returns false, so a false return is how a failure is reported.
+   * We also catch exceptions from other AgentContainers.
+   *
+   * @return true if the agent was added
+   */
+  private boolean addAgent(ComponentDescription cd) {
+    long t = System.currentTimeMillis();
+    boolean added;
+    try {
+      added = agentContainer.add(cd);
+    } catch (Exception e) {
+      log.error("Unable to add agent "+cd.getParameter(), e);
+      added = false;
+    }
+    if (log.isInfoEnabled()) {
+      log.info(
+          (added ? "Added" : "Failed to add")+" agent "+
+          cd.getParameter()+" in "+
+          (System.currentTimeMillis() - t)+" millis");
+    }
+    return added;
   }
 
   private Object captureState() {
@@ -374,6 +496,10 @@ public void unload() {
     }
   }
 
+  /**
+   * Called when an agent registers or unregisters with the node. This
+   * only takes effect after the initial agents are loaded.
+   */
   private void persistNow() {
     if (addingAgents) {
       if (log.isInfoEnabled()) {
@@ -29,11 +29,14 @@ package org.cougaar.core.node;
 import org.cougaar.core.component.Component;
 import org.cougaar.core.component.ServiceBroker;
 import org.cougaar.core.component.ServiceProvider;
+import org.cougaar.core.mts.MessageAddressCacheService;
+import org.cougaar.core.mts.MessageAddressCacheServiceProvider;
 import org.cougaar.core.service.NodeMetricsService;
 import org.cougaar.util.GenericStateModelAdapter;
 
 /**
- * This component advertises the {@link NodeMetricsService}.
+ * This component advertises the {@link NodeMetricsService} and the
+ * {@link MessageAddressCacheService}.
  */
 public final class NodeMetrics
 extends GenericStateModelAdapter
@@ -44,6 +47,7 @@ implements Component
   private ServiceBroker rootsb;
 
   private ServiceProvider nmsp;
+  private ServiceProvider macsp;
 
   public void setServiceBroker(ServiceBroker sb) {
     this.sb = sb;
@@ -62,12 +66,17 @@ public void load() {
 
     nmsp = new NodeMetricsServiceProvider(new NodeMetricsProxy());
     rootsb.addService(NodeMetricsService.class, nmsp);
+
+    macsp = new MessageAddressCacheServiceProvider();
+    rootsb.addService(MessageAddressCacheService.class, macsp);
   }
 
   @Override
 public void unload() {
     super.unload();
 
+    rootsb.revokeService(MessageAddressCacheService.class, macsp);
+    macsp = null;
     rootsb.revokeService(NodeMetricsService.class, nmsp);
     nmsp = null;
   }
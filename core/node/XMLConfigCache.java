@@ -0,0 +1,338 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+package org.cougaar.core.node;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.cougaar.bootstrap.SystemProperties;
+import org.cougaar.util.log.Logger;
+import org.cougaar.util.log.Logging;
+
+/**
+ * A disk cache of parsed agent configurations, used by the {@link
+ * XMLConfigParser} to skip the XSL transform and SAX parse of an
+ * unchanged society XML file.
+ * <p>
+ * Each cache file is named by a hash of the parse settings: the XML
+ * file name, node and agent filter, XSL options and XSL parameters.
+ * It holds the content hash of every file that the parse read,
+ * including XSL includes, followed by the serialized map of agent
+ * names to ComponentDescription lists. The entry is only used if
+ * all those files still hash to the same values, otherwise the XML
+ * is parsed again and the entry is replaced.
+ * <p>
+ * Loading an entry deserializes it, so the cache directory and its
+ * files must be private to the user running the node. The directory
+ * is created readable only by its owner, and an entry is ignored
+ * unless it and the directory are owned by this user and aren't
+ * writable by anyone else.
+ *
+ * @property org.cougaar.society.cache
+ *   Enable the parsed society XML cache. Defaults to false.
+ * @property org.cougaar.society.cache.dir
+ *   Directory for the parsed society XML cache. Defaults to
+ *   ".cougaar/society-cache" in the "user.home" directory.
+ */
+final class XMLConfigCache {
+
+  private static final boolean ENABLED =
+    SystemProperties.getBoolean("org.cougaar.society.cache", false);
+
+  private static final String DIR =
+    SystemProperties.getProperty(
+        "org.cougaar.society.cache.dir",
+        SystemProperties.getProperty("user.home", ".") +
+        File.separator + ".cougaar" +
+        File.separator + "society-cache");
+
+  private static final Set PRIVATE_DIR =
+    PosixFilePermissions.fromString("rwx------");
+  private static final Set PRIVATE_FILE =
+    PosixFilePermissions.fromString("rw-------");
+
+  /** Change this if the cache file format changes */
+  private static final int VERSION = 1;
+
+  private final Logger logger = Logging.getLogger(XMLConfigCache.class);
+
+  private final String key;
+  private final XSLTransformer.Resolver resolver;
+  private final File file;
+
+  /**
+   * @param key a string describing all the parse settings
+   * @param resolver the resolver used to read the parsed files
+   */
+  public XMLConfigCache(String key, XSLTransformer.Resolver resolver) {
+    this.key = key;
+    this.resolver = resolver;
+    this.file = new File(DIR, "society-" + hash(key) + ".ser");
+  }
+
+  public static boolean isEnabled() {
+    return ENABLED;
+  }
+
+  /**
+   * @return the cached map of agent configurations, or null if there
+   * is no entry or any of the parsed files has changed
+   */
+  public Map load() {
+    if (!file.isFile()) {
+      return null;
+    }
+    if (!isPrivate(file.getParentFile()) || !isPrivate(file)) {
+      if (logger.isWarnEnabled()) {
+        logger.warn(
+            "Ignoring society cache "+file+", it isn't private to user "+
+            SystemProperties.getProperty("user.name"));
+      }
+      return null;
+    }
+    long t = System.currentTimeMillis();
+    ObjectInputStream ois = null;
+    try {
+      ois = new ObjectInputStream(
+          new BufferedInputStream(new FileInputStream(file)));
+      if (ois.readInt() != VERSION || !key.equals(ois.readUTF())) {
+        return null;
+      }
+      String[] names = (String[]) ois.readObject();
+      String[] digests = (String[]) ois.readObject();
+      for (int i = 0; i < names.length; i++) {
+        String d = digest(resolver, names[i]);
+        if (!digests[i].equals(d)) {
+          if (logger.isInfoEnabled()) {
+            logger.info(
+                "Ignoring society cache "+file+", "+names[i]+
+                (d == null ? " is missing" : " has changed"));
+          }
+          return null;
+        }
+      }
+      Map ret = (Map) ois.readObject();
+      if (logger.isInfoEnabled()) {
+        logger.info(
+            "Loaded "+ret.size()+" agent configurations from society"+
+            " cache "+file+" in "+(System.currentTimeMillis() - t)+
+            " millis");
+      }
+      return ret;
+    } catch (Exception e) {
+      if (logger.isWarnEnabled()) {
+        logger.warn("Unable to read society cache "+file, e);
+      }
+      return null;
+    } finally {
+      if (ois != null) {
+        try {
+          ois.close();
+        } catch (IOException ioe) {
+        }
+      }
+    }
+  }
+
+  /**
+   * Save a parsed map of agent configurations.
+   * @param names the files read by the parse
+   * @param agents the parsed map
+   */
+  public void store(List names, Map agents) {
+    if (names == null) {
+      return;
+    }
+    String[] n = (String[]) names.toArray(new String[names.size()]);
+    String[] digests = new String[n.length];
+    for (int i = 0; i < n.length; i++) {
+      digests[i] = digest(resolver, n[i]);
+      if (digests[i] == null) {
+        if (logger.isInfoEnabled()) {
+          logger.info("Not caching society parse, unable to reopen "+n[i]);
+        }
+        return;
+      }
+    }
+    // write to a temporary file and rename it, so concurrent nodes
+    // never see a partial entry
+    File tmp = null;
+    try {
+      File dir = file.getParentFile();
+      if (!dir.isDirectory()) {
+        dir.mkdirs();
+        setPrivate(dir);
+      }
+      if (!isPrivate(dir)) {
+        if (logger.isWarnEnabled()) {
+          logger.warn(
+              "Not caching society parse, "+dir+" isn't private to user "+
+              SystemProperties.getProperty("user.name"));
+        }
+        return;
+      }
+      tmp = File.createTempFile("society", ".tmp", dir);
+      setPrivate(tmp);
+      ObjectOutputStream oos = new ObjectOutputStream(
+          new BufferedOutputStream(new FileOutputStream(tmp)));
+      try {
+        oos.writeInt(VERSION);
+        oos.writeUTF(key);
+        oos.writeObject(n);
+        oos.writeObject(digests);
+        oos.writeObject(agents);
+      } finally {
+        oos.close();
+      }
+      file.delete();
+      if (!tmp.renameTo(file)) {
+        throw new IOException("Unable to rename "+tmp+" to "+file);
+      }
+      tmp = null;
+      if (logger.isInfoEnabled()) {
+        logger.info(
+            "Saved "+agents.size()+" agent configurations to society"+
+            " cache "+file);
+      }
+    } catch (Exception e) {
+      if (logger.isWarnEnabled()) {
+        logger.warn("Unable to write society cache "+file, e);
+      }
+    } finally {
+      if (tmp != null) {
+        tmp.delete();
+      }
+    }
+  }
+
+  /**
+   * @return true if the file is owned by this user and, where the
+   * file system supports POSIX permissions, isn't writable by its
+   * group or others
+   */
+  private static boolean isPrivate(File f) {
+    try {
+      Path path = f.toPath();
+      UserPrincipal user =
+        FileSystems.getDefault().getUserPrincipalLookupService()
+        .lookupPrincipalByName(SystemProperties.getProperty("user.name"));
+      if (!user.equals(Files.getOwner(path, LinkOption.NOFOLLOW_LINKS))) {
+        return false;
+      }
+      Set perms;
+      try {
+        perms = Files.getPosixFilePermissions(path, LinkOption.NOFOLLOW_LINKS);
+      } catch (UnsupportedOperationException e) {
+        return true;
+      }
+      return
+        !perms.contains(PosixFilePermission.GROUP_WRITE) &&
+        !perms.contains(PosixFilePermission.OTHERS_WRITE);
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  /** Make a file or directory accessible only by its owner */
+  private static void setPrivate(File f) throws IOException {
+    try {
+      Files.setPosixFilePermissions(
+          f.toPath(), f.isDirectory() ? PRIVATE_DIR : PRIVATE_FILE);
+    } catch (UnsupportedOperationException e) {
+      f.setReadable(false, false);
+      f.setReadable(true, true);
+      f.setWritable(false, false);
+      f.setWritable(true, true);
+      f.setExecutable(false, false);
+      f.setExecutable(f.isDirectory(), true);
+    }
+  }
+
+  /** @return the hex content hash of a file, or null if unreadable */
+  static String digest(XSLTransformer.Resolver resolver, String name) {
+    try {
+      InputStream is = resolver.open(name);
+      try {
+        MessageDigest md = newDigest();
+        byte[] buf = new byte[8192];
+        for (int n; (n = is.read(buf)) > 0; ) {
+          md.update(buf, 0, n);
+        }
+        return toHex(md.digest());
+      } finally {
+        is.close();
+      }
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  private static String hash(String s) {
+    try {
+      return toHex(newDigest().digest(s.getBytes("UTF-8")));
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException("UTF-8 is not supported", e);
+    }
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("SHA-1 is not supported", e);
+    }
+  }
+
+  private static String toHex(byte[] b) {
+    StringBuffer buf = new StringBuffer(2 * b.length);
+    for (int i = 0; i < b.length; i++) {
+      buf.append(Character.forDigit((b[i] >> 4) & 0xf, 16));
+      buf.append(Character.forDigit(b[i] & 0xf, 16));
+    }
+    return buf.toString();
+  }
+}
@@ -32,6 +32,7 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 
 import org.cougaar.bootstrap.SystemProperties;
 
@@ -73,6 +74,10 @@ import org.cougaar.bootstrap.SystemProperties;
  *    file's optional parameter:
  *       &lt;xsl:param name="foo"&gt;my_default&lt;/xsl:param&gt;
  * </pre>
+ * <p>
+ * If the "org.cougaar.society.cache" system property is true, parse
+ * results are saved in the {@link XMLConfigCache}, so a node
+ * restarted with unchanged XML and XSL files skips the transform.
  */ 
 public final class XMLConfigParser {
 
@@ -110,6 +115,19 @@ public final class XMLConfigParser {
 
     XSLTransformer xslt = new XSLTransformer();
 
+    Map xsl_params = override_params(XSL_PARAMS, param_overrides);
+
+    XMLConfigCache cache = null;
+    if (XMLConfigCache.isEnabled()) {
+      cache = new XMLConfigCache(
+          getCacheKey(filename, nodename, agentname, xsl_params),
+          xslt.getResolver());
+      Map ret = cache.load();
+      if (ret != null) {
+        return ret;
+      }
+    }
+
     // set xml filename
     xslt.setXMLFileName(filename);
 
@@ -120,10 +138,8 @@ public final class XMLConfigParser {
     xslt.setDynamicXSLFileName(DYNAMIC_XSL_FILE_NAME);
 
     // override some of the default XSL params:
-    xslt.setDefaultXSLParams(
-        override_params(XSL_PARAMS, param_overrides));
-    xslt.setDynamicXSLParams(
-        override_params(XSL_PARAMS, param_overrides));
+    xslt.setDefaultXSLParams(xsl_params);
+    xslt.setDynamicXSLParams(xsl_params);
 
     // set our sax handler
     XMLConfigHandler handler =
@@ -158,9 +174,30 @@ public final class XMLConfigParser {
     // ask handler for agents
     Map ret = handler.getAgents(); 
 
+    if (cache != null) {
+      cache.store(xslt.getInputFileNames(), ret);
+    }
+
     return ret;
   }
 
+  /** Describe all the settings that affect the parse result */
+  private static String getCacheKey(
+      String filename,
+      String nodename,
+      String agentname,
+      Map xsl_params) {
+    return
+      "file="+filename+
+      "\nnode="+nodename+
+      "\nagent="+agentname+
+      "\nvalidate="+VALIDATE+
+      "\ncheckXML="+USE_XML_STYLESHEET+
+      "\ndefaultXSL="+DEFAULT_XSL_FILE_NAME+
+      "\ndynamicXSL="+DYNAMIC_XSL_FILE_NAME+
+      "\nparams="+new TreeMap(xsl_params);
+  }
+
   /**
    * Utility method to find all system properties with the specified
    * prefix and create an unmodifiable map of the trailing
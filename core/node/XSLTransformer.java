@@ -33,7 +33,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 
 import javax.xml.transform.Source;
@@ -104,11 +108,19 @@ import org.xml.sax.helpers.XMLReaderFactory;
  * to "society.xsl".  Next the XML file is re-transform with these
  * included template rules.
  * <p> 
+ * The compiled "default" and "dynamic" XSL stylesheets are cached
+ * and shared by all instances in the JVM, so later parses skip the
+ * stylesheet compilation. A cached stylesheet is compiled again if
+ * the content of the XSL file or any file it includes has changed.
+ * <p> 
  * Note that this class is <i>not</i> thread-safe!  Clients should
  * create a new instance per call or use an outer synchronize lock.
  */ 
 public class XSLTransformer {
 
+  /** Map from XSL file name to CachedTemplates */
+  private static final Map templatesCache = new HashMap();
+
   private final Logger logger = Logging.getLogger(getClass());
 
   private String xml_input_file;
@@ -128,6 +140,8 @@ public class XSLTransformer {
   private Thread t1_pipe_thread;
   private TransformerHandler t2_transformer_handler;
 
+  private List inputs;
+
   public XSLTransformer() {
     resolver = new ConfigFinderBasedResolver(ConfigFinder.getInstance());
   }
@@ -234,6 +248,18 @@ public class XSLTransformer {
     return resolver;
   }
 
+  /**
+   * Get the names of the files read by the last {@link #parse},
+   * including XSL includes and entities, as they were passed to the
+   * resolver.
+   */
+  public List getInputFileNames() {
+    if (inputs == null) {
+      return null;
+    }
+    return new ArrayList(new LinkedHashSet(inputs));
+  }
+
   @Override
 public String toString() {
     return 
@@ -267,6 +293,11 @@ public String toString() {
 
     assertIsFullyConfigured();
 
+    // record the files we read
+    inputs = new ArrayList();
+    Resolver original_resolver = resolver;
+    resolver = new RecordingResolver(original_resolver, inputs);
+
     try {
       // create logger
       if (logger.isInfoEnabled()) {
@@ -339,6 +370,7 @@ public String toString() {
 
     } finally {
       // cleanup
+      resolver = original_resolver;
       saxTFactory = null; 
       xml_reader = null; 
       t1_pipe_thread = null;
@@ -415,6 +447,10 @@ public String toString() {
       return;
     }
 
+    if (stylesheet_source.getSystemId() != null) {
+      inputs.add(stylesheet_source.getSystemId());
+    }
+
     t2_transformer_handler =
       saxTFactory.newTransformerHandler(
           stylesheet_source);
@@ -429,12 +465,50 @@ public String toString() {
           "Using default XSL stylesheet: "+t2_xsl_input_file);
     }
 
-    InputStream t2_xsl_input_stream =
-      resolver.open(t2_xsl_input_file);
-
     t2_transformer_handler =
       saxTFactory.newTransformerHandler(
-          new StreamSource(t2_xsl_input_stream));
+          getTemplates(t2_xsl_input_file));
+  }
+
+  /**
+   * Get the compiled XSL file from the JVM-wide cache, compiling it
+   * if it's not cached or any of the files it read has changed.
+   */
+  private Templates getTemplates(String xsl_file_name)
+    throws IOException, TransformerConfigurationException {
+    // read the files without recording them in our inputs
+    Resolver r =
+      (resolver instanceof RecordingResolver ?
+       ((RecordingResolver) resolver).resolver :
+       resolver);
+    CachedTemplates ct;
+    synchronized (templatesCache) {
+      ct = (CachedTemplates) templatesCache.get(xsl_file_name);
+    }
+    if (ct != null && !ct.isCurrent(r)) {
+      if (logger.isInfoEnabled()) {
+        logger.info("Recompiling changed XSL stylesheet: "+xsl_file_name);
+      }
+      ct = null;
+    }
+    if (ct != null) {
+      if (logger.isDebugEnabled()) {
+        logger.debug("Using compiled XSL stylesheet: "+xsl_file_name);
+      }
+      // the files we would have read
+      inputs.addAll(ct.inputs);
+      return ct.templates;
+    }
+    int n = inputs.size();
+    InputStream xsl_input_stream = resolver.open(xsl_file_name);
+    Templates templates =
+      saxTFactory.newTemplates(new StreamSource(xsl_input_stream));
+    ct = new CachedTemplates(
+        templates, new ArrayList(inputs.subList(n, inputs.size())), r);
+    synchronized (templatesCache) {
+      templatesCache.put(xsl_file_name, ct);
+    }
+    return templates;
   }
 
   private void findDynamicTransformerHandler() 
@@ -477,14 +551,9 @@ public String toString() {
       t1_xml_input_stream =
         resolver.open(xml_input_file);
 
-      // open preprocessing xsl file
-      InputStream t1_xsl_input_stream =
-        resolver.open(t1_xsl_input_file);
-
-      // create outer transform handler
-      t1_transformer = 
-        saxTFactory.newTransformer(
-            new StreamSource(t1_xsl_input_stream));
+      // create outer transform handler from the preprocessing xsl
+      // file
+      t1_transformer = getTemplates(t1_xsl_input_file).newTransformer();
       t1_transformer.setURIResolver(resolver);
 
       // set optional xsl parameters
@@ -641,6 +710,72 @@ public String toString() {
         }
   }
 
+  /**
+   * A compiled XSL file and the files read to compile it, with the
+   * content hash of each file when it was compiled.
+   */
+  private static final class CachedTemplates {
+    private final Templates templates;
+    private final List inputs;
+    private final String[] digests;
+    public CachedTemplates(
+        Templates templates, List inputs, Resolver resolver) {
+      this.templates = templates;
+      this.inputs = inputs;
+      this.digests = digest(resolver);
+    }
+    /** @return true if none of the files has changed */
+    public boolean isCurrent(Resolver resolver) {
+      String[] d = digest(resolver);
+      for (int i = 0; i < d.length; i++) {
+        if (d[i] == null || !d[i].equals(digests[i])) {
+          return false;
+        }
+      }
+      return true;
+    }
+    private String[] digest(Resolver resolver) {
+      String[] d = new String[inputs.size()];
+      for (int i = 0; i < d.length; i++) {
+        d[i] = XMLConfigCache.digest(resolver, (String) inputs.get(i));
+      }
+      return d;
+    }
+  }
+
+  /**
+   * {@link XSLTransformer.Resolver} wrapper that records the names
+   * of the files it opens.
+   */
+  private static final class RecordingResolver
+      implements Resolver {
+        private final Resolver resolver;
+        private final List names;
+
+        public RecordingResolver(Resolver resolver, List names) {
+          this.resolver = resolver;
+          this.names = names;
+        }
+
+        public InputStream open(String aURL) throws IOException {
+          names.add(aURL);
+          return resolver.open(aURL);
+        }
+
+        public InputSource resolveEntity(
+            String publicId, String systemId)
+          throws SAXException, IOException {
+          names.add(systemId);
+          return resolver.resolveEntity(publicId, systemId);
+        }
+
+        public Source resolve(String href, String base)
+          throws TransformerException {
+          names.add(href);
+          return resolver.resolve(href, base);
+        }
+  }
+
   /**
    * An {@link InputStream} resolver for reading files referenced
    * in XSL/XML.
@@ -253,6 +253,8 @@ public class BlackboardPersistence implements Persistence {
    * outboxes which are in undistributedEnvelopes.
    * @param undistributedEnvelopes Envelopes that have not yet been distributed
    * @param subscriberStates The subscriber states to record
+   * @param committed Run once the delta has been committed or has
+   * failed, possibly after this method returns
    */
   public PersistenceObject persist(List epochEnvelopes,
                                    List undistributedEnvelopes,
@@ -260,7 +262,8 @@ public class BlackboardPersistence implements Persistence {
                                    boolean returnBytes,
                                    boolean full,
                                    MessageManager messageManager,
-                                   Object quiescenceMonitorState)
+                                   Object quiescenceMonitorState,
+                                   Runnable committed)
   {
     MyMetaData meta = new MyMetaData();
     meta.undistributedEnvelopes = copyAndRemoveNotPersistable(undistributedEnvelopes);
@@ -285,7 +288,7 @@ public class BlackboardPersistence implements Persistence {
     }
     clientData.add(meta);
     epochEnvelopes.clear();     // Allow gc
-    PersistenceObject result = persistenceService.persist(returnBytes, full);
+    PersistenceObject result = persistenceService.persist(returnBytes, full, committed);
     clientData.clear();
     return result;
   }
@@ -193,6 +193,10 @@ public void unlockOwnership() throws PersistenceException {
 
   protected abstract boolean rename(File from, File to);
 
+  protected File getPersistenceDirectory() {
+    return persistenceDirectory;
+  }
+
   private File getSequenceFile(String suffix) {
     return new File(persistenceDirectory, SEQUENCE + suffix);
   }
@@ -255,7 +259,7 @@ public void unlockOwnership() throws PersistenceException {
     return (SequenceNumbers[]) result.toArray(new SequenceNumbers[result.size()]);
   }
 
-  private void writeSequenceNumbers(SequenceNumbers sequenceNumbers, String suffix) {
+  protected void writeSequenceNumbers(SequenceNumbers sequenceNumbers, String suffix) {
     try {
       File sequenceFile = getSequenceFile(suffix);
       File newSequenceFile = getNewSequenceFile(suffix);
@@ -0,0 +1,523 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+package org.cougaar.core.persist;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.cougaar.bootstrap.SystemProperties;
+import org.cougaar.util.log.Logger;
+
+/**
+ * This {@link PersistencePlugin} appends deltas to preallocated,
+ * memory-mapped segment files instead of writing one file per delta.
+ * <p>
+ * Each segment starts with a small header holding the offset of the
+ * segment's latest index footer. The footer maps every delta in the
+ * segment to its offset, length, and CRC32 checksum. A new delta is
+ * written after the previous footer, followed by a new footer, and
+ * only then is the header updated, so a crash part way through a
+ * delta leaves the previous index intact. Both the delta and the
+ * footer are forced to disk before finishOutputStream returns.
+ * <p>
+ * A new segment is started for every full delta and whenever the
+ * current segment has grown past the segment size. A segment file is
+ * deleted once none of its deltas are referenced by any sequence
+ * file, which normally happens right after the following
+ * consolidation. Rehydration reads deltas directly from read-only
+ * mappings of the segment files.
+ * <p>
+ * Sequence numbers, ownership, and data protection keys are kept in
+ * ordinary files exactly as with {@link FilePersistence}, and the
+ * same parameters are accepted, plus an optional
+ * <code>segmentSize=</code> parameter.
+ *
+ * @property org.cougaar.core.persistence.segmentSize
+ * The number of bytes to preallocate for each segment file
+ * (default 16MB). A delta that overflows the preallocated space
+ * extends the segment; the next delta then starts a new segment.
+ */
+public class MappedFilePersistence extends FilePersistence {
+  private static final String SEGMENT = "segment";
+  private static final int SEGMENT_MAGIC = 0x43534547; // "CSEG"
+  private static final int SEGMENT_VERSION = 1;
+  private static final int FOOTER_MAGIC = 0x43494458; // "CIDX"
+  private static final int FOOTER_OFFSET_POSITION = 8;
+  private static final int HEADER_SIZE = 16;
+  private static final int FOOTER_HEADER_SIZE = 8;
+  private static final int ENTRY_SIZE = 24;
+  private static final int MIN_EXTENT = 64 * 1024;
+  private static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+  /**
+   * Where to find one delta.
+   */
+  private static class Entry {
+    Segment segment;
+    int deltaNumber;
+    long offset;
+    int length;
+    long crc;
+
+    Entry(Segment segment, int deltaNumber, long offset, int length, long crc) {
+      this.segment = segment;
+      this.deltaNumber = deltaNumber;
+      this.offset = offset;
+      this.length = length;
+      this.crc = crc;
+    }
+  }
+
+  /**
+   * One segment file. Only the segment currently being appended to
+   * has an open channel.
+   */
+  private static class Segment {
+    File file;
+    List entries = new ArrayList();
+    long end = HEADER_SIZE;     // Where the next delta will be written
+    long capacity;              // The current length of the file
+    int live;                   // The number of entries still referenced
+    RandomAccessFile raf;
+    FileChannel channel;
+    MappedByteBuffer header;
+
+    Segment(File file) {
+      this.file = file;
+    }
+
+    /**
+     * Create and preallocate a new, empty segment file.
+     */
+    static Segment create(File file, long capacity) throws IOException {
+      Segment segment = new Segment(file);
+      segment.raf = new RandomAccessFile(file, "rw");
+      segment.raf.setLength(capacity);
+      segment.capacity = capacity;
+      segment.channel = segment.raf.getChannel();
+      segment.header = segment.channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+      segment.header.putInt(SEGMENT_MAGIC);
+      segment.header.putInt(SEGMENT_VERSION);
+      segment.header.putLong(0L);
+      segment.header.force();
+      return segment;
+    }
+
+    /**
+     * Read the index of an existing segment file.
+     */
+    static Segment read(File file) throws IOException {
+      Segment segment = new Segment(file);
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+        segment.capacity = raf.length();
+        if (raf.readInt() != SEGMENT_MAGIC) {
+          throw new IOException("Not a segment file: " + file);
+        }
+        int version = raf.readInt();
+        if (version != SEGMENT_VERSION) {
+          throw new IOException("Unsupported segment version " + version + ": " + file);
+        }
+        long footerOffset = raf.readLong();
+        if (footerOffset == 0L) return segment; // Empty
+        raf.seek(footerOffset);
+        if (raf.readInt() != FOOTER_MAGIC) {
+          throw new IOException("Corrupt segment index: " + file);
+        }
+        int count = raf.readInt();
+        for (int i = 0; i < count; i++) {
+          int deltaNumber = raf.readInt();
+          long offset = raf.readLong();
+          int length = raf.readInt();
+          long crc = raf.readLong();
+          segment.entries.add(new Entry(segment, deltaNumber, offset, length, crc));
+        }
+        segment.end = footerOffset + FOOTER_HEADER_SIZE + ENTRY_SIZE * count;
+        return segment;
+      } finally {
+        raf.close();
+      }
+    }
+
+    /**
+     * Record a newly written delta. The new footer is written
+     * immediately after the delta and forced to disk before the
+     * header is pointed at it.
+     */
+    /**
+     * Add an entry to the footer. If this fails the entry is
+     * dropped and the footer of the previous entries stays in
+     * effect.
+     */
+    void append(Entry entry) throws IOException {
+      entries.add(entry);
+      try {
+        writeFooter(entry);
+      } catch (IOException ioe) {
+        entries.remove(entries.size() - 1);
+        throw ioe;
+      }
+    }
+
+    private void writeFooter(Entry entry) throws IOException {
+      long footerOffset = entry.offset + entry.length;
+      int footerSize = FOOTER_HEADER_SIZE + ENTRY_SIZE * entries.size();
+      MappedByteBuffer footer =
+        channel.map(FileChannel.MapMode.READ_WRITE, footerOffset, footerSize);
+      footer.putInt(FOOTER_MAGIC);
+      footer.putInt(entries.size());
+      for (int i = 0, n = entries.size(); i < n; i++) {
+        Entry e = (Entry) entries.get(i);
+        footer.putInt(e.deltaNumber);
+        footer.putLong(e.offset);
+        footer.putInt(e.length);
+        footer.putLong(e.crc);
+      }
+      footer.force();
+      header.putLong(FOOTER_OFFSET_POSITION, footerOffset);
+      header.force();
+      end = footerOffset + footerSize;
+      capacity = Math.max(capacity, end);
+    }
+
+    void close() {
+      if (raf != null) {
+        try {
+          raf.close();
+        } catch (IOException ioe) {
+          // Nothing we can do about it
+        }
+        raf = null;
+        channel = null;
+        header = null;
+      }
+    }
+  }
+
+  /**
+   * Writes one delta directly into a mapping of the current segment,
+   * remapping a larger region if the delta outgrows it.
+   */
+  private static class SegmentOutputStream extends OutputStream {
+    private Segment segment;
+    private long start;
+    private MappedByteBuffer buffer;
+    private CRC32 crc = new CRC32();
+
+    SegmentOutputStream(Segment segment) throws IOException {
+      this.segment = segment;
+      this.start = segment.end;
+      buffer = map(Math.max(segment.capacity - start, MIN_EXTENT));
+    }
+
+    private MappedByteBuffer map(long size) throws IOException {
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("Delta too large for " + segment.file);
+      }
+      MappedByteBuffer result =
+        segment.channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+      segment.capacity = Math.max(segment.capacity, start + size);
+      return result;
+    }
+
+    private void ensureCapacity(int n) throws IOException {
+      if (buffer.remaining() < n) {
+        int position = buffer.position();
+        buffer = map(Math.max(2L * buffer.capacity(), (long) position + n));
+        buffer.position(position);
+      }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      ensureCapacity(1);
+      buffer.put((byte) b);
+      crc.update(b);
+    }
+
+    @Override
+    public void write(byte[] b, int offset, int nbytes) throws IOException {
+      ensureCapacity(nbytes);
+      buffer.put(b, offset, nbytes);
+      crc.update(b, offset, nbytes);
+    }
+
+    Entry finish(int deltaNumber) {
+      buffer.force();
+      return new Entry(segment, deltaNumber, start, buffer.position(), crc.getValue());
+    }
+  }
+
+  /**
+   * Reads one delta from a read-only mapping of its segment.
+   */
+  private static class MappedInputStream extends InputStream {
+    private ByteBuffer buffer;
+
+    MappedInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      if (!buffer.hasRemaining()) return -1;
+      return buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int offset, int nbytes) {
+      if (nbytes == 0) return 0;
+      if (!buffer.hasRemaining()) return -1;
+      int n = Math.min(nbytes, buffer.remaining());
+      buffer.get(b, offset, n);
+      return n;
+    }
+
+    @Override
+    public long skip(long n) {
+      int skipped = (int) Math.max(0L, Math.min(n, buffer.remaining()));
+      buffer.position(buffer.position() + skipped);
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+
+  private static long checksum(ByteBuffer buffer) {
+    CRC32 crc = new CRC32();
+    byte[] chunk = new byte[8192];
+    ByteBuffer b = buffer.duplicate();
+    while (b.hasRemaining()) {
+      int n = Math.min(chunk.length, b.remaining());
+      b.get(chunk, 0, n);
+      crc.update(chunk, 0, n);
+    }
+    return crc.getValue();
+  }
+
+  private long segmentSize =
+    SystemProperties.getInt(PERSISTENCE_SEGMENT_SIZE_PROP, DEFAULT_SEGMENT_SIZE);
+  private List segments = new ArrayList();
+  private Map index = new HashMap(); // Integer delta number -> Entry
+  private Segment currentSegment;
+  private SegmentOutputStream currentOutput;
+  private int deltaNumber;      // The number of the delta being written
+
+  @Override
+  protected void handleParameter(String param) {
+    String value;
+    if ((value = parseParamValue(param, PERSISTENCE_SEGMENT_SIZE_PREFIX)) != null) {
+      segmentSize = Integer.parseInt(value);
+    } else {
+      super.handleParameter(param);
+    }
+  }
+
+  @Override
+  public void init(PersistencePluginSupport pps,
+                   String name,
+                   String[] params,
+                   boolean deleteOldPersistence)
+    throws PersistenceException
+  {
+    super.init(pps, name, params, deleteOldPersistence);
+    if (segmentSize < MIN_EXTENT) segmentSize = MIN_EXTENT;
+    loadSegments();
+  }
+
+  /**
+   * Read the index of every segment file and discard the segments
+   * holding no delta that is named by a sequence file.
+   */
+  private synchronized void loadSegments() {
+    Logger ls = pps.getLogger();
+    Set live = new HashSet();
+    SequenceNumbers[] sequenceNumbers = readSequenceNumbers("");
+    for (int i = 0; i < sequenceNumbers.length; i++) {
+      for (int n = sequenceNumbers[i].first; n < sequenceNumbers[i].current; n++) {
+        live.add(Integer.valueOf(n));
+      }
+    }
+    File[] files = getPersistenceDirectory().listFiles(new FilenameFilter() {
+        public boolean accept(File dir, String path) {
+          return path.startsWith(SEGMENT);
+        }
+      });
+    for (int i = 0; i < files.length; i++) {
+      Segment segment;
+      try {
+        segment = Segment.read(files[i]);
+      } catch (IOException ioe) {
+        ls.error("Error reading " + files[i], ioe);
+        continue;
+      }
+      for (int j = 0, n = segment.entries.size(); j < n; j++) {
+        Entry entry = (Entry) segment.entries.get(j);
+        Integer key = Integer.valueOf(entry.deltaNumber);
+        if (live.contains(key)) {
+          index.put(key, entry);
+          segment.live++;
+        }
+      }
+      if (segment.live == 0) {
+        deleteSegment(segment);
+      } else {
+        segments.add(segment);
+        if (ls.isInfoEnabled()) {
+          ls.info("Found " + segment.live + " deltas in " + segment.file);
+        }
+      }
+    }
+  }
+
+  private void deleteSegment(Segment segment) {
+    Logger ls = pps.getLogger();
+    segment.close();
+    segments.remove(segment);
+    if (segment.file.delete()) {
+      if (ls.isInfoEnabled()) ls.info("Deleted " + segment.file);
+    } else {
+      ls.error("Failed to delete " + segment.file);
+    }
+  }
+
+  private File getSegmentFile(int sequence) {
+    return new File(getPersistenceDirectory(),
+                    SEGMENT + PersistenceServiceComponent.formatDeltaNumber(sequence));
+  }
+
+  @Override
+  public synchronized void cleanupOldDeltas(SequenceNumbers cleanupNumbers) {
+    for (int deltaNumber = cleanupNumbers.first; deltaNumber < cleanupNumbers.current; deltaNumber++) {
+      Entry entry = (Entry) index.remove(Integer.valueOf(deltaNumber));
+      if (entry == null) continue;
+      Segment segment = entry.segment;
+      if (--segment.live == 0 && segment != currentSegment) {
+        deleteSegment(segment);
+      }
+    }
+  }
+
+  @Override
+  public synchronized OutputStream openOutputStream(int deltaNumber, boolean full)
+    throws IOException
+  {
+    Logger ls = pps.getLogger();
+    this.deltaNumber = deltaNumber;
+    if (currentSegment != null
+        && !currentSegment.entries.isEmpty()
+        && (full || currentSegment.end >= segmentSize)) {
+      currentSegment.close();
+      if (currentSegment.live == 0) deleteSegment(currentSegment);
+      currentSegment = null;
+    }
+    if (currentSegment == null) {
+      File file = getSegmentFile(deltaNumber);
+      currentSegment = Segment.create(file, segmentSize);
+      segments.add(currentSegment);
+    }
+    if (ls.isInfoEnabled()) {
+      ls.info("Persist to " + currentSegment.file + " at " + currentSegment.end);
+    }
+    currentOutput = new SegmentOutputStream(currentSegment);
+    return currentOutput;
+  }
+
+  @Override
+  public synchronized void finishOutputStream(SequenceNumbers retainNumbers,
+                                              boolean full)
+  {
+    SegmentOutputStream output = currentOutput;
+    currentOutput = null;
+    Entry entry = output.finish(deltaNumber);
+    try {
+      entry.segment.append(entry);
+    } catch (IOException ioe) {
+      // Fail the delta, as a failed rename would on the file path
+      throw new RuntimeException("Unable to write index of " + entry.segment.file, ioe);
+    }
+    index.put(Integer.valueOf(deltaNumber), entry);
+    entry.segment.live++;
+    writeSequenceNumbers(retainNumbers, "");
+    if (full) writeSequenceNumbers(retainNumbers,
+                                   PersistenceServiceComponent.formatDeltaNumber(retainNumbers.first));
+  }
+
+  @Override
+  public synchronized void abortOutputStream(SequenceNumbers retainNumbers) {
+    // The space is reused by the next delta
+    currentOutput = null;
+  }
+
+  @Override
+  public InputStream openInputStream(int deltaNumber) throws IOException {
+    Entry entry;
+    synchronized (this) {
+      entry = (Entry) index.get(Integer.valueOf(deltaNumber));
+    }
+    if (entry == null) {
+      throw new FileNotFoundException("No delta "
+                                      + PersistenceServiceComponent.formatDeltaNumber(deltaNumber)
+                                      + " in " + getPersistenceDirectory());
+    }
+    Logger ls = pps.getLogger();
+    if (ls.isInfoEnabled()) {
+      ls.info("rehydrate " + entry.segment.file + " at " + entry.offset);
+    }
+    RandomAccessFile raf = new RandomAccessFile(entry.segment.file, "r");
+    MappedByteBuffer buffer;
+    try {
+      buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, entry.offset, entry.length);
+    } finally {
+      raf.close();              // The mapping remains valid
+    }
+    if (checksum(buffer) != entry.crc) {
+      throw new IOException("Checksum mismatch for delta "
+                            + PersistenceServiceComponent.formatDeltaNumber(deltaNumber)
+                            + " in " + entry.segment.file);
+    }
+    return new MappedInputStream(buffer);
+  }
+}
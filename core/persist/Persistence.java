@@ -46,6 +46,8 @@ public interface Persistence {
    * @param undistributedEnvelopes Envelopes that the distribute is about to distribute
    * @param allEpochEnvelopes All envelopes from this epoch
    * @param subscriberStates The subscriber states to record
+   * @param committed Run once the delta has been committed or has
+   * failed, possibly after this method returns
    */
     PersistenceObject persist(List undistributedEnvelopes,
                               List allEpochEnvelopes,
@@ -53,7 +55,8 @@ public interface Persistence {
                               boolean returnBytes,
                               boolean full,
                               MessageManager messageManager,
-                              Object quiescenceMonitorState);
+                              Object quiescenceMonitorState,
+                              Runnable committed);
 
     /**
      * Get the rehydration envelope from the most recent persisted state.
@@ -0,0 +1,595 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+package org.cougaar.core.persist;
+
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Optional compression of persistence deltas. A compressed delta
+ * starts with a small header naming the codec, followed by
+ * independently compressed blocks. Uncompressed deltas have no header
+ * and start with the Java serialization stream magic, so {@link
+ * #getInputStream} can tell them apart and old deltas still rehydrate.
+ * <p>
+ * The codec is chosen by the "codec=" parameter of a persistence
+ * plugin, or the org.cougaar.core.persistence.codec system property.
+ * Recognized values are "none", "lz" (a fast, pure Java LZ77 codec),
+ * "deflate" and "deflate:<i>level</i>".
+ */
+abstract class PersistenceCodec {
+  static final String NONE = "none";
+  static final String LZ = "lz";
+  static final String DEFLATE = "deflate";
+
+  // 0xACED starts every serialization stream, so this can't be confused
+  private static final byte[] MAGIC = {'C', 'P', 'Z'};
+  private static final int LZ_ID = 1;
+  private static final int DEFLATE_ID = 2;
+
+  private static final int BLOCK_SIZE = 256 * 1024;
+
+  /**
+   * Get the codec for a parameter value.
+   * @return the codec or null for "none"
+   * @throws IllegalArgumentException if the value isn't recognized
+   */
+  static PersistenceCodec forName(String spec) {
+    if (spec == null || spec.equals(NONE)) {
+      return null;
+    }
+    if (spec.equals(LZ)) {
+      return new LZCodec();
+    }
+    if (spec.equals(DEFLATE)) {
+      return new DeflateCodec(Deflater.DEFAULT_COMPRESSION);
+    }
+    if (spec.startsWith(DEFLATE + ":")) {
+      int level = Integer.parseInt(spec.substring(DEFLATE.length() + 1));
+      if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+        throw new IllegalArgumentException("Bad deflate level: " + spec);
+      }
+      return new DeflateCodec(level);
+    }
+    throw new IllegalArgumentException("Unknown persistence codec: " + spec);
+  }
+
+  private static PersistenceCodec forId(int id) throws IOException {
+    switch (id) {
+    case LZ_ID:
+      return new LZCodec();
+    case DEFLATE_ID:
+      return new DeflateCodec(Deflater.DEFAULT_COMPRESSION);
+    default:
+      throw new IOException("Unknown persistence codec id " + id);
+    }
+  }
+
+  abstract String getName();
+
+  abstract int getId();
+
+  /** The largest possible encoding of len bytes */
+  abstract int maxEncodedLength(int len);
+
+  /** @return the length of the encoding in dst */
+  abstract int encode(byte[] src, int len, byte[] dst);
+
+  abstract void decode(byte[] src, int len, byte[] dst, int rawLength)
+    throws IOException;
+
+  /** Release any native resources */
+  void end() {
+  }
+
+  /**
+   * Wrap a delta output stream with this codec, writing the header.
+   */
+  EncodingOutputStream getOutputStream(OutputStream out) throws IOException {
+    return new EncodingOutputStream(this, out);
+  }
+
+  /**
+   * Wrap a delta input stream, decoding it if it starts with a codec
+   * header.
+   */
+  static InputStream getInputStream(InputStream in) throws IOException {
+    PushbackInputStream pin = new PushbackInputStream(in, MAGIC.length + 1);
+    byte[] header = new byte[MAGIC.length + 1];
+    int n = 0;
+    while (n < header.length) {
+      int count = pin.read(header, n, header.length - n);
+      if (count < 0) break;
+      n += count;
+    }
+    if (n < header.length ||
+        header[0] != MAGIC[0] || header[1] != MAGIC[1] || header[2] != MAGIC[2]) {
+      pin.unread(header, 0, n);
+      return pin;
+    }
+    return new DecodingInputStream(forId(header[MAGIC.length]), pin);
+  }
+
+  private static void writeInt(OutputStream out, int v) throws IOException {
+    out.write(v >>> 24);
+    out.write(v >>> 16);
+    out.write(v >>> 8);
+    out.write(v);
+  }
+
+  private static int readInt(InputStream in) throws IOException {
+    int b0 = in.read();
+    int b1 = in.read();
+    int b2 = in.read();
+    int b3 = in.read();
+    if ((b0 | b1 | b2 | b3) < 0) {
+      throw new EOFException("Truncated persistence delta");
+    }
+    return (b0 << 24) | (b1 << 16) | (b2 << 8) | b3;
+  }
+
+  private static void readFully(InputStream in, byte[] buf, int len) throws IOException {
+    int n = 0;
+    while (n < len) {
+      int count = in.read(buf, n, len - n);
+      if (count < 0) {
+        throw new EOFException("Truncated persistence delta");
+      }
+      n += count;
+    }
+  }
+
+  /**
+   * Compresses blocks of BLOCK_SIZE bytes. Each block is written as
+   * its raw length, its encoded length (0 if it's stored raw because
+   * it didn't compress) and the data. A zero raw length ends the
+   * stream. Keeps statistics for {@link PersistenceMetricImpl}.
+   */
+  static class EncodingOutputStream extends FilterOutputStream {
+    private final PersistenceCodec codec;
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private final byte[] encoded;
+    private int count = 0;
+    private long rawSize = 0;
+    private long encodedSize = 0;
+    private long codecNanos = 0;
+    private boolean closed = false;
+
+    EncodingOutputStream(PersistenceCodec codec, OutputStream out) throws IOException {
+      super(out);
+      this.codec = codec;
+      encoded = new byte[codec.maxEncodedLength(BLOCK_SIZE)];
+      out.write(MAGIC);
+      out.write(codec.getId());
+      encodedSize = MAGIC.length + 1;
+    }
+
+    String getCodecName() {
+      return codec.getName();
+    }
+
+    /** The number of bytes written to this stream */
+    long getRawSize() {
+      return rawSize;
+    }
+
+    /** The number of bytes written to the underlying stream */
+    long getEncodedSize() {
+      return encodedSize;
+    }
+
+    /** The time spent compressing */
+    long getCodecNanos() {
+      return codecNanos;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (count == block.length) {
+        writeBlock();
+      }
+      block[count++] = (byte) b;
+      rawSize++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      rawSize += len;
+      while (len > 0) {
+        if (count == block.length) {
+          writeBlock();
+        }
+        int n = Math.min(len, block.length - count);
+        System.arraycopy(b, off, block, count, n);
+        count += n;
+        off += n;
+        len -= n;
+      }
+    }
+
+    private void writeBlock() throws IOException {
+      if (count == 0) {
+        return;
+      }
+      long start = System.nanoTime();
+      int len = codec.encode(block, count, encoded);
+      codecNanos += System.nanoTime() - start;
+      writeInt(out, count);
+      if (len < count) {
+        writeInt(out, len);
+        out.write(encoded, 0, len);
+        encodedSize += 8 + len;
+      } else {
+        writeInt(out, 0);
+        out.write(block, 0, count);
+        encodedSize += 8 + count;
+      }
+      count = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      writeBlock();
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        writeBlock();
+        writeInt(out, 0);
+        encodedSize += 4;
+      } finally {
+        codec.end();
+        out.close();
+      }
+    }
+  }
+
+  private static class DecodingInputStream extends InputStream {
+    private final PersistenceCodec codec;
+    private final InputStream in;
+    private byte[] block = new byte[BLOCK_SIZE];
+    private byte[] encoded = new byte[0];
+    private int count = 0;
+    private int pos = 0;
+    private boolean eof = false;
+
+    DecodingInputStream(PersistenceCodec codec, InputStream in) {
+      this.codec = codec;
+      this.in = in;
+    }
+
+    private boolean fill() throws IOException {
+      while (pos == count) {
+        if (eof) {
+          return false;
+        }
+        int rawLength = readInt(in);
+        if (rawLength == 0) {
+          eof = true;
+          return false;
+        }
+        if (rawLength < 0) {
+          throw new IOException("Corrupt persistence delta block");
+        }
+        if (block.length < rawLength) {
+          block = new byte[rawLength];
+        }
+        int len = readInt(in);
+        if (len == 0) {
+          readFully(in, block, rawLength);
+        } else {
+          if (encoded.length < len) {
+            encoded = new byte[len];
+          }
+          readFully(in, encoded, len);
+          codec.decode(encoded, len, block, rawLength);
+        }
+        count = rawLength;
+        pos = 0;
+      }
+      return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!fill()) {
+        return -1;
+      }
+      return block[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!fill()) {
+        return -1;
+      }
+      int n = Math.min(len, count - pos);
+      System.arraycopy(block, pos, b, off, n);
+      pos += n;
+      return n;
+    }
+
+    @Override
+    public int available() {
+      return count - pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+      codec.end();
+      in.close();
+    }
+  }
+
+  /**
+   * An LZ77 codec in the style of LZ4: each sequence is a token
+   * holding the literal and match lengths, the literals, and a two
+   * byte offset back to the match. Matches are found through a hash of
+   * the next four bytes, so encoding is a single fast pass.
+   */
+  private static class LZCodec extends PersistenceCodec {
+    private static final int MIN_MATCH = 4;
+    private static final int HASH_BITS = 14;
+    private static final int MAX_OFFSET = 0xffff;
+    // Leave room so a match never runs into the final literals
+    private static final int LAST_LITERALS = 5;
+
+    private final int[] table = new int[1 << HASH_BITS];
+
+    @Override
+    String getName() {
+      return LZ;
+    }
+
+    @Override
+    int getId() {
+      return LZ_ID;
+    }
+
+    @Override
+    int maxEncodedLength(int len) {
+      return len + len / 255 + 16;
+    }
+
+    private static int readInt(byte[] b, int i) {
+      return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 |
+        (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+    }
+
+    private static int hash(int v) {
+      return (v * -1640531535) >>> (32 - HASH_BITS);
+    }
+
+    private static int writeLength(byte[] dst, int op, int len) {
+      while (len >= 255) {
+        dst[op++] = (byte) 255;
+        len -= 255;
+      }
+      dst[op++] = (byte) len;
+      return op;
+    }
+
+    private static int writeSequence(byte[] src, int anchor, int literals,
+                                     byte[] dst, int op,
+                                     int offset, int matchLength) {
+      int ml = matchLength - MIN_MATCH;
+      int token = (Math.min(literals, 15) << 4);
+      if (offset > 0) {
+        token |= Math.min(ml, 15);
+      }
+      dst[op++] = (byte) token;
+      if (literals >= 15) {
+        op = writeLength(dst, op, literals - 15);
+      }
+      System.arraycopy(src, anchor, dst, op, literals);
+      op += literals;
+      if (offset > 0) {
+        dst[op++] = (byte) offset;
+        dst[op++] = (byte) (offset >>> 8);
+        if (ml >= 15) {
+          op = writeLength(dst, op, ml - 15);
+        }
+      }
+      return op;
+    }
+
+    @Override
+    int encode(byte[] src, int len, byte[] dst) {
+      java.util.Arrays.fill(table, -1);
+      int ip = 0;
+      int anchor = 0;
+      int op = 0;
+      int limit = len - MIN_MATCH - LAST_LITERALS;
+      while (ip < limit) {
+        int seq = readInt(src, ip);
+        int h = hash(seq);
+        int ref = table[h];
+        table[h] = ip;
+        if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != seq) {
+          ip++;
+          continue;
+        }
+        int matchLength = MIN_MATCH;
+        int max = len - LAST_LITERALS - ip;
+        while (matchLength < max && src[ref + matchLength] == src[ip + matchLength]) {
+          matchLength++;
+        }
+        op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref, matchLength);
+        ip += matchLength;
+        anchor = ip;
+      }
+      return writeSequence(src, anchor, len - anchor, dst, op, 0, 0);
+    }
+
+    private static int readLength(byte[] src, int[] ipRef) {
+      int ip = ipRef[0];
+      int len = 0;
+      int b;
+      do {
+        b = src[ip++] & 0xff;
+        len += b;
+      } while (b == 255);
+      ipRef[0] = ip;
+      return len;
+    }
+
+    @Override
+    void decode(byte[] src, int len, byte[] dst, int rawLength) throws IOException {
+      try {
+        int[] ipRef = new int[1];
+        int ip = 0;
+        int op = 0;
+        while (ip < len) {
+          int token = src[ip++] & 0xff;
+          int literals = token >>> 4;
+          if (literals == 15) {
+            ipRef[0] = ip;
+            literals += readLength(src, ipRef);
+            ip = ipRef[0];
+          }
+          System.arraycopy(src, ip, dst, op, literals);
+          ip += literals;
+          op += literals;
+          if (ip >= len) {
+            break;
+          }
+          int offset = (src[ip] & 0xff) | (src[ip + 1] & 0xff) << 8;
+          ip += 2;
+          int matchLength = token & 15;
+          if (matchLength == 15) {
+            ipRef[0] = ip;
+            matchLength += readLength(src, ipRef);
+            ip = ipRef[0];
+          }
+          matchLength += MIN_MATCH;
+          int ref = op - offset;
+          if (offset == 0 || ref < 0) {
+            throw new IOException("Corrupt LZ block");
+          }
+          // Byte at a time, since the match may overlap the output
+          for (int i = 0; i < matchLength; i++) {
+            dst[op++] = dst[ref++];
+          }
+        }
+        if (op != rawLength) {
+          throw new IOException("Corrupt LZ block");
+        }
+      } catch (IndexOutOfBoundsException e) {
+        throw new IOException("Corrupt LZ block");
+      }
+    }
+  }
+
+  private static class DeflateCodec extends PersistenceCodec {
+    private final int level;
+    private Deflater deflater;
+    private Inflater inflater;
+
+    DeflateCodec(int level) {
+      this.level = level;
+    }
+
+    @Override
+    String getName() {
+      return level == Deflater.DEFAULT_COMPRESSION ? DEFLATE : DEFLATE + ":" + level;
+    }
+
+    @Override
+    int getId() {
+      return DEFLATE_ID;
+    }
+
+    @Override
+    int maxEncodedLength(int len) {
+      return len + len / 1000 + 64;
+    }
+
+    @Override
+    int encode(byte[] src, int len, byte[] dst) {
+      if (deflater == null) {
+        deflater = new Deflater(level);
+      } else {
+        deflater.reset();
+      }
+      deflater.setInput(src, 0, len);
+      deflater.finish();
+      int n = deflater.deflate(dst, 0, dst.length);
+      if (!deflater.finished()) {
+        return len;             // Didn't fit, store it raw
+      }
+      return n;
+    }
+
+    @Override
+    void decode(byte[] src, int len, byte[] dst, int rawLength) throws IOException {
+      if (inflater == null) {
+        inflater = new Inflater();
+      } else {
+        inflater.reset();
+      }
+      inflater.setInput(src, 0, len);
+      try {
+        int n = inflater.inflate(dst, 0, rawLength);
+        if (n != rawLength || !inflater.finished()) {
+          throw new IOException("Corrupt deflate block");
+        }
+      } catch (DataFormatException e) {
+        IOException ioe = new IOException("Corrupt deflate block");
+        ioe.initCause(e);
+        throw ioe;
+      }
+    }
+
+    @Override
+    void end() {
+      if (deflater != null) {
+        deflater.end();
+        deflater = null;
+      }
+      if (inflater != null) {
+        inflater.end();
+        inflater = null;
+      }
+    }
+  }
+}
@@ -34,7 +34,8 @@ import org.cougaar.core.service.PersistenceMetricsService;
  */
 public class PersistenceMetricImpl implements PersistenceMetricsService.Metric {
   private String name;
-  private long startTime, endTime, cpuTime, size;
+  private long startTime, endTime, pauseTime, cpuTime, size;
+  private long rawSize, encodedSize, codecTime;
   private boolean full;
   private Throwable failed;
   private PersistencePlugin plugin;
@@ -49,6 +50,7 @@ public class PersistenceMetricImpl implements PersistenceMetricsService.Metric {
     this.name = name;
     this.startTime = startTime;
     this.endTime = endTime;
+    this.pauseTime = endTime - startTime;
     this.cpuTime = cpuTime;
     this.size = size;
     this.full = full;
@@ -60,11 +62,28 @@ public class PersistenceMetricImpl implements PersistenceMetricsService.Metric {
   PersistenceMetricImpl() {
   }
 
+  void setPauseTime(long pauseTime) {
+    this.pauseTime = pauseTime;
+  }
+
+  void setCodecStats(long rawSize, long encodedSize, long codecTime) {
+    this.rawSize = rawSize;
+    this.encodedSize = encodedSize;
+    this.codecTime = codecTime;
+  }
+
   void average(PersistenceMetricsService.Metric metric) {
     startTime += metric.getStartTime();
     endTime += metric.getEndTime();
+    pauseTime += metric.getPauseTime();
     cpuTime += metric.getCpuTime();
     size += metric.getSize();
+    if (metric instanceof PersistenceMetricImpl) {
+      PersistenceMetricImpl impl = (PersistenceMetricImpl) metric;
+      rawSize += impl.rawSize;
+      encodedSize += impl.encodedSize;
+      codecTime += impl.codecTime;
+    }
     count += 1;
   }
 
@@ -76,10 +95,22 @@ public class PersistenceMetricImpl implements PersistenceMetricsService.Metric {
     return count == 0 ? endTime : endTime / count;
   }
 
+  public long getPauseTime() {
+    return count == 0 ? pauseTime : pauseTime / count;
+  }
+
   public long getSize() {
     return count == 0 ? size : size / count;
   }
 
+  public double getCompressionRatio() {
+    return encodedSize == 0L ? 1.0 : (double) rawSize / encodedSize;
+  }
+
+  public long getCodecTime() {
+    return count == 0 ? codecTime : codecTime / count;
+  }
+
   public long getCpuTime() {
     return count == 0 ? cpuTime : cpuTime / count;
   }
@@ -125,8 +156,10 @@ public String toString() {
       + size
       +" bytes in "
       + (endTime - startTime) + " ms"
+      + ((pauseTime < endTime - startTime) ? (" (" + pauseTime + " ms paused)") : "")
       + ((cpuTime > 0L) ? (" using " + cpuTime) : "")
-      + " ms cpu";
+      + " ms cpu"
+      + ((encodedSize > 0L) ? (", compressed " + encodedSize + " bytes in " + codecTime + " ms") : "");
   }
 }
 
@@ -42,6 +42,7 @@ public class PersistenceMetricsServiceImpl implements PersistenceMetricsService
   private int base = 0;
   private int size = 0;
   private Metric[] metrics = new Metric[MAX_METRICS];
+  private volatile Metric rehydrationMetric;
 
   void addMetric(PersistenceMetricsService.Metric metric) {
     synchronized (metrics) {
@@ -60,6 +61,10 @@ public class PersistenceMetricsServiceImpl implements PersistenceMetricsService
     }
   }
 
+  void setRehydrationMetric(PersistenceMetricsService.Metric metric) {
+    rehydrationMetric = metric;
+  }
+
   /**
    * Get all retained metrics. The maximum number retained is
    * currently a constant MAX_METRICS
@@ -112,5 +117,8 @@ public class PersistenceMetricsServiceImpl implements PersistenceMetricsService
     }
     return 01;
   }
-}
 
+  public Metric getRehydrationMetric() {
+    return rehydrationMetric;
+  }
+}
@@ -28,6 +28,7 @@ package org.cougaar.core.persist;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
@@ -56,8 +57,10 @@ public class PersistenceMetricsServlet extends ServiceUserPlugin {
   };
 
   private static SimpleDateFormat dateFormat;
+  private static DecimalFormat ratioFormat;
   static {
     dateFormat = new SimpleDateFormat("MMM-dd-yyyy HH:mm:ss");
+    ratioFormat = new DecimalFormat("0.00");
   }
 
   private ServletService servletService = null;
@@ -118,6 +121,18 @@ public void execute() {
     return new Long(metric.getEndTime() - metric.getStartTime());
   }
 
+  private static Double getCompressionRatio(PersistenceMetricsService.Metric metric) {
+    return new Double(metric.getCompressionRatio());
+  }
+
+  private static Long getCodecTime(PersistenceMetricsService.Metric metric) {
+    return new Long(metric.getCodecTime());
+  }
+
+  private static Long getPause(PersistenceMetricsService.Metric metric) {
+    return new Long(metric.getPauseTime());
+  }
+
   private static Long getCpu(PersistenceMetricsService.Metric metric) {
     return new Long(metric.getCpuTime());
   }
@@ -205,8 +220,11 @@ public void execute() {
       out.println("    <td><A href=\"?" + getSortParams(rev, sort, "type") + "\">Type</a></td>");
       out.println("    <td><A href=\"?" + getSortParams(rev, sort, "id") + "\">Id</a></td>");
       out.println("    <td><A href=\"?" + getSortParams(rev, sort, "elapsed") + "\">Elapsed (ms)</a></td>");
+      out.println("    <td><A href=\"?" + getSortParams(rev, sort, "pause") + "\">Pause (ms)</a></td>");
       out.println("    <td><A href=\"?" + getSortParams(rev, sort, "cpu") + "\">CPU (ms)</a></td>");
       out.println("    <td><A href=\"?" + getSortParams(rev, sort, "size") + "\">Bytes</a></td>");
+      out.println("    <td><A href=\"?" + getSortParams(rev, sort, "ratio") + "\">Compression</a></td>");
+      out.println("    <td><A href=\"?" + getSortParams(rev, sort, "codec") + "\">Codec (ms)</a></td>");
       out.println("   </tr>");
       PersistenceMetricsService.Metric[] metrics = metricsService.getAll(PersistenceMetricsService.ALL);
       response.setContentType("text/html");
@@ -231,6 +249,18 @@ public void execute() {
         for (int i = 0; i < metrics.length; i++) {
           items[i] = new SortItem(i, getElapsed(metrics[i]));
         }
+      } else if ("ratio".equals(sort)) {
+        for (int i = 0; i < metrics.length; i++) {
+          items[i] = new SortItem(i, getCompressionRatio(metrics[i]));
+        }
+      } else if ("codec".equals(sort)) {
+        for (int i = 0; i < metrics.length; i++) {
+          items[i] = new SortItem(i, getCodecTime(metrics[i]));
+        }
+      } else if ("pause".equals(sort)) {
+        for (int i = 0; i < metrics.length; i++) {
+          items[i] = new SortItem(i, getPause(metrics[i]));
+        }
       } else if ("cpu".equals(sort)) {
         for (int i = 0; i < metrics.length; i++) {
           items[i] = new SortItem(i, getCpu(metrics[i]));
@@ -256,6 +286,10 @@ public void execute() {
                   "Average" + metricsService.getCount(PersistenceMetricsService.DELTA) + ") Delta");
       printMetric(out, metricsService.getAverage(PersistenceMetricsService.ALL),
                   "Average" + metricsService.getCount(PersistenceMetricsService.ALL) + ") All");
+      PersistenceMetricsService.Metric rehydrationMetric = metricsService.getRehydrationMetric();
+      if (rehydrationMetric != null) {
+        printMetric(out, rehydrationMetric, "Rehydration from " + getMedia(rehydrationMetric));
+      }
       out.println("  </table>");
       out.println(" </body>");
       out.println("</html>");
@@ -274,8 +308,11 @@ public void execute() {
       out.println("    <td><p align=\"left\" >" + getName(metric) + "</p></td>");
     }
     out.println("    <td><p align=\"right\">" + getElapsed(metric) + "</p></td>");
+    out.println("    <td><p align=\"right\">" + getPause(metric) + "</p></td>");
     out.println("    <td><p align=\"right\">" + getCpu(metric) + "</p></td>");
     out.println("    <td><p align=\"right\">" + getSize(metric) + "</p></td>");
+    out.println("    <td><p align=\"right\">" + ratioFormat.format(metric.getCompressionRatio()) + "</p></td>");
+    out.println("    <td><p align=\"right\">" + getCodecTime(metric) + "</p></td>");
     out.println("   </tr>");
   }
 }
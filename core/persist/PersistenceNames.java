@@ -49,6 +49,8 @@ interface PersistenceNames {
   final String PERSISTENCE_DB_INTDEF_NAME = "intDef";
   final String PERSISTENCE_DB_LONGBINARYDEF_NAME = "longBinaryDef";
   final String PERSISTENCE_PARAMETERS_NAME = "parameters";
+  final String PERSISTENCE_CODEC_NAME = "codec";
+  final String PERSISTENCE_SEGMENT_SIZE_NAME = "segmentSize";
   final String[] NAMES = {
     PERSISTENCE_ARCHIVE_COUNT_NAME,
     PERSISTENCE_CONSOLIDATION_PERIOD_NAME,
@@ -64,7 +66,9 @@ interface PersistenceNames {
     PERSISTENCE_DB_PASSWORD_NAME,
     PERSISTENCE_DB_INTDEF_NAME,
     PERSISTENCE_DB_LONGBINARYDEF_NAME,
-    PERSISTENCE_PARAMETERS_NAME
+    PERSISTENCE_PARAMETERS_NAME,
+    PERSISTENCE_CODEC_NAME,
+    PERSISTENCE_SEGMENT_SIZE_NAME
   };    
 
   // Simple names with equal signs for "startsWith"
@@ -83,6 +87,8 @@ interface PersistenceNames {
   final String PERSISTENCE_DB_INTDEF_PREFIX            = PERSISTENCE_DB_INTDEF_NAME            + "=";
   final String PERSISTENCE_DB_LONGBINARYDEF_PREFIX     = PERSISTENCE_DB_LONGBINARYDEF_NAME     + "=";
   final String PERSISTENCE_PARAMETERS_PREFIX           = PERSISTENCE_PARAMETERS_NAME           + "=";
+  final String PERSISTENCE_CODEC_PREFIX                = PERSISTENCE_CODEC_NAME                + "=";
+  final String PERSISTENCE_SEGMENT_SIZE_PREFIX         = PERSISTENCE_SEGMENT_SIZE_NAME         + "=";
 
   // Fully-qualified property names
   final String PERSISTENCE_ARCHIVE_COUNT_PROP        = PERSISTENCE_PROP_PREFIX + PERSISTENCE_ARCHIVE_COUNT_NAME;
@@ -100,4 +106,6 @@ interface PersistenceNames {
   final String PERSISTENCE_DB_INTDEF_PROP            = PERSISTENCE_PROP_PREFIX + PERSISTENCE_DB_INTDEF_NAME;
   final String PERSISTENCE_DB_LONGBINARYDEF_PROP     = PERSISTENCE_PROP_PREFIX + PERSISTENCE_DB_LONGBINARYDEF_NAME;
   final String PERSISTENCE_PARAMETERS_PROP           = PERSISTENCE_PROP_PREFIX + PERSISTENCE_PARAMETERS_NAME;
+  final String PERSISTENCE_CODEC_PROP                = PERSISTENCE_PROP_PREFIX + PERSISTENCE_CODEC_NAME;
+  final String PERSISTENCE_SEGMENT_SIZE_PROP         = PERSISTENCE_PROP_PREFIX + PERSISTENCE_SEGMENT_SIZE_NAME;
 }
@@ -195,7 +195,8 @@ public interface PersistencePlugin {
    * @param retainNumbers the numbers of the deltas including the
    * one just written that comprise a complete rehydration set.
    * Subsequent calls to readSequenceNumbers should return these
-   * values.
+   * values. A RuntimeException fails the delta, and the next delta
+   * is full.
    */
   void finishOutputStream(SequenceNumbers retainNumbers, boolean full);
 
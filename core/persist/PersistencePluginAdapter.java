@@ -81,6 +81,10 @@ public abstract class PersistencePluginAdapter implements PersistenceNames {
           if (logger.isDebugEnabled()) logger.debug("consolidationPeriod=" + consolidationPeriod);
           continue;
         }
+        if (param.startsWith(PERSISTENCE_CODEC_PREFIX)) {
+          // Handled by PersistenceServiceComponent
+          continue;
+        }
         if (param.startsWith(PERSISTENCE_DISABLE_WRITE_PREFIX)) {
           writable = !"true".equals(param.substring(PERSISTENCE_DISABLE_WRITE_PREFIX.length()));
           if (logger.isDebugEnabled()) logger.debug("writable=" + writable);
@@ -27,6 +27,7 @@
 package org.cougaar.core.persist;
 
 import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
@@ -65,6 +66,7 @@ import org.cougaar.core.service.DataProtectionService;
 import org.cougaar.core.service.DataProtectionServiceClient;
 import org.cougaar.core.service.PersistenceControlService;
 import org.cougaar.core.service.PersistenceMetricsService;
+import org.cougaar.core.service.ThreadService;
 import org.cougaar.util.CSVUtility;
 import org.cougaar.util.GC;
 import org.cougaar.util.GenericStateModelAdapter;
@@ -136,11 +138,30 @@ import org.cougaar.util.log.Logging;
  * @property org.cougaar.core.persistence.DataProtectionServiceStubEnabled
  * set to true to enable 
  * a debugging implementation of DataProtectionService if no real one is found.
+ *
+ * @property org.cougaar.core.persistence.codec
+ * The default compression codec for persistence deltas: "none" (the
+ * default), "lz" or "deflate[:level]". A plugin's "codec=" parameter
+ * overrides it. Rehydration detects the codec of each delta, so the
+ * codec can be changed between runs.
+ *
+ * @property org.cougaar.core.persistence.backgroundWrite
+ * Set true to write each serialized delta to the persistence plugin's
+ * output stream, and commit it, in a background thread after the
+ * blackboard has been released, rather than while all the agent's
+ * plugins are stalled. The blackboard's acks and messages of the
+ * epoch are held until the delta is committed. The next persist waits
+ * for the previous write, and a failed write forces the next delta to
+ * be full. Don't use this with plugins whose output shares a
+ * transaction with persistence clients, such as DatabasePersistence.
  */
 public class PersistenceServiceComponent
   extends GenericStateModelAdapter
   implements Component, PersistencePluginSupport, PersistenceNames
 {
+  private static final boolean BACKGROUND_WRITE =
+    SystemProperties.getBoolean("org.cougaar.core.persistence.backgroundWrite");
+
   private static final long MIN_PERSISTENCE_INTERVAL = 5000L;
   private static final long MAX_PERSISTENCE_INTERVAL = 1200000L; // 20 minutes max
   private static final String DUMMY_MEDIA_NAME = "dummy";
@@ -213,9 +234,23 @@ public class PersistenceServiceComponent
     PersistencePlugin ppi;
     long nextPersistenceTime;
     SequenceNumbers cleanupSequenceNumbers = null;
+    String codec;
 
     PersistencePluginInfo(PersistencePlugin ppi) {
       this.ppi = ppi;
+      codec = SystemProperties.getProperty(PERSISTENCE_CODEC_PROP, PersistenceCodec.NONE);
+      for (int i = 0, n = ppi.getParamCount(); i < n; i++) {
+        String param = ppi.getParam(i);
+        if (param.startsWith(PERSISTENCE_CODEC_PREFIX)) {
+          codec = param.substring(PERSISTENCE_CODEC_PREFIX.length());
+        }
+      }
+      try {
+        PersistenceCodec.forName(codec);
+      } catch (IllegalArgumentException e) {
+        logger.error(ppi.getName() + ": " + e.getMessage() + ", not compressing");
+        codec = PersistenceCodec.NONE;
+      }
       if (ppi.getPersistenceInterval() <= 0L) {
         setInterval(PERSISTENCE_INTERVAL);
       }
@@ -271,6 +306,37 @@ public class PersistenceServiceComponent
       }
     };
 
+  /**
+   * Counts the bytes read from the persistence plugin during
+   * rehydration.
+   */
+  private class CountingInputStream extends FilterInputStream {
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) rehydrationBytes++;
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int offset, int nbytes) throws IOException {
+      int n = super.read(b, offset, nbytes);
+      if (n > 0) rehydrationBytes += n;
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      rehydrationBytes += skipped;
+      return skipped;
+    }
+  }
+
   private static class PersistenceKeyEnvelope implements DataProtectionKeyEnvelope {
     PersistencePlugin ppi;
     int deltaNumber;
@@ -532,7 +598,12 @@ public void load() {
 
   @Override
 public void unload() {
+    waitForPendingWrite();
     unregisterServices(sb);
+    if (threadService != null) {
+      sb.releaseService(this, ThreadService.class, threadService);
+      threadService = null;
+    }
     if (dataProtectionService != null) {
       sb.releaseService(dataProtectionServiceClient,
                         DataProtectionService.class,
@@ -572,6 +643,7 @@ public void unload() {
   private IdentityTable identityTable;
   private SequenceNumbers sequenceNumbers = null;
   private ObjectOutputStream currentOutput;
+  private PersistenceCodec.EncodingOutputStream currentCodecOutput;
   private List params = new ArrayList();
   private MessageAddress agentId;
   private List associationsToPersist = new ArrayList();
@@ -602,6 +674,7 @@ public void unload() {
 
   private PersistenceMetricsServiceImpl metricsService =
     new PersistenceMetricsServiceImpl();
+  private long rehydrationBytes;
 
   private void addPlugin(PersistencePlugin ppi, String pluginName, String[] pluginParams)
     throws PersistenceException
@@ -709,12 +782,26 @@ public void unload() {
                                       + " "
                                       + rehydrateNumbers.toString());
                         }
+                        String deltaRange = rehydrateNumbers.toString();
+                        long rehydrationStart = System.currentTimeMillis();
+                        rehydrationBytes = 0L;
                         try {
                           while (rehydrateNumbers.first < rehydrateNumbers.current - 1) {
                             rehydrateOneDelta(ppi, rehydrateNumbers.first++, false);
                           }
                           resultPtr[0] =
                             rehydrateOneDelta(ppi, rehydrateNumbers.first++, true);
+                          long rehydrationEnd = System.currentTimeMillis();
+                          PersistenceMetricImpl metric =
+                            new PersistenceMetricImpl(deltaRange,
+                                                      rehydrationStart, rehydrationEnd, 0L,
+                                                      rehydrationBytes, true, null, ppi);
+                          metricsService.setRehydrationMetric(metric);
+                          if (logger.isInfoEnabled()) {
+                            logger.info("Rehydrated " + rehydrationBytes + " bytes in "
+                                        + (rehydrationEnd - rehydrationStart) + "ms from "
+                                        + ppi.getName());
+                          }
                           success = true;
                           break;      // Successful rehydration
                         } catch (Exception e) { // Rehydration failed
@@ -844,12 +931,13 @@ public void unload() {
   private Map rehydrateOneDelta(PersistencePlugin ppi, int deltaNumber, boolean lastDelta)
     throws IOException, ClassNotFoundException
   {
-    InputStream is = ppi.openInputStream(deltaNumber);
+    InputStream is = new CountingInputStream(ppi.openInputStream(deltaNumber));
     DataProtectionService dataProtectionService = getDataProtectionService();
     if (dataProtectionService != null) {
       PersistenceKeyEnvelope keyEnvelope = new PersistenceKeyEnvelope(ppi, deltaNumber);
       is = dataProtectionService.getInputStream(keyEnvelope, is);
     }
+    is = PersistenceCodec.getInputStream(is);
     ObjectInputStream ois = new ObjectInputStream(is);
     try {
       return rehydrateFromStream(ois, deltaNumber, lastDelta);
@@ -1115,6 +1203,30 @@ public void unload() {
 
   private final static Object vmPersistLock = new Object();
 
+  /** Guards pendingWrite */
+  private final Object writeLock = new Object();
+
+  /** The background write of the previous delta, if it's still running */
+  private BackgroundWriter pendingWrite;
+
+  /** For background writes, obtained on first use */
+  private ThreadService threadService;
+
+  /**
+   * Wait for the background write of the previous delta, if any.
+   */
+  private void waitForPendingWrite() {
+    synchronized (writeLock) {
+      while (pendingWrite != null) {
+        try {
+          writeLock.wait();
+        } catch (InterruptedException ie) {
+          // keep waiting
+        }
+      }
+    }
+  }
+
   /**
    * Process the data from all clients. Envelopes and such are put
    * into the identityTable as PersistenceAssociations. The list of
@@ -1154,9 +1266,42 @@ public void unload() {
    * End a persistence epoch by generating a persistence delta.
    */
   PersistenceObject persist(boolean returnBytes, boolean full) {
+    return persist(returnBytes, full, null);
+  }
+
+  /**
+   * End a persistence epoch by generating a persistence delta. With
+   * backgroundWrite, the delta is serialized before this returns but
+   * written and committed afterwards, and committed is run by the
+   * writer once it's done. Otherwise committed is run before this
+   * returns.
+   */
+  PersistenceObject persist(boolean returnBytes, boolean full,
+                            Runnable committed) {
+    waitForPendingWrite();
+    try {
+      return persistDelta(returnBytes, full,
+                          BACKGROUND_WRITE && committed != null);
+    } finally {
+      BackgroundWriter writer;
+      synchronized (writeLock) {
+        writer = pendingWrite;
+      }
+      if (writer != null) {
+        writer.committed = committed;
+        startWriter(writer);
+      } else if (committed != null) {
+        committed.run();
+      }
+    }
+  }
+
+  private PersistenceObject persistDelta(boolean returnBytes, boolean full,
+                                         boolean background) {
     if (isDummy && !returnBytes) {
       return null;
     }
+    currentCodecOutput = null;
     int deltaNumber = -1;
     long startCPU = 0L;
     //startCPU = CpuClock.cpuTimeMillis();
@@ -1169,6 +1314,7 @@ public void unload() {
     Throwable failed = null;
     recomputeNextPersistenceTime = true;
     PersistenceObject result = null; // Return value if wanted
+    BackgroundWriter writer = null; // Background write, if any
     synchronized (identityTable) {
       try {
 	associationsToPersist.clear();
@@ -1283,7 +1429,8 @@ public void unload() {
 	      int estimatedSize = (int)(1.2 * bytesSerialized);
 	      LinkedByteOutputStream returnByteStream = new LinkedByteOutputStream(estimatedSize);
 	      ObjectOutputStream returnOutput = new ObjectOutputStream(returnByteStream);
-	      writeFinalOutput(returnOutput, referenceArrays, stream);
+	      writeFinalOutput(returnOutput, identityTable.getNextId(),
+			       referenceArrays, stream);
 	      returnOutput.close();
 	      result = new PersistenceObject("Persistence state "
 					     + sequenceNumbers.current,
@@ -1295,35 +1442,31 @@ public void unload() {
 	      }
 	    }
 	    if (currentOutput != null) {
-	      writeFinalOutput(currentOutput, referenceArrays, stream);
-	      currentOutput.close();
-	      if (logger.isInfoEnabled()) {
-		logger.info(
-			    "Wrote persistence snapshot to output stream");
+	      if (background && !returnBytes) {
+		// The serialized delta is all the writer needs, so the
+		// blackboard can be released before it is written.
+		writer = new BackgroundWriter(
+		    deltaNumber, identityTable.getNextId(), referenceArrays,
+		    stream, startTime, startCPU, bytesSerialized, full,
+		    currentPersistPluginInfo.ppi);
+	      } else {
+		writeFinalOutput(currentOutput, identityTable.getNextId(),
+				 referenceArrays, stream);
+		currentOutput.close();
+		if (logger.isInfoEnabled()) {
+		  logger.info(
+			      "Wrote persistence snapshot to output stream");
+		}
 	      }
 	    }
 	  } // End of non-dummy persistence
 	  clearMarks(associationsToPersist.iterator());
-          commitTransaction();
-	  logger.printDot("P");
-	  // Cleanup old deltas and archived snapshots. N.B. The
-	  // cleanup is happening to the plugin that was just used.
-	  // When there are several plugins, this is usually different
-	  // from the plugin whose cleanupSequenceNumbers were set
-	  // above. This cleanup has been pending while the various
-	  // other plugins have been in use. This is _ok_! The
-	  // snapshot we just took is invariably a full snapshot.
-	  if (currentPersistPluginInfo.cleanupSequenceNumbers != null) {
-            if (logger.isInfoEnabled()) {
-	      logger.info(
-                          "Consolidated deltas " +
-                          currentPersistPluginInfo.cleanupSequenceNumbers);
-            }
-	    currentPersistPluginInfo.ppi.cleanupOldDeltas(currentPersistPluginInfo.cleanupSequenceNumbers);
-	    currentPersistPluginInfo.ppi.cleanupArchive();
-	    currentPersistPluginInfo.cleanupSequenceNumbers = null;
+	  if (writer == null) {
+	    commitTransaction();
+	    finishTransaction();
 	  }
 	} catch (Exception e) { // Transaction protection
+	  writer = null;
 	  rollbackTransaction();
 	  if (logger.isErrorEnabled()) {
 	    logger.error("Persist failed", e);
@@ -1350,6 +1493,14 @@ public void unload() {
       currentPersistPluginInfo.nextPersistenceTime +=
         currentPersistPluginInfo.ppi.getPersistenceInterval();
     }
+    if (writer != null) {
+      // The writer adds the metric when it's done
+      writer.pauseTime = System.currentTimeMillis() - startTime;
+      synchronized (writeLock) {
+        pendingWrite = writer;
+      }
+      return result;
+    }
     //long finishCPU = CpuClock.cpuTimeMillis();
     long finishCPU = 0l;
     long finishTime = System.currentTimeMillis();
@@ -1358,6 +1509,7 @@ public void unload() {
                                 startTime, finishTime, finishCPU - startCPU,
                                 bytesSerialized, full, failed,
                                 currentPersistPluginInfo.ppi);
+    setCodecStats(metric);
     metricsService.addMetric(metric);
     if (logger.isInfoEnabled()) {
       logger.info(metric.toString());
@@ -1365,12 +1517,141 @@ public void unload() {
     return result;
   }
 
+  /**
+   * Log the delta and clean up after a successful commit.
+   */
+  private void finishTransaction() {
+    logger.printDot("P");
+    // Cleanup old deltas and archived snapshots. N.B. The
+    // cleanup is happening to the plugin that was just used.
+    // When there are several plugins, this is usually different
+    // from the plugin whose cleanupSequenceNumbers were set
+    // above. This cleanup has been pending while the various
+    // other plugins have been in use. This is _ok_! The
+    // snapshot we just took is invariably a full snapshot.
+    if (currentPersistPluginInfo.cleanupSequenceNumbers != null) {
+      if (logger.isInfoEnabled()) {
+        logger.info(
+                    "Consolidated deltas " +
+                    currentPersistPluginInfo.cleanupSequenceNumbers);
+      }
+      currentPersistPluginInfo.ppi.cleanupOldDeltas(currentPersistPluginInfo.cleanupSequenceNumbers);
+      currentPersistPluginInfo.ppi.cleanupArchive();
+      currentPersistPluginInfo.cleanupSequenceNumbers = null;
+    }
+  }
+
+  private void startWriter(BackgroundWriter writer) {
+    if (threadService == null) {
+      threadService = sb.getService(this, ThreadService.class, null);
+    }
+    if (threadService != null) { // use Cougaar threads
+      threadService.getThread(this, writer, "Persistence Writer",
+                              ThreadService.WILL_BLOCK_LANE).start();
+    } else {  // Use regular Java threads
+      new Thread(writer, "Persistence Writer/" + getAgentName()).start();
+    }
+  }
+
+  /**
+   * Writes a serialized delta to the current output stream and
+   * commits it, after persist has released the blackboard. Nothing
+   * else touches the transaction state until the next persist, which
+   * waits for the writer first.
+   */
+  private class BackgroundWriter implements Runnable {
+    private final int deltaNumber;
+    private final int nextId;
+    private final PersistenceReference[][] referenceArrays;
+    private final PersistenceOutputStream stream;
+    private final long startTime;
+    private final long startCPU;
+    private final int bytesSerialized;
+    private final boolean full;
+    private final PersistencePlugin ppi;
+    private long pauseTime;
+    private Runnable committed;
+
+    BackgroundWriter(int deltaNumber, int nextId,
+                     PersistenceReference[][] referenceArrays,
+                     PersistenceOutputStream stream,
+                     long startTime, long startCPU,
+                     int bytesSerialized, boolean full,
+                     PersistencePlugin ppi) {
+      this.deltaNumber = deltaNumber;
+      this.nextId = nextId;
+      this.referenceArrays = referenceArrays;
+      this.stream = stream;
+      this.startTime = startTime;
+      this.startCPU = startCPU;
+      this.bytesSerialized = bytesSerialized;
+      this.full = full;
+      this.ppi = ppi;
+    }
+
+    public void run() {
+      Throwable failed = null;
+      try {
+        try {
+          writeFinalOutput(currentOutput, nextId, referenceArrays, stream);
+          currentOutput.close();
+          if (logger.isInfoEnabled()) {
+            logger.info("Wrote persistence snapshot to output stream");
+          }
+          commitTransaction();
+          finishTransaction();
+        } catch (Exception e) {
+          failed = e;
+          // The delta's objects are no longer marked, so the next
+          // delta must be full.
+          previousPersistFailed = true;
+          rollbackTransaction();
+          if (logger.isErrorEnabled()) {
+            logger.error("Persist failed", e);
+          }
+          logger.printDot("X");
+        }
+        //long finishCPU = CpuClock.cpuTimeMillis();
+        long finishCPU = 0l;
+        long finishTime = System.currentTimeMillis();
+        PersistenceMetricImpl metric =
+          new PersistenceMetricImpl(formatDeltaNumber(deltaNumber),
+                                    startTime, finishTime, finishCPU - startCPU,
+                                    bytesSerialized, full, failed, ppi);
+        metric.setPauseTime(pauseTime);
+        setCodecStats(metric);
+        metricsService.addMetric(metric);
+        if (logger.isInfoEnabled()) {
+          logger.info(metric.toString());
+        }
+      } finally {
+        synchronized (writeLock) {
+          pendingWrite = null;
+          writeLock.notifyAll();
+        }
+        if (committed != null) {
+          committed.run();
+        }
+      }
+    }
+  }
+
+  private void setCodecStats(PersistenceMetricImpl metric) {
+    PersistenceCodec.EncodingOutputStream codecOutput = currentCodecOutput;
+    if (codecOutput != null) {
+      metric.setCodecStats(codecOutput.getRawSize(),
+                           codecOutput.getEncodedSize(),
+                           codecOutput.getCodecNanos() / 1000000L);
+    }
+  }
+
   private void writeFinalOutput(ObjectOutputStream s,
+                                int nextId,
                                 PersistenceReference[][] referenceArrays,
                                 PersistenceOutputStream stream)
     throws IOException
   {
-    s.writeInt(identityTable.getNextId());
+    s.writeInt(nextId);
     s.writeInt(referenceArrays.length);
     for (int i = 0; i < referenceArrays.length; i++) {
       s.writeObject(referenceArrays[i]);
@@ -1423,9 +1704,18 @@ public void unload() {
           new PersistenceKeyEnvelope(currentPersistPluginInfo.ppi, deltaNumber);
         os = dataProtectionService.getOutputStream(keyEnvelope, os);
       }
+      // Compress before any encryption
+      PersistenceCodec codec = PersistenceCodec.forName(currentPersistPluginInfo.codec);
+      if (codec != null) {
+        currentCodecOutput = codec.getOutputStream(os);
+        os = currentCodecOutput;
+      } else {
+        currentCodecOutput = null;
+      }
       currentOutput = new ObjectOutputStream(os);
     } else {
       currentOutput = null;
+      currentCodecOutput = null;
     }
     return deltaNumber;
   }
@@ -1437,10 +1727,21 @@ public void unload() {
 
   private void commitTransaction() throws PersistenceException {
     currentPersistPluginInfo.ppi.lockOwnership();
-    sequenceNumbers.current += 1;
-    currentPersistPluginInfo.ppi.finishOutputStream(sequenceNumbers, full);
-    currentOutput = null;
-    currentPersistPluginInfo.ppi.unlockOwnership();
+    try {
+      sequenceNumbers.current += 1;
+      try {
+        currentPersistPluginInfo.ppi.finishOutputStream(sequenceNumbers, full);
+      } catch (RuntimeException re) {
+        // The delta wasn't saved. The objects it held are no longer
+        // marked, so the next delta must be full.
+        sequenceNumbers.current -= 1;
+        previousPersistFailed = true;
+        throw re;
+      }
+      currentOutput = null;
+    } finally {
+      currentPersistPluginInfo.ppi.unlockOwnership();
+    }
   }
 
   public java.sql.Connection getDatabaseConnection(Object locker) {
@@ -1493,6 +1794,15 @@ public void unload() {
         returnBytes,
         full);
     }
+    public PersistenceObject persist(
+      boolean returnBytes,
+      boolean full,
+      Runnable committed) {
+      return PersistenceServiceComponent.this.persist(
+        returnBytes,
+        full,
+        committed);
+    }
     public java.sql.Connection getDatabaseConnection(Object locker) {
       return PersistenceServiceComponent.this.getDatabaseConnection(locker);
     }
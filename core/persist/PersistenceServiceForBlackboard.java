@@ -40,6 +40,15 @@ public interface PersistenceServiceForBlackboard extends PersistenceService {
    * ReservationManager to avoid blocking on a static global lock.
    */
   PersistenceObject persist(boolean returnBytes, boolean full);
+  /**
+   * Generate a persistence snapshot now, like {@link
+   * #persist(boolean,boolean)}, but the delta may be written and
+   * committed in the background after this method returns. The
+   * committed Runnable is run once the delta has been committed or
+   * has failed.
+   */
+  PersistenceObject persist(boolean returnBytes, boolean full,
+                            Runnable committed);
   java.sql.Connection getDatabaseConnection(Object locker);
   void releaseDatabaseConnection(Object locker);
   boolean isDummyPersistence();
@@ -15,8 +15,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.cougaar.core.blackboard.ClassFilteredPredicate;
 import org.cougaar.core.blackboard.IncrementalSubscription;
-import org.cougaar.util.IsInstanceOf;
 import org.cougaar.util.UnaryPredicate;
 import org.cougaar.util.annotations.Cougaar;
 import org.cougaar.util.annotations.Subscribe;
@@ -163,7 +163,7 @@ public abstract class AnnotatedSubscriptionsPlugin
       
       if (Cougaar.NO_VALUE.equals(testerMethodName)) {
          // Implicit instanceof if no 'when'
-        return new IsInstanceOf(argClass);
+        return new InstanceOfPredicate(argClass);
       }
       
       Method testerMethod = null;
@@ -182,9 +182,13 @@ public abstract class AnnotatedSubscriptionsPlugin
       }
       final Method finalTesterMethod = testerMethod;
       final Class<?> testerArgClass = testerMethod.getParameterTypes()[0];
-      UnaryPredicate predicate = new UnaryPredicate() {
+      UnaryPredicate predicate = new ClassFilteredPredicate() {
          private static final long serialVersionUID = 1L;
    
+         public Class[] getFilterClasses() {
+            return new Class[] {testerArgClass};
+         }
+
          public boolean execute(Object o) {
             if (!testerArgClass.isAssignableFrom(o.getClass())) {
                return false;
@@ -201,6 +205,27 @@ public abstract class AnnotatedSubscriptionsPlugin
       return predicate;
    }
 
+   /**
+    * Like {@link org.cougaar.util.IsInstanceOf}, but also declares its
+    * class so the distributor can route tuples to our subscriptions.
+    */
+   private static final class InstanceOfPredicate implements ClassFilteredPredicate {
+      private static final long serialVersionUID = 1L;
+      private final Class<?> argClass;
+
+      InstanceOfPredicate(Class<?> argClass) {
+         this.argClass = argClass;
+      }
+
+      public Class[] getFilterClasses() {
+         return new Class[] {argClass};
+      }
+
+      public boolean execute(Object o) {
+         return argClass.isInstance(o);
+      }
+   }
+
    private class QueryRunner<T> {
       private final Method method;
       private final UnaryPredicate predicate;
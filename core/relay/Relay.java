@@ -105,6 +105,37 @@ public interface Relay extends UniqueObject {
     int updateResponse(MessageAddress target, Object response);
   }
 
+  /**
+   * An optional Source extension for relays whose content is large
+   * compared with a typical change to it.
+   * <p>
+   * If the Source's {@link #getTargetFactory} returns a
+   * {@link DeltaTargetFactory}, the RelayLP sends each target that
+   * already has the content a delta from the version it was last
+   * sent, instead of the full content. New targets, ABA targets
+   * and targets whose version is no longer available get the full
+   * content. A change that leaves the content version unchanged,
+   * such as a target list change, is not sent to the existing
+   * targets.
+   */
+  interface DeltaSource extends Source {
+
+    /**
+     * Get the version of the current content, which must increase
+     * whenever the content changes.
+     */
+    long getContentVersion();
+
+    /**
+     * Get an object describing the changes from the content at the
+     * given version to the current content, suitable for
+     * transmission like {@link #getContent}.
+     * @return the delta, or null if the given version is too old, in
+     * which case the full content is sent
+     */
+    Object getContentDelta(long fromVersion);
+  }
+
   /**
    * The target-side Relay, which receives content updates and
    * can send response updates back to the Source.
@@ -175,6 +206,22 @@ public interface Relay extends UniqueObject {
 
   }
 
+  /**
+   * A TargetFactory for a {@link DeltaSource} that applies content
+   * deltas to the targets it created.
+   */
+  interface DeltaTargetFactory extends TargetFactory {
+
+    /**
+     * Apply a delta from {@link DeltaSource#getContentDelta} to a
+     * target holding the delta's base version of the content.
+     * @return the same flags as {@link Target#updateContent}
+     * @throws IllegalArgumentException if the delta can't be applied,
+     * in which case the target asks the source for the full content
+     */
+    int applyContentDelta(Target target, Object delta, Token token);
+  }
+
   /**
    * An object that is passed from the Source to the Target(s), which
    * authorizes content updates.
@@ -28,12 +28,18 @@ package org.cougaar.core.relay;
 
 
 import org.cougaar.core.blackboard.DirectiveImpl;
+import org.cougaar.core.blackboard.SerializedPayload;
 import org.cougaar.core.util.UID;
 
 /**
  * A {@link org.cougaar.core.blackboard.Directive} for relay
  * messages, which can add/change/remove a {@link Relay.Target} and
  * send responses back to the {@link Relay.Source}.
+ * <p>
+ * The content of an Add or Change may be a {@link SerializedPayload}
+ * shared by the directives to all targets; getContent() unwraps it.
+ * An Add or Change from a {@link Relay.DeltaSource} carries the
+ * content version, which a later ContentDelta is based on.
  */
 public abstract class RelayDirective extends DirectiveImpl {
   /**
@@ -59,18 +65,29 @@ protected final UID uid;
    private static final long serialVersionUID = 1L;
    private Object content;
     private Relay.TargetFactory tf;
+    private long contentVersion = -1;
 
     public Add(UID uid, Object content, Relay.TargetFactory tf) {
       super(uid);
       this.content = content;
       this.tf = tf;
     }
+    public Add(
+        UID uid, Object content, Relay.TargetFactory tf,
+        long contentVersion) {
+      this(uid, content, tf);
+      this.contentVersion = contentVersion;
+    }
     public Object getContent() {
-      return content;
+      return SerializedPayload.unwrap(content);
     }
     public Relay.TargetFactory getTargetFactory() {
       return tf;
     }
+    /** @return the content version, or -1 if not versioned */
+    public long getContentVersion() {
+      return contentVersion;
+    }
     @Override
    public String toString() {
       return "(add uid="+uid+" content="+content+")";
@@ -84,24 +101,90 @@ protected final UID uid;
    private static final long serialVersionUID = 1L;
    private Object content;
     private Relay.TargetFactory tf;
+    private long contentVersion = -1;
 
     public Change(UID uid, Object content, Relay.TargetFactory tf) {
       super(uid);
       this.content = content;
       this.tf = tf;
     }
+    public Change(
+        UID uid, Object content, Relay.TargetFactory tf,
+        long contentVersion) {
+      this(uid, content, tf);
+      this.contentVersion = contentVersion;
+    }
     public Object getContent() {
-      return content;
+      return SerializedPayload.unwrap(content);
     }
     public Relay.TargetFactory getTargetFactory() {
       return tf;
     }
+    /** @return the content version, or -1 if not versioned */
+    public long getContentVersion() {
+      return contentVersion;
+    }
     @Override
    public String toString() {
       return "(change uid="+uid+" content="+content+")";
     }
   }
 
+  /**
+   * A change to a {@link Relay.DeltaSource}'s content, sent to a
+   * target that holds the content at the "from" version.
+   */
+  public static class ContentDelta extends RelayDirective {
+    private static final long serialVersionUID = 1L;
+    private Object delta;
+    private Relay.DeltaTargetFactory tf;
+    private long fromVersion;
+    private long toVersion;
+
+    public ContentDelta(
+        UID uid, Object delta, Relay.DeltaTargetFactory tf,
+        long fromVersion, long toVersion) {
+      super(uid);
+      this.delta = delta;
+      this.tf = tf;
+      this.fromVersion = fromVersion;
+      this.toVersion = toVersion;
+    }
+    public Object getDelta() {
+      return SerializedPayload.unwrap(delta);
+    }
+    public Relay.DeltaTargetFactory getTargetFactory() {
+      return tf;
+    }
+    public long getFromVersion() {
+      return fromVersion;
+    }
+    public long getToVersion() {
+      return toVersion;
+    }
+    @Override
+    public String toString() {
+      return
+        "(delta uid="+uid+" from="+fromVersion+" to="+toVersion+
+        " delta="+delta+")";
+    }
+  }
+
+  /**
+   * Sent by a target that can't apply a {@link ContentDelta}, to ask
+   * the source for the full content.
+   */
+  public static class Resync extends RelayDirective {
+    private static final long serialVersionUID = 1L;
+    public Resync(UID uid) {
+      super(uid);
+    }
+    @Override
+    public String toString() {
+      return "(resync uid="+uid+")";
+    }
+  }
+
   public static class Remove extends RelayDirective {
     /**
     * 
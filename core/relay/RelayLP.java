@@ -40,11 +40,12 @@ import org.cougaar.core.blackboard.ABATranslation;
 import org.cougaar.core.blackboard.ChangeReport;
 import org.cougaar.core.blackboard.Directive;
 import org.cougaar.core.blackboard.EnvelopeTuple;
+import org.cougaar.core.blackboard.SerializedPayload;
 import org.cougaar.core.domain.ABAChangeLogicProvider;
-import org.cougaar.core.domain.EnvelopeLogicProvider;
 import org.cougaar.core.domain.MessageLogicProvider;
 import org.cougaar.core.domain.RestartLogicProvider;
 import org.cougaar.core.domain.RootPlan;
+import org.cougaar.core.domain.SelectiveEnvelopeLogicProvider;
 import org.cougaar.core.mts.MessageAddress;
 import org.cougaar.core.util.UID;
 import org.cougaar.core.util.UniqueObject;
@@ -56,11 +57,22 @@ import org.cougaar.util.log.LoggerFactory;
 /**
  * A {@link LogicProvider} to transmit and update {@link Relay}
  * objects.
+ * <p>
+ * For each local Relay.Source the LP remembers the targets it last
+ * sent to, so a change only sends adds and removes to the targets
+ * that were added or dropped. If the source is a
+ * {@link Relay.DeltaSource}, the LP also remembers the content
+ * version sent to each target and sends a
+ * {@link RelayDirective.ContentDelta} against that version instead
+ * of the full content. A target that can't apply a delta replies
+ * with a {@link RelayDirective.Resync}, and the source resends the
+ * full content. This state is transient: after a restart every
+ * target is sent the full content again.
  *
  * @see Relay
  */
 public class RelayLP
-implements EnvelopeLogicProvider, MessageLogicProvider, RestartLogicProvider, ABAChangeLogicProvider
+implements SelectiveEnvelopeLogicProvider, MessageLogicProvider, RestartLogicProvider, ABAChangeLogicProvider
 {
   private final RootPlan rootplan;
   private final MessageAddress self;
@@ -68,6 +80,15 @@ implements EnvelopeLogicProvider, MessageLogicProvider, RestartLogicProvider, AB
 
   private final Logger logger = LoggerFactory.getInstance().createLogger(getClass());
 
+  /** Map from local Relay.Source UID to its SourceState */
+  private final Map sourceStates = new HashMap();
+
+  /**
+   * Map from Relay.Target UID to the Long content version last
+   * applied, for targets of a Relay.DeltaSource
+   */
+  private final Map targetVersions = new HashMap();
+
   public RelayLP(
       RootPlan rootplan, 
       MessageAddress self) {
@@ -79,6 +100,14 @@ implements EnvelopeLogicProvider, MessageLogicProvider, RestartLogicProvider, AB
   public void init() {
   }
 
+  public int getInterestingActions() {
+    return ADD | CHANGE | REMOVE;
+  }
+
+  public Class[] getInterestingClasses() {
+    return new Class[] { Relay.class };
+  }
+
   // EnvelopeLogicProvider implementation
   /**
    * Sends the Content of Relay sources to the their targets and sends
@@ -133,15 +162,22 @@ implements EnvelopeLogicProvider, MessageLogicProvider, RestartLogicProvider, AB
     Set targets = rs.getTargets();
     if (targets == null) return;
     if (targets.isEmpty()) return; // No targets
-    localAdd(rs, targets);
+    SourceState state = new SourceState(targets);
+    sourceStates.put(rs.getUID(), state);
+    localAdd(rs, targets, state);
   }
 
   // Propogate the new Relay to each listed target
-  // Called from above localAdd and from abaChange when an aba expands
-  // to new targets.
+  // Called from abaChange when an aba expands to new targets.
   private void localAdd(Relay.Source rs, Set targets) {
+    // ABA members aren't tracked in the SourceState
+    localAdd(rs, targets, null);
+  }
+
+  private void localAdd(Relay.Source rs, Set targets, SourceState state) {
     // If this were also a target, we could check that this agent
     // is the source. That might help break looping
+    long version = getContentVersion(rs);
     boolean gotContent = false;
     Object content = null;
     for (Iterator i = targets.iterator(); i.hasNext(); ) {
@@ -153,11 +189,32 @@ implements EnvelopeLogicProvider, MessageLogicProvider, RestartLogicProvider, AB
       } else {
         if (!gotContent) {
           gotContent = true;
-          content = rs.getContent();
+          content = getSharedContent(rs, targets);
+        }
+        sendAdd(rs, target, content, version);
+        if (state != null) state.sent(target, version);
+      }
+    }
+  }
+
+  /**
+   * Get the content to send to the targets. If it goes to more than
+   * one agent, wrap it so that it is serialized only once for all
+   * the directive messages.
+   */
+  private Object getSharedContent(Relay.Source rs, Set targets) {
+    Object content = rs.getContent();
+    if (content == null) return null;
+    boolean fanOut = targets.size() > 1;
+    if (!fanOut) {
+      for (Iterator i = targets.iterator(); i.hasNext(); ) {
+        if (i.next() instanceof AttributeBasedAddress) {
+          fanOut = true;
+          break;
         }
-        sendAdd(rs, target, content);
       }
     }
+    return (fanOut ? new SerializedPayload(content) : content);
   }
 
   /**
@@ -166,6 +223,7 @@ implements EnvelopeLogicProvider, MessageLogicProvider, RestartLogicProvider, AB
    */
   private void localChange(Relay.Source rs, Collection changes) {
     // called from changeTarget, receiveResponse, and LP.execute
+    UID uid = rs.getUID();
     Set targets = rs.getTargets();
     Collection oldTargets = null;
     // Get the oldtargets mentioned in the _first_ RelayChangeReport 
@@ -188,38 +246,100 @@ implements EnvelopeLogicProvider, MessageLogicProvider, RestartLogicProvider, AB
     // Tell each such agent to remove this Relay
     if (oldTargets != null) {
       if (targets != null) oldTargets.removeAll(targets);
-      UID uid = rs.getUID();
       for (Iterator i = oldTargets.iterator(); i.hasNext(); ) {
         MessageAddress target = (MessageAddress) i.next();
         sendRemove(uid, target);
       }
     }
+
+    // Also remove the targets we last sent to that have been dropped
+    // without a RelayChangeReport
+    SourceState state = (SourceState) sourceStates.get(uid);
+    if (state != null) {
+      for (Iterator i = state.targets.iterator(); i.hasNext(); ) {
+        MessageAddress target = (MessageAddress) i.next();
+        if (target != null &&
+            !target.getPrimary().equals(self) &&
+            (targets == null || !targets.contains(target)) &&
+            (oldTargets == null || !oldTargets.contains(target))) {
+          sendRemove(uid, target);
+        }
+      }
+    }
+
     if (targets == null || targets.isEmpty()) {
+      sourceStates.remove(uid);
       return; // No targets
     }
 
-    // FIXME check for targets-change-report:
-    //   calculate set differences
-    //   for added targets: sendAdd
-    //   for removed targets: sendRemove
-    // add ContentReport to changes
+    long version = getContentVersion(rs);
+    boolean deltas =
+      (version >= 0 &&
+       rs.getTargetFactory() instanceof Relay.DeltaTargetFactory);
+    SourceState newState = new SourceState(targets);
     boolean gotContent = false;
     Object content = null;
+    Map deltaCache = null;
     for (Iterator i = targets.iterator(); i.hasNext(); ) {
       MessageAddress target = (MessageAddress) i.next();
       if (target == null) {
         // Ignore nulls.
       } else if (target.getPrimary().equals(self)) {
         // Never send to self.  Likely an error.
-      } else {
+      } else if (state != null && !state.targets.contains(target)) {
+        // Added target
         if (!gotContent) {
           gotContent = true;
-          content = rs.getContent();
+          content = getSharedContent(rs, targets);
         }
-	// This target could be an ABA that includes this agent, right?
-        sendChange(rs, target, content, changes);
+        sendAdd(rs, target, content, version);
+        newState.sent(target, version);
+      } else {
+        Long base =
+          (deltas && state != null ? state.getVersion(target) : null);
+        if (base != null && base.longValue() == version) {
+          // Content unchanged, the target is up to date
+          newState.sent(target, version);
+          continue;
+        }
+        Object delta = null;
+        if (base != null) {
+          if (deltaCache == null) deltaCache = new HashMap();
+          delta = deltaCache.get(base);
+          if (delta == null) {
+            delta = ((Relay.DeltaSource) rs).getContentDelta(
+                base.longValue());
+            if (delta == null) {
+              delta = NO_DELTA;
+            } else if (targets.size() > 1) {
+              delta = new SerializedPayload(delta);
+            }
+            deltaCache.put(base, delta);
+          }
+        }
+        if (delta != null && delta != NO_DELTA) {
+          sendContentDelta(
+              rs, target, delta, base.longValue(), version, changes);
+        } else {
+          if (!gotContent) {
+            gotContent = true;
+            content = getSharedContent(rs, targets);
+          }
+          // This target could be an ABA that includes this agent, right?
+          sendChange(rs, target, content, version, changes);
+        }
+        newState.sent(target, version);
       }
     }
+    sourceStates.put(uid, newState);
+  }
+
+  /** @return the content version of a Relay.DeltaSource, otherwise -1 */
+  private static long getContentVersion(Relay.Source rs) {
+    return
+      (rs instanceof Relay.DeltaSource ?
+       ((Relay.DeltaSource) rs).getContentVersion() :
+       -1);
   }
 
   // Local Relay.Source was publishRemoved
@@ -230,6 +350,7 @@ implements EnvelopeLogicProvider, MessageLogicProvider, RestartLogicProvider, AB
     if (targets.isEmpty()) return; // No targets
     // Again, if this is also a Relay.Target, could check that this is 
     // really the source
+    sourceStates.remove(rs.getUID());
     localRemove(rs.getUID(), targets);
   }
 
@@ -267,10 +388,12 @@ implements EnvelopeLogicProvider, MessageLogicProvider, RestartLogicProvider, AB
   }
 
   // Send directive to given target Agent to add this Relay
-  // called from localAdd and resend
-  private void sendAdd(Relay.Source rs, MessageAddress target, Object content) {
+  // called from localAdd, localChange, resend and receiveResync
+  private void sendAdd(
+      Relay.Source rs, MessageAddress target, Object content, long version) {
     RelayDirective.Add dir = 
-      new RelayDirective.Add(rs.getUID(), content, rs.getTargetFactory());
+      new RelayDirective.Add(
+          rs.getUID(), content, rs.getTargetFactory(), version);
     dir.setSource(self);
     dir.setDestination(target);
     rootplan.sendDirective(dir);
@@ -279,14 +402,39 @@ implements EnvelopeLogicProvider, MessageLogicProvider, RestartLogicProvider, AB
   // Send directive to given target Agent of change to this Relay
   // called from localChange
   private void sendChange(
-      Relay.Source rs, MessageAddress target, Object content, Collection c) {
+      Relay.Source rs, MessageAddress target, Object content, long version,
+      Collection c) {
     RelayDirective.Change dir =
-      new RelayDirective.Change(rs.getUID(), content, rs.getTargetFactory());
+      new RelayDirective.Change(
+          rs.getUID(), content, rs.getTargetFactory(), version);
     dir.setSource(self);
     dir.setDestination(target);
     rootplan.sendDirective(dir, c);
   }
 
+  // Send directive to given target Agent of a content delta
+  // called from localChange
+  private void sendContentDelta(
+      Relay.Source rs, MessageAddress target, Object delta,
+      long fromVersion, long toVersion, Collection c) {
+    RelayDirective.ContentDelta dir =
+      new RelayDirective.ContentDelta(
+          rs.getUID(), delta, (Relay.DeltaTargetFactory) rs.getTargetFactory(),
+          fromVersion, toVersion);
+    dir.setSource(self);
+    dir.setDestination(target);
+    rootplan.sendDirective(dir, c);
+  }
+
+  // Ask the source for the full content of this Relay
+  // called from receiveContentDelta
+  private void sendResync(UID uid, MessageAddress source) {
+    RelayDirective.Resync dir = new RelayDirective.Resync(uid);
+    dir.setSource(self);
+    dir.setDestination(source);
+    rootplan.sendDirective(dir);
+  }
+
   // Send directive to given target agent to remove this Relay
   // called from localChange, localRemove, receiveResponse 
   private void sendRemove(UID uid, MessageAddress target) {
@@ -336,6 +484,14 @@ implements EnvelopeLogicProvider, MessageLogicProvider, RestartLogicProvider, AB
         receiveResponse((RelayDirective.Response) dir, changes);
         return;
       }
+      if (dir instanceof RelayDirective.ContentDelta) {
+        receiveContentDelta((RelayDirective.ContentDelta) dir, changes);
+        return;
+      }
+      if (dir instanceof RelayDirective.Resync) {
+        receiveResync((RelayDirective.Resync) dir);
+        return;
+      }
     }
   }
 
@@ -370,6 +526,11 @@ implements EnvelopeLogicProvider, MessageLogicProvider, RestartLogicProvider, AB
     // If the content changed, then mark the taret as changed,
     // but in such a way that this LP won't run again
     int flags = rt.updateContent(cont, token);
+    targetUpdated(rt, flags, changes);
+  }
+
+  // called from changeTarget and receiveContentDelta
+  private void targetUpdated(Relay.Target rt, int flags, Collection changes) {
     if ((flags & Relay.CONTENT_CHANGE) != 0) {
       Collection c;
       if (changes == null) {
@@ -415,6 +576,7 @@ implements EnvelopeLogicProvider, MessageLogicProvider, RestartLogicProvider, AB
       // Unusual. Treat as change
       changeTarget(rt, dir.getContent(), Collections.EMPTY_SET);
     }
+    setTargetVersion(dir.getUID(), dir.getContentVersion());
   }
 
   // Receive a change from remote Source at this Target
@@ -428,10 +590,60 @@ implements EnvelopeLogicProvider, MessageLogicProvider, RestartLogicProvider, AB
       // What if this is the source?
       changeTarget(rt, dir.getContent(), changes);
     }
+    setTargetVersion(dir.getUID(), dir.getContentVersion());
+  }
+
+  // Remember the content version applied to a target
+  // called from receiveAdd, receiveChange and receiveContentDelta
+  private void setTargetVersion(UID uid, long version) {
+    if (version < 0) {
+      targetVersions.remove(uid);
+    } else {
+      targetVersions.put(uid, Long.valueOf(version));
+    }
+  }
+
+  // Apply a content delta from a remote Relay.DeltaSource at this Target,
+  // or ask for the full content if the target's version doesn't match
+  // called only from lp.execute
+  private void receiveContentDelta(
+      RelayDirective.ContentDelta dir, Collection changes) {
+    UID uid = dir.getUID();
+    Relay.Target rt = (Relay.Target) rootplan.findUniqueObject(uid);
+    Long version = (Long) targetVersions.get(uid);
+    if (rt == null ||
+        version == null ||
+        version.longValue() != dir.getFromVersion()) {
+      if (logger.isDebugEnabled()) {
+        logger.debug(
+            self+": Resync "+uid+" from "+dir.getSource()+
+            ", have version "+version+", delta from "+dir.getFromVersion());
+      }
+      targetVersions.remove(uid);
+      sendResync(uid, dir.getSource());
+      return;
+    }
+    int flags;
+    try {
+      flags = 
+        dir.getTargetFactory().applyContentDelta(rt, dir.getDelta(), token);
+    } catch (IllegalArgumentException e) {
+      if (logger.isWarnEnabled()) {
+        logger.warn(
+            self+": Unable to apply delta "+dir+" to "+rt+
+            ", requesting full content", e);
+      }
+      targetVersions.remove(uid);
+      sendResync(uid, dir.getSource());
+      return;
+    }
+    setTargetVersion(uid, dir.getToVersion());
+    targetUpdated(rt, flags, changes);
   }
 
   // called only from lp.execute when get a directive to remove this relay
   private void receiveRemove(RelayDirective.Remove dir) {
+    targetVersions.remove(dir.getUID());
     Relay.Target rt = (Relay.Target) rootplan.findUniqueObject(dir.getUID());
     if (rt == null) {
       // Unusual. Ignore.
@@ -440,6 +652,30 @@ implements EnvelopeLogicProvider, MessageLogicProvider, RestartLogicProvider, AB
     }
   }
 
+  // A target couldn't apply a content delta. Resend the full content.
+  // called only from lp.execute
+  private void receiveResync(RelayDirective.Resync dir) {
+    UniqueObject uo = rootplan.findUniqueObject(dir.getUID());
+    MessageAddress target = dir.getSource();
+    if (uo == null) {
+      // No longer part of our blackboard. Rescind it.
+      sendRemove(dir.getUID(), target);
+      return;
+    }
+    if (! (uo instanceof Relay.Source)) {
+      logger.error(self + ": receiveResync got non Relay.Source. Got: " + uo + " from " + target);
+      return;
+    }
+    Relay.Source rs = (Relay.Source) uo;
+    long version = getContentVersion(rs);
+    if (logger.isInfoEnabled()) {
+      logger.info(self+": Resync to "+target+": "+rs.getUID());
+    }
+    sendAdd(rs, target, rs.getContent(), version);
+    SourceState state = (SourceState) sourceStates.get(rs.getUID());
+    if (state != null) state.resent(target, version);
+  }
+
   // called only from lp.execute
   private void receiveResponse(RelayDirective.Response dir, Collection changes) {
     UniqueObject uo = rootplan.findUniqueObject(dir.getUID());
@@ -553,6 +789,13 @@ implements EnvelopeLogicProvider, MessageLogicProvider, RestartLogicProvider, AB
     if (targets == null) return; // Not really a source
     if (targets.isEmpty()) return;
 
+    long version = getContentVersion(rs);
+    SourceState state = (SourceState) sourceStates.get(rs.getUID());
+    if (t == null || state == null) {
+      state = new SourceState(targets);
+      sourceStates.put(rs.getUID(), state);
+    }
+
     boolean gotContent = false; // Only grab the content once
     Object content = null;
 
@@ -568,7 +811,7 @@ implements EnvelopeLogicProvider, MessageLogicProvider, RestartLogicProvider, AB
       } else {
         if (!gotContent) {
           gotContent = true;
-          content = rs.getContent();
+          content = (t == null ? getSharedContent(rs, targets) : rs.getContent());
         }
 	if (logger.isInfoEnabled()) {
           logger.info(
@@ -581,7 +824,8 @@ implements EnvelopeLogicProvider, MessageLogicProvider, RestartLogicProvider, AB
 	// Caller ensures that Relay.Sources here
 	// really originated here
 	// Re-send that Relay as though it were new
-        sendAdd(rs, target, content);
+        sendAdd(rs, target, content, version);
+        state.sent(target, version);
       }
     }
   }
@@ -712,6 +956,44 @@ implements EnvelopeLogicProvider, MessageLogicProvider, RestartLogicProvider, AB
     }
   }
 
+  /** Marks a DeltaSource version that has no delta */
+  private static final Object NO_DELTA = new Object();
+
+  /**
+   * The targets last sent a local Relay.Source and, for a
+   * Relay.DeltaSource, the content version each was sent.
+   */
+  private static final class SourceState {
+    private final Set targets;
+    private final Map versions = new HashMap();
+    public SourceState(Set targets) {
+      this.targets = new HashSet(targets);
+    }
+    public void sent(MessageAddress target, long version) {
+      if (version >= 0) {
+        versions.put(target, Long.valueOf(version));
+      }
+    }
+    public Long getVersion(MessageAddress target) {
+      if (target instanceof AttributeBasedAddress) {
+        // ABA targets always get the full content
+        return null;
+      }
+      return (Long) versions.get(target);
+    }
+    // A resync from this agent, which may be an ABA member
+    public void resent(MessageAddress agent, long version) {
+      for (Iterator i = targets.iterator(); i.hasNext(); ) {
+        MessageAddress target = (MessageAddress) i.next();
+        if (target != null &&
+            !(target instanceof AttributeBasedAddress) &&
+            target.getPrimary().equals(agent.getPrimary())) {
+          sent(target, version);
+        }
+      }
+    }
+  }
+
   /** 
    * ChangeReport for this LP to identify its own changes.
    */
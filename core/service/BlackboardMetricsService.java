@@ -26,6 +26,8 @@
 
 package org.cougaar.core.service;
 
+import java.util.Map;
+
 import org.cougaar.core.component.Service;
 import org.cougaar.util.UnaryPredicate;
 
@@ -59,4 +61,44 @@ public interface BlackboardMetricsService extends Service {
    */
   int getBlackboardCount(UnaryPredicate predicate);
 
+  /**
+   * Get a snapshot of the number of objects currently in the
+   * Blackboard, by concrete class.
+   * <p>
+   * Like {@link #getBlackboardCount(Class)}, this is based upon
+   * live counts and doesn't scan the Blackboard.
+   *
+   * @return a Map of Class to Integer count
+   */
+  Map getBlackboardHistogram();
+
+  /**
+   * Get the number of queries, searches and subscription fills
+   * that have been run against the Blackboard.
+   */
+  long getBlackboardQueryCount();
+
+  /**
+   * Get the number of queries, searches and subscription fills
+   * that were answered from the Blackboard's UID or class index
+   * instead of scanning every object.
+   *
+   * @see org.cougaar.core.blackboard.UIDFilteredPredicate
+   * @see org.cougaar.core.blackboard.ClassFilteredPredicate
+   */
+  long getBlackboardScansAvoided();
+
+  /**
+   * Get the number of AttributeBasedAddress translations that were
+   * answered from the Blackboard's ABA cache.
+   */
+  long getABACacheHits();
+
+  /**
+   * Get the number of AttributeBasedAddress translations that
+   * required a community service search, either because the ABA was
+   * new or because a community change invalidated its translation.
+   */
+  long getABACacheMisses();
+
 }
@@ -0,0 +1,63 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+package org.cougaar.core.service;
+
+import java.util.List;
+
+import org.cougaar.core.component.Service;
+
+/**
+ * This service provides invocation counters for the agent's
+ * {@link org.cougaar.core.domain.EnvelopeLogicProvider}s.
+ */
+public interface LogicProviderStatusService extends Service {
+  interface Status {
+    String getDomainName();
+    String getLogicProviderName();
+    /**
+     * @return true if the logic provider declares the tuples it
+     * handles and is skipped for all others.
+     */
+    boolean isSelective();
+    /** The number of tuples dispatched by the logic provider's domain */
+    long getTupleCount();
+    /** The number of tuples passed to the logic provider */
+    long getInvocationCount();
+    /**
+     * The time, in nanoseconds, spent in the logic provider, or 0
+     * unless the "org.cougaar.core.domain.lpTiming" system property
+     * is set
+     */
+    long getInvocationNanos();
+  }
+
+  /**
+   * @return a List of {@link Status}es, one for every envelope
+   * logic provider in every domain that keeps counters.
+   */
+  List getEnvelopeLogicProviderStatus();
+}
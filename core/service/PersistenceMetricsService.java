@@ -34,7 +34,20 @@ public interface PersistenceMetricsService {
   interface Metric {
     long getStartTime();
     long getEndTime();
+    /**
+     * The time, in milliseconds, that the agent's plugins were stalled
+     * by this snapshot. This is less than the total persist time
+     * (end - start) if the delta was written in the background.
+     */
+    long getPauseTime();
     long getSize();
+    /**
+     * The ratio of the serialized size to the size written by the
+     * persistence plugin, or 1.0 if the delta wasn't compressed.
+     */
+    double getCompressionRatio();
+    /** The time, in milliseconds, spent compressing the delta */
+    long getCodecTime();
     long getCpuTime();
     boolean isFull();
     Throwable getException();
@@ -89,4 +102,14 @@ public interface PersistenceMetricsService {
    * which kind of snapshots should be counted.
    */
   int getCount(int which);
+
+  /**
+   * Get the metric of the rehydration performed when the agent
+   * started. The size is the number of bytes read from the
+   * persistence plugin and the elapsed time covers reading all the
+   * deltas of the successful rehydration set.
+   * @return the rehydration metric or null if the agent did not
+   * rehydrate from persisted deltas.
+   */
+  Metric getRehydrationMetric();
 }
@@ -28,34 +28,74 @@ package org.cougaar.core.thread;
 
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.cougaar.util.UnaryPredicate;
 import org.cougaar.util.log.Logger;
 
 /**
- * A simple queue, built on array list, that uses a Comparator to
- * determine which elements is next (the smallest, according to the
- * Comparator).  Note that this is not a Collection.  Also note that
- * the methods are not synchronized.  It's the caller's reponsibility
- * to handle synchronization.  Queues of this kind are used by {@link
- * Scheduler}s to hold {@link Schedulable}s that are not able to run
- * immediately.
+ * A simple queue, built on an indexed binary heap, that uses a
+ * Comparator to determine which elements is next (the smallest,
+ * according to the Comparator).  Elements that compare as equal are
+ * returned in the order in which they were added.  Note that this is
+ * not a Collection.  Also note that the methods are not synchronized.
+ * It's the caller's reponsibility to handle synchronization.  Queues
+ * of this kind are used by {@link Scheduler}s to hold {@link
+ * Schedulable}s that are not able to run immediately.
+ * <p>
+ * The heap keeps a map from each element to its heap position, so
+ * {@link #add}, {@link #remove}, {@link #contains} and {@link #next}
+ * are O(log n) or better.  The ordering of an element must not
+ * change while it's queued, other than through {@link
+ * #setComparator}, which reorders the entire heap.
  */
 public class DynamicSortedQueue<T extends Schedulable> {
     private Comparator<T> comparator;
-    private final List<T> store;
-    
+
+    // The heap, where entries [0, size) are valid.  Read without
+    // locking by processEach, so it's only ever replaced, never
+    // shrunk.
+    private Entry<T>[] heap;
+    private int size;
+    private final Map<T, Entry<T>> index;
+    private long counter;
+
+    private static final class Entry<T> {
+	final T item;
+	final long seq;
+	int pos;
+	Entry(T item, long seq) {
+	    this.item = item;
+	    this.seq = seq;
+	}
+    }
+
     // Only used for the Scheduler's iterateOverQueuedThreads method,
     // so that it can read the elements without locking the thread
     // service or risking damage to the real queue.  DO NOT USE THIS
     // FOR ANY OTHER PURPOSE.
+    @SuppressWarnings("unchecked")
     DynamicSortedQueue(DynamicSortedQueue<T> queue) {
-	this.store = new ArrayList<T>(queue.store);
+	this.comparator = queue.comparator;
+	this.heap = new Entry[Math.max(queue.size, 1)];
+	this.index = new HashMap<T, Entry<T>>();
+	for (int i = 0; i < queue.size; i++) {
+	    Entry<T> e = queue.heap[i];
+	    Entry<T> copy = new Entry<T>(e.item, e.seq);
+	    copy.pos = i;
+	    heap[i] = copy;
+	    index.put(e.item, copy);
+	}
+	this.size = queue.size;
+	this.counter = queue.counter;
     }
 
+    @SuppressWarnings("unchecked")
     public DynamicSortedQueue(Comparator<T> comparator) {
-	store = new ArrayList<T>();
+	heap = new Entry[16];
+	index = new HashMap<T, Entry<T>>();
 	this.comparator = comparator;
     }
 
@@ -65,20 +105,12 @@ public class DynamicSortedQueue<T extends Schedulable> {
 		    String schedulerName,
 		    Logger logger) {
 	int count = 0;
-	T thing;
-	for (int i = 0, n = store.size(); i < n; i++) {
-	    try {
-		thing = store.get(i);
-	    } catch (Exception ex) {
-		// This is an expected condition to end the loop
-		if (logger.isDebugEnabled()) {
-		    logger.debug("queue size decreased during list operation");
-		}
-		break;
-	    }
-	    if (thing != null) {
+	Entry<T>[] h = heap;
+	for (int i = 0, n = Math.min(size, h.length); i < n; i++) {
+	    Entry<T> e = h[i];
+	    if (e != null) {
 		try {
-		    T sched = thing;
+		    T sched = e.item;
 		    body.run(schedulerName, sched);
 		    count++;
 		} catch (Throwable t) {
@@ -91,70 +123,159 @@ public class DynamicSortedQueue<T extends Schedulable> {
 
     public List<T> filter(UnaryPredicate predicate) {
 	List<T> result = new ArrayList<T>();
-	for (int i = 0, n = store.size(); i < n; i++) {
-	    T candidate = store.get(i);
-	    if (!predicate.execute(candidate)) {
-		result.add(candidate);
-		store.remove(i);
-                i--;
-                n--;
+	// keep the survivors in heap order, then rebuild the heap
+	int n = 0;
+	for (int i = 0; i < size; i++) {
+	    Entry<T> e = heap[i];
+	    if (!predicate.execute(e.item)) {
+		result.add(e.item);
+		index.remove(e.item);
+	    } else {
+		e.pos = n;
+		heap[n++] = e;
 	    }
 	}
+	for (int i = n; i < size; i++) {
+	    heap[i] = null;
+	}
+	size = n;
+	if (!result.isEmpty()) {
+	    heapify();
+	}
 	return result;
     }
 
     @Override
    public String toString() {
-	return "<DQ[" +store.size()+ "] " +store.toString()+ ">";
+	StringBuffer buf = new StringBuffer();
+	buf.append("<DQ[").append(size).append("] [");
+	for (int i = 0; i < size; i++) {
+	    if (i > 0) buf.append(", ");
+	    buf.append(heap[i].item);
+	}
+	buf.append("]>");
+	return buf.toString();
     }
 
     public boolean contains(T x) {
-	return store.contains(x);
+	return index.containsKey(x);
     }
 
     public void setComparator(Comparator<T> comparator) {
 	this.comparator = comparator;
+	heapify();
     }
 
     public int size() {
-	return store.size();
+	return size;
     }
 
+    @SuppressWarnings("unchecked")
     public boolean add(T x) {
-	if (store.contains(x)) {
+	if (index.containsKey(x)) {
 	    return false;
 	}
-	store.add(x);
+	Entry<T> e = new Entry<T>(x, counter++);
+	if (size == heap.length) {
+	    Entry<T>[] h = new Entry[size << 1];
+	    System.arraycopy(heap, 0, h, 0, size);
+	    heap = h;
+	}
+	index.put(x, e);
+	e.pos = size;
+	heap[size++] = e;
+	siftUp(e.pos);
 	return true;
     }
 
 
     public void remove(T x) {
-	store.remove(x);
+	Entry<T> e = index.remove(x);
+	if (e != null) {
+	    removeAt(e.pos);
+	}
     }
 	    
 
     public boolean isEmpty() {
-	return store.isEmpty();
+	return size == 0;
     }
 
     public T next() {
-	T min = null;
-	for (int i = 0, n = store.size(); i < n; i++) {
-	    T candidate = store.get(i);
-	    if (min == null) {
-		min = candidate;
-	    } else {
-		int comp = comparator.compare(min, candidate);
-		if (comp > 0) {
-		    min = candidate;
-		}
+	if (size == 0) {
+	    return null;
+	}
+	Entry<T> min = heap[0];
+	index.remove(min.item);
+	removeAt(0);
+	return min.item;
+    }
+
+    private void removeAt(int i) {
+	int last = --size;
+	if (i == last) {
+	    heap[last] = null;
+	    return;
+	}
+	Entry<T> moved = heap[last];
+	heap[last] = null;
+	moved.pos = i;
+	heap[i] = moved;
+	siftDown(i);
+	if (heap[i] == moved) {
+	    siftUp(i);
+	}
+    }
+
+    private void heapify() {
+	for (int i = (size >>> 1) - 1; i >= 0; i--) {
+	    siftDown(i);
+	}
+    }
+
+    private int compare(Entry<T> a, Entry<T> b) {
+	int comp = comparator.compare(a.item, b.item);
+	if (comp != 0) {
+	    return comp;
+	}
+	return (a.seq < b.seq ? -1 : (a.seq == b.seq ? 0 : 1));
+    }
+
+    private void siftUp(int i) {
+	Entry<T> e = heap[i];
+	while (i > 0) {
+	    int parent = (i - 1) >>> 1;
+	    Entry<T> p = heap[parent];
+	    if (compare(e, p) >= 0) {
+		break;
 	    }
+	    p.pos = i;
+	    heap[i] = p;
+	    i = parent;
 	}
-	if (min != null) {
-	    store.remove(min);
+	e.pos = i;
+	heap[i] = e;
+    }
+
+    private void siftDown(int i) {
+	Entry<T> e = heap[i];
+	int half = size >>> 1;
+	while (i < half) {
+	    int child = (i << 1) + 1;
+	    Entry<T> c = heap[child];
+	    int right = child + 1;
+	    if (right < size && compare(heap[right], c) < 0) {
+		child = right;
+		c = heap[child];
+	    }
+	    if (compare(e, c) <= 0) {
+		break;
+	    }
+	    c.pos = i;
+	    heap[i] = c;
+	    i = child;
 	}
-	return min;
+	e.pos = i;
+	heap[i] = e;
     }
 }
-
@@ -0,0 +1,143 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+
+package org.cougaar.core.thread;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Point benchmark that compares the heap-based {@link
+ * DynamicSortedQueue} against the original linear-scan ArrayList
+ * queue, using the Scheduler's steady-state pattern of one
+ * <code>next()</code> and one <code>add()</code> per dispatch, plus
+ * occasional <code>remove()</code>s.
+ * <p>
+ * Usage is:<pre>
+ *   java org.cougaar.core.thread.DynamicSortedQueueBenchmark [ops]
+ * </pre>
+ * where <i>ops</i> is the number of dispatches per queue size
+ * (default 200000).
+ */
+public class DynamicSortedQueueBenchmark {
+
+  private static final int[] SIZES = {100, 1000, 10000};
+
+  public static void main(String[] args) {
+    int ops = (args.length > 0 ? Integer.parseInt(args[0]) : 200000);
+    System.out.println("pending\timpl\tns/dispatch");
+    for (int r = 0; r < 2; r++) {
+      // first round is JIT warm-up
+      boolean print = (r > 0);
+      for (int i = 0; i < SIZES.length; i++) {
+        int n = SIZES[i];
+        long linear = run(new LinearQueue(), n, ops);
+        long heap = run(new HeapQueue(), n, ops);
+        if (print) {
+          System.out.println(n+"\tlinear\t"+(linear / ops));
+          System.out.println(n+"\theap\t"+(heap / ops));
+        }
+      }
+    }
+  }
+
+  private static long run(Queue q, int n, int ops) {
+    Random rand = new Random(n);
+    final Map<Schedulable, Long> keys = new IdentityHashMap<Schedulable, Long>();
+    Comparator<Schedulable> comp = new Comparator<Schedulable>() {
+      public int compare(Schedulable x, Schedulable y) {
+        return keys.get(x).compareTo(keys.get(y));
+      }
+    };
+    q.setComparator(comp);
+    Schedulable[] items = new Schedulable[n + ops];
+    for (int i = 0; i < items.length; i++) {
+      items[i] = new TrivialSchedulable(null, "s"+i, null);
+      keys.put(items[i], Long.valueOf(rand.nextInt(1000)));
+    }
+    for (int i = 0; i < n; i++) {
+      q.add(items[i]);
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < ops; i++) {
+      q.next();
+      Schedulable s = items[n + i];
+      q.add(s);
+      if ((i & 15) == 0) {
+        q.remove(s);
+        q.add(s);
+      }
+    }
+    return System.nanoTime() - start;
+  }
+
+  private interface Queue {
+    void setComparator(Comparator<Schedulable> c);
+    void add(Schedulable s);
+    void remove(Schedulable s);
+    Schedulable next();
+  }
+
+  private static final class HeapQueue implements Queue {
+    private final DynamicSortedQueue<Schedulable> q =
+      new DynamicSortedQueue<Schedulable>((Comparator<Schedulable>) null);
+    public void setComparator(Comparator<Schedulable> c) { q.setComparator(c); }
+    public void add(Schedulable s) { q.add(s); }
+    public void remove(Schedulable s) { q.remove(s); }
+    public Schedulable next() { return q.next(); }
+  }
+
+  /** The original ArrayList-based DynamicSortedQueue algorithm */
+  private static final class LinearQueue implements Queue {
+    private final List<Schedulable> store = new ArrayList<Schedulable>();
+    private Comparator<Schedulable> comparator;
+    public void setComparator(Comparator<Schedulable> c) { comparator = c; }
+    public void add(Schedulable s) {
+      if (!store.contains(s)) {
+        store.add(s);
+      }
+    }
+    public void remove(Schedulable s) { store.remove(s); }
+    public Schedulable next() {
+      Schedulable min = null;
+      for (int i = 0, n = store.size(); i < n; i++) {
+        Schedulable candidate = store.get(i);
+        if (min == null || comparator.compare(min, candidate) > 0) {
+          min = candidate;
+        }
+      }
+      if (min != null) {
+        store.remove(min);
+      }
+      return min;
+    }
+  }
+}
@@ -79,6 +79,19 @@ public class PropagatingScheduler extends Scheduler {
     }
 
     
+    @Override
+   void forceRights(Scheduler requestor) {
+	TreeNode parent_node = getTreeNode().getParent();
+	if (parent_node == null) {
+	    // This is the root
+	    super.forceRights(requestor);
+	} else {
+	    Scheduler parent = parent_node.getScheduler(getLane());
+	    parent.forceRights(this);
+	    incrementRunCount(this);
+	}
+    }
+
     @Override
    void releaseRights(Scheduler consumer) { 
 	TreeNode parent_node = getTreeNode().getParent();
@@ -56,6 +56,9 @@ final class SchedulableObject implements Schedulable {
     private int blocking_type = SchedulableStatus.NOT_BLOCKING;
     private String blocking_excuse;
     private ThreadPool.PooledThread thread;
+    private boolean rights_lent;
+    // System.nanoTime() of the pending start request, or 0
+    private volatile long start_requested_nanos;
 
     SchedulableObject(TreeNode treeNode, 
                       Runnable runnable, 
@@ -110,7 +113,7 @@ final class SchedulableObject implements Schedulable {
 	    restart = start_count > 0;
 	}	
 	if (restart) {
-	    SchedulableStateChangeQueue.pushStart(this);
+	    requestStart();
 	}
     }
     
@@ -141,6 +144,30 @@ final class SchedulableObject implements Schedulable {
 	blocking_type = SchedulableStatus.NOT_BLOCKING;
     }
 
+    // Elastic pools only: give our right back to the Scheduler while
+    // we're blocked, so that a queued Schedulable can run meanwhile.
+    void lendRights() {
+	synchronized (this) {
+	    if (rights_lent || !pool.isElastic()) {
+		return;
+	    }
+	    rights_lent = true;
+	}
+	scheduler.releaseRights(scheduler);
+    }
+
+    // Take back a right given up by lendRights.  Since we're already
+    // running, this can't wait for a right to be available.
+    void restoreRights() {
+	synchronized (this) {
+	    if (!rights_lent) {
+		return;
+	    }
+	    rights_lent = false;
+	}
+	scheduler.forceRights(scheduler);
+    }
+
     public String getName() {
         return name;
     }
@@ -187,13 +214,30 @@ final class SchedulableObject implements Schedulable {
 
     void claim() {
         // thread has started or restarted
+        long requested = start_requested_nanos;
+        if (requested != 0) {
+            start_requested_nanos = 0;
+            pool.addStartWait(System.nanoTime() - requested);
+        }
         scheduler.threadClaimed(this);
     }
 
+    // Ask the Scheduler to run us, noting the time of the request
+    // so the pool can measure how long we waited for a thread.
+    private void requestStart() {
+        if (start_requested_nanos == 0) {
+            start_requested_nanos = System.nanoTime();
+        }
+        SchedulableStateChangeQueue.pushStart(this);
+    }
+
     // This method runs after each pass through the body. Cf
     // reclaimNotify, which only runs when this Schedulable is the
     // last continuation for a given pooled thread.
     SchedulableObject reclaim(boolean reuse) {
+	// A continuation or the Reclaimer will need the right, in case
+	// the body returned while still marked as blocking.
+	restoreRights();
 	// NB:  The Schedulable itself can never be the continuation
 	// of its own thread!
 	SchedulableObject continuation = scheduler.threadReclaimed(this, reuse);
@@ -240,7 +284,7 @@ final class SchedulableObject implements Schedulable {
             }
         }
         // Restart 
-        SchedulableStateChangeQueue.pushStart(this);
+        requestStart();
     }
     
     // This method is not synchronized by design.
@@ -290,7 +334,7 @@ final class SchedulableObject implements Schedulable {
         	return;
             }
         }
-        SchedulableStateChangeQueue.pushStart(this);
+        requestStart();
     }
 
     // All callers should be synchronized on this
@@ -47,6 +47,10 @@ import org.cougaar.util.log.Logging;
  * <p>
  * This information is shown in the {@link TopPlugin}'s "/threads/top"
  * servlet.
+ * <p>
+ * With the "elastic" thread service (see {@link ThreadServiceProvider})
+ * a blocked Runnable also gives its lane's right back until it calls
+ * endBlocking, so other Schedulables can run while it waits.
  */
 public final class SchedulableStatus
 {
@@ -100,6 +104,9 @@ public final class SchedulableStatus
 	    SchedulableObject sched = pthread.getSchedulable();
 	    checkLegalBlocking(type, sched);
 	    sched.setBlocking(type, excuse == null ? "No excuse given" : excuse);
+	    if (type != CPUINTENSIVE) {
+		sched.lendRights();
+	    }
 	}
     }
 
@@ -126,6 +133,7 @@ public final class SchedulableStatus
 	    ThreadPool.PooledThread pthread = (ThreadPool.PooledThread) thread;
 	    SchedulableObject sched = pthread.getSchedulable();
 	    sched.clearBlocking();
+	    sched.restoreRights();
 	}
     }
 
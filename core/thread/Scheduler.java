@@ -60,6 +60,7 @@ public class Scheduler {
     private int absoluteMax;
     private int maxRunningThreads=0;
     private int runningThreadCount = 0;
+    private int overcommitCount = 0;
     private int lane;
     protected Logger logger = Logging.getLogger(getClass().getName());
     protected int rightsRequestCount = 0;
@@ -334,6 +335,19 @@ public class Scheduler {
 	return false;
     }
 
+    // Take a right whether or not one is available.  This is only
+    // used by Schedulables on elastic pools that gave their right back
+    // while blocked and have now resumed: the thread is already
+    // running, so there's nothing to queue.  Any excess is absorbed by
+    // later releases, which skip the handoff until the count is back
+    // under the max.
+    synchronized void forceRights(Scheduler requestor) {
+	incrementRunCount(requestor);
+	if (maxRunningThreads >= 0 && runningThreadCount > maxRunningThreads) {
+	    ++overcommitCount;
+	}
+    }
+
     synchronized void releaseRights(Scheduler consumer) {
 	// If the max has recently decreased it may be lower than the
 	// running count.  In that case don't do a handoff.
@@ -345,6 +359,9 @@ public class Scheduler {
 	    if (handoff != null) {
 		handoff.thread_start();
 	    }
+	} else if (overcommitCount > 0) {
+	    // Expected, see forceRights
+	    --overcommitCount;
 	} else {
 	    if (logger.isErrorEnabled()) {
 		logger.error("Decreased thread count prevented handoff " 
@@ -45,6 +45,14 @@ public class SingleThreadServiceProvider
 		public int iterateOverStatus(ThreadStatusService.Body body) {
 		    return proxy.iterateOverThreads(body);
 		}
+
+		public long getThreadAcquisitionCount() {
+		    return 0;
+		}
+
+		public long getThreadAcquisitionNanos() {
+		    return 0;
+		}
 	    };
     }
 
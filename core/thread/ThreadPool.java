@@ -26,8 +26,11 @@
 
 package org.cougaar.core.thread;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.cougaar.util.log.Logger;
 import org.cougaar.util.log.Logging;
@@ -35,15 +38,18 @@ import org.cougaar.util.log.Logging;
 /**
  * A pool of native Java threads used by the standard implementation of the
  * {@link ThreadService}. By default this pool has a fixed size.
+ * <p>
+ * Idle threads are kept on a lock-free stack, so acquiring and releasing a
+ * thread is O(1) and doesn't contend on the pool monitor.
  */
 class ThreadPool {
 
     static final class PooledThread extends Thread {
         private static final long MAX_CONTINUATION_TIME = 100;
 
-        private SchedulableObject schedulable;
+        private volatile SchedulableObject schedulable;
 
-        private boolean in_use = false;
+        private volatile boolean in_use = false;
 
         private boolean should_stop = false;
 
@@ -57,7 +63,7 @@ class ThreadPool {
         private boolean isStarted = false;
 
         /** are we actively running the runnable? * */
-        private boolean isRunning = false;
+        private volatile boolean isRunning = false;
 
         /**
          * guards isRunning, synced while actually executing and waits when
@@ -108,7 +114,7 @@ class ThreadPool {
                     break; // don't look for anything else to run
                 }
             }
-            in_use = false; // thread is now reusable
+            pool.release(this); // thread is now reusable
             if (last_schedulable != null) {
                 last_schedulable.addToReclaimer();
             }
@@ -207,43 +213,86 @@ class ThreadPool {
      * the same threadgroup.
      */
     private final ThreadGroup group;
+
+    /** the maximum number of threads, or -1 if unlimited */
+    private final int maximumSize;
+
     /**
-     * The maximum number of unused threads to keep around in the pool. anything
-     * beyond this may be destroyed or GCed.
+     * if true, Schedulables on this pool give their rights back to the
+     * Scheduler while they're blocked (see SchedulableStatus)
      */
+    private final boolean elastic;
+
+    /** all the threads we've made, for iterateOverRunningThreads * */
+    private final ConcurrentLinkedQueue<PooledThread> all_threads =
+        new ConcurrentLinkedQueue<PooledThread>();
+
+    /** the number of threads we've made, bounded by maximumSize * */
+    private final AtomicInteger thread_count = new AtomicInteger();
+
+    /** top of the lock-free (Treiber) stack of idle threads * */
+    private final AtomicReference<IdleNode> idle = new AtomicReference<IdleNode>();
+
+    private static final class IdleNode {
+        final PooledThread thread;
+        IdleNode next;
+
+        IdleNode(PooledThread thread) {
+            this.thread = thread;
+        }
+    }
+
+    private volatile boolean stopped = false;
+
+    // thread acquisition metrics, see addStartWait
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong acquisition_nanos = new AtomicLong();
 
-    /** the actual pool * */
-    private PooledThread pool[];
-    private List<PooledThread> list_pool;
     private final Logger logger;
-    private int index = 0;
+    private final AtomicInteger index = new AtomicInteger();
 
     ThreadPool(int maximumSize, int initialSize, String name) {
+        this(maximumSize, initialSize, name, false);
+    }
+
+    /**
+     * An elastic pool has no maximum size: the lane's Scheduler rights
+     * are the only limit on the number of running Schedulables, and
+     * blocked Schedulables don't count against those rights.
+     */
+    ThreadPool(int maximumSize, int initialSize, String name, boolean elastic) {
+        this.elastic = elastic;
+        if (elastic) {
+            maximumSize = -1;
+        }
         // Maybe give each pool its own group?
         group = new ThreadGroup(name);
         // Thread.currentThread().getThreadGroup();
 
         logger = Logging.getLogger(getClass().getName());
         if (maximumSize < 0) {
-            // Unlimited. Make an array of a somewhat arbitrary size
-            // (100 or initialSize, whichever is larger), and also
-            // make an ArrayList which will be used if the array runs
-            // out.
-            pool = new PooledThread[Math.max(initialSize, 100)];
-            list_pool = new ArrayList<PooledThread>(100);
+            // Unlimited.
+            this.maximumSize = -1;
         } else {
             if (initialSize > maximumSize) {
                 initialSize = maximumSize;
             }
-            pool = new PooledThread[maximumSize];
+            this.maximumSize = maximumSize;
         }
         for (int i = 0; i < initialSize; i++) {
-            pool[i] = constructReusableThread();
+            PooledThread thread = newThread();
+            if (thread != null) {
+                push(thread);
+            }
         }
     }
 
-    private synchronized String nextName() {
-        return "CougaarPooledThread-" + index++;
+    private String nextName() {
+        return "CougaarPooledThread-" + index.getAndIncrement();
+    }
+
+    boolean isElastic() {
+        return elastic;
     }
 
     ThreadGroup getThreadGroup() {
@@ -251,52 +300,19 @@ class ThreadPool {
     }
 
     PooledThread getThread(String name) {
-        PooledThread thread = null;
-        PooledThread candidate = null;
-
-        synchronized (this) {
-            if (pool == null) {
-                throw new RuntimeException("The ThreadPool has been stopped");
-            }
-
-            for (int i = 0; i < pool.length; i++) {
-                candidate = pool[i];
-                if (candidate == null) {
-                    thread = constructReusableThread();
-                    pool[i] = thread;
-                    thread.in_use = true;
-                     break;
-                } else if (!candidate.in_use) {
-                    thread = candidate;
-                    thread.in_use = true;
-                    break;
-                }
-            }
-
-            if (thread == null && list_pool != null) {
-                // Use the slow ArrayList. This is only enabled if
-                // there's no thread limit.
-                for (int i = 0, n = list_pool.size(); i < n; i++) {
-                    candidate = list_pool.get(i);
-                    if (!candidate.in_use) {
-                        thread = candidate;
-                        thread.in_use = true;
-                        break;
-                    }
-                }
-                if (thread == null) {
-                    // None in the list either. Make one and add it,
-                    thread = constructReusableThread();
-                    thread.in_use = true;
-                    list_pool.add(thread);
-                }
-            }
+        if (stopped) {
+            throw new RuntimeException("The ThreadPool has been stopped");
+        }
+        PooledThread thread = pop();
+        if (thread == null) {
+            thread = newThread();
         }
 
         if (thread == null) {
             // None available. This is unrecoverable.
             throw new RuntimeException("Exceeded ThreadPool max");
         }
+        thread.in_use = true;
 
         if (logger.isInfoEnabled()) {
             thread.setName(name);
@@ -305,6 +321,84 @@ class ThreadPool {
         return thread;
     }
 
+    /** Called by a PooledThread when it has no more work */
+    private void release(PooledThread thread) {
+        thread.in_use = false;
+        if (!stopped) {
+            push(thread);
+        }
+    }
+
+    private void push(PooledThread thread) {
+        IdleNode node = new IdleNode(thread);
+        while (true) {
+            IdleNode top = idle.get();
+            node.next = top;
+            if (idle.compareAndSet(top, node)) {
+                return;
+            }
+        }
+    }
+
+    private PooledThread pop() {
+        while (true) {
+            IdleNode top = idle.get();
+            if (top == null) {
+                return null;
+            }
+            if (idle.compareAndSet(top, top.next)) {
+                return top.thread;
+            }
+        }
+    }
+
+    /**
+     * Make a new thread if we're under our maximum size, otherwise
+     * return null.
+     */
+    private PooledThread newThread() {
+        while (true) {
+            int n = thread_count.get();
+            if (maximumSize >= 0 && n >= maximumSize) {
+                return null;
+            }
+            if (thread_count.compareAndSet(n, n + 1)) {
+                break;
+            }
+        }
+        PooledThread thread = constructReusableThread();
+        all_threads.add(thread);
+        return thread;
+    }
+
+    /**
+     * Called when a pooled thread starts running a Schedulable, with
+     * the time since the Schedulable asked to start. This covers the
+     * wait in the Scheduler's queue as well as getting the thread.
+     */
+    void addStartWait(long nanos) {
+        acquisitions.incrementAndGet();
+        acquisition_nanos.addAndGet(nanos);
+    }
+
+    /** @return the number of Schedulables started on pooled threads */
+    long getAcquisitionCount() {
+        return acquisitions.get();
+    }
+
+    /**
+     * @return the total time, in nanoseconds, that Schedulables waited
+     * between asking to start and running on a pooled thread
+     */
+    long getAcquisitionNanos() {
+        return acquisition_nanos.get();
+    }
+
+    /** @return the number of threads made so far */
+    int getThreadCount() {
+        return thread_count.get();
+    }
+
     /** actually construct a new PooledThread * */
     PooledThread constructReusableThread() {
         // If info logging is enabled the thread's name will get set
@@ -328,14 +422,13 @@ class ThreadPool {
     }
 
     int iterateOverRunningThreads(ThreadStatusService.Body body) {
-        PooledThread[] p = pool;
-        if (p == null) {
+        if (stopped) {
             return 0;
         }
         int count = 0;
-        for (int i = 0; i < p.length; i++) {
-            PooledThread thread = p[i];
-            if (thread == null || !thread.isRunning) {
+        for (Iterator<PooledThread> iter = all_threads.iterator(); iter.hasNext();) {
+            PooledThread thread = iter.next();
+            if (!thread.isRunning) {
                 continue;
             }
             try {
@@ -362,17 +455,17 @@ class ThreadPool {
 
     void stopAllThreads() {
         synchronized (this) {
-            int n = pool == null ? 0 : pool.length;
-            for (int i = 0; i < n; i++) {
-                PooledThread thread = pool[i];
-                if (thread == null) {
-                    continue;
-                }
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+            idle.set(null);
+            for (Iterator<PooledThread> iter = all_threads.iterator(); iter.hasNext();) {
+                PooledThread thread = iter.next();
                 thread.in_use = true;
                 thread.stop_running();
-                pool[i] = null;
             }
-            pool = null;
+            all_threads.clear();
         }
     }
 
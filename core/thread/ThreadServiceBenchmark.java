@@ -0,0 +1,145 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+package org.cougaar.core.thread;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cougaar.core.service.ThreadService;
+
+/**
+ * Point benchmark that compares the standard hierarchical thread
+ * service against the "elastic" variant (see {@link
+ * ThreadServiceProvider}) under a mixed workload of blocking and
+ * CPU-bound Schedulables in one lane.  It reports the mean and max
+ * scheduling latency (from <code>start()</code> to the body running)
+ * and the throughput.
+ * <p>
+ * Usage is:<pre>
+ *   java org.cougaar.core.thread.ThreadServiceBenchmark [tasks [rights [blockMillis]]]
+ * </pre>
+ * The defaults are 2000 tasks, 8 rights per lane, and 20ms of blocking
+ * for every other task.
+ */
+public class ThreadServiceBenchmark {
+
+  public static void main(String[] args) throws InterruptedException {
+    int tasks = (args.length > 0 ? Integer.parseInt(args[0]) : 2000);
+    int rights = (args.length > 1 ? Integer.parseInt(args[1]) : 8);
+    long blockMillis = (args.length > 2 ? Long.parseLong(args[2]) : 20);
+
+    SchedulableStateChangeQueue.startThread();
+    System.out.println("service\ttasks/s\tmean-latency-ms\tmax-latency-ms");
+    for (int r = 0; r < 2; r++) {
+      // first round is JIT warm-up
+      boolean print = (r > 0);
+      run("hierarchical", false, tasks, rights, blockMillis, print);
+      run("elastic", true, tasks, rights, blockMillis, print);
+    }
+    SchedulableStateChangeQueue.stopThread();
+  }
+
+  private static void run(
+      String label, boolean elastic, int tasks, int rights,
+      final long blockMillis, boolean print) throws InterruptedException {
+    int lanes = ThreadService.LANE_COUNT;
+    ThreadListenerProxy listenerProxy = new ThreadListenerProxy(lanes);
+    Scheduler[] schedulers = new Scheduler[lanes];
+    ThreadPool[] pools = new ThreadPool[lanes];
+    for (int i = 0; i < lanes; i++) {
+      schedulers[i] = new PropagatingScheduler(listenerProxy);
+      schedulers[i].setLane(i);
+      schedulers[i].setAbsoluteMax(rights);
+      pools[i] = new ThreadPool(rights, rights, label+"-"+i, elastic);
+    }
+    TreeNode node = new TreeNode(schedulers, pools, label, null);
+    listenerProxy.setTreeNode(node);
+    ThreadServiceProxy service = new ThreadServiceProxy(node);
+
+    final CountDownLatch done = new CountDownLatch(tasks);
+    final AtomicLong totalLatency = new AtomicLong();
+    final AtomicLong maxLatency = new AtomicLong();
+    Schedulable[] schedulables = new Schedulable[tasks];
+    final long[] submitted = new long[tasks];
+    for (int i = 0; i < tasks; i++) {
+      final int id = i;
+      final boolean blocking = ((i & 1) == 0);
+      Runnable body = new Runnable() {
+        public void run() {
+          long latency = System.nanoTime() - submitted[id];
+          totalLatency.addAndGet(latency);
+          long max;
+          while ((max = maxLatency.get()) < latency &&
+                 !maxLatency.compareAndSet(max, latency)) {
+          }
+          if (blocking) {
+            try {
+              SchedulableStatus.beginWait("benchmark sleep");
+              Thread.sleep(blockMillis);
+            } catch (InterruptedException e) {
+              // ignore
+            } finally {
+              SchedulableStatus.endBlocking();
+            }
+          } else {
+            spin(blockMillis * 1000000L / 10);
+          }
+          done.countDown();
+        }
+      };
+      schedulables[i] = service.getThread(
+          ThreadServiceBenchmark.class, body, "task-"+i,
+          ThreadService.BEST_EFFORT_LANE);
+    }
+
+    long start = System.nanoTime();
+    for (int i = 0; i < tasks; i++) {
+      submitted[i] = System.nanoTime();
+      schedulables[i].start();
+    }
+    done.await();
+    long elapsed = System.nanoTime() - start;
+
+    for (int i = 0; i < lanes; i++) {
+      pools[i].stopAllThreads();
+    }
+
+    if (print) {
+      System.out.println(
+          label+"\t"+
+          (tasks * 1000000000L / elapsed)+"\t"+
+          (totalLatency.get() / tasks / 1000000.0)+"\t"+
+          (maxLatency.get() / 1000000.0));
+    }
+  }
+
+  private static void spin(long nanos) {
+    long end = System.nanoTime() + nanos;
+    while (System.nanoTime() < end) {
+    }
+  }
+}
@@ -48,6 +48,12 @@ import org.cougaar.util.StateModelException;
  * ThreadService}, {@link ThreadControlService}, {@link
  * ThreadListenerService}, and {@link ThreadStatusService}.
  *
+ * @property org.cougaar.thread.service.type selects the implementation:
+ * "hierarchical" (the default), "elastic", "trivial" or "single".  The
+ * elastic service is the hierarchical service with unbounded thread
+ * pools: the per-lane Scheduler rights are used only for admission
+ * control, and a Schedulable that declares itself blocked through
+ * {@link SchedulableStatus} gives its right back while it waits.
  */
 public final class ThreadServiceProvider 
     extends GenericStateModelAdapter
@@ -60,7 +66,7 @@ public final class ThreadServiceProvider
     private static ThreadPool[] pools;
     private static int[] lane_sizes = new int[ThreadService.LANE_COUNT];
 
-    private static synchronized void makePools() 
+    private static synchronized void makePools(boolean elastic) 
     {
 	if (pools != null) return;
 
@@ -68,7 +74,7 @@ public final class ThreadServiceProvider
 	int initializationCount = 10; // could be a param
 	for (int i=0; i<pools.length; i++)
 	    pools[i] = new ThreadPool(lane_sizes[i], initializationCount,
-				      "Pool-"+i);
+				      "Pool-"+i, elastic);
     }
 
     private static synchronized void stopPools()
@@ -140,9 +146,9 @@ public final class ThreadServiceProvider
 	    return;
 	}
 
-	// Hierarchical service
+	// Hierarchical service, possibly with elastic pools
 
-	makePools();
+	makePools(type.equals("elastic"));
 
 	// check if this component was added with parameters
         if (name == null) {
@@ -182,6 +188,16 @@ public final class ThreadServiceProvider
 			    node.iterateOverQueuedThreads(body) +
 			    node.iterateOverRunningThreads(body);
 		    }
+
+		    public long getThreadAcquisitionCount()
+		    {
+			return node.getThreadAcquisitionCount();
+		    }
+
+		    public long getThreadAcquisitionNanos()
+		    {
+			return node.getThreadAcquisitionNanos();
+		    }
 		};
 	    the_sb.addService(ThreadStatusService.class, this);
 	}
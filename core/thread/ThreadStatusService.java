@@ -45,4 +45,20 @@ public interface ThreadStatusService extends Service
     }
 
     public int iterateOverStatus(Body body);
+
+    /**
+     * @return the number of times a Schedulable has started running
+     * on a pooled thread, or 0 if the ThreadService implementation
+     * doesn't keep track.  Sampling this periodically gives the
+     * acquisition rate.
+     */
+    public long getThreadAcquisitionCount();
+
+    /**
+     * @return the total time, in nanoseconds, from each Schedulable's
+     * start request (including any time queued in its Scheduler) to
+     * the moment a pooled thread began running it, or 0 if the
+     * ThreadService implementation doesn't keep track.
+     */
+    public long getThreadAcquisitionNanos();
 }
@@ -213,6 +213,15 @@ final class TopServlet extends ServletFrameset {
 		out.print(controlService.maxRunningThreadCount(i));
 	    }
 	}
+	long acquisitions = statusService.getThreadAcquisitionCount();
+	if (acquisitions > 0) {
+	    long nanos = statusService.getThreadAcquisitionNanos();
+	    out.print("<br>");
+	    out.print(acquisitions);
+	    out.print(" pooled thread starts, mean wait from start request ");
+	    out.print(nanos / acquisitions / 1000);
+	    out.print(" us");
+	}
 	out.print("</b>");
     }
 
@@ -98,6 +98,22 @@ final class TreeNode {
 	return count;
     }
 
+    long getThreadAcquisitionCount() {
+	long count = 0;
+	for (int i=0; i<pools.length; i++) {
+	    count += pools[i].getAcquisitionCount();
+	}
+	return count;
+    }
+
+    long getThreadAcquisitionNanos() {
+	long nanos = 0;
+	for (int i=0; i<pools.length; i++) {
+	    nanos += pools[i].getAcquisitionNanos();
+	}
+	return nanos;
+    }
+
     int iterateOverQueuedThreads(ThreadStatusService.Body body) {
 	int count = 0;
 	for (int i=0; i<schedulers.length; i++)
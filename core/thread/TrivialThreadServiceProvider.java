@@ -99,6 +99,14 @@ public class TrivialThreadServiceProvider
 		public int iterateOverStatus(ThreadStatusService.Body body) {
 		    return TrivialThreadPool.pool().iterateOverRunningThreads(body);
 		}
+
+		public long getThreadAcquisitionCount() {
+		    return 0;
+		}
+
+		public long getThreadAcquisitionNanos() {
+		    return 0;
+		}
 	    };
     }
 
@@ -76,6 +76,21 @@ public final class UID
     this.id = id;
   }
 
+  /**
+   * Create a UID with an owner that is already interned, skipping
+   * the <code>String.intern()</code> lookup of the constructor.
+   * <p>
+   * UIDs compare owners by reference, so the owner <u>must</u> be
+   * the result of <code>String.intern()</code>.
+   */
+  public static UID withInternedOwner(String owner, long id) {
+    assert owner == owner.intern() : owner;
+    UID uid = new UID();
+    uid.owner = owner;
+    uid.id = id;
+    return uid;
+  }
+
   public String getOwner() { return owner; }
   public long getId() { return id; }
 
@@ -48,6 +48,8 @@ import org.cougaar.core.service.wp.Request;
 import org.cougaar.core.service.wp.Response;
 import org.cougaar.core.service.wp.WhitePagesService;
 import org.cougaar.core.servlet.ComponentServlet;
+import org.cougaar.core.wp.resolver.CacheStatisticsService;
+import org.cougaar.core.wp.resolver.LeaseStatisticsService;
 
 /**
  * This component loads the optional "/wp" servlet for viewing and
@@ -61,6 +63,9 @@ import org.cougaar.core.servlet.ComponentServlet;
  * <p>
  * For starters, just click on "submit" to do a recursive
  * white pages dump.
+ * <p>
+ * The "cache_stats" and "lease_stats" actions show the node's white
+ * pages cache and lease renewal statistics, if they're advertised.
  */
 public class WhitePagesServlet extends ComponentServlet {
 
@@ -74,6 +79,8 @@ public class WhitePagesServlet extends ComponentServlet {
 
   private LoggingService log;
   private WhitePagesService wps;
+  private CacheStatisticsService css;
+  private LeaseStatisticsService lss;
 
   public void setLoggingService(LoggingService log) {
     this.log = log;
@@ -83,13 +90,34 @@ public class WhitePagesServlet extends ComponentServlet {
     this.wps = wps;
   }
 
+  @Override
+public void load() {
+    super.load();
+    // optional
+    css = getService(this, CacheStatisticsService.class, null);
+    lss = getService(this, LeaseStatisticsService.class, null);
+  }
+
+  @Override
+public void unload() {
+    if (lss != null) {
+      releaseService(this, LeaseStatisticsService.class, lss);
+      lss = null;
+    }
+    if (css != null) {
+      releaseService(this, CacheStatisticsService.class, css);
+      css = null;
+    }
+    super.unload();
+  }
+
   @Override
 public void doGet(
       HttpServletRequest sreq,
       HttpServletResponse sres) throws IOException {
     // create a new handler per request, so we don't mangle our
     // per-request variables
-    MyHandler h = new MyHandler(getEncodedAgentName(), log, wps);
+    MyHandler h = new MyHandler(getEncodedAgentName(), log, wps, css, lss);
     h.execute(sreq, sres);  
   }
 
@@ -98,6 +126,8 @@ public void doGet(
     private final String localAgent;
     private final LoggingService log;
     private final WhitePagesService wps;
+    private final CacheStatisticsService css;
+    private final LeaseStatisticsService lss;
 
     private HttpServletRequest sreq;
     private PrintWriter out;
@@ -118,10 +148,14 @@ public void doGet(
     public MyHandler(
         String localAgent,
         LoggingService log,
-        WhitePagesService wps) {
+        WhitePagesService wps,
+        CacheStatisticsService css,
+        LeaseStatisticsService lss) {
       this.localAgent = localAgent;
       this.log = log;
       this.wps = wps;
+      this.css = css;
+      this.lss = lss;
     }
 
     public void execute(
@@ -226,6 +260,8 @@ public void doGet(
         option("bind", action)+
         option("rebind", action)+
         option("unbind", action)+
+        option("cache_stats", action)+
+        option("lease_stats", action)+
         "</select>\n"+
         "</td><tr>\n"+
         "<tr><td>Cache-only</td><td>"+
@@ -357,6 +393,10 @@ public void doGet(
           if (ae != null) {
             req = new Request.Unbind(Request.NONE, ae);
           }
+        } else if ("cache_stats".equals(action)) {
+          printCacheStatistics();
+        } else if ("lease_stats".equals(action)) {
+          printLeaseStatistics();
         } else if (action != null) {
           out.println(
               "<font color=\"red\">Unknown action: "+action+"</font>");
@@ -369,6 +409,61 @@ public void doGet(
       }
     }
     
+    private void printCacheStatistics() {
+      out.println("<p><hr><p>");
+      if (css == null) {
+        out.println(
+            "<font color=\"red\">No CacheStatisticsService?</font>");
+        return;
+      }
+      long hits = css.getHitCount();
+      long hints = css.getHintCount();
+      long stale = css.getStaleCount();
+      long misses = css.getMissCount();
+      long total = hits + hints + stale + misses;
+      out.println(
+          "<b>cache_stats:</b><br>\n"+
+          "<table border=1>\n"+
+          statRow("Size", css.getSize(), -1)+
+          statRow("Hits", hits, total)+
+          statRow("Hint hits", hints, total)+
+          statRow("Stale hits", stale, total)+
+          statRow("Misses", misses, total)+
+          statRow("Prefetches", css.getPrefetchCount(), -1)+
+          statRow("Waiting lookups", css.getLookupCount(), -1)+
+          statRow("Mean lookup wait (millis)", css.getMeanLookupTime(), -1)+
+          statRow("Max lookup wait (millis)", css.getMaxLookupTime(), -1)+
+          "</table>");
+    }
+
+    private void printLeaseStatistics() {
+      out.println("<p><hr><p>");
+      if (lss == null) {
+        out.println(
+            "<font color=\"red\">No LeaseStatisticsService?</font>");
+        return;
+      }
+      long renewals = lss.getRenewalCount();
+      out.println(
+          "<b>lease_stats:</b><br>\n"+
+          "<table border=1>\n"+
+          statRow("Leases", lss.getLeaseCount(), -1)+
+          statRow("Renewals", renewals, -1)+
+          statRow("Coalesced renewals", lss.getCoalescedCount(), renewals)+
+          statRow("Renewal batches", lss.getBatchCount(), -1)+
+          statRow("Modify messages saved", lss.getMessagesSavedCount(), renewals)+
+          statRow("Mean renewal time (millis)", lss.getMeanRenewalTime(), -1)+
+          statRow("Max renewal time (millis)", lss.getMaxRenewalTime(), -1)+
+          "</table>");
+    }
+
+    private static String statRow(String n, long v, long total) {
+      return
+        "<tr><td>"+n+"</td><td align=right>"+v+"</td><td align=right>"+
+        (0 < total ? (((100 * v) / total)+"%") : "&nbsp;")+
+        "</td></tr>\n";
+    }
+
     private void printFooter() {
       out.println("</body></html>");
     }
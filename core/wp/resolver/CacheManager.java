@@ -29,15 +29,21 @@ package org.cougaar.core.wp.resolver;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.cougaar.bootstrap.SystemProperties;
 import org.cougaar.core.component.Component;
 import org.cougaar.core.component.ServiceBroker;
 import org.cougaar.core.component.ServiceProvider;
+import org.cougaar.core.node.NodeControlService;
 import org.cougaar.core.service.LoggingService;
 import org.cougaar.core.service.ThreadService;
 import org.cougaar.core.service.wp.AddressEntry;
@@ -63,12 +69,21 @@ import org.cougaar.util.UnaryPredicate;
  *   <li>Evicts expired and least-recently-used entries</li>
  *   <li>Renews (in the background) recently-used entries that
  *       will soon expire</li>
+ *   <li>Optionally serves recently-expired data while a renewal
+ *       is in progress</li>
  *   <li>Allows the client to flush and force-renewal entries
  *       that are known to be stale</li>
  *   <li>Upgrades "get" requests to "getAll" requests, to reduce
  *       server traffic</li>
  * </ul>
  * <p>
+ * The cache is split into segments by name, each with its own lock,
+ * LRU order, and time-ordered indexes of the entries due to expire
+ * and to be renewed, so neither the cleaner nor the prefetcher has
+ * to scan the cache. Hit, miss, and lookup latency statistics are
+ * advertised to the node's agents as the
+ * {@link CacheStatisticsService}.
+ * <p>
  * The cache doesn't manage "bind/unbind" leases; that's the job of
  * the LeaseManager.
  */
@@ -91,10 +106,6 @@ implements Component
   // and doesn't contain expired entries
   private static final double EVICT_RATIO = (1.0/3.0);
 
-  // RFE: timer-based prefetch
-  //
-  // use the ACCESS_BITS to check entries for late accesses
-
   private CacheConfig config;
 
   private ServiceBroker sb;
@@ -110,14 +121,26 @@ implements Component
       }
     };
 
+  private ServiceBroker rootsb;
+
   private CacheSP cacheSP;
   private HintSP hintSP;
-
-  private final Object lock = new Object();
+  private CacheStatisticsSP statisticsSP;
+
+  // statistics
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong hintHits = new AtomicLong();
+  private final AtomicLong staleHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong prefetches = new AtomicLong();
+  private final AtomicLong lookups = new AtomicLong();
+  private final AtomicLong lookupTime = new AtomicLong();
+  private final AtomicLong maxLookupTime = new AtomicLong();
 
   // our cache
   //
-  // this is a Map of Strings to Entry objects:
+  // this is an array of segments, selected by the hash of the name,
+  // where each segment is a Map of Strings to Entry objects:
   //   LRUMap<String, Entry>
   //
   // for keys starting with "."  (list):
@@ -129,7 +152,9 @@ implements Component
   // note that pending requests are also placed in the cache,
   // as well as non-evictable hints, so the cache can't be
   // simply cleared to free up space.
-  private LRUMap cache;
+  //
+  // each segment is locked by synchronizing on it.
+  private LRUMap[] segments;
 
   //
   // clean the cache:
@@ -172,7 +197,15 @@ public void load() {
 
     configure(null);
 
-    cache = new LRUMap(config.maxSize);
+    int n = 1;
+    while (n < config.segments) {
+      n <<= 1;
+    }
+    int segmentSize = (config.maxSize + n - 1) / n;
+    segments = new LRUMap[n];
+    for (int i = 0; i < n; i++) {
+      segments[i] = new LRUMap(segmentSize);
+    }
 
     // register for lookups
     lookupService = sb.getService(
@@ -188,6 +221,16 @@ public void load() {
     hintSP = new HintSP();
     sb.addService(HintService.class, hintSP);
 
+    // advertise our statistics to the node's agents
+    NodeControlService ncs = sb.getService(this, NodeControlService.class, null);
+    if (ncs != null) {
+      rootsb = ncs.getRootServiceBroker();
+      sb.releaseService(this, NodeControlService.class, ncs);
+    }
+    statisticsSP = new CacheStatisticsSP();
+    ServiceBroker statisticsSB = (rootsb == null ? sb : rootsb);
+    statisticsSB.addService(CacheStatisticsService.class, statisticsSP);
+
     if (0 < config.cleanPeriod) {
       // create expiration timer
       Runnable cleanCacheRunner =
@@ -223,6 +266,11 @@ public void load() {
 
   @Override
 public void unload() {
+    if (statisticsSP != null) {
+      ServiceBroker statisticsSB = (rootsb == null ? sb : rootsb);
+      statisticsSB.revokeService(CacheStatisticsService.class, statisticsSP);
+      statisticsSP = null;
+    }
     if (hintSP != null) {
       sb.revokeService(HintService.class, hintSP);
       hintSP = null;
@@ -324,9 +372,11 @@ public void unload() {
     UID uid;
     Object result;
     boolean mustSend;
-    synchronized (lock) {
+    LRUMap cache = getSegment(name);
+    synchronized (cache) {
       Entry e = (Entry) cache.get(name);
       boolean isHint = false;
+      boolean isStale = false;
       long now = System.currentTimeMillis();
       Object hint;
       if (e == null) {
@@ -350,6 +400,16 @@ public void unload() {
         result = hint;
         isHint = true;
         mustSend = false;
+      } else if (
+          0 < config.staleTTD &&
+          e.hasData() &&
+          (now - e.getExpirationTime()) <= config.staleTTD) {
+        // recently expired, serve the stale data while we renew
+        hasResult = true;
+        uid = e.getUID();
+        result = e.getData();
+        isStale = true;
+        mustSend = e.noteExpired(now, null);
       } else {
         // expired, maybe already pending
         hasResult = false;
@@ -358,6 +418,16 @@ public void unload() {
         mustSend = e.noteExpired(now, (cacheOnly ? null : res));
       }
 
+      if (!hasResult) {
+        misses.incrementAndGet();
+      } else if (isHint) {
+        hintHits.incrementAndGet();
+      } else if (isStale) {
+        staleHits.incrementAndGet();
+      } else {
+        hits.incrementAndGet();
+      }
+
       if (logger.isDetailEnabled()) {
         logger.detail(
             "cache "+
@@ -367,7 +437,7 @@ public void unload() {
                (" (RENEW "+
                 Timestamp.toString(e.getExpirationTime(), now)+
                 ")") :
-               (isHint ? " (HINT)" : ""))) :
+               (isHint ? " (HINT)" : (isStale ? " (STALE)" : "")))) :
              ("MISS ("+
               (mustSend ? "SEND" : "PENDING")+
               ")"))+
@@ -412,7 +482,8 @@ public void unload() {
 
     // flush the cache entry if it conflicts with the
     // bind entry, to avoid local confusion
-    synchronized (lock) {
+    LRUMap cache = getSegment(name);
+    synchronized (cache) {
       Entry e = (Entry) cache.get(name);
       boolean wasCached = false;
       boolean wasStale = false;
@@ -456,7 +527,8 @@ public void unload() {
     boolean hasResult;
     Object result;
     List pendingGets = null;
-    synchronized (lock) {
+    LRUMap cache = getSegment(name);
+    synchronized (cache) {
       Entry e = (Entry) cache.get(name);
       if (e == null) {
         // new hint
@@ -553,7 +625,8 @@ public void unload() {
 
     boolean hasResult;
     Object result;
-    synchronized (lock) {
+    LRUMap cache = getSegment(name);
+    synchronized (cache) {
       Entry e = (Entry) cache.get(name);
       if (e != null && e.hasHints()) {
         String type = ae.getType();
@@ -562,6 +635,9 @@ public void unload() {
           if (!e.removeHint(type)) {
             // was hint-only, now nothing
             cache.remove(name);
+          } else if (!e.hasHints()) {
+            // the hints kept the data alive, let it expire
+            cache.expiries.add(name, e.getExpirationTime());
           }
           hasResult = true;
           result = Boolean.TRUE;
@@ -589,7 +665,8 @@ public void unload() {
     String name = ae.getName();
 
     // clear cache entry, just in case
-    synchronized (lock) {
+    LRUMap cache = getSegment(name);
+    synchronized (cache) {
       Entry e = (Entry) cache.get(name);
       boolean wasCached = false;
       long now = System.currentTimeMillis();
@@ -621,7 +698,8 @@ public void unload() {
     Object result;
     boolean mustSend = false;
 
-    synchronized (lock) {
+    LRUMap cache = getSegment(name);
+    synchronized (cache) {
       boolean wasCached = false;
       boolean isOldEnough = true;
 
@@ -788,7 +866,8 @@ public void unload() {
       Object data,
       boolean create) {
     List responses;
-    synchronized (lock) {
+    LRUMap cache = getSegment(name);
+    synchronized (cache) {
       Entry e = (Entry) cache.get(name);
       if (create) {
         long now = System.currentTimeMillis();
@@ -818,6 +897,7 @@ public void unload() {
         // set in cache, maybe force another lookup if !hasData
         responses = 
           gotAll(
+              cache,
               e,
               name,
               uid,
@@ -859,6 +939,7 @@ public void unload() {
   }
 
   private List gotAll(
+      LRUMap cache,
       Entry e,
       String name,
       UID uid,
@@ -933,6 +1014,9 @@ public void unload() {
 
     // take pending responses
     List responses = e.takeResponses();
+    if (responses != null && !responses.isEmpty()) {
+      noteLookupTime(now - e.getSendTime());
+    }
 
     // set data
     e.setDataTime(now);
@@ -989,6 +1073,10 @@ public void unload() {
     e.setExpireTime(expireTime);
     // let the entry steal the lower bits
     renewalTime = e.getRenewalTime();
+
+    // index the entry for prefetch and cleanup
+    cache.renewals.add(name, renewalTime);
+    cache.expiries.add(name, expireTime);
  
     if (logger.isDebugEnabled()) {
       boolean isList = (name.charAt(0) == '.');
@@ -1069,52 +1157,59 @@ public void unload() {
 
   private void prefetch() {
     Map m = null;
-    synchronized (lock) {
-      // scan the cache, which is ordered from least-recently-used
-      // to most-recently-used.
-      //
-      // renew entries that will expire soon.
-      //
-      // could optimize this by keeping a minTTL
-      long now = System.currentTimeMillis();
-      long nextTime = (now + config.prefetchPeriod);
-      int n = cache.size();
-      for (Iterator iter = cache.entrySet().iterator();
-          iter.hasNext();
-          ) {
-        Map.Entry me = (Map.Entry) iter.next();
-        Entry e = (Entry) me.getValue();
-        if (!e.shouldPrefetch(nextTime, now)) {
-          continue;
-        }
-        String name = (String) me.getKey();
-        if (m == null) {
-          m = new HashMap();
-        }
-        UID uid = (e.hasData() ? e.getUID() : null);
-        if (logger.isDetailEnabled()) {
-          if (m.isEmpty()) {
-            logger.detail("prefetching cache["+n+"] {");
+    long now = System.currentTimeMillis();
+    long nextTime = (now + config.prefetchPeriod);
+    for (int i = 0; i < segments.length; i++) {
+      LRUMap cache = segments[i];
+      synchronized (cache) {
+        // take the entries that will need renewal before our next
+        // run from the renewal index.
+        //
+        // renew the ones that have been used since their half-life,
+        // so hot names are renewed before they expire.  The rest
+        // are checked again on our next run until they're used or
+        // expire.
+        List due = cache.renewals.takeDue(nextTime);
+        int n = (due == null ? 0 : due.size());
+        for (int j = 0; j < n; j++) {
+          String name = (String) due.get(j);
+          Entry e = cache.peek(name);
+          if (e == null) {
+            continue;
+          }
+          if (!e.shouldPrefetch(nextTime, now)) {
+            if (e.shouldRecheck(nextTime)) {
+              // not used since its half-life, but it may be used
+              // before it expires, so check it again next run
+              cache.renewals.add(name, nextTime);
+            }
+            continue;
           }
-          logger.detail(
-              "  cache PREFETCH (RENEW "+
-              Timestamp.toString(e.getExpirationTime(), now)+
-              ") for "+
-              (name.charAt(0) == '.' ?
-               "list(suffix=" :
-               "getAll(name=")+
-              name+")"+
-              (uid == null ? "" : " (uid="+uid+")"));
+          if (m == null) {
+            m = new HashMap();
+          }
+          UID uid = (e.hasData() ? e.getUID() : null);
+          if (logger.isDetailEnabled()) {
+            logger.detail(
+                "cache PREFETCH (RENEW "+
+                Timestamp.toString(e.getExpirationTime(), now)+
+                ") for "+
+                (name.charAt(0) == '.' ?
+                 "list(suffix=" :
+                 "getAll(name=")+
+                name+")"+
+                (uid == null ? "" : " (uid="+uid+")"));
+          }
+          m.put(name, uid);
         }
-        m.put(name, uid);
-      }
-      if (m != null && logger.isDetailEnabled()) {
-        logger.detail("}");
-        logger.detail("prefetch "+m.size()+" of "+n+" entries");
       }
     }
 
     if (m != null) {
+      prefetches.addAndGet(m.size());
+      if (logger.isDetailEnabled()) {
+        logger.detail("prefetch "+m.size()+" entries");
+      }
       lookupService.lookup(m);
     }
 
@@ -1124,24 +1219,26 @@ public void unload() {
 
   // this is optional since the LRU will clean itself
   private void cleanCache() {
-    synchronized (lock) {
-      long now = System.currentTimeMillis();
-
-      // remove expired entries
-      removeExpiredEntries(now);
-
-      // might as well debug our misses-table on the timer thread
-      if (logger.isDebugEnabled()) {
-        StringBuffer buf = new StringBuffer();
-        buf.append("\n##### cache requests & hints ######################\n");
-        boolean moreInfo = logger.isDetailEnabled();
-        cacheToString(buf, moreInfo, moreInfo, now);
-        buf.append("\n###################################################");
-        String s = buf.toString();
-        logger.debug(s);
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < segments.length; i++) {
+      LRUMap cache = segments[i];
+      synchronized (cache) {
+        // remove expired entries
+        removeExpiredEntries(cache, now);
       }
     }
 
+    // might as well debug our misses-table on the timer thread
+    if (logger.isDebugEnabled()) {
+      StringBuffer buf = new StringBuffer();
+      buf.append("\n##### cache requests & hints ######################\n");
+      boolean moreInfo = logger.isDetailEnabled();
+      cacheToString(buf, moreInfo, moreInfo, now);
+      buf.append("\n###################################################");
+      String s = buf.toString();
+      logger.debug(s);
+    }
+
     // run me again later
     cleanCacheThread.schedule(config.cleanPeriod);
   }
@@ -1151,25 +1248,30 @@ public void unload() {
       boolean showNormal,
       boolean showExpired,
       long now) {
-    buf.append("Cache[").append(cache.size()).append("] {");
+    buf.append("Cache[").append(getSize()).append("] {");
     int nNormal = 0;
     int nExpired = 0;
-    for (Iterator iter = cache.entrySet().iterator();
-        iter.hasNext();
-        ) {
-      Map.Entry me = (Map.Entry) iter.next();
-      String name = (String) me.getKey();
-      Entry e = (Entry) me.getValue();
-      if (!showExpired && e.hasExpired(now)) {
-        nExpired++;
-        continue;
-      }
-      if (!showNormal && e.canEvict(now, false)) {
-        nNormal++;
-        continue;
+    for (int i = 0; i < segments.length; i++) {
+      LRUMap cache = segments[i];
+      synchronized (cache) {
+        for (Iterator iter = cache.entrySet().iterator();
+            iter.hasNext();
+            ) {
+          Map.Entry me = (Map.Entry) iter.next();
+          String name = (String) me.getKey();
+          Entry e = (Entry) me.getValue();
+          if (!showExpired && e.hasExpired(now)) {
+            nExpired++;
+            continue;
+          }
+          if (!showNormal && e.canEvict(now, false)) {
+            nNormal++;
+            continue;
+          }
+          buf.append("\n  ").append(name).append(" --> ");
+          buf.append(e.toString(now));
+        }
       }
-      buf.append("\n  ").append(name).append(" --> ");
-      buf.append(e.toString(now));
     }
     if (0 < nNormal) {
       buf.append("\n  <skipping ").append(nNormal);
@@ -1182,9 +1284,9 @@ public void unload() {
     buf.append("\n}");
   }
 
-  private boolean evictLRU(Entry eldestE) {
+  private boolean evictLRU(LRUMap cache, Entry eldestE) {
     synchronized (cache) {
-      if (cache.size() <= config.maxSize) {
+      if (cache.size() <= cache.maxSize) {
         // still plenty of room
         return false;
       }
@@ -1199,14 +1301,14 @@ public void unload() {
         return true;
       }
       // remove expired entries
-      if (removeExpiredEntries(now)) {
+      if (removeExpiredEntries(cache, now)) {
         // freed some expired entries
         //
         // must return false since we modified the map
         return false;
       }
       // okay, try removing non-expired entries
-      if (evictEntries(now, EVICT_RATIO)) {
+      if (evictEntries(cache, now, EVICT_RATIO)) {
         // freed some non-expired entries
         //
         // must return false since we modified the map
@@ -1218,42 +1320,44 @@ public void unload() {
       // in practice.
       if (logger.isInfoEnabled()) {
         logger.info(
-            "Can't evict an entry from the cache["+
+            "Can't evict an entry from the cache segment["+
             cache.size()+"],"+
             " either due to pending requests or hints,"+
-            " allowing the cache to exceed its maximum size "+
-            config.maxSize);
+            " allowing the segment to exceed its maximum size "+
+            cache.maxSize);
       }
       return false;
     }
   }
 
-  private boolean removeExpiredEntries(long now) {
-    // scan the cache, which is ordered from least-recently-used
-    // to most-recently-used.
+  private boolean removeExpiredEntries(LRUMap cache, long now) {
+    // take the entries that have expired from the expiry index,
+    // so we don't need to scan the cache.
     //
-    // remove expired entries
-    //
-    // could optimize this by keeping a minTTL
+    // entries that can't be evicted yet are either pending, in
+    // which case they're indexed again when the lookup answer
+    // arrives, or have hints, in which case they're indexed again
+    // when the last hint is removed.
+    List due = cache.expiries.takeDue(now);
+    if (due == null) {
+      return false;
+    }
     int n = cache.size();
     int nfreed = 0;
-    for (Iterator iter = cache.entrySet().iterator();
-        iter.hasNext();
-        ) {
-      Map.Entry me = (Map.Entry) iter.next();
-      Entry e = (Entry) me.getValue();
-      if (!e.canEvict(now, false)) {
+    for (int i = 0, ndue = due.size(); i < ndue; i++) {
+      String name = (String) due.get(i);
+      Entry e = cache.peek(name);
+      if (e == null || !e.canEvict(now, false)) {
         continue;
       }
       if (logger.isDetailEnabled()) {
         if (nfreed == 0) {
           logger.detail("cleaning cache["+n+"] {");
         }
-        String name = (String) me.getKey();
         logger.detail("  expired "+name+"="+e);
       }
       ++nfreed;
-      iter.remove();
+      cache.remove(name);
     }
     if (0 < nfreed && logger.isDetailEnabled()) {
       logger.detail("}");
@@ -1262,7 +1366,7 @@ public void unload() {
     return (0 < nfreed);
   }
 
-  private boolean evictEntries(long now, double percent) {
+  private boolean evictEntries(LRUMap cache, long now, double percent) {
     // evict a percent of the cache, even if the entries haven't
     // expired yet
     int n = cache.size();
@@ -1285,6 +1389,7 @@ public void unload() {
       }
       ++nfreed;
       iter.remove();
+      cache.unindex(me.getKey());
       if (enoughFreed <= nfreed) {
         // that's enough for now...
         break;
@@ -1301,11 +1406,13 @@ public void unload() {
   private static class CacheConfig {
     public final long cleanPeriod;
     public final long prefetchPeriod;
+    public final long bucketPeriod;
+    public final long staleTTD;
+    public final int segments;
     public final long minTTD;
     public final long maxTTD;
     public final int minSize;
-    @SuppressWarnings("unused")
-   public final int initSize;
+    public final int initSize;
     public final int maxSize;
 
     public CacheConfig(Object o) {
@@ -1313,6 +1420,9 @@ public void unload() {
         new Parameters(o, "org.cougaar.core.wp.resolver.cache.");
       cleanPeriod = p.getLong("cleanPeriod", 10000);
       prefetchPeriod = p.getLong("prefetchPeriod", 10000);
+      bucketPeriod = Math.max(1, p.getLong("bucketPeriod", 1000));
+      staleTTD = p.getLong("staleTTD", 0);
+      segments = Math.max(1, p.getInt("segments", 16));
       minTTD = p.getLong("minTTD", 5000);
       maxTTD = p.getLong("maxTTD", 600000);
       minSize = p.getInt("minSize", 16);
@@ -1522,6 +1632,17 @@ public void unload() {
       setSendTime(now);
       return true;
     }
+    /**
+     * @return true if a prefetch was declined only because the
+     * entry hasn't been used since its half-life
+     */
+    public boolean shouldRecheck(long nextTime) {
+      return
+        (shouldRenew(nextTime) &&
+         !wasSent() &&
+         hasData() &&
+         !hasExpired(nextTime));
+    }
     /** @return true if a lookup should be sent */
     public boolean noteExpired(long now, Response res) {
       // assert (0 < now);
@@ -1879,13 +2000,46 @@ public void unload() {
     }
   }
 
+  /**
+   * A cache segment, which is locked by synchronizing on it.
+   */
   class LRUMap extends LinkedHashMap {
     /**
     * 
     */
    private static final long serialVersionUID = 1L;
-   public LRUMap(int initialSize) {
-      super(initialSize, 0.75f, true);
+   public final int maxSize;
+   public final TimeIndex renewals = new TimeIndex(config.bucketPeriod);
+   public final TimeIndex expiries = new TimeIndex(config.bucketPeriod);
+   // the same entries by name, so the timers can look them up
+   // without changing the LRU order
+   private final Map entries = new HashMap();
+   public LRUMap(int maxSize) {
+      super(Math.min(maxSize, config.initSize), 0.75f, true);
+      this.maxSize = maxSize;
+    }
+    /** @return the entry, without marking it as recently used */
+    public Entry peek(String name) {
+      return (Entry) entries.get(name);
+    }
+    /** Note an entry removed through an iterator */
+    public void unindex(Object name) {
+      entries.remove(name);
+    }
+    @Override
+   public Object put(Object key, Object value) {
+      entries.put(key, value);
+      return super.put(key, value);
+    }
+    @Override
+   public Object remove(Object key) {
+      entries.remove(key);
+      return super.remove(key);
+    }
+    @Override
+   public void clear() {
+      entries.clear();
+      super.clear();
     }
     @Override
    protected boolean removeEldestEntry(Map.Entry eldest) {
@@ -1893,10 +2047,129 @@ public void unload() {
         (eldest == null ?
          (null) :
          ((Entry) eldest.getValue()));
-      return evictLRU(eldestE);
+      boolean ret = evictLRU(this, eldestE);
+      if (ret) {
+        entries.remove(eldest.getKey());
+      }
+      return ret;
     }
   }
 
+  private LRUMap getSegment(String name) {
+    int h = name.hashCode();
+    h ^= (h >>> 16);
+    return segments[h & (segments.length - 1)];
+  }
+
+  private int getSize() {
+    int n = 0;
+    for (int i = 0; i < segments.length; i++) {
+      LRUMap cache = segments[i];
+      synchronized (cache) {
+        n += cache.size();
+      }
+    }
+    return n;
+  }
+
+  private void noteLookupTime(long t) {
+    lookups.incrementAndGet();
+    lookupTime.addAndGet(t);
+    while (true) {
+      long max = maxLookupTime.get();
+      if (t <= max || maxLookupTime.compareAndSet(max, t)) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Names ordered into time buckets, so the entries that are due
+   * can be found without scanning the cache.
+   * <p>
+   * A name may be in more than one bucket if its entry was updated,
+   * so callers must check the entry's current state.
+   */
+  static final class TimeIndex {
+    private final long bucketPeriod;
+    // Map<Long, Set<String>>
+    private final SortedMap buckets = new TreeMap();
+    public TimeIndex(long bucketPeriod) {
+      this.bucketPeriod = bucketPeriod;
+    }
+    public void add(String name, long time) {
+      if (time < 0) {
+        return;
+      }
+      Long key = Long.valueOf(time / bucketPeriod);
+      Set names = (Set) buckets.get(key);
+      if (names == null) {
+        names = new HashSet();
+        buckets.put(key, names);
+      }
+      names.add(name);
+    }
+    /** @return the names in the buckets that end by the given time */
+    public List takeDue(long time) {
+      SortedMap head = buckets.headMap(Long.valueOf(time / bucketPeriod));
+      if (head.isEmpty()) {
+        return null;
+      }
+      List ret = new ArrayList();
+      for (Iterator iter = head.values().iterator(); iter.hasNext(); ) {
+        ret.addAll((Set) iter.next());
+      }
+      head.clear();
+      return ret;
+    }
+  }
+
+  private class CacheStatisticsSP
+    implements ServiceProvider {
+      private final CacheStatisticsService css =
+        new CacheStatisticsService() {
+          public long getHitCount() {
+            return hits.get();
+          }
+          public long getHintCount() {
+            return hintHits.get();
+          }
+          public long getStaleCount() {
+            return staleHits.get();
+          }
+          public long getMissCount() {
+            return misses.get();
+          }
+          public long getPrefetchCount() {
+            return prefetches.get();
+          }
+          public long getLookupCount() {
+            return lookups.get();
+          }
+          public long getMeanLookupTime() {
+            long n = lookups.get();
+            return (n == 0 ? 0 : (lookupTime.get() / n));
+          }
+          public long getMaxLookupTime() {
+            return maxLookupTime.get();
+          }
+          public int getSize() {
+            return CacheManager.this.getSize();
+          }
+        };
+      public Object getService(
+          ServiceBroker sb, Object requestor, Class serviceClass) {
+        if (!CacheStatisticsService.class.isAssignableFrom(serviceClass)) {
+          return null;
+        }
+        return css;
+      }
+      public void releaseService(
+          ServiceBroker sb, Object requestor,
+          Class serviceClass, Object service) {
+      }
+    }
+
   private class CacheSP 
     implements ServiceProvider {
       private final CacheService cs =
@@ -0,0 +1,73 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+
+package org.cougaar.core.wp.resolver;
+
+import org.cougaar.core.component.Service;
+
+/**
+ * This service is the {@link CacheManager}'s view of its cache
+ * statistics, for example for the white pages servlet.
+ * <p>
+ * The counts are totals since the cache was loaded.
+ */
+public interface CacheStatisticsService extends Service {
+
+  /** @return the number of lookups answered with valid cached data */
+  long getHitCount();
+
+  /** @return the number of lookups answered with a bootstrap hint */
+  long getHintCount();
+
+  /**
+   * @return the number of lookups answered with recently-expired
+   * data while a renewal was in progress
+   */
+  long getStaleCount();
+
+  /** @return the number of lookups that had to wait for the server */
+  long getMissCount();
+
+  /**
+   * @return the number of recently-used entries renewed in the
+   * background before they expired
+   */
+  long getPrefetchCount();
+
+  /** @return the number of server answers that a client waited for */
+  long getLookupCount();
+
+  /** @return the mean time in millis that a client waited */
+  long getMeanLookupTime();
+
+  /** @return the maximum time in millis that a client waited */
+  long getMaxLookupTime();
+
+  /** @return the number of cached entries */
+  int getSize();
+
+}
@@ -29,9 +29,13 @@ package org.cougaar.core.wp.resolver;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.cougaar.core.component.Component;
 import org.cougaar.core.component.ServiceBroker;
@@ -55,6 +59,16 @@ import org.cougaar.util.RarelyModifiedList;
 /**
  * This component watches for bind/unbind requests and maintains
  * the leases in the server.
+ * <p>
+ * When a lease is due for renewal, the other leases that will be
+ * due within the "coalesceWindow" are renewed with it, so the
+ * renewals share a modify message per server instead of trickling
+ * out one timer period at a time.  Each lease's renewal time is
+ * moved earlier by a random "renewJitter" fraction of its renewal
+ * interval, so leases bound together (e.g. after a node restart)
+ * don't keep renewing together across nodes.  Renewal statistics
+ * are advertised to the node's agents as the
+ * {@link LeaseStatisticsService}.
  */
 public class LeaseManager 
 extends GenericStateModelAdapter
@@ -84,6 +98,18 @@ implements Component
 
   private LeaseSP leaseSP;
   private BundleSP bundleSP;
+  private LeaseStatisticsSP statisticsSP;
+
+  private final Random random = new Random();
+
+  // statistics
+  private final AtomicLong renewals = new AtomicLong();
+  private final AtomicLong coalesced = new AtomicLong();
+  private final AtomicLong batches = new AtomicLong();
+  private final AtomicLong messagesSaved = new AtomicLong();
+  private final AtomicLong renewalAnswers = new AtomicLong();
+  private final AtomicLong renewalLatency = new AtomicLong();
+  private final AtomicLong maxRenewalLatency = new AtomicLong();
 
   private final RarelyModifiedList listeners =
     new RarelyModifiedList();
@@ -94,6 +120,15 @@ implements Component
 
   private Schedulable renewLeasesThread;
 
+  // the ClientTransport's server selection, used to count the modify
+  // messages that a renewal batch will be split into
+  private SelectService selectService;
+  private final SelectService.Client selectClient =
+    new SelectService.Client() {
+      public void onChange() {
+      }
+    };
+
   public void setParameter(Object o) {
     configure(o);
   }
@@ -160,6 +195,8 @@ public void load() {
     bundleSP = new BundleSP();
     ServiceBroker bundleSB = (rootsb == null ? sb : rootsb);
     bundleSB.addService(BundleService.class, bundleSP);
+    statisticsSP = new LeaseStatisticsSP();
+    bundleSB.addService(LeaseStatisticsService.class, statisticsSP);
   }
 
   @Override
@@ -168,6 +205,16 @@ public void unload() {
     renewLeasesThread.cancel();
 
     // release services
+    if (selectService != null) {
+      sb.releaseService(
+          selectClient, SelectService.class, selectService);
+      selectService = null;
+    }
+    if (statisticsSP != null) {
+      ServiceBroker bundleSB = (rootsb == null ? sb : rootsb);
+      bundleSB.revokeService(LeaseStatisticsService.class, statisticsSP);
+      statisticsSP = null;
+    }
     if (bundleSP != null) {
       ServiceBroker bundleSB = (rootsb == null ? sb : rootsb);
       bundleSB.revokeService(BundleService.class, bundleSP);
@@ -807,16 +854,32 @@ public void unload() {
     Map m = null;
     synchronized (leases) {
       now = System.currentTimeMillis();
-      for (Iterator iter = leases.entrySet().iterator();
+      // if any lease is due, also renew the leases that will be
+      // due within the coalesce window, so they share this batch
+      boolean anyDue = false;
+      for (Iterator iter = leases.values().iterator();
           iter.hasNext();
           ) {
+        ActiveLease lease = (ActiveLease) iter.next();
+        if (lease.sendTime <= 0 && lease.renewTime <= now) {
+          anyDue = true;
+          break;
+        }
+      }
+      long latest = (anyDue ? now + config.coalesceWindow : now);
+      for (Iterator iter = leases.entrySet().iterator();
+          anyDue && iter.hasNext();
+          ) {
         Map.Entry me = (Map.Entry) iter.next();
         String name = (String) me.getKey();
         ActiveLease lease = (ActiveLease) me.getValue();
-        boolean renewNow = shouldRenew(name, lease, now);
+        boolean renewNow = shouldRenew(name, lease, now, latest);
         if (!renewNow) {
           continue;
         }
+        if (now < lease.renewTime) {
+          coalesced.incrementAndGet();
+        }
         String agent = lease.agent;
         UID uid = lease.record.getUID();
         if (m == null) {
@@ -831,6 +894,16 @@ public void unload() {
     }
 
     if (m != null) {
+      int messages = countMessages(m);
+      renewals.addAndGet(m.size());
+      batches.incrementAndGet();
+      messagesSaved.addAndGet(m.size() - messages);
+      if (logger.isDebugEnabled()) {
+        logger.debug(
+            "Renewing "+m.size()+" leases in "+messages+
+            " modify messages, "+renewals.get()+" renewals in "+
+            batches.get()+" batches so far");
+      }
       modifyService.modify(m);
     }
 
@@ -838,6 +911,27 @@ public void unload() {
     renewLeasesThread.schedule(config.checkLeasesPeriod);
   }
 
+  /**
+   * Count the modify messages that the {@link ClientTransport} will
+   * send for a renewal batch, which is one per selected server.
+   */
+  private int countMessages(Map m) {
+    if (selectService == null) {
+      selectService = sb.getService(
+          selectClient, SelectService.class, null);
+      if (selectService == null) {
+        // no server selection yet, assume one server
+        return 1;
+      }
+    }
+    Set targets = new HashSet();
+    for (Iterator iter = m.keySet().iterator(); iter.hasNext(); ) {
+      String name = (String) iter.next();
+      targets.add(selectService.select(false, name));
+    }
+    return targets.size();
+  }
+
   //
   // These are logically part of lease but require
   // access to the config of the outter class
@@ -846,7 +940,8 @@ public void unload() {
   private boolean shouldRenew(
       String name,
       ActiveLease lease,
-      long now) {
+      long now,
+      long latest) {
     // calculate renewal time based upon:
     //   expiration time
     //   round-trip time for the last renewal delay
@@ -865,16 +960,8 @@ public void unload() {
       }
       return false;
     }
-    long latestRenew =
-      lease.expireTime - lease.roundTripTime;
-    // weight it to be a little early
-    long renewalTime = (long) (
-        lease.boundTime +
-        (config.renewRatio *
-         (latestRenew - lease.boundTime)));
-    // adjust for timer period
-    renewalTime -= config.checkLeasesPeriod;
-    if (now < renewalTime) {
+    long renewalTime = lease.renewTime;
+    if (latest < renewalTime) {
       if (logger.isDetailEnabled()) {
         logger.detail(
             "lease (name="+name+", uid="+lease.record.getUID()+
@@ -900,6 +987,9 @@ public void unload() {
     // set our timestamps
     if (0 < lease.sendTime) {
       long tripTime = now - lease.sendTime;
+      if (0 < lease.expireTime) {
+        noteRenewalTime(tripTime);
+      }
       // soften this by averaging
       long weightedTripTime;
       if (lease.roundTripTime == 0) {
@@ -920,6 +1010,36 @@ public void unload() {
     // this expTime may be in the past, but it was a successful
     // bind and our timer will renew it soon.
     lease.expireTime = expTime;
+    lease.renewTime = getRenewalTime(lease);
+  }
+
+  private long getRenewalTime(ActiveLease lease) {
+    long latestRenew =
+      lease.expireTime - lease.roundTripTime;
+    long interval = latestRenew - lease.boundTime;
+    // weight it to be a little early
+    long renewalTime = (long) (
+        lease.boundTime +
+        (config.renewRatio * interval));
+    // adjust for timer period
+    renewalTime -= config.checkLeasesPeriod;
+    // jitter it a bit earlier
+    if (0 < config.renewJitter && 0 < interval) {
+      renewalTime -= (long) (
+          random.nextDouble() * config.renewJitter * interval);
+    }
+    return renewalTime;
+  }
+
+  private void noteRenewalTime(long t) {
+    renewalAnswers.incrementAndGet();
+    renewalLatency.addAndGet(t);
+    while (true) {
+      long max = maxRenewalLatency.get();
+      if (t <= max || maxRenewalLatency.compareAndSet(max, t)) {
+        break;
+      }
+    }
   }
 
   /** config options */
@@ -928,6 +1048,8 @@ public void unload() {
     public final double tripWeight;
     public final long minBundleTTD;
     public final long checkLeasesPeriod;
+    public final long coalesceWindow;
+    public final double renewJitter;
 
     public LeaserConfig(Object o) {
       Parameters p = 
@@ -936,6 +1058,8 @@ public void unload() {
       tripWeight = p.getDouble("tripWeight", 0.75);
       minBundleTTD = p.getLong("minBundleTTD", 60000);
       checkLeasesPeriod = p.getLong("checkLeasesPeriod", 20000);
+      coalesceWindow = p.getLong("coalesceWindow", checkLeasesPeriod);
+      renewJitter = p.getDouble("renewJitter", 0.1);
     }
   }
 
@@ -951,6 +1075,7 @@ public void unload() {
     public long sendTime;
     public long roundTripTime;
     public long expireTime;
+    public long renewTime;
 
     private List responses;
 
@@ -1065,11 +1190,59 @@ public void unload() {
         " roundTripTime="+roundTripTime+
         " expireTime="+
         Timestamp.toString(expireTime, now)+
+        " renewTime="+
+        Timestamp.toString(renewTime, now)+
         " pending["+responses.size()+"]="+responses+
         ")";
     }
   }
 
+  private int getLeaseCount() {
+    synchronized (leases) {
+      return leases.size();
+    }
+  }
+
+  private class LeaseStatisticsSP
+    implements ServiceProvider {
+      private final LeaseStatisticsService lss =
+        new LeaseStatisticsService() {
+          public int getLeaseCount() {
+            return LeaseManager.this.getLeaseCount();
+          }
+          public long getRenewalCount() {
+            return renewals.get();
+          }
+          public long getCoalescedCount() {
+            return coalesced.get();
+          }
+          public long getBatchCount() {
+            return batches.get();
+          }
+          public long getMessagesSavedCount() {
+            return messagesSaved.get();
+          }
+          public long getMeanRenewalTime() {
+            long n = renewalAnswers.get();
+            return (n == 0 ? 0 : (renewalLatency.get() / n));
+          }
+          public long getMaxRenewalTime() {
+            return maxRenewalLatency.get();
+          }
+        };
+      public Object getService(
+          ServiceBroker sb, Object requestor, Class serviceClass) {
+        if (!LeaseStatisticsService.class.isAssignableFrom(serviceClass)) {
+          return null;
+        }
+        return lss;
+      }
+      public void releaseService(
+          ServiceBroker sb, Object requestor,
+          Class serviceClass, Object service) {
+      }
+    }
+
   private class LeaseSP 
     implements ServiceProvider {
       private final LeaseService ls =
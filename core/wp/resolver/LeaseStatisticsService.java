@@ -0,0 +1,68 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+
+package org.cougaar.core.wp.resolver;
+
+import org.cougaar.core.component.Service;
+
+/**
+ * This service is the {@link LeaseManager}'s view of its lease
+ * renewal statistics, for example for the white pages servlet.
+ * <p>
+ * The counts are totals since the lease manager was loaded.
+ */
+public interface LeaseStatisticsService extends Service {
+
+  /** @return the number of active and pending leases */
+  int getLeaseCount();
+
+  /** @return the number of uid-based lease renewals sent */
+  long getRenewalCount();
+
+  /**
+   * @return the number of renewals sent early to share a batch
+   * with a lease that was due
+   */
+  long getCoalescedCount();
+
+  /** @return the number of renewal batches sent */
+  long getBatchCount();
+
+  /**
+   * @return the number of modify messages saved by batching, which
+   * is the sum over all batches of the leases in the batch minus
+   * the modify messages sent for it (one per selected server)
+   */
+  long getMessagesSavedCount();
+
+  /** @return the mean renewal round-trip time in millis */
+  long getMeanRenewalTime();
+
+  /** @return the maximum renewal round-trip time in millis */
+  long getMaxRenewalTime();
+
+}
@@ -0,0 +1,112 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+package org.cougaar.core.wp.server;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.cougaar.core.util.UID;
+
+/**
+ * A bounded log of the {@link Forward}s we've sent to our peers,
+ * indexed by sequence number.
+ * <p>
+ * Each forwarded name is assigned the next sequence number.  Once
+ * the log is full the oldest entries are overwritten, after which
+ * a peer that asks for changes before them must be sent a full
+ * copy of our records.
+ */
+final class ChangeLog {
+
+  private final UID epoch;
+
+  // ring buffer, where seq n is at index (n % capacity)
+  private final String[] names;
+  private final Forward[] forwards;
+
+  // the last assigned sequence number
+  private long lastSeq;
+
+  public ChangeLog(UID epoch, int capacity) {
+    if (epoch == null || capacity <= 0) {
+      throw new IllegalArgumentException(
+          "Invalid change log (epoch="+epoch+", capacity="+capacity+")");
+    }
+    this.epoch = epoch;
+    names = new String[capacity];
+    forwards = new Forward[capacity];
+  }
+
+  public UID getEpoch() {
+    return epoch;
+  }
+
+  public synchronized long getLastSequence() {
+    return lastSeq;
+  }
+
+  /**
+   * Assign sequence numbers to a batch of forwards.
+   *
+   * @param m a map of name to Forward
+   * @return the batch's sequence range
+   */
+  public synchronized ForwardSequence append(Map m) {
+    long first = lastSeq + 1;
+    for (Iterator iter = m.entrySet().iterator();
+        iter.hasNext();
+        ) {
+      Map.Entry me = (Map.Entry) iter.next();
+      int i = (int) (++lastSeq % names.length);
+      names[i] = (String) me.getKey();
+      forwards[i] = (Forward) me.getValue();
+    }
+    return new ForwardSequence(epoch, first, lastSeq);
+  }
+
+  /**
+   * Get the latest logged forward for each name changed after the
+   * given sequence number.
+   *
+   * @return a map of name to Forward, or null if the log has been
+   *   truncated past "since"
+   */
+  public synchronized Map getChangesSince(long since) {
+    long oldest = Math.max(1, lastSeq - names.length + 1);
+    if (since < oldest - 1) {
+      return null;
+    }
+    Map ret = new LinkedHashMap();
+    for (long seq = since + 1; seq <= lastSeq; seq++) {
+      int i = (int) (seq % names.length);
+      // later entries replace earlier ones
+      ret.put(names[i], forwards[i]);
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,1080 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+package org.cougaar.core.wp.server;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.cougaar.core.service.LoggingService;
+import org.cougaar.core.service.UIDService;
+import org.cougaar.core.service.wp.AddressEntry;
+import org.cougaar.core.util.UID;
+import org.cougaar.core.wp.Timestamp;
+import org.cougaar.core.wp.resolver.Lease;
+import org.cougaar.core.wp.resolver.LeaseDenied;
+import org.cougaar.core.wp.resolver.LeaseNotKnown;
+import org.cougaar.core.wp.resolver.NameTag;
+import org.cougaar.core.wp.resolver.Record;
+import org.cougaar.core.wp.resolver.RecordIsValid;
+
+/**
+ * The {@link RootAuthority}'s table of leased records.
+ * <p>
+ * Records are hash-sharded by name, where each shard has its own
+ * lock, expiration queue, and queue of leases to forward to our
+ * peers.  Lookups, lease renewals and expirations of different
+ * names therefore don't contend with one another.
+ * <p>
+ * The directory tree used for "list" lookups is kept under a
+ * separate lock and is only modified when a record is added or
+ * removed, which is rare relative to lookups and renewals.  The
+ * lock order is always shard then directory.
+ */
+final class DirectoryStore {
+
+  private final LoggingService logger;
+  private final UIDService uidService;
+  private final long successTTD;
+  private final long failTTD;
+
+  private final Shard[] shards;
+
+  private final Object dirLock = new Object();
+
+  private final DirEntry rootDir;
+
+  /**
+   * @param nshards the number of shards, which is rounded up to
+   *   a power of two
+   */
+  DirectoryStore(
+      LoggingService logger,
+      UIDService uidService,
+      long successTTD,
+      long failTTD,
+      int nshards) {
+    this.logger = logger;
+    this.uidService = uidService;
+    this.successTTD = successTTD;
+    this.failTTD = failTTD;
+    int n = 1;
+    while (n < nshards) {
+      n <<= 1;
+    }
+    shards = new Shard[n];
+    for (int i = 0; i < n; i++) {
+      shards[i] = new Shard();
+    }
+    rootDir = new DirEntry(uidService.nextUID(), null, ".");
+  }
+
+  private Shard getShard(String name) {
+    int h = name.hashCode();
+    h ^= (h >>> 16);
+    return shards[h & (shards.length - 1)];
+  }
+
+  Object lookup(
+      String name,
+      Object query,
+      long now) {
+
+    UID queryUID;
+    if (query == null) {
+      queryUID = null;
+    } else if (query instanceof UID) {
+      queryUID = (UID) query;
+    } else {
+      // invalid
+      queryUID = null;
+    }
+
+    boolean isList = (name.charAt(0) == '.');
+
+    // find current record info
+    UID uid = null;
+    long ttd = failTTD;
+    Object data = null;
+    if (isList) {
+      synchronized (dirLock) {
+        DirEntry dir = findDir(name);
+        if (dir != null) {
+          // copy dir keys
+          //
+          // we could make this a rarely-modified-set
+          uid = dir.getUID();
+          ttd = successTTD;
+          Map entries = dir.getEntries();
+          data = new HashSet(entries.keySet());
+        }
+      }
+    } else {
+      Shard shard = getShard(name);
+      synchronized (shard) {
+        RecordEntry rec = (RecordEntry) shard.records.get(name);
+        if (rec != null) {
+          // return the data
+          uid = rec.getUID();
+          ttd = successTTD;
+          data = rec.getData();
+        }
+      }
+    }
+    if (uid == null) {
+      // not listed, so data is null
+      uid = uidService.nextUID();
+    }
+
+    Object answer;
+    if (queryUID != null && queryUID.equals(uid)) {
+      // validated, so we don't send back the data
+      answer = new RecordIsValid(uid, ttd);
+    } else {
+      // return full record
+      answer = new Record(uid, ttd, data);
+    }
+
+    if (logger.isDetailEnabled()) {
+      logger.detail(
+          "lookup (name="+name+
+          " query="+query+
+          " now="+now+") returning "+answer);
+    }
+
+    return answer;
+  }
+
+  Object modifyAndForward(
+      String name,
+      Object query,
+      long ttd,
+      long now) {
+    Shard shard = getShard(name);
+    synchronized (shard) {
+      Object answer = modify(shard, name, query, ttd, now);
+
+      if (answer instanceof Lease) {
+        // forward lease to peers (excluding self and sender)
+        //
+        // note that the query can be a UID or a Record.  If a UID
+        // is sent and a peer doesn't know the UID, then that peer
+        // will send us a "forwardAnswer" with a LeaseNotKnown.
+        Lease lease = (Lease) answer;
+        Object queryContent = 
+          (query instanceof NameTag ?
+           ((NameTag) query).getObject() :
+           query);
+        Record record = 
+          (queryContent instanceof Record ? 
+           ((Record) queryContent) :
+           null);
+        Forward fwd = new Forward(lease, record);
+        // to all
+        forwardLater(shard, name, fwd);
+      }
+
+      return answer;
+    }
+  }
+
+  Object receiveForward(
+      String name,
+      Object query,
+      long now) {
+
+    if (!(query instanceof Forward)) {
+      // invalid
+      if (logger.isErrorEnabled()) {
+        logger.error(
+            "Invalid forward (name="+name+", query="+query+")");
+      } 
+      return null; 
+    }
+
+    Forward fwd = (Forward) query;
+    Lease lease = fwd.getLease();
+    Record record = fwd.getRecord();
+    Object modQuery;
+    if (record == null) {
+      modQuery = lease.getUID();
+    } else {
+      modQuery = record;
+    }
+    long modTTD = lease.getTTD();
+
+    // warn if our expireTTD is << the modTTD ?
+    //
+    // for consistency we'll accept our peer's ttd, since the
+    // client will renew based upon this ttd.  If we use a shorter
+    // ttd then the client will expire prematurely.  In practice
+    // we expect all the ttds to be equal.
+
+    Object answer;
+    Shard shard = getShard(name);
+    synchronized (shard) {
+      answer = modify(shard, name, modQuery, modTTD, now);
+    }
+
+    // filter out leases (they've already been forwarded) and
+    // denials (since they're likely a transient race condition)
+    //
+    // LeaseDenied responses are due to data conflicts.  The
+    // assumption is that our local data is better and either we
+    // or another peer has already sent the better data to the
+    // sender.
+    if (!(answer instanceof LeaseNotKnown)) {
+      return null;
+    }
+
+    // send back lease-not-known responses, since our peer
+    // sent us a UID and we lack the data.  The peer should
+    // reply by forwarding the Record.
+    return answer;
+  }
+
+  Object resendForward(
+      String name,
+      Object query,
+      long now) {
+
+    // find the lease and send the Record data
+    //
+    // this is similar to a "lookup" but we only want to find an
+    // exact match, plus we need the lease ttl and not a lookup ttl
+    UID queryUID = null;
+    RecordEntry rec = null;
+    UID uid = null;
+    long ttd = -1;
+    Object data = null;
+    String denied;
+    Shard shard = getShard(name);
+    synchronized (shard) {
+      denied =
+        ((!(query instanceof LeaseNotKnown)) ?
+         "query is not of type lease-not-known" :
+         ((queryUID = ((LeaseNotKnown) query).getUID()) == null) ?
+         "query uid is null" :
+         (name.charAt(0) == '.') ?
+         "name is invalid" :
+         ((rec = (RecordEntry) shard.records.get(name)) == null) ?
+         "no such record in our directory" :
+         ((uid = rec.getUID()) == null) ?
+         "local uid is null? "+rec : 
+         (!uid.equals(queryUID)) ?
+         "our local record has a different uid "+rec :
+         ((ttd = rec.getTTL() - now) <= 0) ?
+         "our local record has expired" :
+         (null));
+      if (denied == null) {
+        data = rec.getData();
+      }
+    }
+    if (denied != null) {
+      // our local table doesn't contain this entry
+      //
+      // the non-matching UID case is assumed to be a race between
+      // a forward that we've sent and someone asking about the old
+      // UID.  Our forward should arrive soon enough.
+      if (logger.isDebugEnabled()) {
+        logger.debug(
+            "Ignoring resendForward for (name="+name+
+            ", query="+query+"), "+denied);
+      }
+      return null;
+    }
+
+    Lease lease = new Lease(uid, ttd);
+    Record record = new Record(uid, -1, data);
+    Forward fwd = new Forward(lease, record);
+
+    // okay, act as if we're forwarding it for the first time,
+    // but instead of sending it later we can send it back
+    // to the client.
+    if (logger.isDebugEnabled()) {
+      logger.debug("Resending forward: "+fwd);
+    }
+    return fwd; 
+  }
+
+  private Object modify(
+      Shard shard,
+      String name,
+      Object query,
+      long ttd,
+      long now) {
+    // assert (Thread.holdsLock(shard));
+
+    boolean isList = (name.charAt(0) == '.');
+    if (isList) {
+      // invalid modify
+      if (logger.isErrorEnabled()) {
+        logger.error(
+            "Modify (name="+name+
+            " query="+query+
+            ") is invalid, returning null");
+      }
+      return null;
+    }
+
+    // unwrap the query if it's wrapped
+
+    Object queryContent = query;
+    if (query instanceof NameTag) {
+      queryContent = ((NameTag) query).getObject();
+    }
+
+    UID queryUID;
+    boolean hasQueryData;
+    Object queryData;
+    if (queryContent instanceof UID) {
+      queryUID = (UID) queryContent;
+      hasQueryData = false;
+      queryData = null;
+    } else if (queryContent instanceof Record) {
+      Record record = (Record) queryContent;
+      queryUID = record.getUID();
+      hasQueryData = true;
+      queryData = record.getData();
+    } else {
+      // invalid
+      queryUID = null;
+      hasQueryData = false;
+      queryData = null;
+    }
+    if (queryUID == null) {
+      // invalid
+      return null;
+    }
+
+    // get the record-entry, which may be null
+    RecordEntry rec = (RecordEntry) shard.records.get(name);
+
+    UID uid = (rec == null ? null : rec.getUID());
+    boolean sameUID = queryUID.equals(uid);
+
+    Object answer = null;
+    if (sameUID) {
+      // successful lease renewal
+      //
+      // note that the client doesn't need to send the record
+      // data to renew a lease.
+    } else if (!hasQueryData) {
+      // the UIDs don't match, which usually means that the
+      // client thinks it's renewing data but the server
+      // doesn't know the data.
+      //
+      // we need the full record to decide if we need to replace
+      // our entry or deny this lease.  Either we crashed, or the
+      // client was talking to another server that hasn't
+      // replicated that data to our server yet (e.g. due to a
+      // crash or network partition), or some odd race condition
+      // occurred.
+      answer = new LeaseNotKnown(queryUID);
+    } else if (rec == null) {
+      // this is a new record and the client passed us the data,
+      // so accept it.
+    } else if (uid.getOwner().equals(queryUID.getOwner())) {
+      // same author (node), so compare modification counters.
+      if (uid.getId() <= queryUID.getId()) {
+        // larger counter, so accept this update
+      } else {
+        // reject out-of-order update (should we simply ignore it?)
+        Object reason = 
+          "Modify uid "+queryUID+" counter "+queryUID.getId()+
+          " is less than the local uid "+uid+" counter "+
+          uid.getId()+", out of order update?";
+        answer = new LeaseDenied(uid, reason, rec.getData());
+      } 
+    } else {
+      // deconflict records from different authors
+      //
+      // extract the optional "moveId" version fields
+      Object data = rec.getData();
+      long version = getVersion(data);
+      long queryVersion = getVersion(queryData);
+
+      if (version < queryVersion) {
+        // accept the replacement record
+        //
+        // note that versions can be negative, e.g. use negative
+        // timestamps to favor old bindings. 
+      } else if (version == 0 && queryVersion != 0) {
+        // we always favor records with version numbers
+      } else if (version == queryVersion) {
+        // identical versions from different authors
+        //
+        // we need to compare *something* to prefer one of these
+        // equivalent records.  We can't simply favor our existing
+        // record or the new record, since then we could never settle
+        // conflicts between servers (e.g. races and mixed delivery
+        // orders).  We can't use virtual synchrony tricks and still
+        // be fault tolerant.
+        //
+        // here we hash the UIDs and favor the larger value.  We don't
+        // use "UID.hashCode()", since it uses "+" and is biased by
+        // authors and counters, so instead we use "^".  This will seem
+        // random to the clients but will behave identically when
+        // performed in any order by servers peers.
+        int h1 = 
+          uid.getOwner().hashCode() ^ (int) uid.getId();
+        int h2 = 
+          queryUID.getOwner().hashCode() ^ (int) queryUID.getId();
+        if (h2 < h1) {
+          Object reason = 
+            "Modify uid "+queryUID+" hash "+h2+
+            " is less than the local uid "+uid+" hash "+h1;
+          answer = new LeaseDenied(uid, reason, data);
+        }
+      } else {
+        // old version
+        Object reason = 
+          "Modify version "+queryVersion+
+          " is greater than the local version "+version;
+        answer = new LeaseDenied(uid, reason, data);
+      }
+    }
+
+    if (answer != null) {
+      // lease is either not known or denied
+      if (logger.isDetailEnabled()) {
+        logger.detail(
+            "modify (name="+name+
+            " query="+query+
+            ") returning "+answer);
+      }
+      return answer;
+    }
+
+    //
+    // create or extend a lease
+    //
+
+    long ttl = now + ttd;
+
+    if (sameUID) {
+      // extend an existing lease
+      //
+      // the expiration queue is lazy, so we don't need to
+      // requeue the record here
+      rec.setTTL(ttl);
+    } else if (
+        queryData == null ||
+        (queryData instanceof Map &&
+         ((Map) queryData).isEmpty())) {
+      // this is a full unbind
+      if (rec == null) {
+        // this is an odd case, where the client is telling
+        // the server to unbind all its entries and the server
+        // never heard of the client.  In this case the
+        // client probably doesn't care what the server returns,
+        // since it's already discarded its entries.  Still,
+        // we must respond somehow...
+      } else {
+        shard.records.remove(name);
+        removeFromDir(name);
+      }
+    } else {
+      if (rec == null) {
+        // create the record
+        rec = new RecordEntry(queryUID);
+        shard.records.put(name, rec);
+        shard.expireQueue.add(new Expiration(ttl, name, rec));
+        addToDir(name, rec);
+      }
+      rec.setUID(queryUID);
+      rec.setTTL(ttl);
+      rec.setData(queryData);
+    }
+
+    answer = new Lease(queryUID, ttd);
+
+    if (logger.isDetailEnabled()) {
+      logger.detail(
+          "modify (name="+name+
+          " query="+query+
+          ") returning "+answer);
+    }
+
+    return answer;
+  }
+
+  /**
+   * Batch forwards from ourself.
+   * <p>
+   * This is simply a performance optimization, since we can
+   * batch our replications.  We can't batch for too long
+   * relative to our expireTTD, otherwise we might delay a lease
+   * renewal past its expiration time and our peers will remove
+   * it.  About (0.75*expireTime - deliveryTime) is probably fine.
+   */
+  private void forwardLater(
+      Shard shard,
+      String name,
+      Forward fwd) {
+    // assert (Thread.holdsLock(shard));
+
+    // if the queue already contains a forward with the same uid
+    // then we should keep the record data of the old forward.
+    // This occurs when we've queued both a new record (with data)
+    // and a lease renewal (no data) -- we want to forward the
+    // latest lease TTL with the record data, otherwise we won't
+    // forward the data and our peers will complain about a
+    // "lease-not-known".
+    Forward newFwd = fwd;
+    Forward oldFwd = (Forward) shard.forwardQueue.get(name);
+    if (oldFwd != null) {
+      Lease lease = fwd.getLease();
+      UID uid = lease.getUID();
+      Lease oldLease = oldFwd.getLease();
+      UID oldUID = oldLease.getUID();
+      if (uid.equals(oldUID)) {
+        Record record = fwd.getRecord();
+        Record oldRecord = oldFwd.getRecord();
+        if (record == null && oldRecord != null) {
+          newFwd = new Forward(lease, oldRecord);
+        }
+      }
+    }
+
+    // assert (newFwd != null);
+    shard.forwardQueue.put(name, newFwd);
+  }
+
+  /**
+   * Take the queued forwards from all the shards.
+   *
+   * @return a map of name to Forward, or null if none are queued
+   */
+  Map takeForwards() {
+    Map m = null;
+    for (int i = 0; i < shards.length; i++) {
+      Shard shard = shards[i];
+      synchronized (shard) {
+        if (shard.forwardQueue.isEmpty()) {
+          continue;
+        }
+        if (m == null) {
+          m = new HashMap(shard.forwardQueue);
+        } else {
+          m.putAll(shard.forwardQueue);
+        }
+        shard.forwardQueue.clear();
+      }
+    }
+    return m;
+  }
+
+  /**
+   * Get forwards for the current records of the given changed
+   * names, to resend to a peer that missed them.
+   * <p>
+   * Names that have since been unbound are sent as their logged
+   * unbind, and names that have expired are skipped since the
+   * peer will expire them as well.
+   *
+   * @param changes a map of name to the logged Forward
+   * @return a map of name to Forward
+   */
+  Map getForwards(Map changes, long now) {
+    Map ret = new HashMap();
+    for (Iterator iter = changes.entrySet().iterator();
+        iter.hasNext();
+        ) {
+      Map.Entry me = (Map.Entry) iter.next();
+      String name = (String) me.getKey();
+      Forward fwd;
+      Shard shard = getShard(name);
+      synchronized (shard) {
+        fwd = getForward((RecordEntry) shard.records.get(name), now);
+      }
+      if (fwd == null) {
+        Forward logged = (Forward) me.getValue();
+        Record record = logged.getRecord();
+        Object data = (record == null ? null : record.getData());
+        if (record != null &&
+            (data == null ||
+             (data instanceof Map && ((Map) data).isEmpty()))) {
+          fwd = logged;
+        }
+      }
+      if (fwd != null) {
+        ret.put(name, fwd);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Get forwards for all our current records, to resend to a peer
+   * that's missed more changes than our change log holds.
+   *
+   * @return a map of name to Forward
+   */
+  Map getAllForwards(long now) {
+    Map ret = new HashMap();
+    for (int i = 0; i < shards.length; i++) {
+      Shard shard = shards[i];
+      synchronized (shard) {
+        for (Iterator iter = shard.records.entrySet().iterator();
+            iter.hasNext();
+            ) {
+          Map.Entry me = (Map.Entry) iter.next();
+          Forward fwd = getForward((RecordEntry) me.getValue(), now);
+          if (fwd != null) {
+            ret.put(me.getKey(), fwd);
+          }
+        }
+      }
+    }
+    return ret;
+  }
+
+  /** @return a Forward with the record's remaining lease, or null */
+  private static Forward getForward(RecordEntry rec, long now) {
+    // assert (Thread.holdsLock(shard));
+    if (rec == null) {
+      return null;
+    }
+    long ttd = rec.getTTL() - now;
+    if (ttd <= 0) {
+      return null;
+    }
+    UID uid = rec.getUID();
+    Lease lease = new Lease(uid, ttd);
+    Record record = new Record(uid, -1, rec.getData());
+    return new Forward(lease, record);
+  }
+
+  /**
+   * Find expired leases and remove them.
+   * <p>
+   * Each shard's expiration queue is ordered by the ttl that was
+   * queued when the record was created.  Renewals don't touch the
+   * queue, so when a queued entry comes due we check the record's
+   * current ttl and requeue it if it's been renewed.
+   */
+  void expireLeases(long now) {
+    for (int i = 0; i < shards.length; i++) {
+      Shard shard = shards[i];
+      synchronized (shard) {
+        while (true) {
+          Expiration e = (Expiration) shard.expireQueue.peek();
+          if (e == null || now <= e.ttl) {
+            break;
+          }
+          shard.expireQueue.poll();
+          RecordEntry rec = e.rec;
+          if (shard.records.get(e.name) != rec) {
+            // unbound, possibly rebound as a new record with
+            // its own queue entry
+            continue;
+          }
+          long ttl = rec.getTTL();
+          if (ttl < now) {
+            // expired
+            shard.records.remove(e.name);
+            removeFromDir(e.name);
+            if (logger.isInfoEnabled()) {
+              logger.info("Expired "+rec.toString(now));
+            }
+          } else {
+            // renewed, check again later
+            shard.expireQueue.add(new Expiration(ttl, e.name, rec));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Append the directory tree.
+   * <p>
+   * This doesn't lock the shards, so record details may be
+   * slightly out of date.
+   */
+  void append(StringBuffer buf, long now) {
+    synchronized (dirLock) {
+      rootDir.append(buf, ".", "\n  ", now);
+    }
+  }
+
+  private void addToDir(String name, RecordEntry rec) {
+    synchronized (dirLock) {
+      DirEntry dir = findOrCreateDir(name);
+      // assert (dir != null);
+      Map entries = dir.getEntries();
+      entries.put(name, rec);
+      // bump dir uid to reflect the added entry
+      //
+      // this allows "list" uid-based cache validation
+      dir.setUID(uidService.nextUID());
+    }
+  }
+
+  private void removeFromDir(String name) {
+    synchronized (dirLock) {
+      DirEntry dir = findDir(name);
+      if (dir == null) {
+        return;
+      }
+      Map entries = dir.getEntries();
+      if (entries.remove(name) == null) {
+        return;
+      }
+      // bump dir uid to reflect the removed entry
+      //
+      // this allows "list" uid-based cache validation
+      dir.setUID(uidService.nextUID());
+      // remove empty subdirs
+      while (dir.isEmpty()) {
+        DirEntry parent = dir.getParent();
+        if (parent == null) {
+          break;
+        }
+        parent.getEntries().remove(dir.getSuffix());
+        parent.setUID(uidService.nextUID());
+        if (logger.isInfoEnabled()) {
+          logger.info("Removed empty directory "+dir.getSuffix());
+        }
+        dir = parent;
+      }
+    }
+  }
+
+  private DirEntry findDir(String name) {
+    return findOrCreateDir(name, false);
+  }
+  private DirEntry findOrCreateDir(String name) {
+    return findOrCreateDir(name, true);
+  }
+  private DirEntry findOrCreateDir(String name, boolean create) {
+    // assert (Thread.holdsLock(dirLock));
+
+    // extract the dir suffix, e.g.:
+    //   "."     -> "."
+    //   "a"     -> "."
+    //   "a."    -> "."
+    //   "a.b"   -> ".b"
+    //   "a.b."  -> ".b"
+    //   "a.b.c" -> ".b.c"
+    //   ".d"    -> ".d"
+    //   ".d."   -> ".d"
+    //   ".d.e"  -> ".d.e"
+    String suffix;
+    boolean isRoot;
+    int firstDot = name.indexOf('.');
+    if (firstDot < 0) {
+      suffix = ".";
+      isRoot = true;
+    } else {
+      if (firstDot == 0) {
+        suffix = name;
+      } else {
+        suffix = name.substring(firstDot);
+      }
+      int n = suffix.length();
+      if (n == 1) {
+        suffix = ".";
+        isRoot = true;
+      } else {
+        if (suffix.charAt(n-1) == '.') {
+          --n;
+        }
+        suffix = suffix.substring(0, n);
+        isRoot = false;
+      }
+    }
+    // assert (suffix.startsWith("."));
+    // assert (suffix.equals(".") || !suffix.endsWith("."));
+
+    DirEntry dir = rootDir;
+
+    if (isRoot) {
+      return dir;
+    }
+
+    // subdir, possibly deep
+    int i = suffix.lastIndexOf('.');
+    while (true) {
+      String s = suffix.substring(i);
+      Map entries = dir.getEntries();
+      DirEntry subdir = (DirEntry) entries.get(s);
+      if (subdir == null) {
+        // no such dir
+        if (!create) {
+          dir = null;
+          break;
+        }
+        dir.setUID(uidService.nextUID()); // bump dir uid
+        subdir = new DirEntry(uidService.nextUID(), dir, s);
+        entries.put(s, subdir);
+      }
+      // recurse down
+      dir = subdir;
+      if (i == 0) {
+        // found dir
+        break;
+      }
+      i = suffix.lastIndexOf('.', i-1);
+      // assert (0 <= i : "invalid suffix: "+suffix);
+    }
+
+    return dir;
+  }
+
+  /**
+   * Given a map of AddressEntries, extract the "version"
+   * entry's moveId.
+   * <p>
+   * The version entry format is:<pre>
+   *   version:///<i>incarnation</i>[/<i>moveId</i>]
+   * </pre>
+   * if the moveId is not specified then it's equivalent to the
+   * incarnation number.
+   *
+   * @return zero if the data doesn't contain version information 
+   */
+  private static long getVersion(Object data) {
+    if (!(data instanceof Map)) {
+      return 0;
+    }
+    Map m = (Map) data;
+    Object v = m.get("version");
+    if (!(v instanceof AddressEntry)) {
+      return 0;
+    }
+    AddressEntry ae = (AddressEntry) v;
+    URI uri = ae.getURI();
+    if (uri == null) {
+      return 0;
+    }
+    String path = uri.getPath();
+    if (path == null || path.length() < 1) {
+      return 0;
+    }
+    int sepIdx = path.indexOf('/', 1);
+    String s;
+    if (sepIdx < 0) {
+      s = path.substring(1);
+    } else {
+      s = path.substring(sepIdx+1);
+    }
+    long ret;
+    try {
+      ret = Long.parseLong(s);
+    } catch (NumberFormatException nfe) {
+      return 0;
+    }
+    return ret;
+  }
+
+  /** A shard of the table, which is also its own lock */
+  private static final class Shard {
+    // <String, RecordEntry>
+    private final Map records = new HashMap();
+    // <Expiration>, ordered by ttl
+    private final PriorityQueue expireQueue = new PriorityQueue();
+    // <String, Forward>
+    private final Map forwardQueue = new HashMap();
+  }
+
+  /** An expiration queue entry */
+  private static final class Expiration implements Comparable {
+    private final long ttl;
+    private final String name;
+    private final RecordEntry rec;
+
+    public Expiration(long ttl, String name, RecordEntry rec) {
+      this.ttl = ttl;
+      this.name = name;
+      this.rec = rec;
+    }
+
+    public int compareTo(Object o) {
+      long t = ((Expiration) o).ttl;
+      return (ttl < t ? -1 : ttl == t ? 0 : 1);
+    }
+  }
+
+  private static abstract class Entry {
+    private UID uid;
+
+    public Entry(UID uid) {
+      _setUID(uid);
+    }
+
+    private void _setUID(UID uid) {
+      if (uid == null) {
+        throw new IllegalArgumentException("null uid");
+      }
+      this.uid = uid;
+    }
+
+    public void setUID(UID uid) {
+      _setUID(uid);
+    }
+    public UID getUID() {
+      return uid;
+    }
+
+    @Override
+   public String toString() {
+      long now = System.currentTimeMillis();
+      return toString(now);
+    }
+
+    public abstract String toString(long now);
+  }
+
+  private static class DirEntry extends Entry {
+
+    private final DirEntry parent;
+    private final String suffix;
+
+    // the child entries, which can be a mix of
+    // dir-entries and record-entries.
+    //
+    // The string key for dir-entries always start
+    // with a '.', and record-entries never start
+    // with a '.'.
+    //
+    // <String, Entry>
+    private final Map entries = new HashMap();
+
+    public DirEntry(UID uid, DirEntry parent, String suffix) {
+      super(uid);
+      this.parent = parent;
+      this.suffix = suffix;
+    }
+
+    /** @return the parent dir, or null if this is the root */
+    public DirEntry getParent() {
+      return parent;
+    }
+
+    /** @return our key in the parent's entries */
+    public String getSuffix() {
+      return suffix;
+    }
+
+    public boolean isEmpty() {
+      return entries.isEmpty();
+    }
+
+    // the client can directly modify this map
+    public Map getEntries() {
+      return entries;
+    }
+
+    @Override
+   public String toString(long now) {
+      StringBuffer buf = new StringBuffer();
+      append(buf, suffix, "\n  ", now);
+      return buf.toString();
+    }
+
+    /** @note recursive! */
+    public void append(
+        StringBuffer buf,
+        String suffix,
+        String indent,
+        long now) {
+      // assert (Thread.holdsLock(dirLock));
+      // assert (indent.startsWith("\n"));
+
+      buf.append(indent).append("suffix=").append(suffix);
+      buf.append(indent).append("uid=").append(getUID());
+
+      Map m = this.getEntries();
+
+      // sort
+      Object[] keys = m.keySet().toArray();
+      Arrays.sort(keys);
+
+      buf.append(indent).append("entries[");
+      buf.append(m.size()).append("]={");
+
+      String subindent = indent+"  ";
+      for (int i = 0; i < keys.length; i++) {
+        String name = (String) keys[i];
+        Object value = m.get(name);
+        if (value instanceof DirEntry) {
+          // recurse!
+          DirEntry subdir = (DirEntry) value;
+          subdir.append(buf, name, subindent, now);
+        } else if (value instanceof RecordEntry) {
+          RecordEntry re = (RecordEntry) value;
+          buf.append(subindent).append(name).append("=");
+          buf.append(re.toString(now));
+        } else {
+          throw new RuntimeException(
+              "Unexpected DirEntry element: ("+name+"="+value+")");
+        }
+      }
+
+      buf.append(indent).append("}");
+    }
+  }
+
+  private static class RecordEntry extends Entry {
+
+    private long ttl;
+    private Object data;
+
+    public RecordEntry(UID uid) {
+      super(uid);
+    }
+
+    public void setTTL(long ttl) {
+      this.ttl = ttl;
+    }
+    public long getTTL() {
+      return ttl;
+    }
+
+    public void setData(Object data) {
+      this.data = data;
+    }
+    public Object getData() {
+      return data;
+    }
+
+    @Override
+   public String toString(long now) {
+      return 
+        "(record uid="+getUID()+
+        " ttl="+Timestamp.toString(ttl, now)+
+        " data="+data+
+        ")";
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+package org.cougaar.core.wp.server;
+
+import java.io.Serializable;
+
+import org.cougaar.core.util.UID;
+
+/**
+ * A peer's request for the forwards it missed, sent in reply to
+ * a batch whose {@link ForwardSequence} isn't contiguous with the
+ * last batch it saw.
+ * <p>
+ * The sender replies with the current records changed after the
+ * "since" sequence number, or with all its records if its change
+ * log no longer reaches back that far.
+ */
+public final class ForwardResync implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final UID epoch;
+  private final long since;
+
+  public ForwardResync(UID epoch, long since) {
+    this.epoch = epoch;
+    this.since = since;
+    // validate
+    String s =
+      (epoch == null ? "null epoch" :
+       since < 0 ? "negative sequence "+since :
+       null);
+    if (s != null) {
+      throw new IllegalArgumentException(s);
+    }
+  }
+
+  /** The epoch of the sender's {@link ForwardSequence} */
+  public UID getEpoch() {
+    return epoch;
+  }
+
+  /**
+   * The last sequence number the peer has seen, or zero if it
+   * needs everything.
+   */
+  public long getSince() {
+    return since;
+  }
+
+  @Override
+public String toString() {
+    return "(forward-resync epoch="+epoch+" since="+since+")";
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+package org.cougaar.core.wp.server;
+
+import java.io.Serializable;
+
+import org.cougaar.core.util.UID;
+
+/**
+ * The sequence numbers of a batch of {@link Forward}s, which
+ * allows a peer to detect missed forwards and ask for them with
+ * a {@link ForwardResync}.
+ * <p>
+ * Sequence numbers start at one and are only meaningful within
+ * the sender's epoch, which is a new UID each time the sender
+ * starts.
+ */
+public final class ForwardSequence implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final UID epoch;
+  private final long first;
+  private final long last;
+
+  public ForwardSequence(UID epoch, long first, long last) {
+    this.epoch = epoch;
+    this.first = first;
+    this.last = last;
+    // validate
+    String s =
+      (epoch == null ? "null epoch" :
+       (first <= 0 || last < first - 1) ?
+       "invalid range ["+first+".."+last+"]" :
+       null);
+    if (s != null) {
+      throw new IllegalArgumentException(s);
+    }
+  }
+
+  /** The sender's epoch */
+  public UID getEpoch() {
+    return epoch;
+  }
+
+  /** The first sequence number covered by this batch */
+  public long getFirst() {
+    return first;
+  }
+
+  /**
+   * The last sequence number covered by this batch, which is
+   * one less than the first if the batch is empty.
+   */
+  public long getLast() {
+    return last;
+  }
+
+  @Override
+public String toString() {
+    return "(forward-sequence epoch="+epoch+" seq=["+first+".."+last+"])";
+  }
+}
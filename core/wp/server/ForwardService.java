@@ -71,6 +71,11 @@ public interface ForwardService extends Service {
    * <p>
    * It's fine to submit a singleton map, but for efficiency a
    * client can use this API to batch requests.
+   * <p>
+   * The map may also contain a {@link ForwardSequence} under the
+   * "." key, in which case the "forwardAnswer" may contain a
+   * {@link ForwardResync} under the same key if the peer has
+   * missed earlier forwards.
    */
   void forward(Map m, long ttd);
 
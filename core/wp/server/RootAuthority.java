@@ -26,14 +26,10 @@
 
 package org.cougaar.core.wp.server;
 
-import java.net.URI;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Set;
 
 import org.cougaar.core.component.Component;
 import org.cougaar.core.component.ServiceBroker;
@@ -41,18 +37,12 @@ import org.cougaar.core.mts.MessageAddress;
 import org.cougaar.core.service.LoggingService;
 import org.cougaar.core.service.ThreadService;
 import org.cougaar.core.service.UIDService;
-import org.cougaar.core.service.wp.AddressEntry;
 import org.cougaar.core.service.wp.WhitePagesProtectionService;
 import org.cougaar.core.thread.Schedulable;
 import org.cougaar.core.util.UID;
 import org.cougaar.core.wp.Parameters;
-import org.cougaar.core.wp.Timestamp;
 import org.cougaar.core.wp.resolver.Lease;
-import org.cougaar.core.wp.resolver.LeaseDenied;
-import org.cougaar.core.wp.resolver.LeaseNotKnown;
 import org.cougaar.core.wp.resolver.NameTag;
-import org.cougaar.core.wp.resolver.Record;
-import org.cougaar.core.wp.resolver.RecordIsValid;
 import org.cougaar.util.GenericStateModelAdapter;
 
 /**
@@ -61,7 +51,9 @@ import org.cougaar.util.GenericStateModelAdapter;
  * This implementation supports replication but not naming
  * hierarchies.
  * <p>
- * Refactor me!
+ * The records are kept in a {@link DirectoryStore}, which is
+ * hash-sharded by name so concurrent lookups, modifies and
+ * forwards only contend when they share a shard.
  */
 public class RootAuthority
 extends GenericStateModelAdapter
@@ -73,6 +65,13 @@ implements Component
   private static final int PING    = 3;
   private static final int FORWARD_ANSWER = 4;
 
+  /**
+   * The forward map key for our {@link ForwardSequence} and our
+   * peers' {@link ForwardResync}s, which can't clash with a
+   * forwarded name since directories can't be modified.
+   */
+  private static final String SEQUENCE_KEY = ".";
+
   private RootConfig config;
 
   private ServiceBroker sb;
@@ -92,12 +91,14 @@ implements Component
 
   private final MyClient myClient = new MyClient();
 
-  private final Object lock = new Object();
-
-  private DirEntry rootDir;
+  private DirectoryStore store;
 
-  private final Map forwardQueue = new HashMap();
+  private ChangeLog changeLog;
 
+  // the last forward sequence we've seen from each peer
+  //
+  // <MessageAddress, PeerSequence>
+  private final Map peerSequences = new HashMap();
 
   public void setParameter(Object o) {
     this.config = new RootConfig(o);
@@ -143,6 +144,11 @@ public void load() {
           " white pages protection service");
     }
 
+    store = new DirectoryStore(
+        logger, uidService,
+        config.successTTD, config.failTTD, config.shards);
+    changeLog = new ChangeLog(uidService.nextUID(), config.changeLogSize);
+
     // create forward timer
     Runnable forwardRunner =
       new Runnable() {
@@ -263,27 +269,41 @@ public void unload() {
       return;
     }
     Map answers = null;
-    synchronized (lock) {
-      long now = System.currentTimeMillis();
-      for (Iterator iter = m.entrySet().iterator();
-          iter.hasNext();
-          ) {
-        Map.Entry me = (Map.Entry) iter.next();
-        String name = (String) me.getKey();
-        Object sendObj = me.getValue();
-        Object answer = handle(action, name, sendObj, now);
-        if (answer == null) {
-          continue;
-        }
-        if (n == 1) {
-          answers = Collections.singletonMap(name, answer);
-        } else {
-          if (answers == null) {
-            answers = new HashMap();
-          }
-          answers.put(name, answer);
+    Map resync = null;
+    long now = System.currentTimeMillis();
+    for (Iterator iter = m.entrySet().iterator();
+        iter.hasNext();
+        ) {
+      Map.Entry me = (Map.Entry) iter.next();
+      String name = (String) me.getKey();
+      Object sendObj = me.getValue();
+      Object answer;
+      if (action == FORWARD && SEQUENCE_KEY.equals(name)) {
+        answer = receiveSequence(clientAddr, sendObj);
+      } else if (action == FORWARD_ANSWER && SEQUENCE_KEY.equals(name)) {
+        resync = resync(clientAddr, sendObj, now);
+        continue;
+      } else {
+        answer = handle(action, name, sendObj, now);
+      }
+      if (answer == null) {
+        continue;
+      }
+      if (n == 1) {
+        answers = Collections.singletonMap(name, answer);
+      } else {
+        if (answers == null) {
+          answers = new HashMap();
         }
+        answers.put(name, answer);
+      }
+    }
+    if (resync != null) {
+      // merge with any lease-not-known resends
+      if (answers != null) {
+        resync.putAll(answers);
       }
+      answers = resync;
     }
     if (answers == null) {
       return; 
@@ -318,8 +338,6 @@ public void unload() {
       String name,
       Object sendObj,
       long now) {
-    // assert (Thread.holdsLock(lock));
- 
     // unwrap
     Object query = sendObj; 
     if (sendObj instanceof NameTag) {
@@ -351,578 +369,124 @@ public void unload() {
 
     switch (action) { 
       case LOOKUP:
-        return lookup(name, query, now);
+        return store.lookup(name, query, now);
       case MODIFY:
-        return modifyAndForward(name, query, now);
+        return store.modifyAndForward(name, query, config.expireTTD, now);
       case FORWARD:
-        return receiveForward(name, query, now);
+        return store.receiveForward(name, query, now);
       case FORWARD_ANSWER:
-        return resendForward(name, query, now);
+        return store.resendForward(name, query, now);
       default:
         throw new IllegalArgumentException(
             "Invalid action: "+action);
     }
   }
 
-  private Object lookup(
-      String name,
-      Object query,
-      long now) {
-    // assert (Thread.holdsLock(lock));
-
-    // find the closest DirEntry if it exists
-    DirEntry dir = findDir(name);
-
-    // get the record-entry if this is a non-list operation
-    RecordEntry rec = 
-      (dir == null ?
-       (null) :
-       dir.getRecordEntry(name));
-
-    Object answer;
-
-    UID queryUID;
-    if (query == null) {
-      queryUID = null;
-    } else if (query instanceof UID) {
-      queryUID = (UID) query;
-    } else {
-      // invalid
-      queryUID = null;
-    }
-
-    boolean isList = (name.charAt(0) == '.');
-
-    // find current record info
-    UID uid;
-    long ttd;
-    Object data;
-    if (isList) {
-      if (dir == null) {
-        // not listed, so data is null
-        uid = uidService.nextUID();
-        ttd = config.failTTD;
-        data = null;
-      } else {
-        // copy dir keys
-        //
-        // we could make this a rarely-modified-set
-        uid = dir.getUID();
-        ttd = config.successTTD;
-        Map entries = dir.getEntries();
-        Set keys = entries.keySet();
-        data = new HashSet(keys);
-      }
-    } else {
-      if (rec == null) {
-        // not listed, so data is null
-        uid = uidService.nextUID();
-        ttd = config.failTTD;
-        data = null;
-      } else {
-        // return the data
-        uid = rec.getUID();
-        ttd = config.successTTD;
-        data = rec.getData();
-      }
-    }
-
-    if (queryUID != null && queryUID.equals(uid)) {
-      // validated, so we don't send back the data
-      answer = new RecordIsValid(uid, ttd);
-    } else {
-      // return full record
-      answer = new Record(uid, ttd, data);
-    }
-
-    if (logger.isDetailEnabled()) {
-      logger.detail(
-          "lookup (name="+name+
-          " query="+query+
-          " now="+now+") returning "+answer);
-    }
-
-    return answer;
-  }
-
-  private Object modify(
-      String name,
-      Object query,
-      long ttd,
-      long now) {
-    // assert (Thread.holdsLock(lock));
-
-    boolean isList = (name.charAt(0) == '.');
-    if (isList) {
-      // invalid modify
+  /**
+   * Check a peer's forward sequence for missed forwards.
+   *
+   * @return a ForwardResync if we've missed some, otherwise null
+   */
+  private Object receiveSequence(
+      MessageAddress clientAddr,
+      Object query) {
+    if (!(query instanceof ForwardSequence)) {
       if (logger.isErrorEnabled()) {
         logger.error(
-            "Modify (name="+name+
-            " query="+query+
-            ") is invalid, returning null");
+            "Invalid forward sequence from "+clientAddr+": "+query);
       }
       return null;
     }
-
-    // unwrap the query if it's wrapped
-
-    Object queryContent = query;
-    if (query instanceof NameTag) {
-      queryContent = ((NameTag) query).getObject();
-    }
-
-    UID queryUID;
-    boolean hasQueryData;
-    Object queryData;
-    if (queryContent instanceof UID) {
-      queryUID = (UID) queryContent;
-      hasQueryData = false;
-      queryData = null;
-    } else if (queryContent instanceof Record) {
-      Record record = (Record) queryContent;
-      queryUID = record.getUID();
-      hasQueryData = true;
-      queryData = record.getData();
-    } else {
-      // invalid
-      queryUID = null;
-      hasQueryData = false;
-      queryData = null;
-    }
-    if (queryUID == null) {
-      // invalid
-      return null;
-    }
-
-    // find the closest DirEntry, create it if it doesn't exist
-    DirEntry dir = findOrCreateDir(name);
-    // assert (dir != null);
-
-    // get the record-entry, which may be null
-    RecordEntry rec = dir.getRecordEntry(name);
-
-    UID uid = (rec == null ? null : rec.getUID());
-    boolean sameUID = queryUID.equals(uid);
-
-    Object answer = null;
-    if (sameUID) {
-      // successful lease renewal
-      //
-      // note that the client doesn't need to send the record
-      // data to renew a lease.
-    } else if (!hasQueryData) {
-      // the UIDs don't match, which usually means that the
-      // client thinks it's renewing data but the server
-      // doesn't know the data.
-      //
-      // we need the full record to decide if we need to replace
-      // our entry or deny this lease.  Either we crashed, or the
-      // client was talking to another server that hasn't
-      // replicated that data to our server yet (e.g. due to a
-      // crash or network partition), or some odd race condition
-      // occurred.
-      answer = new LeaseNotKnown(queryUID);
-    } else if (rec == null) {
-      // this is a new record and the client passed us the data,
-      // so accept it.
-    } else if (uid.getOwner().equals(queryUID.getOwner())) {
-      // same author (node), so compare modification counters.
-      if (uid.getId() <= queryUID.getId()) {
-        // larger counter, so accept this update
-      } else {
-        // reject out-of-order update (should we simply ignore it?)
-        Object reason = 
-          "Modify uid "+queryUID+" counter "+queryUID.getId()+
-          " is less than the local uid "+uid+" counter "+
-          uid.getId()+", out of order update?";
-        answer = new LeaseDenied(uid, reason, rec.getData());
-      } 
-    } else {
-      // deconflict records from different authors
-      //
-      // extract the optional "moveId" version fields
-      Object data = rec.getData();
-      long version = getVersion(data);
-      long queryVersion = getVersion(queryData);
-
-      if (version < queryVersion) {
-        // accept the replacement record
-        //
-        // note that versions can be negative, e.g. use negative
-        // timestamps to favor old bindings. 
-      } else if (version == 0 && queryVersion != 0) {
-        // we always favor records with version numbers
-      } else if (version == queryVersion) {
-        // identical versions from different authors
-        //
-        // we need to compare *something* to prefer one of these
-        // equivalent records.  We can't simply favor our existing
-        // record or the new record, since then we could never settle
-        // conflicts between servers (e.g. races and mixed delivery
-        // orders).  We can't use virtual synchrony tricks and still
-        // be fault tolerant.
-        //
-        // here we hash the UIDs and favor the larger value.  We don't
-        // use "UID.hashCode()", since it uses "+" and is biased by
-        // authors and counters, so instead we use "^".  This will seem
-        // random to the clients but will behave identically when
-        // performed in any order by servers peers.
-        int h1 = 
-          uid.getOwner().hashCode() ^ (int) uid.getId();
-        int h2 = 
-          queryUID.getOwner().hashCode() ^ (int) queryUID.getId();
-        if (h2 < h1) {
-          Object reason = 
-            "Modify uid "+queryUID+" hash "+h2+
-            " is less than the local uid "+uid+" hash "+h1;
-          answer = new LeaseDenied(uid, reason, data);
-        }
-      } else {
-        // old version
-        Object reason = 
-          "Modify version "+queryVersion+
-          " is greater than the local version "+version;
-        answer = new LeaseDenied(uid, reason, data);
+    ForwardSequence seq = (ForwardSequence) query;
+    UID epoch = seq.getEpoch();
+    MessageAddress addr = clientAddr.getPrimary();
+
+    long since;
+    synchronized (peerSequences) {
+      PeerSequence ps = (PeerSequence) peerSequences.get(addr);
+      if (ps == null || !epoch.equals(ps.epoch)) {
+        // either the peer or we have restarted
+        ps = new PeerSequence(epoch);
+        peerSequences.put(addr, ps);
       }
-    }
-
-    if (answer != null) {
-      // lease is either not known or denied
-      if (logger.isDetailEnabled()) {
-        logger.detail(
-            "modify (name="+name+
-            " query="+query+
-            ") returning "+answer);
-      }
-      return answer;
-    }
-
-    //
-    // create or extend a lease
-    //
-
-    long ttl = now + ttd;
-
-    if (sameUID) {
-      // extend an existing lease
-      rec.setTTL(ttl);
-    } else if (
-        queryData == null ||
-        (queryData instanceof Map &&
-         ((Map) queryData).isEmpty())) {
-      // this is a full unbind
-      if (rec == null) {
-        // this is an odd case, where the client is telling
-        // the server to unbind all its entries and the server
-        // never heard of the client.  In this case the
-        // client probably doesn't care what the server returns,
-        // since it's already discarded its entries.  Still,
-        // we must respond somehow...
+      if (seq.getFirst() <= ps.last + 1) {
+        // contiguous, or a resync that overlaps what we've seen
+        since = -1;
       } else {
-        Map entries = dir.getEntries();
-        entries.remove(name);
-        // bump dir uid to reflect the removed entry
-        //
-        // this allows "list" uid-based cache validation
-        dir.setUID(uidService.nextUID());
+        // missed the forwards in between
+        since = ps.last;
       }
-    } else {
-      if (rec == null) {
-        // create the record
-        rec = new RecordEntry(queryUID);
-        Map entries = dir.getEntries();
-        entries.put(name, rec);
-        // bump dir uid to reflect the added entry
-        //
-        // this allows "list" uid-based cache validation
-        dir.setUID(uidService.nextUID());
+      if (ps.last < seq.getLast()) {
+        ps.last = seq.getLast();
       }
-      rec.setUID(queryUID);
-      rec.setTTL(ttl);
-      rec.setData(queryData);
     }
 
-    answer = new Lease(queryUID, ttd);
-
-    if (logger.isDetailEnabled()) {
-      logger.detail(
-          "modify (name="+name+
-          " query="+query+
-          ") returning "+answer);
+    if (since < 0) {
+      return null;
     }
 
-    return answer;
-  }
-
-  private Object modifyAndForward(
-      String name,
-      Object query,
-      long now) {
-    // assert (Thread.holdsLock(lock));
-    Object answer = modify(name, query, config.expireTTD, now);
-
-    if (answer instanceof Lease) {
-      // forward lease to peers (excluding self and sender)
-      //
-      // note that the query can be a UID or a Record.  If a UID
-      // is sent and a peer doesn't know the UID, then that peer
-      // will send us a "forwardAnswer" with a LeaseNotKnown.
-      Lease lease = (Lease) answer;
-      Object queryContent = 
-        (query instanceof NameTag ?
-         ((NameTag) query).getObject() :
-         query);
-      Record record = 
-        (queryContent instanceof Record ? 
-         ((Record) queryContent) :
-         null);
-      Forward fwd = new Forward(lease, record);
-      // to all
-      forwardLater(name, fwd);
+    // ask for the missing forwards.  If this request or the reply
+    // is lost then the gap will be healed by lease renewals, as
+    // it would be without sequence numbers.
+    if (logger.isInfoEnabled()) {
+      logger.info(
+          "Missed forwards from "+addr+" "+seq+
+          ", requesting resync since "+since);
     }
-
-    return answer;
+    return new ForwardResync(epoch, since);
   }
 
-  private Object receiveForward(
-      String name,
+  /**
+   * Answer a peer's ForwardResync with the current records that
+   * changed since the requested sequence number, or with all our
+   * records if our change log has been truncated.
+   *
+   * @return a map of name to Forward, plus our ForwardSequence
+   */
+  private Map resync(
+      MessageAddress clientAddr,
       Object query,
       long now) {
-    // assert (Thread.holdsLock(lock));
-    
-    if (!(query instanceof Forward)) {
-      // invalid
+    if (!(query instanceof ForwardResync)) {
       if (logger.isErrorEnabled()) {
         logger.error(
-            "Invalid forward (name="+name+", query="+query+")");
-      } 
-      return null; 
-    }
-
-    Forward fwd = (Forward) query;
-    Lease lease = fwd.getLease();
-    Record record = fwd.getRecord();
-    Object modQuery;
-    if (record == null) {
-      modQuery = lease.getUID();
-    } else {
-      modQuery = record;
-    }
-    long modTTD = lease.getTTD();
-
-    // warn if our config.expireTTD is << the modTTD ?
-    //
-    // for consistency we'll accept our peer's ttd, since the
-    // client will renew based upon this ttd.  If we use a shorter
-    // ttd then the client will expire prematurely.  In practice
-    // we expect all the ttds to be equal.
-
-    Object answer = modify(name, modQuery, modTTD, now);
-
-    // filter out leases (they've already been forwarded) and
-    // denials (since they're likely a transient race condition)
-    //
-    // LeaseDenied responses are due to data conflicts.  The
-    // assumption is that our local data is better and either we
-    // or another peer has already sent the better data to the
-    // sender.
-    if (!(answer instanceof LeaseNotKnown)) {
+            "Invalid forward resync from "+clientAddr+": "+query);
+      }
       return null;
     }
-
-    // send back lease-not-known responses, since our peer
-    // sent us a UID and we lack the data.  The peer should
-    // reply by forwarding the Record.
-    return answer;
-  }
-
-  private Object resendForward(
-      String name,
-      Object query,
-      long now) {
-    // assert (Thread.holdsLock(lock));
-
-    // find the lease and send the Record data
-    //
-    // this is similar to a "lookup" but we only want to find an
-    // exact match, plus we need the lease ttl and not a lookup ttl
-    UID queryUID = null;
-    DirEntry dir = null;
-    RecordEntry rec = null;
-    UID uid = null;
-    long ttd = -1;
-    String denied =
-      ((!(query instanceof LeaseNotKnown)) ?
-       "query is not of type lease-not-known" :
-       ((queryUID = ((LeaseNotKnown) query).getUID()) == null) ?
-       "query uid is null" :
-       (name.charAt(0) == '.') ?
-       "name is invalid" :
-       ((dir = findDir(name)) == null) ?
-       "directory is null" :
-       ((rec = dir.getRecordEntry(name)) == null) ?
-       "no such record in our directory" :
-       ((uid = rec.getUID()) == null) ?
-       "local uid is null? "+rec : 
-       (!uid.equals(queryUID)) ?
-       "our local record has a different uid "+rec :
-       ((ttd = rec.getTTL() - now) <= 0) ?
-       "our local record has expired" :
-       (null));
-    if (denied != null) {
-      // our local table doesn't contain this entry
-      //
-      // the non-matching UID case is assumed to be a race between
-      // a forward that we've sent and someone asking about the old
-      // UID.  Our forward should arrive soon enough.
+    ForwardResync req = (ForwardResync) query;
+    UID epoch = changeLog.getEpoch();
+    if (!epoch.equals(req.getEpoch())) {
+      // asking about our prior incarnation.  Our next forward
+      // will have our new epoch, which will prompt a full resync.
       if (logger.isDebugEnabled()) {
         logger.debug(
-            "Ignoring resendForward for (name="+name+
-            ", query="+query+"), "+denied);
+            "Ignoring resync from "+clientAddr+" for old epoch "+
+            req.getEpoch()+", our epoch is "+epoch);
       }
       return null;
     }
 
-    Object data = rec.getData();
-    Lease lease = new Lease(uid, ttd);
-    Record record = new Record(uid, -1, data);
-    Forward fwd = new Forward(lease, record);
-
-    // okay, act as if we're forwarding it for the first time,
-    // but instead of sending it later we can send it back
-    // to the client.
-    if (logger.isDebugEnabled()) {
-      logger.debug("Resending forward: "+fwd);
-    }
-    return fwd; 
-  }
-
-  private DirEntry findDir(String name) {
-    return findOrCreateDir(name, false);
-  }
-  private DirEntry findOrCreateDir(String name) {
-    return findOrCreateDir(name, true);
-  }
-  private DirEntry findOrCreateDir(String name, boolean create) {
-
-    // extract the dir suffix, e.g.:
-    //   "."     -> "."
-    //   "a"     -> "."
-    //   "a."    -> "."
-    //   "a.b"   -> ".b"
-    //   "a.b."  -> ".b"
-    //   "a.b.c" -> ".b.c"
-    //   ".d"    -> ".d"
-    //   ".d."   -> ".d"
-    //   ".d.e"  -> ".d.e"
-    String suffix;
-    boolean isRoot;
-    int firstDot = name.indexOf('.');
-    if (firstDot < 0) {
-      suffix = ".";
-      isRoot = true;
+    long since = req.getSince();
+    // take the sequence before the changes, so our reply
+    // doesn't claim changes that are logged after it
+    long last = changeLog.getLastSequence();
+    Map changes = changeLog.getChangesSince(since);
+    Map ret;
+    if (changes == null) {
+      ret = store.getAllForwards(now);
     } else {
-      if (firstDot == 0) {
-        suffix = name;
-      } else {
-        suffix = name.substring(firstDot);
-      }
-      int n = suffix.length();
-      if (n == 1) {
-        suffix = ".";
-        isRoot = true;
-      } else {
-        if (suffix.charAt(n-1) == '.') {
-          --n;
-        }
-        suffix = suffix.substring(0, n);
-        isRoot = false;
-      }
-    }
-    // assert (suffix.startsWith("."));
-    // assert (suffix.equals(".") || !suffix.endsWith("."));
-
-    if (rootDir == null) {
-      UID uid = uidService.nextUID();
-      rootDir = new DirEntry(uid);
-    }
-    DirEntry dir = rootDir;
-
-    if (isRoot) {
-      return dir;
+      ret = store.getForwards(changes, now);
     }
+    ForwardSequence seq = 
+      new ForwardSequence(epoch, Math.min(since, last) + 1, last);
+    ret.put(SEQUENCE_KEY, seq);
 
-    // subdir, possibly deep
-    int i = suffix.lastIndexOf('.');
-    while (true) {
-      String s = suffix.substring(i);
-      Map entries = dir.getEntries();
-      DirEntry subdir = (DirEntry) entries.get(s);
-      if (subdir == null) {
-        // no such dir
-        if (!create) {
-          dir = null;
-          break;
-        }
-        dir.setUID(uidService.nextUID()); // bump dir uid
-        subdir = new DirEntry(uidService.nextUID());
-        entries.put(s, subdir);
-      }
-      // recurse down
-      dir = subdir;
-      if (i == 0) {
-        // found dir
-        break;
-      }
-      i = suffix.lastIndexOf('.', i-1);
-      // assert (0 <= i : "invalid suffix: "+suffix);
-    }
-
-    return dir;
-  }
-
-  /**
-   * Given a map of AddressEntries, extract the "version"
-   * entry's moveId.
-   * <p>
-   * The version entry format is:<pre>
-   *   version:///<i>incarnation</i>[/<i>moveId</i>]
-   * </pre>
-   * if the moveId is not specified then it's equivalent to the
-   * incarnation number.
-   *
-   * @return zero if the data doesn't contain version information 
-   */
-  private long getVersion(Object data) {
-    if (!(data instanceof Map)) {
-      return 0;
-    }
-    Map m = (Map) data;
-    Object v = m.get("version");
-    if (!(v instanceof AddressEntry)) {
-      return 0;
-    }
-    AddressEntry ae = (AddressEntry) v;
-    URI uri = ae.getURI();
-    if (uri == null) {
-      return 0;
-    }
-    String path = uri.getPath();
-    if (path == null || path.length() < 1) {
-      return 0;
-    }
-    int sepIdx = path.indexOf('/', 1);
-    String s;
-    if (sepIdx < 0) {
-      s = path.substring(1);
-    } else {
-      s = path.substring(sepIdx+1);
-    }
-    long ret;
-    try {
-      ret = Long.parseLong(s);
-    } catch (NumberFormatException nfe) {
-      return 0;
+    if (logger.isInfoEnabled()) {
+      logger.info(
+          "Resync "+clientAddr+" since "+since+" with "+
+          (changes == null ? "all " : "")+(ret.size() - 1)+
+          " records, "+seq);
     }
     return ret;
   }
@@ -950,66 +514,16 @@ public void unload() {
     return maxTTD;
   }
 
-  /**
-   * Batch forwards from ourself.
-   * <p>
-   * This is simply a performance optimization, since we can
-   * batch our replications.  We can't batch for too long
-   * relative to our expireTTD, otherwise we might delay a lease
-   * renewal past its expiration time and our peers will remove
-   * it.  About (0.75*expireTime - deliveryTime) is probably fine.
-   */
-  private void forwardLater(
-      String name,
-      Forward fwd) {
-    // assert (Thread.holdsLock(lock));
-
-    // if the queue already contains a forward with the same uid
-    // then we should keep the record data of the old forward.
-    // This occurs when we've queued both a new record (with data)
-    // and a lease renewal (no data) -- we want to forward the
-    // latest lease TTL with the record data, otherwise we won't
-    // forward the data and our peers will complain about a
-    // "lease-not-known".
-    Forward newFwd = fwd;
-    Forward oldFwd = (Forward) forwardQueue.get(name);
-    if (oldFwd != null) {
-      Lease lease = fwd.getLease();
-      UID uid = lease.getUID();
-      Lease oldLease = oldFwd.getLease();
-      UID oldUID = oldLease.getUID();
-      if (uid.equals(oldUID)) {
-        Record record = fwd.getRecord();
-        Record oldRecord = oldFwd.getRecord();
-        if (record == null && oldRecord != null) {
-          newFwd = new Forward(lease, oldRecord);
-        }
-      }
-    }
-
-    // assert (newFwd != null);
-    forwardQueue.put(name, newFwd);
-
-    // schedule the thread if it's not scheduled?
-    //
-    // the schedulable API makes this tricky, so we'll simply
-    // keep a steady schedule
-  }
-
   private void forwardNow() {
-    // take the queue
-    Map m;
-    synchronized (lock) {
-      if (forwardQueue.isEmpty()) {
-        m = null;
-      } else {
-        m = new HashMap(forwardQueue);
-        m = Collections.unmodifiableMap(m);
-        forwardQueue.clear();
-      }
-    }
+    // take the queued forwards from all the shards
+    Map m = store.takeForwards();
 
     if (m != null) {
+      // tag with our sequence numbers, so our peers can detect
+      // and request missed forwards
+      ForwardSequence seq = changeLog.append(m);
+      m.put(SEQUENCE_KEY, seq);
+      m = Collections.unmodifiableMap(m);
       // find the max expire time for these forwards, so we
       // can set the message timeout
       long maxTTD = findMaxTTD(m);
@@ -1020,85 +534,22 @@ public void unload() {
     forwardThread.schedule(config.forwardPeriod);
   }
 
-  /**
-   * Find expired leases and remove them. 
-   *
-   * @note recursive!
-   */ 
-  private boolean expireLeases(
-      String suffix,
-      DirEntry dir,
-      long now) {
-    // assert (Thread.holdsLock(lock));
-
-    boolean hasChanged = false;
-    Map entries = dir.getEntries();
-    for (Iterator iter = entries.entrySet().iterator();
-        iter.hasNext();
-        ) {
-      Map.Entry me = (Map.Entry) iter.next();
-      String name = (String) me.getKey();
-      Object value = me.getValue();
-      if (value instanceof DirEntry) {
-        // recurse!
-        DirEntry subdir = (DirEntry) value;
-        expireLeases(name, subdir, now);
-        if (subdir.isEmpty()) {
-          // all expired
-          iter.remove();
-          hasChanged = true;
-          if (logger.isInfoEnabled()) {
-            logger.info("Expired "+subdir.toString(now));
-          }
-        }
-      } else if (value instanceof RecordEntry) {
-        RecordEntry re = (RecordEntry) value;
-        long ttl = re.getTTL();
-        if (ttl < now) {
-          // expired
-          iter.remove();
-          hasChanged = true;
-          if (logger.isInfoEnabled()) {
-            logger.info("Expired "+re.toString(now));
-          }
-        } else {
-          // okay for now
-        }
-      } else {
-        throw new RuntimeException(
-            "Unexpected DirEntry element: ("+name+"="+value+")");
-      }
-    }
-
-    if (hasChanged && !dir.isEmpty()) {
-      // changed the dir "list" contents, so we must change
-      // the dir's uid.
-      dir.setUID(uidService.nextUID());
-    }
-
-    return hasChanged;
-  }
-
   private void expireLeases() {
-    synchronized (lock) {
-      long now = System.currentTimeMillis();
+    long now = System.currentTimeMillis();
 
-      DirEntry dir = findDir(".");
-
-      if (logger.isDetailEnabled()) {
-        StringBuffer buf = new StringBuffer();
-        buf.append(
-            "##### server entries ##############################");
-        dir.append(buf, ".", "\n  ", now);
-        buf.append(
-            "\n"+
-            "###################################################");
-        logger.detail(buf.toString());
-      }
-
-      expireLeases(".", dir, now);
+    if (logger.isDetailEnabled()) {
+      StringBuffer buf = new StringBuffer();
+      buf.append(
+          "##### server entries ##############################");
+      store.append(buf, now);
+      buf.append(
+          "\n"+
+          "###################################################");
+      logger.detail(buf.toString());
     }
 
+    store.expireLeases(now);
+
     // run me again later
     expireThread.schedule(config.checkExpirePeriod);
   }
@@ -1133,6 +584,14 @@ public void unload() {
     }
   }
 
+  private static final class PeerSequence {
+    private final UID epoch;
+    private long last;
+    public PeerSequence(UID epoch) {
+      this.epoch = epoch;
+    }
+  }
+
   /** config options */
   private static class RootConfig {
     public final long successTTD;
@@ -1140,6 +599,8 @@ public void unload() {
     public final long expireTTD;
     public final long forwardPeriod;
     public final long checkExpirePeriod;
+    public final int shards;
+    public final int changeLogSize;
     public RootConfig(Object o) {
       Parameters p = 
         new Parameters(o, "org.cougaar.core.wp.server.");
@@ -1148,151 +609,8 @@ public void unload() {
       expireTTD = p.getLong("expireTTD", 240000);
       forwardPeriod = p.getLong("forwardPeriod", 30000);
       checkExpirePeriod = p.getLong("checkExpirePeriod", 30000);
-    }
-  }
-
-  private static abstract class Entry {
-    private UID uid;
-
-    public Entry(UID uid) {
-      _setUID(uid);
-    }
-
-    private void _setUID(UID uid) {
-      if (uid == null) {
-        throw new IllegalArgumentException("null uid");
-      }
-      this.uid = uid;
-    }
-
-    public void setUID(UID uid) {
-      _setUID(uid);
-    }
-    public UID getUID() {
-      return uid;
-    }
-
-    @Override
-   public String toString() {
-      long now = System.currentTimeMillis();
-      return toString(now);
-    }
-
-    public abstract String toString(long now);
-  }
-
-  private static class DirEntry extends Entry {
-
-    // the child entries, which can be a mix of
-    // dir-entries and record-entries.
-    //
-    // The string key for dir-entries always start
-    // with a '.', and record-entries never start
-    // with a '.'.
-    //
-    // <String, Entry>
-    private final Map entries = new HashMap();
-
-    public DirEntry(UID uid) {
-      super(uid);
-    }
-
-    public boolean isEmpty() {
-      return entries.isEmpty();
-    }
-
-    public RecordEntry getRecordEntry(String name) {
-      return
-        ((name.charAt(0) == '.') ?
-         (null) :
-         (RecordEntry) entries.get(name));
-    }
-
-    // the client can directly modify this map
-    public Map getEntries() {
-      return entries;
-    }
-
-    @Override
-   public String toString(long now) {
-      StringBuffer buf = new StringBuffer();
-      append(buf, "?", "\n  ", now);
-      return buf.toString();
-    }
-
-    /** @note recursive! */
-    public void append(
-        StringBuffer buf,
-        String suffix,
-        String indent,
-        long now) {
-      // assert (Thread.holdsLock(lock));
-      // assert (indent.startsWith("\n"));
-
-      buf.append(indent).append("suffix=").append(suffix);
-      buf.append(indent).append("uid=").append(getUID());
-
-      Map m = this.getEntries();
-
-      // sort
-      Object[] keys = m.keySet().toArray();
-      Arrays.sort(keys);
-
-      buf.append(indent).append("entries[");
-      buf.append(m.size()).append("]={");
-
-      String subindent = indent+"  ";
-      for (int i = 0; i < keys.length; i++) {
-        String name = (String) keys[i];
-        Object value = m.get(name);
-        if (value instanceof DirEntry) {
-          // recurse!
-          DirEntry subdir = (DirEntry) value;
-          subdir.append(buf, name, subindent, now);
-        } else if (value instanceof RecordEntry) {
-          RecordEntry re = (RecordEntry) value;
-          buf.append(subindent).append(name).append("=");
-          buf.append(re.toString(now));
-        } else {
-          throw new RuntimeException(
-              "Unexpected DirEntry element: ("+name+"="+value+")");
-        }
-      }
-
-      buf.append(indent).append("}");
-    }
-  }
-
-  private static class RecordEntry extends Entry {
-
-    private long ttl;
-    private Object data;
-
-    public RecordEntry(UID uid) {
-      super(uid);
-    }
-
-    public void setTTL(long ttl) {
-      this.ttl = ttl;
-    }
-    public long getTTL() {
-      return ttl;
-    }
-
-    public void setData(Object data) {
-      this.data = data;
-    }
-    public Object getData() {
-      return data;
-    }
-
-    @Override
-   public String toString(long now) {
-      return 
-        "(record uid="+getUID()+
-        " ttl="+Timestamp.toString(ttl, now)+
-        " data="+data+
-        ")";
+      shards = Math.max(1, p.getInt("shards", 16));
+      changeLogSize = Math.max(1, p.getInt("changeLogSize", 16384));
     }
   }
 }
@@ -0,0 +1,219 @@
+/*
+ * <copyright>
+ *  
+ *  Copyright 1997-2004 BBNT Solutions, LLC
+ *  under sponsorship of the Defense Advanced Research Projects
+ *  Agency (DARPA).
+ * 
+ *  You can redistribute this software and/or modify it under the
+ *  terms of the Cougaar Open Source License as published on the
+ *  Cougaar Open Source Website (www.cougaar.org).
+ * 
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ *  "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ *  LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ *  A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ *  OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ *  SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ *  LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ *  DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ *  THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ *  OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *  
+ * </copyright>
+ */
+
+package org.cougaar.core.wp.server;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cougaar.core.mts.MessageAddress;
+import org.cougaar.core.persist.PersistenceState;
+import org.cougaar.core.service.LoggingService;
+import org.cougaar.core.service.UIDService;
+import org.cougaar.core.util.UID;
+import org.cougaar.core.util.UniqueObject;
+import org.cougaar.core.wp.resolver.Record;
+
+/**
+ * Local load generator for the white pages server's
+ * {@link DirectoryStore}, which reports lookup and modify latency
+ * percentiles for a single shard (equivalent to the original single
+ * server lock) and for a sharded store.
+ * <p>
+ * Each thread plays the role of the server's message handler for a
+ * stream of synthetic agents, issuing lookups and lease renewals
+ * against randomly selected agent names.  A background thread
+ * drains the forward queues and expires leases every few
+ * milliseconds, to mimic the server's forward and expiration
+ * threads.
+ * <p>
+ * Usage is:<pre>
+ *   java org.cougaar.core.wp.server.ServerLoadBenchmark [agents [ops [modifyPercent]]]
+ * </pre>
+ * where <i>agents</i> is the number of synthetic agents (default
+ * 3000), <i>ops</i> is the number of requests each thread sends
+ * (default 200000), and <i>modifyPercent</i> is the percentage of
+ * requests that are lease renewals (default 20).
+ */
+public class ServerLoadBenchmark {
+
+  private static final int[] SHARDS = {1, 16};
+  private static final int[] THREADS = {1, 4, 16};
+
+  private static final long SUCCESS_TTD = 90000;
+  private static final long FAIL_TTD = 30000;
+  private static final long EXPIRE_TTD = 240000;
+  private static final long BACKGROUND_PERIOD = 5;
+
+  public static void main(String[] args) throws InterruptedException {
+    int agents = (args.length > 0 ? Integer.parseInt(args[0]) : 3000);
+    int ops = (args.length > 1 ? Integer.parseInt(args[1]) : 200000);
+    int modifyPercent = (args.length > 2 ? Integer.parseInt(args[2]) : 20);
+    System.out.println(
+        "shards\tthreads\tops/sec\tp50(ns)\tp99(ns)\tmax(ns)");
+    for (int r = 0; r < 2; r++) {
+      // first round is JIT warm-up
+      boolean print = (r > 0);
+      for (int i = 0; i < SHARDS.length; i++) {
+        for (int j = 0; j < THREADS.length; j++) {
+          String s = run(
+              SHARDS[i], THREADS[j], agents, ops, modifyPercent);
+          if (print) {
+            System.out.println(SHARDS[i]+"\t"+THREADS[j]+"\t"+s);
+          }
+        }
+      }
+    }
+  }
+
+  private static String run(
+      int shards,
+      int n,
+      int agents,
+      final int ops,
+      final int modifyPercent) throws InterruptedException {
+    UIDService uidService = new SimpleUIDs("WPServer");
+    final DirectoryStore store = new DirectoryStore(
+        LoggingService.NULL, uidService, SUCCESS_TTD, FAIL_TTD, shards);
+
+    // bind the synthetic agents
+    UIDService clientUIDs = new SimpleUIDs("ClientNode");
+    final String[] names = new String[agents];
+    final UID[] uids = new UID[agents];
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < agents; i++) {
+      names[i] = "Agent"+i;
+      uids[i] = clientUIDs.nextUID();
+      Object data = Collections.singletonMap("version", names[i]);
+      store.modifyAndForward(
+          names[i], new Record(uids[i], -1, data), EXPIRE_TTD, now);
+    }
+    store.takeForwards();
+
+    // mimic the forward and expiration threads
+    final boolean[] stop = new boolean[1];
+    Thread background = new Thread() {
+      @Override
+      public void run() {
+        while (true) {
+          synchronized (stop) {
+            if (stop[0]) {
+              return;
+            }
+            try {
+              stop.wait(BACKGROUND_PERIOD);
+            } catch (InterruptedException ie) {
+              return;
+            }
+          }
+          store.takeForwards();
+          store.expireLeases(System.currentTimeMillis());
+        }
+      }
+    };
+    background.start();
+
+    final long[][] latencies = new long[n][ops];
+    Thread[] threads = new Thread[n];
+    for (int i = 0; i < n; i++) {
+      final long[] lat = latencies[i];
+      final Random rand = new Random(i);
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < ops; j++) {
+            int k = rand.nextInt(names.length);
+            boolean modify = (rand.nextInt(100) < modifyPercent);
+            long t = System.nanoTime();
+            long now = System.currentTimeMillis();
+            Object answer;
+            if (modify) {
+              answer = store.modifyAndForward(
+                  names[k], uids[k], EXPIRE_TTD, now);
+            } else {
+              answer = store.lookup(names[k], null, now);
+            }
+            lat[j] = System.nanoTime() - t;
+            if (answer == null) throw new RuntimeException();
+          }
+        }
+      };
+    }
+    long t = System.nanoTime();
+    for (int i = 0; i < n; i++) {
+      threads[i].start();
+    }
+    for (int i = 0; i < n; i++) {
+      threads[i].join();
+    }
+    t = System.nanoTime() - t;
+
+    synchronized (stop) {
+      stop[0] = true;
+      stop.notify();
+    }
+    background.join();
+
+    long[] all = new long[n * ops];
+    for (int i = 0; i < n; i++) {
+      System.arraycopy(latencies[i], 0, all, i * ops, ops);
+    }
+    Arrays.sort(all);
+    long rate = (long) (((double) all.length) * 1000000000L / t);
+    return
+      rate+"\t"+
+      all[all.length / 2]+"\t"+
+      all[(int) (all.length * 0.99)]+"\t"+
+      all[all.length - 1];
+  }
+
+  /** A minimal UIDService, since the agent's implementation is not public */
+  private static class SimpleUIDs implements UIDService {
+    private final MessageAddress addr;
+    private final AtomicLong count = new AtomicLong();
+    SimpleUIDs(String name) {
+      addr = MessageAddress.getMessageAddress(name);
+    }
+    public MessageAddress getMessageAddress() {
+      return addr;
+    }
+    public UID nextUID() {
+      return new UID(addr.getAddress(), count.incrementAndGet());
+    }
+    public UID registerUniqueObject(UniqueObject o) {
+      UID uid = nextUID();
+      o.setUID(uid);
+      return uid;
+    }
+    public PersistenceState getPersistenceState() {
+      return null;
+    }
+    public void setPersistenceState(PersistenceState state) {
+    }
+  }
+}
@@ -36,11 +36,11 @@ import java.util.Vector;
 import org.cougaar.core.blackboard.AnonymousChangeReport;
 import org.cougaar.core.blackboard.ChangeReport;
 import org.cougaar.core.blackboard.EnvelopeTuple;
-import org.cougaar.core.domain.EnvelopeLogicProvider;
 import org.cougaar.core.domain.LogicProvider;
 import org.cougaar.core.domain.RestartLogicProvider;
 import org.cougaar.core.domain.RestartLogicProviderHelper;
 import org.cougaar.core.domain.RootPlan;
+import org.cougaar.core.domain.SelectiveEnvelopeLogicProvider;
 import org.cougaar.core.mts.MessageAddress;
 import org.cougaar.planning.ldm.LogPlan;
 import org.cougaar.planning.ldm.PlanningFactory;
@@ -78,7 +78,7 @@ import org.cougaar.util.log.Logging;
   **/
 
 public class AssetTransferLP
-implements LogicProvider, EnvelopeLogicProvider, RestartLogicProvider
+implements LogicProvider, SelectiveEnvelopeLogicProvider, RestartLogicProvider
 {
   private static final Logger logger = Logging.getLogger(AssetTransferLP.class);
   private static final TimeSpan ETERNITY = new MutableTimeSpan();
@@ -101,6 +101,14 @@ implements LogicProvider, EnvelopeLogicProvider, RestartLogicProvider
   public void init() {
   }
 
+  public int getInterestingActions() {
+    return ADD | CHANGE;
+  }
+
+  public Class[] getInterestingClasses() {
+    return new Class[] { AssetTransfer.class };
+  }
+
   /**
    * @param o Envelopetuple,
    *          where tuple.object
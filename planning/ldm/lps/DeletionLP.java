@@ -29,9 +29,9 @@ package org.cougaar.planning.ldm.lps;
 import java.util.Collection;
 
 import org.cougaar.core.blackboard.EnvelopeTuple;
-import org.cougaar.core.domain.EnvelopeLogicProvider;
 import org.cougaar.core.domain.LogicProvider;
 import org.cougaar.core.domain.RootPlan;
+import org.cougaar.core.domain.SelectiveEnvelopeLogicProvider;
 import org.cougaar.core.mts.MessageAddress;
 import org.cougaar.core.util.UID;
 import org.cougaar.planning.ldm.PlanningFactory;
@@ -47,7 +47,7 @@ import org.cougaar.util.log.Logging;
   **/
 
 public class DeletionLP
-implements LogicProvider, EnvelopeLogicProvider
+implements LogicProvider, SelectiveEnvelopeLogicProvider
 {
   private static final Logger logger = Logging.getLogger(DeletionLP.class);
 
@@ -68,6 +68,14 @@ implements LogicProvider, EnvelopeLogicProvider
   public void init() {
   }
 
+  public int getInterestingActions() {
+    return REMOVE;
+  }
+
+  public Class[] getInterestingClasses() {
+    return new Class[] { Task.class };
+  }
+
   /**
    *  @param o an Envelope.Tuple.object is an ADDED 
    * PlanElement which contains an Allocation to an Organization.
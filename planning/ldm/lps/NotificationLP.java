@@ -30,11 +30,11 @@ import java.util.Collection;
 import java.util.Enumeration;
 
 import org.cougaar.core.blackboard.EnvelopeTuple;
-import org.cougaar.core.domain.EnvelopeLogicProvider;
 import org.cougaar.core.domain.LogicProvider;
 import org.cougaar.core.domain.RestartLogicProvider;
 import org.cougaar.core.domain.RestartLogicProviderHelper;
 import org.cougaar.core.domain.RootPlan;
+import org.cougaar.core.domain.SelectiveEnvelopeLogicProvider;
 import org.cougaar.core.mts.MessageAddress;
 import org.cougaar.core.util.UID;
 import org.cougaar.planning.ldm.LogPlan;
@@ -55,7 +55,7 @@ import org.cougaar.util.log.Logging;
  *
  **/
 public class NotificationLP
-implements LogicProvider, EnvelopeLogicProvider, RestartLogicProvider
+implements LogicProvider, SelectiveEnvelopeLogicProvider, RestartLogicProvider
 {
   private static Logger logger = Logging.getLogger(NotificationLP.class);
 
@@ -78,6 +78,14 @@ implements LogicProvider, EnvelopeLogicProvider, RestartLogicProvider
   public void init() {
   }
 
+  public int getInterestingActions() {
+    return ADD | CHANGE;
+  }
+
+  public Class[] getInterestingClasses() {
+    return new Class[] { PlanElement.class };
+  }
+
   /**
    *  @param o an Envelope.Tuple.object is an ADDED 
    * PlanElement which contains an Allocation to an Organization.
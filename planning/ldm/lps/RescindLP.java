@@ -33,9 +33,9 @@ import java.util.Iterator;
 
 import org.cougaar.core.blackboard.Directive;
 import org.cougaar.core.blackboard.EnvelopeTuple;
-import org.cougaar.core.domain.EnvelopeLogicProvider;
 import org.cougaar.core.domain.LogicProvider;
 import org.cougaar.core.domain.RootPlan;
+import org.cougaar.core.domain.SelectiveEnvelopeLogicProvider;
 import org.cougaar.core.mts.MessageAddress;
 import org.cougaar.core.util.UID;
 import org.cougaar.planning.ldm.LogPlan;
@@ -79,7 +79,7 @@ import org.cougaar.util.log.Logging;
  * @property org.cougaar.planning.ldm.lps.RescindLP.removeBadTask. When this & checkBadTask are true, will also remove bad Tasks/PEs if the above checks suggest it. Defaults to true.
  **/
 public class RescindLP
-  implements LogicProvider, EnvelopeLogicProvider {
+  implements LogicProvider, SelectiveEnvelopeLogicProvider {
 
   private static final Logger logger = Logging.getLogger(RescindLP.class);
 
@@ -111,6 +111,14 @@ public class RescindLP
   public void init() {
   }
 
+  public int getInterestingActions() {
+    return ADD | REMOVE | CHANGE;
+  }
+
+  public Class[] getInterestingClasses() {
+    return new Class[] { Task.class, PlanElement.class, DeferredRescind.class };
+  }
+
   /**
    *  @param o  EnvelopeTuple
    *             where Envelope.Tuple.object is an ADDED PlanElement which contains
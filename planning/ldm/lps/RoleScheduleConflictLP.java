@@ -35,9 +35,9 @@ import java.util.List;
 import java.util.ListIterator;
 
 import org.cougaar.core.blackboard.EnvelopeTuple;
-import org.cougaar.core.domain.EnvelopeLogicProvider;
 import org.cougaar.core.domain.LogicProvider;
 import org.cougaar.core.domain.RootPlan;
+import org.cougaar.core.domain.SelectiveEnvelopeLogicProvider;
 import org.cougaar.planning.ldm.asset.Asset;
 import org.cougaar.planning.ldm.plan.Allocation;
 import org.cougaar.planning.ldm.plan.AllocationResult;
@@ -60,7 +60,7 @@ import org.cougaar.planning.ldm.plan.ScheduleElement;
   **/
 
 public class RoleScheduleConflictLP
-implements LogicProvider, EnvelopeLogicProvider {
+implements LogicProvider, SelectiveEnvelopeLogicProvider {
 
   private final RootPlan rootplan;
 
@@ -72,6 +72,14 @@ implements LogicProvider, EnvelopeLogicProvider {
   public void init() {
   }
 
+  public int getInterestingActions() {
+    return ADD | CHANGE;
+  }
+
+  public Class[] getInterestingClasses() {
+    return new Class[] { Allocation.class, AssetTransfer.class };
+  }
+
   public void execute(EnvelopeTuple o, Collection changes) {
     Object obj = o.getObject();
     // We don't need to test on Envelope Contents/Action again...
@@ -30,16 +30,16 @@ import java.util.Collection;
 import java.util.Enumeration;
 
 import org.cougaar.core.blackboard.EnvelopeTuple;
-import org.cougaar.core.domain.EnvelopeLogicProvider;
 import org.cougaar.core.domain.LogicProvider;
 import org.cougaar.core.domain.RootPlan;
+import org.cougaar.core.domain.SelectiveEnvelopeLogicProvider;
 import org.cougaar.planning.ldm.LogPlan;
 import org.cougaar.planning.ldm.plan.Expansion;
 import org.cougaar.planning.ldm.plan.Task;
 import org.cougaar.planning.ldm.plan.Workflow;
 
 public class WorkflowAllocationLP
-implements LogicProvider, EnvelopeLogicProvider
+implements LogicProvider, SelectiveEnvelopeLogicProvider
 {
   private final RootPlan rootplan;
   private final LogPlan logplan;
@@ -54,6 +54,14 @@ implements LogicProvider, EnvelopeLogicProvider
   public void init() {
   }
 
+  public int getInterestingActions() {
+    return ADD;
+  }
+
+  public Class[] getInterestingClasses() {
+    return new Class[] { Expansion.class };
+  }
+
   /** @param o EnvelopeTuple
    *        where Envelope.Tuple.object
    *            == PlanElement object ADDED TO LOGPLAN containing Expansion
@@ -26,6 +26,7 @@
 
 
 package org.cougaar.planning.ldm.predicate;
+import org.cougaar.core.blackboard.ClassFilteredPredicate;
 import org.cougaar.planning.ldm.plan.Alert;
 
 /** Utility predicate for selecting Alerts 
@@ -34,8 +35,12 @@ import org.cougaar.planning.ldm.plan.Alert;
  **/
 
 public class AlertPredicate
-  implements org.cougaar.util.UnaryPredicate
+  implements ClassFilteredPredicate
 {
+  public final Class[] getFilterClasses() {
+    return new Class[] {Alert.class};
+  }
+
   public final boolean execute(Object o) {
     return (o instanceof Alert) && execute((Alert) o);
   }
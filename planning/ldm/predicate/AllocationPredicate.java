@@ -26,6 +26,7 @@
 
 
 package org.cougaar.planning.ldm.predicate;
+import org.cougaar.core.blackboard.ClassFilteredPredicate;
 import org.cougaar.planning.ldm.plan.Allocation;
 
 /** Utility predicate for selecting Allocations 
@@ -34,8 +35,12 @@ import org.cougaar.planning.ldm.plan.Allocation;
  **/
 
 public class AllocationPredicate
-  implements org.cougaar.util.UnaryPredicate
+  implements ClassFilteredPredicate
 {
+  public final Class[] getFilterClasses() {
+    return new Class[] {Allocation.class};
+  }
+
   public final boolean execute(Object o) {
     return (o instanceof Allocation) && execute((Allocation) o);
   }
@@ -26,13 +26,18 @@
 
 
 package org.cougaar.planning.ldm.predicate;
+import org.cougaar.core.blackboard.ClassFilteredPredicate;
 import org.cougaar.planning.ldm.asset.Asset;
 
 /** Utility predicate for selecting assets **/
 
 public class AssetPredicate
-  implements org.cougaar.util.UnaryPredicate
+  implements ClassFilteredPredicate
 {
+  public final Class[] getFilterClasses() {
+    return new Class[] {Asset.class};
+  }
+
   public final boolean execute(Object o) {
     return (o instanceof Asset) && execute((Asset) o);
   }
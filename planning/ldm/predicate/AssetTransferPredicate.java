@@ -26,6 +26,7 @@
 
 
 package org.cougaar.planning.ldm.predicate;
+import org.cougaar.core.blackboard.ClassFilteredPredicate;
 import org.cougaar.planning.ldm.plan.AssetTransfer;
 
 /** Utility predicate for selecting AssetTransfers 
@@ -34,8 +35,12 @@ import org.cougaar.planning.ldm.plan.AssetTransfer;
  **/
 
 public class AssetTransferPredicate
-  implements org.cougaar.util.UnaryPredicate
+  implements ClassFilteredPredicate
 {
+  public final Class[] getFilterClasses() {
+    return new Class[] {AssetTransfer.class};
+  }
+
   public final boolean execute(Object o) {
     return (o instanceof AssetTransfer) && execute((AssetTransfer) o);
   }
@@ -26,14 +26,18 @@
 
 package org.cougaar.planning.ldm.predicate;
 
+import org.cougaar.core.blackboard.ClassFilteredPredicate;
 import org.cougaar.core.blackboard.Directive;
-import org.cougaar.util.UnaryPredicate;
 
 /** Utility predicate for selecting Directives 
  **/
 
-public class DirectivePredicate implements UnaryPredicate
+public class DirectivePredicate implements ClassFilteredPredicate
 {
+  public final Class[] getFilterClasses() {
+    return new Class[] {Directive.class};
+  }
+
   public final boolean execute(Object o) {
     return (o instanceof Directive) && execute((Directive) o);
   }
@@ -26,6 +26,7 @@
 
 
 package org.cougaar.planning.ldm.predicate;
+import org.cougaar.core.blackboard.ClassFilteredPredicate;
 import org.cougaar.planning.ldm.plan.Disposition;
 
 /** Utility predicate for selecting (end state) Dispositions.
@@ -34,8 +35,12 @@ import org.cougaar.planning.ldm.plan.Disposition;
  **/
 
 public class DispositionPredicate
-  implements org.cougaar.util.UnaryPredicate
+  implements ClassFilteredPredicate
 {
+  public final Class[] getFilterClasses() {
+    return new Class[] {Disposition.class};
+  }
+
   public final boolean execute(Object o) {
     return (o instanceof Disposition) && execute((Disposition) o);
   }
@@ -26,6 +26,7 @@
 
 
 package org.cougaar.planning.ldm.predicate;
+import org.cougaar.core.blackboard.ClassFilteredPredicate;
 import org.cougaar.planning.ldm.plan.Expansion;
 
 /** Utility predicate for selecting Expansions 
@@ -34,8 +35,12 @@ import org.cougaar.planning.ldm.plan.Expansion;
  **/
 
 public class ExpansionPredicate
-  implements org.cougaar.util.UnaryPredicate
+  implements ClassFilteredPredicate
 {
+  public final Class[] getFilterClasses() {
+    return new Class[] {Expansion.class};
+  }
+
   public final boolean execute(Object o) {
     return (o instanceof Expansion) && execute((Expansion) o);
   }
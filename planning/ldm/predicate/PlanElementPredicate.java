@@ -26,13 +26,18 @@
 
 
 package org.cougaar.planning.ldm.predicate;
+import org.cougaar.core.blackboard.ClassFilteredPredicate;
 import org.cougaar.planning.ldm.plan.PlanElement;
 
 /** Utility predicate for selecting PlanElements **/
 
 public class PlanElementPredicate
-  implements org.cougaar.util.UnaryPredicate
+  implements ClassFilteredPredicate
 {
+  public final Class[] getFilterClasses() {
+    return new Class[] {PlanElement.class};
+  }
+
   public final boolean execute(Object o) {
     return (o instanceof PlanElement) && execute((PlanElement) o);
   }
@@ -26,13 +26,18 @@
 
 
 package org.cougaar.planning.ldm.predicate;
+import org.cougaar.core.blackboard.ClassFilteredPredicate;
 import org.cougaar.planning.ldm.plan.Task;
 
 /** Utility predicate for selecting tasks **/
 
 public class TaskPredicate
-  implements org.cougaar.util.UnaryPredicate
+  implements ClassFilteredPredicate
 {
+  public final Class[] getFilterClasses() {
+    return new Class[] {Task.class};
+  }
+
   public final boolean execute(Object o) {
     return (o instanceof Task) && execute((Task) o);
   }
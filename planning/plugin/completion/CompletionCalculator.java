@@ -30,6 +30,7 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 
+import org.cougaar.core.blackboard.ClassFilteredPredicate;
 import org.cougaar.planning.ldm.plan.AllocationResult;
 import org.cougaar.planning.ldm.plan.PlanElement;
 import org.cougaar.planning.ldm.plan.Task;
@@ -41,7 +42,10 @@ public class CompletionCalculator {
   protected static final double CONFIDENCE_THRESHHOLD = 0.89999;
 
   protected static final UnaryPredicate TASK_PRED = 
-    new UnaryPredicate() {
+    new ClassFilteredPredicate() {
+      public Class[] getFilterClasses() {
+        return new Class[] {Task.class};
+      }
       public boolean execute(Object o) {
         return (o instanceof Task);
       }
@@ -48,6 +48,7 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.cougaar.core.blackboard.ClassFilteredPredicate;
 import org.cougaar.core.servlet.SimpleServletSupport;
 import org.cougaar.planning.ldm.asset.Asset;
 import org.cougaar.planning.ldm.plan.HasRelationships;
@@ -250,7 +251,10 @@ public class HierarchyWorker
 
   /** test to find which org is yourself */
   private static final UnaryPredicate selfOrgP =
-    new UnaryPredicate() {
+    new ClassFilteredPredicate() {
+	public Class[] getFilterClasses() {
+	  return new Class[] {HasRelationships.class};
+	}
 	public boolean execute(Object o) {
 	  return 
 	    ((o instanceof HasRelationships) && ((HasRelationships)o).isLocal());
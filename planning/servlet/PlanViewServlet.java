@@ -63,8 +63,10 @@ import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
+import org.cougaar.core.blackboard.ClassFilteredPredicate;
 import org.cougaar.core.blackboard.PublisherInfo;
 import org.cougaar.core.blackboard.PublisherSubscription;
+import org.cougaar.core.blackboard.UIDFilteredPredicate;
 import org.cougaar.core.mts.MessageAddress;
 import org.cougaar.core.plugin.ComponentPlugin;
 import org.cougaar.core.service.BlackboardQueryService;
@@ -234,7 +236,11 @@ extends ComponentPlugin
     // ignore changes
   }
 
-  private static final class UniqueObjectPredicate implements UnaryPredicate {
+  private static final class UniqueObjectPredicate
+      implements ClassFilteredPredicate {
+    public Class[] getFilterClasses() {
+      return new Class[] {UniqueObject.class};
+    }
     public boolean execute(Object o) {
       return (o instanceof UniqueObject);
     }
@@ -4241,11 +4247,14 @@ extends ComponentPlugin
       return new UniqueObjectWithUIDPredicate(findUID);
     }
     private static final class UniqueObjectWithUIDPredicate 
-        implements UnaryPredicate {
+        implements UIDFilteredPredicate {
       private final UID findUID;
       public UniqueObjectWithUIDPredicate(UID findUID) {
         this.findUID = findUID;
       }
+      public UID getFilterUID() {
+        return findUID;
+      }
       public boolean execute(Object o) {
         if (o instanceof UniqueObject) {
           UID u = ((UniqueObject)o).getUID();
@@ -4258,7 +4267,11 @@ extends ComponentPlugin
     private UnaryPredicate getTaskPred() {
       return new TaskPredicate();
     }
-    private static final class TaskPredicate implements UnaryPredicate {
+    private static final class TaskPredicate
+        implements ClassFilteredPredicate {
+      public Class[] getFilterClasses() {
+        return new Class[] {Task.class};
+      }
       public boolean execute(Object o) {
         return (o instanceof Task);
       }
@@ -4268,11 +4281,14 @@ extends ComponentPlugin
       return new TaskWithVerbPredicate(v);
     }
     private static final class TaskWithVerbPredicate
-        implements UnaryPredicate {
+        implements ClassFilteredPredicate {
       private final Verb v;
       public TaskWithVerbPredicate(Verb v) {
         this.v = v;
       }
+      public Class[] getFilterClasses() {
+        return new Class[] {Task.class};
+      }
       public boolean execute(Object o) {
         return ((o instanceof Task) &&
             v.equals(((Task)o).getVerb()));
@@ -4285,7 +4301,11 @@ extends ComponentPlugin
     private UnaryPredicate getPlanElementPred() {
       return new PlanElementPredicate();
     }
-    private static final class PlanElementPredicate implements UnaryPredicate {
+    private static final class PlanElementPredicate
+        implements ClassFilteredPredicate {
+      public Class[] getFilterClasses() {
+        return new Class[] {PlanElement.class};
+      }
       public boolean execute(Object o) {
         return (o instanceof PlanElement);
       }
@@ -4294,7 +4314,11 @@ extends ComponentPlugin
     private UnaryPredicate getAssetPred() {
       return new AssetPredicate();
     }
-    public static final class AssetPredicate implements UnaryPredicate {
+    public static final class AssetPredicate
+        implements ClassFilteredPredicate {
+      public Class[] getFilterClasses() {
+        return new Class[] {Asset.class};
+      }
       public boolean execute(Object o) {
         return (o instanceof Asset);
       }